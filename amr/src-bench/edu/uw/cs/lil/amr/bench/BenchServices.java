@@ -0,0 +1,108 @@
+package edu.uw.cs.lil.amr.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import edu.cornell.cs.nlp.spf.data.sentence.Sentence;
+import edu.cornell.cs.nlp.spf.data.situated.sentence.SituatedSentence;
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
+import edu.cornell.cs.nlp.spf.mr.lambda.ccg.LogicalExpressionCategoryServices;
+import edu.cornell.cs.nlp.spf.parser.joint.model.IJointDataItemModel;
+import edu.cornell.cs.nlp.spf.parser.joint.model.JointModel;
+import edu.cornell.cs.nlp.utils.log.LogLevel;
+import edu.cornell.cs.nlp.utils.log.Logger;
+import edu.uw.cs.lil.amr.Init;
+import edu.uw.cs.lil.amr.data.AMRMeta;
+import edu.uw.cs.lil.amr.parser.factorgraph.FactorGraph;
+import edu.uw.cs.lil.amr.parser.factorgraph.assignmentgen.AssignmentGeneratorFactory;
+import edu.uw.cs.lil.amr.parser.factorgraph.features.RelationSelectionalPreference;
+import edu.uw.cs.lil.amr.parser.factorgraph.features.SurfaceFormFeature;
+import edu.uw.cs.lil.amr.parser.factorgraph.features.UnaryBiasFeatures;
+import edu.uw.cs.lil.amr.parser.factorgraph.nodes.CreateFactorGraph;
+
+/**
+ * Shared initialization and fixtures for the micro-benchmarks. Resources are
+ * resolved relative to the repository root, which is taken from the system
+ * property {@value #ROOT_PROPERTY} (default: the working directory).
+ *
+ * @author Yoav Artzi
+ */
+public class BenchServices {
+
+	public static final String								ROOT_PROPERTY	= "amr.root";
+
+	/**
+	 * "John ate his banana", with an underspecified reference.
+	 */
+	public static final String								SENTENCE		= "John ate his banana";
+
+	private static final LogicalExpressionCategoryServices	CATEGORY_SERVICES;
+
+	private static final String								SEMANTICS		= "(a:<id,<<e,t>,e>> !1 (lambda $0:e (and:<t*,t> (eat-01:<e,t> $0) "
+			+ "(arg0:<e,<e,t>> $0 (a:<id,<<e,t>,e>> !3 (lambda $2:e (and:<t*,t> (person:<e,t> $2) (name:<e,<txt,t>> $2 john:txt))))) "
+			+ "(arg1:<e,<e,t>> $0 (a:<id,<<e,t>,e>> !2 (lambda $1:e (and:<t*,t> (banana:<e,t> $1) (poss:<e,<e,t>> $1 (ref:<id,e> na:id)))))))))";
+
+	private BenchServices() {
+		// Use static access method.
+	}
+
+	static {
+		LogLevel.ERROR.set();
+		Logger.setSkipPrefix(true);
+
+		try {
+			Init.init(getFile("resources/amr.types"),
+					getFile("resources/amr.specmap"),
+					getFile("resources/stanford-models/english-bidirectional-distsim.tagger"),
+					false, null, null, null, false);
+		} catch (final IOException e) {
+			throw new RuntimeException(e);
+		}
+
+		CATEGORY_SERVICES = new LogicalExpressionCategoryServices(true);
+	}
+
+	/**
+	 * Create the factor graph of the fixture logical form and add the
+	 * selectional preference, surface form and unary bias factors.
+	 */
+	public static FactorGraph createGraph(LogicalExpression exp) {
+		final FactorGraph graph = CreateFactorGraph.of(exp,
+				new AssignmentGeneratorFactory().create(exp), false);
+
+		final JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model = new JointModel.Builder<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression>()
+				.build();
+		model.getTheta().set("RELPREF", "banana", "poss", "person", 1.1);
+		model.getTheta().set("RELPREF", "banana", "poss", "eat-01", 1);
+		final Sentence sentence = new Sentence(SENTENCE);
+		final AMRMeta meta = new AMRMeta(sentence);
+		final IJointDataItemModel<LogicalExpression, LogicalExpression> dim = model
+				.createJointDataItemModel(
+						new SituatedSentence<AMRMeta>(sentence, meta));
+
+		new SurfaceFormFeature().createFactorJobs(graph, meta, dim)
+				.forEach(r -> r.run());
+		new RelationSelectionalPreference().createFactorJobs(graph, meta, dim)
+				.forEach(r -> r.run());
+		new UnaryBiasFeatures().createFactorJobs(graph, meta, dim)
+				.forEach(r -> r.run());
+
+		return graph;
+	}
+
+	public static LogicalExpressionCategoryServices getCategoryServices() {
+		return CATEGORY_SERVICES;
+	}
+
+	public static File getFile(String path) {
+		return new File(System.getProperty(ROOT_PROPERTY, "."), path);
+	}
+
+	/**
+	 * The fixture logical form.
+	 */
+	public static LogicalExpression getSemantics() {
+		return CATEGORY_SERVICES.readSemantics(SEMANTICS);
+	}
+
+}
@@ -0,0 +1,59 @@
+package edu.uw.cs.lil.amr.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
+import edu.uw.cs.lil.amr.lambda.convert.AmrToLogicalExpressionConverter;
+import edu.uw.cs.lil.amr.lambda.convert.LogicalExpressionToAmr;
+
+/**
+ * Micro-benchmarks of the conversion between AMR strings and logical forms.
+ *
+ * @author Yoav Artzi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionBenchmark {
+
+	private static final String					AMR	= "(n2 / name :op1 \"Abu\" :op2 \"Ali\" :op3 \"al-Harithi\"\n"
+			+ "      :domain (a / alias\n"
+			+ "            :poss (p2 / person :name (n / name :op1 \"Ali\" :op2 \"Qaed\" :op3 \"Sunian\" :op4 \"al-Harithi\"))))";
+
+	private AmrToLogicalExpressionConverter	converter;
+
+	private LogicalExpression					exp;
+
+	@Benchmark
+	public String logicalExpressionToAmr() {
+		return LogicalExpressionToAmr.of(exp);
+	}
+
+	@Benchmark
+	public LogicalExpression read() throws IOException {
+		return converter.read(AMR);
+	}
+
+	@Setup
+	public void setup() throws IOException {
+		BenchServices.getCategoryServices();
+		converter = new AmrToLogicalExpressionConverter();
+		exp = converter.read(AMR);
+	}
+
+}
@@ -0,0 +1,72 @@
+package edu.uw.cs.lil.amr.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
+import edu.uw.cs.lil.amr.parser.EvaluationResult;
+import edu.uw.cs.lil.amr.parser.factorgraph.FactorGraph;
+import edu.uw.cs.lil.amr.parser.factorgraph.assignmentgen.AssignmentGeneratorFactory;
+import edu.uw.cs.lil.amr.parser.factorgraph.inference.BeamSearch;
+import edu.uw.cs.lil.amr.parser.factorgraph.inference.LoopyBP;
+import edu.uw.cs.lil.amr.parser.factorgraph.nodes.CreateFactorGraph;
+
+/**
+ * Micro-benchmarks of the second inference stage: creating the factor graph
+ * of an underspecified logical form and running inference over it.
+ *
+ * @author Yoav Artzi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FactorGraphBenchmark {
+
+	@Param({ "1", "10", "100" })
+	public int					beam;
+
+	private LogicalExpression	exp;
+
+	private FactorGraph			graph;
+
+	@Benchmark
+	public List<EvaluationResult> beamSearch() {
+		return BeamSearch.of(graph, beam).first();
+	}
+
+	@Benchmark
+	public FactorGraph createFactorGraph() {
+		return CreateFactorGraph.of(exp,
+				new AssignmentGeneratorFactory().create(exp), false);
+	}
+
+	@Benchmark
+	public FactorGraph loopyBP() {
+		// Messages are re-initialized by each run, so the same graph is used
+		// for all invocations.
+		LoopyBP.of(graph, 0.1, 1000, null, false);
+		return graph;
+	}
+
+	@Setup
+	public void setup() {
+		exp = BenchServices.getSemantics();
+		graph = BenchServices.createGraph(exp);
+	}
+
+}
@@ -0,0 +1,123 @@
+package edu.uw.cs.lil.amr.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.cornell.cs.nlp.spf.data.singlesentence.SingleSentence;
+import edu.cornell.cs.nlp.spf.data.singlesentence.SingleSentenceCollection;
+import edu.cornell.cs.nlp.spf.data.situated.sentence.SituatedSentence;
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
+import edu.cornell.cs.nlp.spf.parser.joint.model.IJointModelImmutable;
+import edu.uw.cs.lil.amr.data.AMRMeta;
+import edu.uw.cs.lil.amr.exp.AmrExp;
+import edu.uw.cs.lil.amr.exp.AmrResourceRepo;
+import edu.uw.cs.lil.amr.parser.GraphAmrParser;
+
+/**
+ * End-to-end benchmark of {@link GraphAmrParser#parse} with a frozen model on
+ * a fixed prefix of the development proxy data. The parser, model and data are
+ * created by experiments/bench/bench.exp. The model file is required and is
+ * set with the system property amr.bench.model. The data file defaults to the
+ * pre-processed development proxy data and can be set with the system
+ * property amr.bench.data. Each invocation parses all sentences, so the score
+ * is the time to parse the set.
+ *
+ * @author Yoav Artzi
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ParserBenchmark {
+
+	@Param({ "20" })
+	public int																						numSentences;
+
+	@Param({ "false" })
+	public boolean																					sloppy;
+
+	private AmrExp																					exp;
+
+	private IJointModelImmutable<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression>	model;
+
+	private GraphAmrParser																			parser;
+
+	private List<SituatedSentence<AMRMeta>>															sentences;
+
+	/**
+	 * Resolve the path against the repository root without initializing
+	 * {@link BenchServices}, since the experiment initializes the AMR services
+	 * itself.
+	 */
+	private static File getFile(String path) {
+		return new File(System.getProperty(BenchServices.ROOT_PROPERTY, "."),
+				path);
+	}
+
+	@Benchmark
+	public void parse(Blackhole blackhole) {
+		for (final SituatedSentence<AMRMeta> sentence : sentences) {
+			blackhole.consume(parser.parse(sentence,
+					model.createJointDataItemModel(sentence), sloppy));
+		}
+	}
+
+	@Setup
+	public void setup() throws IOException {
+		final String modelFile = System.getProperty("amr.bench.model");
+		if (modelFile == null) {
+			throw new IllegalStateException(
+					"Missing model file (set amr.bench.model)");
+		}
+
+		final Map<String, String> envParams = new HashMap<>();
+		envParams.put("modelFile", new File(modelFile).getAbsolutePath());
+		envParams.put("devData",
+				new File(System.getProperty("amr.bench.data",
+						getFile("resources/data/amr-release-1.0-dev-proxy.lam")
+								.getPath())).getAbsolutePath());
+		exp = new AmrExp(getFile("experiments/bench/bench.exp"), envParams,
+				new AmrResourceRepo());
+		parser = exp.get("parser");
+		model = exp.get("model");
+
+		// Pre-compute the sentence annotations, so they are not included in
+		// the parsing time.
+		final SingleSentenceCollection data = exp.get("proxy-dev-all-raw");
+		sentences = new ArrayList<>(numSentences);
+		for (final SingleSentence dataItem : data) {
+			if (sentences.size() == numSentences) {
+				break;
+			}
+			sentences.add(new SituatedSentence<>(dataItem.getSample(),
+					new AMRMeta(dataItem.getSample())));
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		exp.end();
+	}
+
+}
@@ -0,0 +1,100 @@
+package edu.uw.cs.lil.amr.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalConstant;
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
+import edu.uw.cs.lil.amr.parser.factorgraph.nodes.INode;
+import edu.uw.cs.lil.amr.parser.factorgraph.nodes.LogicalConstantNode;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.ColumnHeader;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table;
+
+/**
+ * Micro-benchmarks of the basic {@link Table} operations used by inference.
+ * The table has three columns of {@link #columnSize} values each.
+ *
+ * @author Yoav Artzi
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableBenchmark {
+
+	@Param({ "4", "16" })
+	public int								columnSize;
+
+	private Map<INode, LogicalExpression>	mapping;
+
+	private Table							table;
+
+	@Benchmark
+	public Table add() {
+		for (int i = 0; i < table.size(); ++i) {
+			table.add(i, 1.0);
+		}
+		return table;
+	}
+
+	@Benchmark
+	public double getIndex() {
+		double sum = 0.0;
+		for (int i = 0; i < table.size(); ++i) {
+			sum += table.get(i);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double getMapping() {
+		return table.get(mapping);
+	}
+
+	@Benchmark
+	public Table normalize() {
+		// Normalizing a normalized table does the same amount of work, so the
+		// table is not reset between invocations.
+		table.normalize();
+		return table;
+	}
+
+	@Setup
+	public void setup() {
+		BenchServices.getCategoryServices();
+		final ColumnHeader[] headers = new ColumnHeader[3];
+		mapping = new HashMap<>();
+		for (int column = 0; column < headers.length; ++column) {
+			final LogicalExpression[] assignments = new LogicalExpression[columnSize];
+			for (int i = 0; i < columnSize; ++i) {
+				assignments[i] = LogicalConstant
+						.read(String.format("c%d_%d:e", column, i));
+			}
+			final LogicalConstantNode node = new LogicalConstantNode(
+					LogicalConstant.read(String.format("c%d:e", column)),
+					assignments, column);
+			headers[column] = new ColumnHeader(node);
+			mapping.put(node, assignments[columnSize - 1]);
+		}
+		table = new Table(false, headers);
+		for (int i = 0; i < table.size(); ++i) {
+			table.set(i, 1.0 + i % 7);
+		}
+	}
+
+}
@@ -0,0 +1,154 @@
+package edu.uw.cs.lil.amr.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.cornell.cs.nlp.spf.base.token.TokenSeq;
+import edu.cornell.cs.nlp.spf.ccg.categories.syntax.Syntax;
+import edu.cornell.cs.nlp.spf.data.sentence.Sentence;
+import edu.cornell.cs.nlp.spf.data.situated.sentence.SituatedSentence;
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
+import edu.cornell.cs.nlp.utils.composites.Pair;
+import edu.uw.cs.lil.amr.TestServices;
+
+public class AmrCorpusCacheTest {
+
+	private static AMRMeta createMeta(Sentence sentence, String... tags) {
+		final List<Set<String>> lemmas = new ArrayList<>();
+		for (int i = 0; i < tags.length; ++i) {
+			lemmas.add(Collections.singleton(
+					sentence.getTokens().get(i).toLowerCase()));
+		}
+		return new AMRMeta(sentence, TokenSeq.of(tags), null, lemmas);
+	}
+
+	private static File createTempFile() throws IOException {
+		final File file = File.createTempFile("amr-corpus", ".cache");
+		file.deleteOnExit();
+		return file;
+	}
+
+	private static void assertMetaEquals(AMRMeta expected, AMRMeta actual) {
+		final int numTokens = expected.getSentence().getTokens().size();
+		Assert.assertEquals(expected.getSentence().getTokens(),
+				actual.getSentence().getTokens());
+		Assert.assertEquals(expected.getTags(), actual.getTags());
+		Assert.assertEquals(expected.getNamedEntities(),
+				actual.getNamedEntities());
+		for (int i = 0; i < numTokens; ++i) {
+			Assert.assertEquals(expected.getLemmas(i), actual.getLemmas(i));
+		}
+	}
+
+	@Test
+	public void testIncomplete() throws IOException {
+		final Tokenizer tokenizer = new Tokenizer();
+		final Sentence sentence = new Sentence("The boy left", tokenizer);
+		final File file = createTempFile();
+		AmrCorpusCache.writeUnlabeled(file, "source", "annotators",
+				Arrays.asList(new SituatedSentence<>(sentence,
+						createMeta(sentence, "DT", "NN", "VBD"))));
+
+		// Reset the header fields that are completed last.
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(4 + 4 + 1);
+			raf.writeInt(0);
+			raf.writeLong(0L);
+		}
+
+		try {
+			AmrCorpusCache.open(file);
+			Assert.fail("Incomplete cache opened");
+		} catch (final IOException e) {
+			// Expected.
+		}
+	}
+
+	@Test
+	public void testLabeled() throws IOException {
+		final Tokenizer tokenizer = new Tokenizer();
+		final Sentence sentence1 = new Sentence("The boy wants to go",
+				tokenizer);
+		final Sentence sentence2 = new Sentence("Go", tokenizer);
+		final LogicalExpression label1 = TestServices.getCategoryServices()
+				.readSemantics(
+						"(a:<id,<<e,t>,e>> na:id (lambda $0:e (boy:<e,t> $0)))");
+		final LogicalExpression label2 = TestServices.getCategoryServices()
+				.readSemantics(
+						"(a:<id,<<e,t>,e>> na:id (lambda $0:e (go-01:<e,t> $0)))");
+
+		final Map<String, String> properties = new HashMap<>();
+		properties.put("id", "test.1");
+		final Map<Pair<Integer, Integer>, Set<LogicalExpression>> alignments = new HashMap<>();
+		alignments.put(Pair.of(1, 2), Collections.singleton(label1));
+		final List<Set<Syntax>> superTags = new ArrayList<>();
+		for (int i = 0; i < 5; ++i) {
+			superTags.add(Collections.singleton(Syntax.N));
+		}
+		final Map<TokenSeq, Set<Syntax>> spans = new HashMap<>();
+		spans.put(TokenSeq.of("The", "boy"), Collections.singleton(Syntax.NP));
+
+		final LabeledAmrSentence item1 = new LabeledAmrSentence(
+				new SituatedSentence<>(sentence1,
+						createMeta(sentence1, "DT", "NN", "VBZ", "TO", "VB")),
+				label1, properties, alignments, superTags, spans);
+		final LabeledAmrSentence item2 = new LabeledAmrSentence(
+				new SituatedSentence<>(sentence2, createMeta(sentence2, "VB")),
+				label2, Collections.emptyMap(), null, null, null);
+
+		final File file = createTempFile();
+		AmrCorpusCache.write(file, "source", "annotators",
+				Arrays.asList(item1, item2));
+		final AmrCorpusCache cache = AmrCorpusCache.open(file);
+		Assert.assertTrue(cache.isLabeled());
+		Assert.assertEquals(2, cache.size());
+		Assert.assertEquals("source", cache.getSource());
+		Assert.assertEquals("annotators", cache.getAnnotators());
+
+		// Read in reverse order, items are decoded independently.
+		for (final int i : new int[] { 1, 0 }) {
+			final LabeledAmrSentence expected = i == 0 ? item1 : item2;
+			final LabeledAmrSentence actual = cache.readLabeled(i, tokenizer,
+					TestServices.getCategoryServices());
+			Assert.assertEquals(expected.getSample().getSample().getString(),
+					actual.getSample().getSample().getString());
+			Assert.assertEquals(expected.getLabel(), actual.getLabel());
+			Assert.assertEquals(expected.getProperties(),
+					actual.getProperties());
+			Assert.assertEquals(expected.getAlignments(),
+					actual.getAlignments());
+			Assert.assertEquals(expected.getSuperTags(),
+					actual.getSuperTags());
+			Assert.assertEquals(expected.getSpans(), actual.getSpans());
+			assertMetaEquals(expected.getSample().getState(),
+					actual.getSample().getState());
+		}
+	}
+
+	@Test
+	public void testUnlabeled() throws IOException {
+		final Tokenizer tokenizer = new Tokenizer();
+		final Sentence sentence = new Sentence("The boy left", tokenizer);
+		final AMRMeta meta = createMeta(sentence, "DT", "NN", "VBD");
+
+		final File file = createTempFile();
+		AmrCorpusCache.writeUnlabeled(file, "source", "annotators",
+				Arrays.asList(new SituatedSentence<>(sentence, meta)));
+		final AmrCorpusCache cache = AmrCorpusCache.open(file);
+		Assert.assertFalse(cache.isLabeled());
+		Assert.assertEquals(1, cache.size());
+		assertMetaEquals(meta, cache.readUnlabeled(0, sentence).getState());
+	}
+
+}
@@ -0,0 +1,106 @@
+package edu.uw.cs.lil.amr.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AnnotationStoreTest {
+
+	private static File createTempFile() throws IOException {
+		final File file = File.createTempFile("amr-annotations", ".store")
+				.getCanonicalFile();
+		file.deleteOnExit();
+		return file;
+	}
+
+	private static byte[] payload(String content) {
+		return content.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testAppend() throws IOException {
+		final File file = createTempFile();
+		final AnnotationStore store = AnnotationStore.load(file);
+		final byte[] hash1 = AnnotationStore.hash("sig\nThe boy left");
+		final byte[] hash2 = AnnotationStore.hash("sig\nGo");
+		store.putAll(Collections.singletonMap(hash1, payload("first")));
+
+		// Existing records are not appended again.
+		final long length = file.length();
+		store.putAll(Collections.singletonMap(hash1, payload("other")));
+		Assert.assertEquals(length, file.length());
+		Assert.assertArrayEquals(payload("first"), store.get(hash1));
+
+		// Another store of the same file reads the records appended by the
+		// first one before it appends its own.
+		final AnnotationStore other = AnnotationStore.load(file);
+		store.putAll(Collections.singletonMap(hash2, payload("second")));
+		other.putAll(Collections.singletonMap(hash2, payload("second")));
+		Assert.assertEquals(2, other.size());
+		Assert.assertArrayEquals(payload("second"), other.get(hash2));
+		Assert.assertEquals(2, AnnotationStore.load(file).size());
+	}
+
+	@Test
+	public void testReload() throws IOException {
+		final File file = createTempFile();
+		final Map<byte[], byte[]> batch = new HashMap<>();
+		batch.put(AnnotationStore.hash("sig\nThe boy left"), payload("first"));
+		batch.put(AnnotationStore.hash("sig\nGo"), payload(""));
+		AnnotationStore.load(file).putAll(batch);
+
+		final AnnotationStore reloaded = AnnotationStore.load(file);
+		Assert.assertEquals(2, reloaded.size());
+		Assert.assertArrayEquals(payload("first"),
+				reloaded.get(AnnotationStore.hash("sig\nThe boy left")));
+		Assert.assertArrayEquals(payload(""),
+				reloaded.get(AnnotationStore.hash("sig\nGo")));
+	}
+
+	@Test
+	public void testSignatureMismatch() throws IOException {
+		final File file = createTempFile();
+		AnnotationStore.load(file).putAll(Collections.singletonMap(
+				AnnotationStore.hash("tagger=a\nThe boy left"),
+				payload("first")));
+
+		// Annotations of other annotators are not found.
+		final AnnotationStore reloaded = AnnotationStore.load(file);
+		Assert.assertNull(
+				reloaded.get(AnnotationStore.hash("tagger=b\nThe boy left")));
+		Assert.assertNotNull(
+				reloaded.get(AnnotationStore.hash("tagger=a\nThe boy left")));
+	}
+
+	@Test
+	public void testTruncated() throws IOException {
+		final File file = createTempFile();
+		final byte[] hash1 = AnnotationStore.hash("sig\nThe boy left");
+		final byte[] hash2 = AnnotationStore.hash("sig\nGo");
+		final AnnotationStore store = AnnotationStore.load(file);
+		store.putAll(Collections.singletonMap(hash1, payload("first")));
+		final long length = file.length();
+		store.putAll(Collections.singletonMap(hash2, payload("second")));
+
+		// Cut the last record, as if the process crashed while writing it.
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(file.length() - 2);
+		}
+		final AnnotationStore reloaded = AnnotationStore.load(file);
+		Assert.assertEquals(1, reloaded.size());
+		Assert.assertNull(reloaded.get(hash2));
+
+		// The partial record is overwritten by the next write.
+		reloaded.putAll(Collections.singletonMap(hash2, payload("second")));
+		Assert.assertEquals(2, AnnotationStore.load(file).size());
+		Assert.assertTrue(file.length() > length);
+	}
+
+}
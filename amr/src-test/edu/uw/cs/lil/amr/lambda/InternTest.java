@@ -0,0 +1,85 @@
+package edu.uw.cs.lil.amr.lambda;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import edu.cornell.cs.nlp.spf.mr.lambda.Lambda;
+import edu.cornell.cs.nlp.spf.mr.lambda.Literal;
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
+import edu.uw.cs.lil.amr.TestServices;
+
+public class InternTest {
+
+	@Test
+	public void test() {
+		final Interner<LogicalExpression> interner = Interners
+				.newWeakInterner();
+		final String string = "(a:<id,<<e,t>,e>> na:id (lambda $0:e (and:<t*,t>\n"
+				+ "    (person:<e,t> $0)\n"
+				+ "    (c_name:<e,<e,t>> $0\n"
+				+ "        (a:<id,<<e,t>,e>> na:id (lambda $1:e (and:<t*,t>\n"
+				+ "            (name:<e,t> $1)\n"
+				+ "            (c_op:<e,<txt,t>> $1 Raghad++Hussein:txt))))))))";
+		final LogicalExpression exp1 = TestServices.getCategoryServices()
+				.readSemantics(string);
+		final LogicalExpression exp2 = TestServices.getCategoryServices()
+				.readSemantics(string);
+		Assert.assertNotSame(exp1, exp2);
+
+		final LogicalExpression interned1 = Intern.of(exp1, interner);
+		final LogicalExpression interned2 = Intern.of(exp2, interner);
+		Assert.assertEquals(exp1, interned1);
+		Assert.assertSame(interned1, interned2);
+		Assert.assertSame(interned1, Intern.of(interned1, interner));
+	}
+
+	@Test
+	public void testSharedSubExpressions() {
+		final Interner<LogicalExpression> interner = Interners
+				.newWeakInterner();
+		final LogicalExpression name = Intern.of(
+				TestServices.getCategoryServices().readSemantics(
+						"(a:<id,<<e,t>,e>> na:id (lambda $0:e (name:<e,t> $0)))"),
+				interner);
+		final LogicalExpression exp = Intern.of(
+				TestServices.getCategoryServices()
+						.readSemantics("(a:<id,<<e,t>,e>> na:id (lambda $0:e "
+								+ "(c_name:<e,<e,t>> $0 "
+								+ "(a:<id,<<e,t>,e>> na:id (lambda $1:e (name:<e,t> $1))))))"),
+				interner);
+		final Literal relation = (Literal) ((Lambda) ((Literal) exp).getArg(1))
+				.getBody();
+		Assert.assertSame(name, relation.getArg(1));
+	}
+
+	@Test
+	public void testPartialOverlap() {
+		final Interner<LogicalExpression> interner = Interners
+				.newWeakInterner();
+		final LogicalExpression first = Intern.of(
+				TestServices.getCategoryServices()
+						.readSemantics("(lambda $1:e (person:<e,t> $1))"),
+				interner);
+		final LogicalExpression second = Intern.of(
+				TestServices.getCategoryServices().readSemantics(
+						"(lambda $0:e (and:<t*,t> (person:<e,t> $0) (name:<e,t> $0)))"),
+				interner);
+
+		// The open literal (person:<e,t> $0) is equal to the body of the
+		// first lambda up to renaming, but must still refer to the argument of
+		// its own lambda.
+		final Lambda lambda = (Lambda) second;
+		final Literal conjunction = (Literal) lambda.getBody();
+		for (int i = 0; i < conjunction.numArgs(); ++i) {
+			Assert.assertSame(lambda.getArgument(),
+					((Literal) conjunction.getArg(i)).getArg(0));
+		}
+		Assert.assertNotSame(((Lambda) first).getBody(),
+				conjunction.getArg(0));
+		Assert.assertEquals(0, second.numFreeVariables());
+	}
+
+}
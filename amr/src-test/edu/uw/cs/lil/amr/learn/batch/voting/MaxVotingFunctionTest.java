@@ -0,0 +1,74 @@
+package edu.uw.cs.lil.amr.learn.batch.voting;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MaxVotingFunctionTest {
+
+	private final MaxVotingFunction<String, Character> voter = new MaxVotingFunction<>(
+			s -> s.charAt(0));
+
+	/**
+	 * Sequential max voting, to compare against.
+	 */
+	private static Set<String> sequentialVote(Map<String, Double> votes) {
+		final Map<Character, String> maxEntries = new HashMap<>();
+		final Map<Character, Double> maxVotes = new HashMap<>();
+		for (final Entry<String, Double> entryVote : votes.entrySet()) {
+			final char group = entryVote.getKey().charAt(0);
+			final double vote = entryVote.getValue();
+			if (!maxVotes.containsKey(group) || vote > maxVotes.get(group)) {
+				maxEntries.put(group, entryVote.getKey());
+				maxVotes.put(group, vote);
+			} else if (vote == maxVotes.get(group)) {
+				maxEntries.put(group, null);
+			}
+		}
+		final Set<String> voted = new HashSet<>(maxEntries.values());
+		voted.remove(null);
+		return voted;
+	}
+
+	@Test
+	public void testHardFilter() {
+		final Map<String, Double> votes = new HashMap<>();
+		votes.put("a1", 2.0);
+		votes.put("a2", 1.0);
+		Assert.assertEquals(new HashSet<>(Arrays.asList("a2")),
+				voter.apply(s -> !s.equals("a1"), votes));
+	}
+
+	@Test
+	public void testLargeVote() {
+		final Random random = new Random(1);
+		final Map<String, Double> votes = new HashMap<>();
+		for (int i = 0; i < 10 * MaxVotingFunction.PARALLEL_VOTING; ++i) {
+			votes.put((char) ('a' + random.nextInt(1000)) + Integer.toString(i),
+					(double) random.nextInt(5));
+		}
+		final Set<String> expected = sequentialVote(votes);
+		Assert.assertFalse(expected.isEmpty());
+		Assert.assertEquals(expected, voter.apply(s -> true, votes));
+	}
+
+	@Test
+	public void testTie() {
+		final Map<String, Double> votes = new HashMap<>();
+		votes.put("a1", 2.0);
+		votes.put("a2", 2.0);
+		votes.put("a3", 1.0);
+		votes.put("b1", 1.0);
+		votes.put("b2", 3.0);
+		Assert.assertEquals(new HashSet<>(Arrays.asList("b2")),
+				voter.apply(s -> true, votes));
+	}
+
+}
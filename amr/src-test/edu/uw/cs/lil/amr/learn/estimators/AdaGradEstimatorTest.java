@@ -0,0 +1,52 @@
+package edu.uw.cs.lil.amr.learn.estimators;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.cornell.cs.nlp.spf.base.hashvector.HashVectorFactory;
+import edu.cornell.cs.nlp.spf.base.hashvector.IHashVector;
+
+public class AdaGradEstimatorTest {
+
+	private static IHashVector gradient(double a, double b) {
+		final IHashVector gradient = HashVectorFactory.create();
+		gradient.set("F", "a", a);
+		if (b != 0.0) {
+			gradient.set("F", "b", b);
+		}
+		return gradient;
+	}
+
+	@Test
+	public void testInitHistory() {
+		final AdaGradEstimator estimator = new AdaGradEstimator(true,
+				n -> 0.5);
+		final IHashVector weights = HashVectorFactory.create();
+		Assert.assertTrue(estimator.applyUpdate(gradient(2.0, -1.0), weights));
+		Assert.assertEquals(2.0 / Math.sqrt(5.0) * 0.5, weights.get("F", "a"),
+				1e-12);
+		Assert.assertEquals(-1.0 / Math.sqrt(2.0) * 0.5,
+				weights.get("F", "b"), 1e-12);
+	}
+
+	@Test
+	public void testVanilla() {
+		final AdaGradEstimator estimator = new AdaGradEstimator(false,
+				n -> 1.0 / (1 + n));
+		final IHashVector weights = HashVectorFactory.create();
+		Assert.assertTrue(estimator.applyUpdate(gradient(2.0, -1.0), weights));
+		Assert.assertEquals(1.0, weights.get("F", "a"), 1e-12);
+		Assert.assertEquals(-1.0, weights.get("F", "b"), 1e-12);
+
+		// Only the features in the gradient are updated, using their own
+		// history and the decayed learning rate.
+		Assert.assertTrue(estimator.applyUpdate(gradient(1.0, 0.0), weights));
+		Assert.assertEquals(1.0 + 1.0 / Math.sqrt(5.0) * 0.5,
+				weights.get("F", "a"), 1e-12);
+		Assert.assertEquals(-1.0, weights.get("F", "b"), 1e-12);
+
+		Assert.assertFalse(
+				estimator.applyUpdate(HashVectorFactory.create(), weights));
+	}
+
+}
@@ -0,0 +1,43 @@
+package edu.uw.cs.lil.amr.learn.gradient;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.cornell.cs.nlp.spf.base.hashvector.HashVectorFactory;
+import edu.cornell.cs.nlp.spf.base.hashvector.IHashVector;
+
+public class CompressedHashVectorTest {
+
+	@Test
+	public void testEmpty() {
+		final CompressedHashVector compressed = CompressedHashVector
+				.of(HashVectorFactory.create());
+		Assert.assertEquals(0, compressed.size());
+		Assert.assertEquals(0, compressed.decode().size());
+	}
+
+	@Test
+	public void testRoundTrip() {
+		final IHashVector vector = HashVectorFactory.create();
+		vector.set("F", 1.5);
+		vector.set("F", "a", -2.0);
+		vector.set("F", "a", "b", 0.0);
+		vector.set("F", "a", "c", "d", -1e-12);
+		vector.set("G", "a", "b", "c", "d", 3.0);
+		vector.set("G", "x", Double.MAX_VALUE);
+		final CompressedHashVector compressed = CompressedHashVector
+				.of(vector);
+		Assert.assertEquals(vector.size(), compressed.size());
+
+		// Keys of all lengths, and negative and zero values are preserved.
+		final IHashVector decoded = compressed.decode();
+		Assert.assertEquals(vector.size(), decoded.size());
+		Assert.assertEquals(1.5, decoded.get("F"), 0.0);
+		Assert.assertEquals(-2.0, decoded.get("F", "a"), 0.0);
+		Assert.assertEquals(0.0, decoded.get("F", "a", "b"), 0.0);
+		Assert.assertEquals(-1e-12, decoded.get("F", "a", "c", "d"), 0.0);
+		Assert.assertEquals(3.0, decoded.get("G", "a", "b", "c", "d"), 0.0);
+		Assert.assertEquals(Double.MAX_VALUE, decoded.get("G", "x"), 0.0);
+	}
+
+}
@@ -0,0 +1,54 @@
+package edu.uw.cs.lil.amr.learn.gradient;
+
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.cornell.cs.nlp.spf.base.hashvector.HashVectorFactory;
+import edu.cornell.cs.nlp.spf.base.hashvector.IHashVector;
+
+public class GradientAccumulatorTest {
+
+	@Test
+	public void testConcurrentMerge() {
+		final GradientAccumulator accumulator = new GradientAccumulator();
+		IntStream.range(0, 1000).parallel().forEach(i -> {
+			final IHashVector gradient = HashVectorFactory.create();
+			gradient.set("F", "shared", 1.0);
+			gradient.set("F", String.valueOf(i % 10), -0.5);
+			accumulator.add(gradient);
+		});
+
+		// Values are exact binary fractions, so the sums don't depend on the
+		// order of the additions.
+		final IHashVector sum = accumulator.toVector();
+		Assert.assertEquals(11, accumulator.size());
+		Assert.assertEquals(1000.0, sum.get("F", "shared"), 0.0);
+		for (int i = 0; i < 10; ++i) {
+			Assert.assertEquals(-50.0, sum.get("F", String.valueOf(i)), 0.0);
+		}
+	}
+
+	@Test
+	public void testMerge() {
+		final GradientAccumulator accumulator = new GradientAccumulator();
+		final IHashVector first = HashVectorFactory.create();
+		first.set("F", "a", 1.0);
+		first.set("F", "b", -2.0);
+		final IHashVector second = HashVectorFactory.create();
+		second.set("F", "a", -1.0);
+		second.set("F", "c", 0.5);
+		accumulator.add(first);
+		accumulator.add(second);
+		accumulator.add(HashVectorFactory.create());
+
+		// Features that cancel out are kept with a zero value.
+		final IHashVector sum = accumulator.toVector();
+		Assert.assertEquals(3, accumulator.size());
+		Assert.assertEquals(0.0, sum.get("F", "a"), 0.0);
+		Assert.assertEquals(-2.0, sum.get("F", "b"), 0.0);
+		Assert.assertEquals(0.5, sum.get("F", "c"), 0.0);
+	}
+
+}
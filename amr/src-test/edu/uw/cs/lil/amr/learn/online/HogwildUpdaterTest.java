@@ -0,0 +1,60 @@
+package edu.uw.cs.lil.amr.learn.online;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.cornell.cs.nlp.spf.base.hashvector.HashVectorFactory;
+import edu.cornell.cs.nlp.spf.base.hashvector.IHashVector;
+import edu.uw.cs.lil.amr.learn.estimators.DecayingEstimator;
+
+public class HogwildUpdaterTest {
+
+	private static IHashVector gradient(String feature, double value) {
+		final IHashVector gradient = HashVectorFactory.create();
+		gradient.set("F", feature, value);
+		return gradient;
+	}
+
+	@Test
+	public void testHeldBackUpdates() {
+		final IHashVector theta = HashVectorFactory.create();
+		theta.set("F", "a", 1.0);
+		final HogwildUpdater updater = new HogwildUpdater(theta,
+				new DecayingEstimator(1.0, 0.0), 2, 10);
+
+		// Existing features are updated in place, new ones are held back while
+		// the model is read.
+		updater.read(() -> {
+			final IHashVector first = gradient("a", 1.0);
+			first.set("F", "b", 2.0);
+			Assert.assertTrue(updater.apply(first));
+			Assert.assertTrue(updater.apply(gradient("b", 1.0)));
+			return null;
+		});
+		Assert.assertEquals(2.0, theta.get("F", "a"), 0.0);
+		Assert.assertEquals(0.0, theta.get("F", "b"), 0.0);
+
+		// No worker reads the model, so the held back updates are flushed
+		// below the flush threshold.
+		updater.flushIfNeeded();
+		Assert.assertEquals(3.0, theta.get("F", "b"), 0.0);
+	}
+
+	@Test
+	public void testStaleGradients() {
+		final IHashVector theta = HashVectorFactory.create();
+		theta.set("F", "a", 0.5);
+		final HogwildUpdater updater = new HogwildUpdater(theta,
+				new DecayingEstimator(1.0, 0.0), 1, 10);
+		updater.read(() -> {
+			Assert.assertTrue(updater.apply(gradient("a", 1.0)));
+			Assert.assertTrue(updater.apply(gradient("a", 1.0)));
+			// Two updates were applied since the model was read.
+			Assert.assertFalse(updater.apply(gradient("a", 1.0)));
+			return null;
+		});
+		Assert.assertEquals(2.5, theta.get("F", "a"), 0.0);
+		Assert.assertEquals(1, updater.getStaleDrops());
+	}
+
+}
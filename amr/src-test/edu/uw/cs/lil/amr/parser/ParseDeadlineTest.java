@@ -0,0 +1,49 @@
+package edu.uw.cs.lil.amr.parser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParseDeadlineTest {
+
+	@Test
+	public void testDegrade() {
+		final ParseDeadline deadline = new ParseDeadline(0, 100L);
+		Assert.assertEquals(DegradationLevel.NONE, deadline.getLevel());
+		deadline.degrade(DegradationLevel.REDUCED_FEATURES);
+		deadline.degrade(DegradationLevel.REDUCED_BEAM);
+		Assert.assertEquals(DegradationLevel.REDUCED_FEATURES,
+				deadline.getLevel());
+		deadline.degrade(DegradationLevel.PARTIAL);
+		Assert.assertEquals(DegradationLevel.PARTIAL, deadline.getLevel());
+	}
+
+	@Test
+	public void testExact() {
+		Assert.assertTrue(DegradationLevel.NONE.isExact());
+		Assert.assertTrue(DegradationLevel.REDUCED_BEAM.isExact());
+		Assert.assertFalse(DegradationLevel.REDUCED_FEATURES.isExact());
+		Assert.assertFalse(DegradationLevel.NO_FACTOR_GRAPH.isExact());
+		Assert.assertFalse(DegradationLevel.PARTIAL.isExact());
+	}
+
+	@Test
+	public void testRemaining() {
+		final ParseDeadline deadline = new ParseDeadline(1000, 200L);
+		Assert.assertTrue(deadline.isLimited());
+		Assert.assertEquals(1.0, deadline.remainingFraction(1000), 0.0);
+		Assert.assertEquals(0.25, deadline.remainingFraction(1150), 0.0);
+		Assert.assertEquals(Long.valueOf(50), deadline.remaining(1150));
+		Assert.assertEquals(0.0, deadline.remainingFraction(5000), 0.0);
+		Assert.assertEquals(Long.valueOf(0), deadline.remaining(5000));
+	}
+
+	@Test
+	public void testUnlimited() {
+		final ParseDeadline deadline = new ParseDeadline(0, null);
+		Assert.assertFalse(deadline.isLimited());
+		Assert.assertNull(deadline.remaining(Long.MAX_VALUE));
+		Assert.assertEquals(1.0, deadline.remainingFraction(Long.MAX_VALUE),
+				0.0);
+	}
+
+}
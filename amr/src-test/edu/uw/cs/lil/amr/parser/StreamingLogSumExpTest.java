@@ -0,0 +1,35 @@
+package edu.uw.cs.lil.amr.parser;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StreamingLogSumExpTest {
+
+	@Test
+	public void test() {
+		final double[] values = { -3.0, 1.5, 0.2, -1000.0, 7.0, 7.0 };
+		final StreamingLogSumExp logSumExp = new StreamingLogSumExp();
+		double sum = 0.0;
+		for (final double value : values) {
+			logSumExp.add(value);
+			sum += Math.exp(value);
+		}
+		Assert.assertEquals(Math.log(sum), logSumExp.get(), 1e-12);
+	}
+
+	@Test
+	public void testEmpty() {
+		Assert.assertEquals(Double.NEGATIVE_INFINITY,
+				new StreamingLogSumExp().get(), 0.0);
+		Assert.assertEquals(2.0, new StreamingLogSumExp()
+				.add(Double.NEGATIVE_INFINITY).add(2.0).get(), 0.0);
+	}
+
+	@Test
+	public void testLargeValues() {
+		// Would overflow without scaling by the maximum.
+		Assert.assertEquals(1000.0 + Math.log(2.0),
+				new StreamingLogSumExp().add(1000.0).add(1000.0).get(), 1e-12);
+	}
+
+}
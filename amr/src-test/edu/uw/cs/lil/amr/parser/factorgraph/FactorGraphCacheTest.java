@@ -0,0 +1,166 @@
+package edu.uw.cs.lil.amr.parser.factorgraph;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.cornell.cs.nlp.spf.data.situated.sentence.SituatedSentence;
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
+import edu.cornell.cs.nlp.spf.parser.joint.model.IJointDataItemModel;
+import edu.cornell.cs.nlp.spf.parser.joint.model.JointModel;
+import edu.uw.cs.lil.amr.TestServices;
+import edu.uw.cs.lil.amr.data.AMRMeta;
+import edu.uw.cs.lil.amr.parser.factorgraph.inference.InferenceTestServices;
+import edu.uw.cs.lil.amr.parser.factorgraph.nodes.IFactor;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table.FactorTable;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table.LazyFactorTable;
+import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetFactors;
+
+public class FactorGraphCacheTest {
+
+	public FactorGraphCacheTest() {
+		TestServices.init();
+	}
+
+	private static void assertScores(FactorGraph graph,
+			IJointDataItemModel<LogicalExpression, LogicalExpression> dim) {
+		for (final IFactor factor : GetFactors.of(graph)) {
+			final FactorTable table = factor.getTable();
+			for (int i = 0; i < table.size(); ++i) {
+				Assert.assertEquals(dim.score(table.getFeatures(i)),
+						table.get(i), 1e-10);
+			}
+		}
+	}
+
+	@Test
+	public void testHit() {
+		final JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model = InferenceTestServices
+				.createModel();
+		final AMRMeta meta = InferenceTestServices.createMeta();
+		final IJointDataItemModel<LogicalExpression, LogicalExpression> dim = model
+				.createJointDataItemModel(
+						new SituatedSentence<AMRMeta>(meta.getSentence(), meta));
+		final LogicalExpression semantics = TestServices.getCategoryServices()
+				.readSemantics(InferenceTestServices.JOHN_ATE_HIS_BANANA);
+		final FactorGraphCache cache = new FactorGraphCache(10);
+		final AtomicInteger created = new AtomicInteger();
+
+		final FactorGraph graph = cache.get(semantics, meta, false, dim,
+				() -> {
+					created.incrementAndGet();
+					return InferenceTestServices.createGraph(
+							InferenceTestServices.JOHN_ATE_HIS_BANANA, false,
+							model, false);
+				});
+		Assert.assertNotNull(graph);
+		Assert.assertEquals(1, created.get());
+		Assert.assertEquals(0, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+
+		// Update the weights, a hit is scored with the current weights.
+		model.getTheta().set("RELPREF", "banana", "poss", "person", -2.0);
+		final FactorGraph hit = cache.get(semantics, meta, false, dim,
+				() -> {
+					created.incrementAndGet();
+					return null;
+				});
+		Assert.assertNotNull(hit);
+		Assert.assertNotSame(graph, hit);
+		Assert.assertEquals(1, created.get());
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+		Assert.assertEquals(GetFactors.of(graph).size(),
+				GetFactors.of(hit).size());
+		assertScores(hit, dim);
+
+		// Each hit is a different graph.
+		Assert.assertNotSame(hit, cache.get(semantics, meta, false, dim,
+				() -> null));
+		Assert.assertEquals(2, cache.getHits());
+	}
+
+	@Test
+	public void testLazy() {
+		final JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model = InferenceTestServices
+				.createModel();
+		final AMRMeta meta = InferenceTestServices.createMeta();
+		final IJointDataItemModel<LogicalExpression, LogicalExpression> dim = model
+				.createJointDataItemModel(
+						new SituatedSentence<AMRMeta>(meta.getSentence(), meta));
+		final LogicalExpression semantics = TestServices.getCategoryServices()
+				.readSemantics(InferenceTestServices.JOHN_ATE_HIS_BANANA);
+		final FactorGraphCache cache = new FactorGraphCache(10);
+
+		final FactorGraph graph = cache.get(semantics, meta, false, dim,
+				() -> InferenceTestServices.createGraph(
+						InferenceTestServices.JOHN_ATE_HIS_BANANA, false,
+						model, true));
+		final FactorGraph hit = cache.get(semantics, meta, false, dim,
+				() -> null);
+
+		// Neither caching nor copying computes rows.
+		for (final IFactor factor : GetFactors.of(graph)) {
+			Assert.assertEquals(0,
+					((LazyFactorTable) factor.getTable()).numMaterialized());
+		}
+		for (final IFactor factor : GetFactors.of(hit)) {
+			Assert.assertEquals(0,
+					((LazyFactorTable) factor.getTable()).numMaterialized());
+		}
+
+		model.getTheta().set("RELPREF", "banana", "poss", "person", -2.0);
+		assertScores(cache.get(semantics, meta, false, dim, () -> null), dim);
+	}
+
+	@Test
+	public void testMiss() {
+		final JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model = InferenceTestServices
+				.createModel();
+		final AMRMeta meta = InferenceTestServices.createMeta();
+		final IJointDataItemModel<LogicalExpression, LogicalExpression> dim = model
+				.createJointDataItemModel(
+						new SituatedSentence<AMRMeta>(meta.getSentence(), meta));
+		final FactorGraphCache cache = new FactorGraphCache(10);
+
+		// The key includes the closure flag.
+		final LogicalExpression semantics = TestServices.getCategoryServices()
+				.readSemantics(InferenceTestServices.JOHN_ATE_HIS_BANANA);
+		for (final boolean closure : new boolean[] { false, true }) {
+			Assert.assertNotNull(cache.get(semantics, meta, closure, dim,
+					() -> InferenceTestServices.createGraph(
+							InferenceTestServices.JOHN_ATE_HIS_BANANA, false,
+							model, false)));
+		}
+		Assert.assertEquals(0, cache.getHits());
+		Assert.assertEquals(2, cache.getMisses());
+		Assert.assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testNegative() {
+		final JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model = InferenceTestServices
+				.createModel();
+		final AMRMeta meta = InferenceTestServices.createMeta();
+		final IJointDataItemModel<LogicalExpression, LogicalExpression> dim = model
+				.createJointDataItemModel(
+						new SituatedSentence<AMRMeta>(meta.getSentence(), meta));
+		final LogicalExpression semantics = TestServices.getCategoryServices()
+				.readSemantics(InferenceTestServices.JOHN_ATE_HIS_BANANA);
+		final FactorGraphCache cache = new FactorGraphCache(10);
+		final AtomicInteger created = new AtomicInteger();
+
+		for (int i = 0; i < 2; ++i) {
+			Assert.assertNull(cache.get(semantics, meta, false, dim, () -> {
+				created.incrementAndGet();
+				return null;
+			}));
+		}
+		Assert.assertEquals(1, created.get());
+		Assert.assertEquals(1, cache.getHits());
+		Assert.assertEquals(1, cache.getMisses());
+		Assert.assertEquals(1, cache.size());
+	}
+
+}
@@ -0,0 +1,67 @@
+package edu.uw.cs.lil.amr.parser.factorgraph.inference;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import edu.uw.cs.lil.amr.TestServices;
+import edu.uw.cs.lil.amr.parser.factorgraph.FactorGraph;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table;
+
+@RunWith(Parameterized.class)
+public class CompiledLoopyBPTest {
+
+	private final int		maxIterations;
+	private final String	semantics;
+	private final double	threshold;
+	private final boolean	unaryBias;
+
+	public CompiledLoopyBPTest(String semantics, boolean unaryBias,
+			double threshold, int maxIterations) {
+		TestServices.init();
+		this.semantics = semantics;
+		this.unaryBias = unaryBias;
+		this.threshold = threshold;
+		this.maxIterations = maxIterations;
+	}
+
+	@Parameters
+	public static Collection<Object[]> parameters() {
+		return Arrays.asList(
+				new Object[] { InferenceTestServices.JOHN_ATE_HIS_BANANA, true,
+						0.1, 1000 },
+				// Strict threshold and a low iteration cap, to compare the
+				// messages also without convergence.
+				new Object[] { InferenceTestServices.JOHN_ATE_HIS_BANANA, false,
+						0.0, 3 });
+	}
+
+	private static void assertIdentical(Table expected, Table actual) {
+		Assert.assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); ++i) {
+			Assert.assertEquals(Double.doubleToLongBits(expected.get(i)),
+					Double.doubleToLongBits(actual.get(i)));
+		}
+	}
+
+	@Test
+	public void test() {
+		final FactorGraph expectedGraph = InferenceTestServices
+				.createGraph(semantics, unaryBias);
+		final FactorGraph actualGraph = InferenceTestServices
+				.createGraph(semantics, unaryBias);
+
+		LoopyBP.of(expectedGraph, threshold, maxIterations);
+		CompiledLoopyBP.of(actualGraph, threshold, maxIterations);
+
+		Assert.assertTrue(actualGraph.hasMarginals());
+		InferenceTestServices.assertBeliefs(expectedGraph, actualGraph,
+				CompiledLoopyBPTest::assertIdentical);
+	}
+
+}
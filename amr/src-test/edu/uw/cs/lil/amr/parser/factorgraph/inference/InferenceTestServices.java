@@ -0,0 +1,126 @@
+package edu.uw.cs.lil.amr.parser.factorgraph.inference;
+
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import edu.cornell.cs.nlp.spf.data.sentence.Sentence;
+import edu.cornell.cs.nlp.spf.data.situated.sentence.SituatedSentence;
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
+import edu.cornell.cs.nlp.spf.parser.joint.model.IJointDataItemModel;
+import edu.cornell.cs.nlp.spf.parser.joint.model.JointModel;
+import edu.uw.cs.lil.amr.TestServices;
+import edu.uw.cs.lil.amr.data.AMRMeta;
+import edu.uw.cs.lil.amr.parser.factorgraph.FactorGraph;
+import edu.uw.cs.lil.amr.parser.factorgraph.assignmentgen.AssignmentGeneratorFactory;
+import edu.uw.cs.lil.amr.parser.factorgraph.features.RelationSelectionalPreference;
+import edu.uw.cs.lil.amr.parser.factorgraph.features.SurfaceFormFeature;
+import edu.uw.cs.lil.amr.parser.factorgraph.features.UnaryBiasFeatures;
+import edu.uw.cs.lil.amr.parser.factorgraph.nodes.CreateFactorGraph;
+import edu.uw.cs.lil.amr.parser.factorgraph.nodes.IFactor;
+import edu.uw.cs.lil.amr.parser.factorgraph.nodes.INode;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table;
+import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetFactors;
+import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetVariables;
+
+/**
+ * Shared fixtures for comparing belief propagation implementations and for
+ * other tests over factor graphs.
+ *
+ * @author Yoav Artzi
+ */
+public class InferenceTestServices {
+
+	/**
+	 * "John ate his banana"
+	 */
+	public static final String JOHN_ATE_HIS_BANANA = "(a:<id,<<e,t>,e>> !1 (lambda $0:e (and:<t*,t> (eat-01:<e,t> $0) "
+			+ "(arg0:<e,<e,t>> $0 (a:<id,<<e,t>,e>> !3 (lambda $2:e (and:<t*,t> (person:<e,t> $2) (name:<e,<txt,t>> $2 john:txt))))) "
+			+ "(arg1:<e,<e,t>> $0 (a:<id,<<e,t>,e>> !2 (lambda $1:e (and:<t*,t> (banana:<e,t> $1) (poss:<e,<e,t>> $1 (ref:<id,e> na:id)))))))))";
+
+	private InferenceTestServices() {
+		// Service class.
+	}
+
+	/**
+	 * Compare the beliefs of all variables and factors of two graphs created
+	 * from the same logical form.
+	 */
+	public static void assertBeliefs(FactorGraph expectedGraph,
+			FactorGraph actualGraph, BiConsumer<Table, Table> assertTable) {
+		final Map<Integer, INode> expectedVariables = GetVariables
+				.of(expectedGraph).stream()
+				.collect(Collectors.toMap(INode::getId, Function.identity()));
+		for (final INode variable : GetVariables.of(actualGraph)) {
+			assertTable.accept(
+					expectedVariables.get(variable.getId()).getBelief(),
+					variable.getBelief());
+		}
+
+		final Map<String, IFactor> expectedFactors = GetFactors
+				.of(expectedGraph).stream()
+				.collect(Collectors.toMap(IFactor::getId, Function.identity()));
+		for (final IFactor factor : GetFactors.of(actualGraph)) {
+			assertTable.accept(expectedFactors.get(factor.getId()).getBelief(),
+					factor.getBelief());
+		}
+	}
+
+	public static FactorGraph createGraph(String semantics, boolean unaryBias) {
+		return createGraph(semantics, unaryBias, createModel(), false);
+	}
+
+	/**
+	 * Create a factor graph for the sentence "John ate his banana".
+	 *
+	 * @param model
+	 *            Model to score the factors (see {@link #createModel()}).
+	 * @param lazyTables
+	 *            Create lazy factor tables.
+	 */
+	public static FactorGraph createGraph(String semantics, boolean unaryBias,
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
+			boolean lazyTables) {
+		final LogicalExpression exp = TestServices.getCategoryServices()
+				.readSemantics(semantics);
+		final AssignmentGeneratorFactory factory = new AssignmentGeneratorFactory();
+		final FactorGraph graph = CreateFactorGraph.of(exp, factory.create(exp),
+				false);
+		graph.setLazyTables(lazyTables);
+
+		final AMRMeta meta = createMeta();
+		final IJointDataItemModel<LogicalExpression, LogicalExpression> dim = model
+				.createJointDataItemModel(
+						new SituatedSentence<AMRMeta>(meta.getSentence(), meta));
+
+		new SurfaceFormFeature().createFactorJobs(graph, meta, dim)
+				.parallelStream().forEach(r -> r.run());
+		new RelationSelectionalPreference().createFactorJobs(graph, meta, dim)
+				.parallelStream().forEach(r -> r.run());
+		if (unaryBias) {
+			new UnaryBiasFeatures().createFactorJobs(graph, meta, dim)
+					.parallelStream().forEach(r -> r.run());
+		}
+		return graph;
+	}
+
+	/**
+	 * Meta data for the sentence "John ate his banana".
+	 */
+	public static AMRMeta createMeta() {
+		return new AMRMeta(new Sentence("John ate his banana"));
+	}
+
+	/**
+	 * A model with a few non-zero relation selectional preference weights.
+	 */
+	public static JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> createModel() {
+		final JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model = new JointModel.Builder<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression>()
+				.build();
+		model.getTheta().set("RELPREF", "banana", "poss", "person", 1.1);
+		model.getTheta().set("RELPREF", "banana", "poss", "eat-01", 1);
+		return model;
+	}
+
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (C) 2011 - 2015 Yoav Artzi, All rights reserved.
+ * <p>
+ * This program is free software; you can redistribute it and/or modify it under
+ * the terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ * <p>
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ *******************************************************************************/
+package edu.uw.cs.lil.amr.parser.factorgraph.inference;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.cornell.cs.nlp.spf.data.sentence.Sentence;
+import edu.cornell.cs.nlp.spf.data.situated.sentence.SituatedSentence;
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
+import edu.cornell.cs.nlp.spf.parser.joint.model.IJointDataItemModel;
+import edu.cornell.cs.nlp.spf.parser.joint.model.JointModel;
+import edu.uw.cs.lil.amr.TestServices;
+import edu.uw.cs.lil.amr.data.AMRMeta;
+import edu.uw.cs.lil.amr.parser.EvaluationResult;
+import edu.uw.cs.lil.amr.parser.factorgraph.FactorGraph;
+import edu.uw.cs.lil.amr.parser.factorgraph.assignmentgen.AssignmentGeneratorFactory;
+import edu.uw.cs.lil.amr.parser.factorgraph.features.RelationSelectionalPreference;
+import edu.uw.cs.lil.amr.parser.factorgraph.features.SurfaceFormFeature;
+import edu.uw.cs.lil.amr.parser.factorgraph.nodes.CreateFactorGraph;
+
+public class KBestViterbiTest {
+
+	public KBestViterbiTest() {
+		TestServices.init();
+	}
+
+	@Test
+	public void test() {
+		// "John ate his banana"
+		final LogicalExpression exp = TestServices.getCategoryServices()
+				.readSemantics(
+						"(a:<id,<<e,t>,e>> !1 (lambda $0:e (and:<t*,t> (eat-01:<e,t> $0) "
+								+ "(arg0:<e,<e,t>> $0 (a:<id,<<e,t>,e>> !3 (lambda $2:e (and:<t*,t> (person:<e,t> $2) (name:<e,<txt,t>> $2 john:txt))))) "
+								+ "(arg1:<e,<e,t>> $0 (a:<id,<<e,t>,e>> !2 (lambda $1:e (and:<t*,t> (banana:<e,t> $1) (poss:<e,<e,t>> $1 (ref:<id,e> na:id)))))))))");
+		final AssignmentGeneratorFactory factory = new AssignmentGeneratorFactory();
+		final FactorGraph graph = CreateFactorGraph.of(exp, factory.create(exp),
+				false);
+
+		final JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model = new JointModel.Builder<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression>()
+				.build();
+		model.getTheta().set("RELPREF", "banana", "poss", "person", 1.1);
+		model.getTheta().set("RELPREF", "banana", "poss", "eat-01", 1);
+		final Sentence sentence = new Sentence("John ate his banana");
+		final AMRMeta meta = new AMRMeta(sentence);
+		final IJointDataItemModel<LogicalExpression, LogicalExpression> dim = model
+				.createJointDataItemModel(
+						new SituatedSentence<AMRMeta>(sentence, meta));
+
+		new SurfaceFormFeature().createFactorJobs(graph, meta, dim)
+				.parallelStream().forEach(r -> r.run());
+		new RelationSelectionalPreference().createFactorJobs(graph, meta, dim)
+				.parallelStream().forEach(r -> r.run());
+
+		Assert.assertEquals(3,
+				KBestViterbi.of(graph, 10, 64).getResults().size());
+		Assert.assertEquals(2,
+				KBestViterbi.of(graph, 2, 64).getResults().size());
+		// Pruning a configuration makes the enumeration incomplete, but the
+		// k-best are still exact.
+		Assert.assertTrue(KBestViterbi.of(graph, 10, 64).isComplete());
+		Assert.assertTrue(KBestViterbi.of(graph, 3, 64).isComplete());
+		Assert.assertFalse(KBestViterbi.of(graph, 2, 64).isComplete());
+		Assert.assertTrue(KBestViterbi.of(graph, 2, 64).isTopKExact());
+
+		// Identical to an exhaustive beam search.
+		final List<EvaluationResult> beam = BeamSearch.of(graph, 10).first();
+		final List<EvaluationResult> viterbi = KBestViterbi.of(graph, 10, 64)
+				.getResults();
+		for (int i = 0; i < beam.size(); ++i) {
+			Assert.assertEquals(beam.get(i).getScore(),
+					viterbi.get(i).getScore(), 1e-10);
+		}
+
+		final List<EvaluationResult> results = KBestViterbi.of(graph, 1, 64)
+				.getResults();
+		Assert.assertEquals(1, results.size());
+		Assert.assertEquals(TestServices.getCategoryServices()
+				.readSemantics("(a:<id,<<e,t>,e>> !1 (lambda $0:e (and:<t*,t> "
+						+ "(eat-01:<e,t> $0) "
+						+ "(arg0:<e,<e,t>> $0 (a:<id,<<e,t>,e>> !2 (lambda $1:e (and:<t*,t> "
+						+ "(person:<e,t> $1) (name:<e,<txt,t>> $1 john:txt))))) "
+						+ "(arg1:<e,<e,t>> $0 (a:<id,<<e,t>,e>> !3 (lambda $2:e (and:<t*,t> (banana:<e,t> $2) (poss:<e,<e,t>> $2 (ref:<id,e> !2)))))))))"),
+				results.get(0).getResult());
+		Assert.assertEquals(1.1, results.get(0).getScore(), 0.001);
+		Assert.assertEquals(results.get(0).getScore(),
+				dim.score(results.get(0).getFeatures()), 1e-6);
+	}
+
+}
@@ -0,0 +1,110 @@
+package edu.uw.cs.lil.amr.parser.factorgraph.nodes;
+
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.cornell.cs.nlp.spf.data.situated.sentence.SituatedSentence;
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
+import edu.cornell.cs.nlp.spf.parser.joint.model.IJointDataItemModel;
+import edu.cornell.cs.nlp.spf.parser.joint.model.JointModel;
+import edu.uw.cs.lil.amr.TestServices;
+import edu.uw.cs.lil.amr.data.AMRMeta;
+import edu.uw.cs.lil.amr.parser.factorgraph.FactorGraph;
+import edu.uw.cs.lil.amr.parser.factorgraph.inference.InferenceTestServices;
+import edu.uw.cs.lil.amr.parser.factorgraph.inference.LoopyBP;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.FeatureWeights;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table.FactorTable;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table.LazyFactorTable;
+import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetEdges;
+import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetFactors;
+import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetVariables;
+
+public class CopyFactorGraphTest {
+
+	public CopyFactorGraphTest() {
+		TestServices.init();
+	}
+
+	private static Map<String, IFactor> getFactors(FactorGraph graph) {
+		return GetFactors.of(graph).stream()
+				.collect(Collectors.toMap(IFactor::getId, Function.identity()));
+	}
+
+	@Test
+	public void test() {
+		final JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model = InferenceTestServices
+				.createModel();
+		final FactorGraph graph = InferenceTestServices.createGraph(
+				InferenceTestServices.JOHN_ATE_HIS_BANANA, false, model, false);
+
+		// Update the weights after the graph is created, the copy should be
+		// re-scored.
+		model.getTheta().set("RELPREF", "banana", "poss", "person", -2.0);
+		final AMRMeta meta = InferenceTestServices.createMeta();
+		final IJointDataItemModel<LogicalExpression, LogicalExpression> dim = model
+				.createJointDataItemModel(
+						new SituatedSentence<AMRMeta>(meta.getSentence(), meta));
+		final FactorGraph copy = CopyFactorGraph.of(graph,
+				new FeatureWeights(dim.getTheta()));
+
+		Assert.assertEquals(GetVariables.of(graph).size(),
+				GetVariables.of(copy).size());
+		Assert.assertEquals(GetEdges.of(graph).size(),
+				GetEdges.of(copy).size());
+		final Map<String, IFactor> factors = getFactors(graph);
+		for (final IFactor factor : GetFactors.of(copy)) {
+			final FactorTable original = factors.get(factor.getId())
+					.getTable();
+			final FactorTable table = factor.getTable();
+			Assert.assertEquals(original.size(), table.size());
+			for (int i = 0; i < table.size(); ++i) {
+				Assert.assertSame(original.getCompactFeatures(i),
+						table.getCompactFeatures(i));
+				Assert.assertEquals(dim.score(table.getFeatures(i)),
+						table.get(i), 1e-10);
+			}
+		}
+
+		// The copy is independent of the original graph.
+		LoopyBP.of(copy, 0.001, 100);
+		Assert.assertTrue(copy.hasMarginals());
+		Assert.assertFalse(graph.hasMarginals());
+		for (final INode variable : GetVariables.of(graph)) {
+			Assert.assertNull(variable.getBelief());
+		}
+	}
+
+	@Test
+	public void testLazy() {
+		final FactorGraph graph = InferenceTestServices.createGraph(
+				InferenceTestServices.JOHN_ATE_HIS_BANANA, false,
+				InferenceTestServices.createModel(), true);
+		final FactorGraph copy = CopyFactorGraph.of(graph);
+
+		// Copying doesn't compute any row.
+		final Map<String, IFactor> factors = getFactors(graph);
+		for (final IFactor factor : GetFactors.of(copy)) {
+			Assert.assertEquals(0, ((LazyFactorTable) factors
+					.get(factor.getId()).getTable()).numMaterialized());
+			Assert.assertEquals(0,
+					((LazyFactorTable) factor.getTable()).numMaterialized());
+		}
+
+		// Features computed by the copy are shared with the original table.
+		for (final IFactor factor : GetFactors.of(copy)) {
+			final FactorTable original = factors.get(factor.getId())
+					.getTable();
+			final FactorTable table = factor.getTable();
+			for (int i = 0; i < table.size(); ++i) {
+				Assert.assertSame(table.getCompactFeatures(i),
+						original.getCompactFeatures(i));
+				Assert.assertEquals(original.get(i), table.get(i), 1e-10);
+			}
+		}
+	}
+
+}
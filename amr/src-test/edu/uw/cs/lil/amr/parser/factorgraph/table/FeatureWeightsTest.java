@@ -0,0 +1,51 @@
+package edu.uw.cs.lil.amr.parser.factorgraph.table;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.cornell.cs.nlp.spf.base.hashvector.HashVectorFactory;
+import edu.cornell.cs.nlp.spf.base.hashvector.IHashVector;
+import edu.cornell.cs.nlp.spf.base.hashvector.KeyArgs;
+
+public class FeatureWeightsTest {
+
+	@Test
+	public void testDictionary() {
+		final IHashVector theta = HashVectorFactory.create();
+		theta.set("F", "a", 1.0);
+		final FeatureWeights weights = new FeatureWeights(theta);
+
+		// Only features of the parameters get IDs.
+		final IHashVector features = HashVectorFactory.create();
+		features.set("F", "a", 2.0);
+		features.set("F", "b", 3.0);
+		final CompactFeatures compact = CompactFeatures.of(features, weights);
+		Assert.assertEquals(1, weights.getDictionary().size());
+		Assert.assertEquals(-1,
+				weights.getDictionary().getId(new KeyArgs("F", "b")));
+		Assert.assertEquals(2, compact.size());
+		Assert.assertEquals(3.0, compact.toHashVector().get("F", "b"), 0.0);
+		Assert.assertEquals(2.0, compact.score(weights), 0.0);
+
+		// Features added to the parameters later are scored.
+		theta.set("F", "b", 1.0);
+		FeatureWeights.invalidate(theta);
+		Assert.assertEquals(5.0, compact.score(weights), 0.0);
+	}
+
+	@Test
+	public void testInvalidate() {
+		final IHashVector theta = HashVectorFactory.create();
+		theta.set("F", "a", 1.0);
+		final FeatureWeights weights = new FeatureWeights(theta);
+		final int id = weights.getId(new KeyArgs("F", "a"));
+		Assert.assertEquals(1.0, weights.get(id), 0.0);
+
+		// Weights are copied until the parameters are marked as updated.
+		theta.set("F", "a", 2.0);
+		Assert.assertEquals(1.0, weights.get(id), 0.0);
+		FeatureWeights.invalidate(theta);
+		Assert.assertEquals(2.0, weights.get(id), 0.0);
+	}
+
+}
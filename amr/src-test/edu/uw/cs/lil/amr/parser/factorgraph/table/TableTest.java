@@ -3,11 +3,15 @@ package edu.uw.cs.lil.amr.parser.factorgraph.table;
 import org.junit.Assert;
 import org.junit.Test;
 
+import edu.cornell.cs.nlp.spf.base.hashvector.HashVectorFactory;
+import edu.cornell.cs.nlp.spf.base.hashvector.IHashVector;
 import edu.cornell.cs.nlp.spf.mr.lambda.LogicalConstant;
 import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
 import edu.cornell.cs.nlp.utils.collections.ArrayUtils;
 import edu.uw.cs.lil.amr.TestServices;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.LogicalConstantNode;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table.FactorTable;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table.LazyFactorTable;
 
 public class TableTest {
 
@@ -127,4 +131,68 @@ public class TableTest {
 						LogicalConstant.read("boo2:e"))), 0.1);
 	}
 
+	@Test
+	public void testLazy() {
+		final ColumnHeader h1 = new ColumnHeader(new LogicalConstantNode(
+				LogicalConstant.read("boo:e"), ArrayUtils.create(
+						LogicalConstant.read("boo1:e"),
+						LogicalConstant.read("boo2:e")), 1));
+		final ColumnHeader h2 = new ColumnHeader(new LogicalConstantNode(
+				LogicalConstant.read("bo:e"), ArrayUtils.create(
+						LogicalConstant.read("bo1:e"),
+						LogicalConstant.read("bo2:e"),
+						LogicalConstant.read("bo3:e")), 2));
+		final IHashVector theta = HashVectorFactory.create();
+		theta.set("LAZY", LogicalConstant.read("boo1:e").toString(),
+				LogicalConstant.read("bo2:e").toString(), 2.0);
+		final FeatureWeights weights = new FeatureWeights(theta, true);
+		final LazyFactorTable table = new LazyFactorTable(values -> {
+			final IHashVector features = HashVectorFactory.create();
+			features.set("LAZY", values[0].toString(), values[1].toString(),
+					1.0);
+			return CompactFeatures.of(features, weights);
+		} , weights, h1, h2);
+		Assert.assertEquals(0, table.numMaterialized());
+
+		// Checking for features doesn't score rows.
+		Assert.assertTrue(table.hasFeatures());
+		Assert.assertEquals(0, table.numMaterialized());
+		Assert.assertFalse(new LazyFactorTable(
+				values -> CompactFeatures.of(HashVectorFactory.create(), weights),
+				weights, h1, h2).hasFeatures());
+
+		// Complete mappings only compute a single row.
+		Assert.assertEquals(2.0,
+				table.get(
+						MappingPair.of(h1.getNode(),
+								LogicalConstant.read("boo1:e")),
+						MappingPair.of(h2.getNode(),
+								LogicalConstant.read("bo2:e"))),
+				0.0);
+		Assert.assertEquals(0.0,
+				table.get(
+						MappingPair.of(h1.getNode(),
+								LogicalConstant.read("boo2:e")),
+						MappingPair.of(h2.getNode(),
+								LogicalConstant.read("bo2:e"))),
+				0.0);
+		Assert.assertEquals(2, table.numMaterialized());
+
+		// Marginalizing computes all rows.
+		Assert.assertEquals(Math.log(Math.exp(2.0) + 2.0),
+				table.get(MappingPair.of(h1.getNode(),
+						LogicalConstant.read("boo1:e"))),
+				1e-10);
+		Assert.assertEquals(table.size(), table.numMaterialized());
+
+		// Clones are regular tables with the same rows.
+		final FactorTable clone = table.clone();
+		Assert.assertFalse(clone instanceof LazyFactorTable);
+		for (int i = 0; i < table.size(); ++i) {
+			Assert.assertEquals(table.get(i), clone.get(i), 0.0);
+			Assert.assertSame(table.getCompactFeatures(i),
+					clone.getCompactFeatures(i));
+		}
+	}
+
 }
@@ -0,0 +1,103 @@
+package edu.uw.cs.lil.amr.parser.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+
+	@Test
+	public void testCounters() {
+		final MetricsRegistry metrics = new MetricsRegistry();
+		Assert.assertEquals(0, metrics.getCount("a"));
+		metrics.increment("a");
+		metrics.add("a", 2);
+		metrics.increment("b");
+		Assert.assertEquals(3, metrics.getCount("a"));
+		Assert.assertEquals(1, metrics.getCount("b"));
+		Assert.assertEquals("{\"counters\":{\"a\":3,\"b\":1},\"histograms\":{}}",
+				metrics.toJson());
+		metrics.reset();
+		Assert.assertEquals(0, metrics.getCount("a"));
+		Assert.assertTrue(metrics.getCounters().isEmpty());
+	}
+
+	@Test
+	public void testCsv() {
+		final MetricsRegistry metrics = new MetricsRegistry();
+		metrics.increment("a,\"b\"");
+		Assert.assertTrue(
+				metrics.toCsv().contains("counter,\"a,\"\"b\"\"\",1,"));
+	}
+
+	@Test
+	public void testHistogram() {
+		final Histogram histogram = new Histogram();
+		Assert.assertEquals(0, histogram.quantile(0.5));
+		for (int i = 1; i <= 100; ++i) {
+			histogram.record(i);
+		}
+		Assert.assertEquals(100, histogram.getCount());
+		Assert.assertEquals(100, histogram.getMax());
+		Assert.assertEquals(50.5, histogram.getMean(), 0.0);
+		// Small values are exact, larger values are within the bucket error.
+		Assert.assertEquals(1, histogram.quantile(0.01));
+		Assert.assertEquals(50, histogram.quantile(0.5), 50 / 16.0);
+		Assert.assertEquals(99, histogram.quantile(0.99), 99 / 16.0);
+		Assert.assertEquals(100, histogram.quantile(1.0));
+	}
+
+	@Test
+	public void testHistogramLargeValues() {
+		final Histogram histogram = new Histogram();
+		histogram.record(Long.MAX_VALUE);
+		histogram.record(1000000);
+		Assert.assertEquals(1000000, histogram.quantile(0.5),
+				1000000 / 16.0);
+		Assert.assertEquals(Long.MAX_VALUE, histogram.quantile(1.0));
+	}
+
+	@Test
+	public void testSince() {
+		final MetricsRegistry metrics = new MetricsRegistry();
+		metrics.increment("a");
+		metrics.increment("b");
+		metrics.record("h", 10);
+		metrics.record("h", 1000);
+		final MetricsRegistry snapshot = metrics.snapshot();
+
+		metrics.add("a", 2);
+		metrics.record("h", 20);
+		metrics.record("g", 5);
+		final MetricsRegistry diff = metrics.since(snapshot);
+		Assert.assertEquals(2, diff.getCount("a"));
+		Assert.assertFalse(diff.getCounters().containsKey("b"));
+		Assert.assertEquals(1, diff.getHistogram("h").getCount());
+		Assert.assertEquals(20, diff.getHistogram("h").getSum());
+		Assert.assertEquals(20, diff.getHistogram("h").getMax());
+		Assert.assertEquals(1, diff.getHistogram("g").getCount());
+
+		// The snapshot is not affected by later updates.
+		Assert.assertEquals(1, snapshot.getCount("a"));
+		Assert.assertEquals(2, snapshot.getHistogram("h").getCount());
+		Assert.assertNull(snapshot.getHistogram("g"));
+	}
+
+	@Test
+	public void testLengthBuckets() {
+		final MetricsRegistry metrics = new MetricsRegistry();
+		metrics.record("cky", 5, 10);
+		metrics.record("cky", 10, 20);
+		metrics.record("cky", 11, 30);
+		metrics.record("cky", 80, 40);
+		Assert.assertEquals(4, metrics.getHistogram("cky").getCount());
+		Assert.assertEquals(2,
+				metrics.getHistogram("cky[len=1-10]").getCount());
+		Assert.assertEquals(1,
+				metrics.getHistogram("cky[len=11-20]").getCount());
+		Assert.assertEquals(1, metrics.getHistogram("cky[len=51+]").getCount());
+		Assert.assertNull(metrics.getHistogram("cky[len=21-30]"));
+		Assert.assertEquals("cky[len=41-50]",
+				MetricsRegistry.lengthBucketName("cky", 50));
+	}
+
+}
@@ -0,0 +1,60 @@
+package edu.uw.cs.lil.amr.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Expected counts computed with the bundled SMATCH script
+ * (utils/smatch/test_input1.txt and utils/smatch/test_input2.txt).
+ */
+public class SmatchTest {
+
+	@Test
+	public void test() {
+		final Smatch.Counts counts = Smatch.of(
+				"(w / want-01\n" + "      :ARG0 (b / boy)\n"
+						+ "      :ARG1 (b2 / believe-01\n"
+						+ "            :ARG0 (g / girl)\n"
+						+ "            :ARG1 (h / he)))",
+				"(w / want-01\n" + "      :ARG0 (b / boy)\n"
+						+ "      :ARG1 (b2 / believe-01\n"
+						+ "            :ARG0 (g / girl)\n"
+						+ "            :ARG1 b))",
+				20, 1);
+		Assert.assertEquals(8, counts.getMatch());
+		Assert.assertEquals(9, counts.getCandidate());
+		Assert.assertEquals(10, counts.getGold());
+		Assert.assertEquals(0.8421, counts.f1(), 0.0001);
+	}
+
+	@Test
+	public void test2() {
+		final Smatch.Counts counts = Smatch.of(
+				"(w / worker\n" + "      :mod (h / hard)\n"
+						+ "      :domain (b / boy))",
+				"(p / person\n" + "      :domain (b / boy)\n"
+						+ "      :ARG0-of (w / work-01\n"
+						+ "            :manner (h / hard)))",
+				20, 1);
+		Assert.assertEquals(3, counts.getMatch());
+		Assert.assertEquals(8, counts.getCandidate());
+		Assert.assertEquals(6, counts.getGold());
+	}
+
+	@Test
+	public void test3() {
+		final String amr = "(b / bear-02\n"
+				+ "      :ARG1 (p / poet :name (n / name :op1 \"William\" :op2 \"Shakespeare\"))\n"
+				+ "      :location (c / city :name (n2 / name :op1 \"Stratford-upon-Avon\")))";
+		final Smatch.Counts counts = Smatch.of(amr, amr, 4, 1);
+		Assert.assertEquals(counts.getGold(), counts.getMatch());
+		Assert.assertEquals(1.0, counts.f1(), 0.0);
+	}
+
+	@Test
+	public void test4() {
+		Assert.assertNull(Smatch.of("(w / want-01 :ARG0 (b / boy)))",
+				"(w / want-01)", 4, 1));
+	}
+
+}
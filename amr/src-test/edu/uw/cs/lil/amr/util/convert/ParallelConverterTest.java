@@ -0,0 +1,106 @@
+package edu.uw.cs.lil.amr.util.convert;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ParallelConverterTest {
+
+	@Rule
+	public TemporaryFolder	folder	= new TemporaryFolder();
+
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()),
+				StandardCharsets.UTF_8);
+	}
+
+	private static void write(File file, String content) throws IOException {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testError() throws IOException {
+		final File input = folder.newFile("input.txt");
+		final File output = new File(folder.getRoot(), "output.txt");
+		final StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 50; ++i) {
+			content.append(i).append("\n\n");
+		}
+		write(input, content.toString());
+		try {
+			new ParallelConverter(record -> {
+				if (record.equals("10")) {
+					throw new AssertionError("fail");
+				}
+				return record;
+			}, "identity", 2, 1).convert(input, output);
+			Assert.fail();
+		} catch (final RuntimeException e) {
+			Assert.assertTrue(e.getCause() instanceof AssertionError);
+		}
+		Assert.assertFalse(output.exists());
+	}
+
+	@Test
+	public void testIncremental() throws IOException {
+		final File input = folder.newFile("input.txt");
+		final File output = new File(folder.getRoot(), "output.txt");
+		final AtomicInteger calls = new AtomicInteger();
+		final ParallelConverter converter = new ParallelConverter(record -> {
+			calls.incrementAndGet();
+			return record.toUpperCase();
+		}, "upper", 2, 1);
+
+		write(input, "a\nb\n\nc\n\n\nd\ne\n");
+		converter.convert(input, output);
+		Assert.assertEquals("A\nB\n\nC\n\nD\nE\n\n", read(output));
+		Assert.assertEquals(3, calls.get());
+
+		// Only the changed record is converted again.
+		write(input, "a\nb\n\nx\n\nd\ne\n");
+		converter.convert(input, output);
+		Assert.assertEquals("A\nB\n\nX\n\nD\nE\n\n", read(output));
+		Assert.assertEquals(4, calls.get());
+
+		// A different signature invalidates all previous conversions.
+		new ParallelConverter(String::toLowerCase, "lower", 2, 1).convert(
+				input, output);
+		Assert.assertEquals("a\nb\n\nx\n\nd\ne\n\n", read(output));
+	}
+
+	@Test
+	public void testOrderAndFailures() throws IOException {
+		final File input = folder.newFile("input.txt");
+		final File output = new File(folder.getRoot(), "output.txt");
+		final StringBuilder content = new StringBuilder();
+		final StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 200; ++i) {
+			content.append(i).append("\n\n");
+			if (i % 7 != 0) {
+				expected.append(i).append("\n\n");
+			}
+		}
+		write(input, content.toString());
+		new ParallelConverter(record -> {
+			final int i = Integer.parseInt(record);
+			if (i % 7 == 0) {
+				return null;
+			}
+			if (i % 3 == 0) {
+				Thread.yield();
+			}
+			return record;
+		}, "identity", 4, 4).convert(input, output);
+		Assert.assertEquals(expected.toString(), read(output));
+		Assert.assertEquals(171, ConversionManifest.read(
+				ParallelConverter.manifestFile(output), output.length()).size());
+	}
+
+}
@@ -28,6 +28,7 @@ import edu.cornell.cs.nlp.spf.mr.lambda.FlexibleTypeComparator;
 import edu.cornell.cs.nlp.spf.mr.lambda.LogicLanguageServices;
 import edu.cornell.cs.nlp.spf.mr.lambda.LogicLanguageServices.Builder;
 import edu.cornell.cs.nlp.spf.mr.lambda.LogicalConstant;
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
 import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpressionReader;
 import edu.cornell.cs.nlp.spf.mr.lambda.SkolemId;
 import edu.cornell.cs.nlp.spf.mr.lambda.SkolemServices;
@@ -63,6 +64,20 @@ public class Init {
 			File stanfordModel, boolean indentLogicalForms, File nerConfig,
 			File nerTranslation, File propBankDir, boolean underspecifyPropBank)
 					throws IOException {
+		init(typesFile, specmapFile, stanfordModel, indentLogicalForms,
+				nerConfig, nerTranslation, propBankDir, underspecifyPropBank,
+				false);
+	}
+
+	/**
+	 * @param internLogicalForms
+	 *            Hash-cons the logical forms created by the AMR visitors (see
+	 *            {@link AMRServices#intern(LogicalExpression)}).
+	 */
+	public static void init(File typesFile, File specmapFile,
+			File stanfordModel, boolean indentLogicalForms, File nerConfig,
+			File nerTranslation, File propBankDir, boolean underspecifyPropBank,
+			boolean internLogicalForms) throws IOException {
 
 		// //////////////////////////////////////////
 		// Use tree hash vector
@@ -126,6 +141,7 @@ public class Init {
 			builder.setSpecificationMapping(SpecificationMapping
 					.read(specmapFile, underspecifyPropBank));
 		}
+		builder.setInterning(internLogicalForms);
 		AMRServices.setInstance(builder.build());
 
 		// //////////////////////////////////////////////////
@@ -43,6 +43,17 @@ public class AMRMeta implements Serializable {
 				.collect(Collectors.toList());
 	}
 
+	/**
+	 * Create with pre-computed annotations (e.g., from {@link AmrCorpusCache}).
+	 */
+	AMRMeta(Sentence sentence, TokenSeq tags,
+			Set<RecognizedNamedEntity> namedEntities, List<Set<String>> lemmas) {
+		this.sentence = sentence;
+		this.tags = tags;
+		this.namedEntities = namedEntities;
+		this.lemmas = lemmas;
+	}
+
 	public Set<String> getLemmas(int index) {
 		return lemmas.get(index);
 	}
@@ -62,6 +73,10 @@ public class AMRMeta implements Serializable {
 		return namedEntities;
 	}
 
+	public Sentence getSentence() {
+		return sentence;
+	}
+
 	public TokenSeq getTags() {
 		return tags;
 	}
@@ -0,0 +1,269 @@
+package edu.uw.cs.lil.amr.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import edu.cornell.cs.nlp.spf.base.token.TokenSeq;
+import edu.cornell.cs.nlp.spf.data.sentence.Sentence;
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalConstant;
+import edu.cornell.cs.nlp.utils.log.ILogger;
+import edu.cornell.cs.nlp.utils.log.LoggerFactory;
+import edu.uw.cs.lil.amr.lambda.AMRServices;
+import edu.uw.cs.lil.amr.ner.RecognizedNamedEntity;
+
+/**
+ * Batch annotation of sentences with {@link AMRMeta}. Identical sentences are
+ * annotated once, and the remaining sentences are processed in parallel
+ * through the tagger, NER and lemmatizer. Lemmas are computed once for each
+ * token type in the batch. If an {@link AnnotationStore} is given, sentences
+ * are first looked up in the store, and new annotations are added to it. The
+ * store is keyed by the tokens and the configuration of the annotators (see
+ * {@link AMRServices#getAnnotatorSignature()}), so changing the annotators
+ * invalidates cached annotations.
+ *
+ * @author Yoav Artzi
+ */
+public class AMRMetaAnnotator {
+	public static final ILogger LOG = LoggerFactory
+			.create(AMRMetaAnnotator.class);
+
+	private AMRMetaAnnotator() {
+		// Use static access method.
+	}
+
+	/**
+	 * Annotate a batch of sentences.
+	 *
+	 * @param store
+	 *            Annotation store, may be null.
+	 * @return The annotations of the sentences, in the same order.
+	 */
+	public static List<AMRMeta> annotate(List<? extends Sentence> sentences,
+			AnnotationStore store) {
+		final long startTime = System.currentTimeMillis();
+
+		// De-duplicate the sentences.
+		final Map<String, List<Integer>> unique = new LinkedHashMap<>();
+		for (int i = 0; i < sentences.size(); ++i) {
+			unique.computeIfAbsent(
+					sentences.get(i).getTokens().toString(" "),
+					k -> new ArrayList<>()).add(i);
+		}
+
+		// Get the annotations from the store.
+		final String signature = AMRServices.getAnnotatorSignature();
+		final Map<String, Annotations> annotations = new ConcurrentHashMap<>();
+		final Map<String, byte[]> hashes = new LinkedHashMap<>();
+		if (store != null) {
+			for (final String tokens : unique.keySet()) {
+				final byte[] hash = AnnotationStore
+						.hash(signature + "\n" + tokens);
+				final byte[] payload = store.get(hash);
+				if (payload == null) {
+					hashes.put(tokens, hash);
+				} else {
+					try {
+						annotations.put(tokens, Annotations.decode(payload));
+					} catch (final IOException e) {
+						LOG.warn("Failed to decode stored annotations: %s",
+								tokens);
+						hashes.put(tokens, hash);
+					}
+				}
+			}
+		}
+		final int numStored = annotations.size();
+
+		// Annotate the remaining sentences in parallel.
+		final Map<String, Set<String>> lemmaCache = new ConcurrentHashMap<>();
+		unique.entrySet().parallelStream()
+				.filter(e -> !annotations.containsKey(e.getKey()))
+				.forEach(e -> annotations.put(e.getKey(),
+						Annotations.of(sentences.get(e.getValue().get(0)),
+								lemmaCache)));
+
+		// Add the new annotations to the store.
+		if (store != null && !hashes.isEmpty()) {
+			final Map<byte[], byte[]> batch = new LinkedHashMap<>();
+			for (final Entry<String, byte[]> entry : hashes.entrySet()) {
+				try {
+					batch.put(entry.getValue(),
+							annotations.get(entry.getKey()).encode());
+				} catch (final IOException e) {
+					LOG.warn("Failed to encode annotations: %s",
+							entry.getKey());
+				}
+			}
+			try {
+				store.putAll(batch);
+			} catch (final IOException e) {
+				LOG.error("Failed to update annotation store: %s", e);
+			}
+		}
+
+		final List<AMRMeta> metas = new ArrayList<>(
+				Collections.nCopies(sentences.size(), null));
+		for (final Entry<String, List<Integer>> entry : unique.entrySet()) {
+			final Annotations sentenceAnnotations = annotations
+					.get(entry.getKey());
+			for (final Integer index : entry.getValue()) {
+				final Sentence sentence = sentences.get(index);
+				metas.set(index,
+						new AMRMeta(sentence, sentenceAnnotations.tags,
+								sentenceAnnotations.namedEntities,
+								sentenceAnnotations.lemmas));
+			}
+		}
+
+		LOG.info(
+				"Annotated %d sentences (%d unique, %d from store) in %.3fsec",
+				sentences.size(), unique.size(), numStored,
+				(System.currentTimeMillis() - startTime) / 1000.0);
+
+		return metas;
+	}
+
+	private static void writeTokens(DataOutputStream output, TokenSeq tokens)
+			throws IOException {
+		if (tokens == null) {
+			output.writeInt(-1);
+		} else {
+			output.writeInt(tokens.size());
+			for (int i = 0; i < tokens.size(); ++i) {
+				output.writeUTF(tokens.get(i));
+			}
+		}
+	}
+
+	private static TokenSeq readTokens(DataInputStream input)
+			throws IOException {
+		final int size = input.readInt();
+		if (size < 0) {
+			return null;
+		}
+		final List<String> tokens = new ArrayList<>(size);
+		for (int i = 0; i < size; ++i) {
+			tokens.add(input.readUTF());
+		}
+		return TokenSeq.of(tokens);
+	}
+
+	/**
+	 * The annotations of a sentence, independent of the sentence object.
+	 */
+	private static class Annotations {
+		private final List<Set<String>>				lemmas;
+		private final Set<RecognizedNamedEntity>	namedEntities;
+		private final TokenSeq						tags;
+
+		private Annotations(TokenSeq tags,
+				Set<RecognizedNamedEntity> namedEntities,
+				List<Set<String>> lemmas) {
+			this.tags = tags;
+			this.namedEntities = namedEntities;
+			this.lemmas = lemmas;
+		}
+
+		public static Annotations decode(byte[] payload) throws IOException {
+			final DataInputStream input = new DataInputStream(
+					new ByteArrayInputStream(payload));
+
+			final TokenSeq tags = readTokens(input);
+
+			final int numTokens = input.readInt();
+			final List<Set<String>> lemmas = new ArrayList<>(numTokens);
+			for (int i = 0; i < numTokens; ++i) {
+				final int numLemmas = input.readInt();
+				final Set<String> tokenLemmas = new HashSet<>();
+				for (int j = 0; j < numLemmas; ++j) {
+					// Interned, similar to AMRServices.lemmatize().
+					tokenLemmas.add(input.readUTF().intern());
+				}
+				lemmas.add(Collections.unmodifiableSet(tokenLemmas));
+			}
+
+			final Set<RecognizedNamedEntity> namedEntities;
+			final int numEntities = input.readInt();
+			if (numEntities < 0) {
+				namedEntities = null;
+			} else {
+				namedEntities = new HashSet<>();
+				for (int i = 0; i < numEntities; ++i) {
+					final String rawTag = input.readUTF();
+					final LogicalConstant textConstant = LogicalConstant
+							.read(input.readUTF());
+					final int numTyping = input.readInt();
+					final Set<LogicalConstant> typingConstants = new HashSet<>();
+					for (int j = 0; j < numTyping; ++j) {
+						typingConstants
+								.add(LogicalConstant.read(input.readUTF()));
+					}
+					namedEntities.add(new RecognizedNamedEntity(textConstant,
+							typingConstants, rawTag, readTokens(input)));
+				}
+			}
+
+			return new Annotations(tags, namedEntities, lemmas);
+		}
+
+		public static Annotations of(Sentence sentence,
+				Map<String, Set<String>> lemmaCache) {
+			return new Annotations(AMRServices.tagSentence(sentence),
+					AMRServices.getNamedEntities(sentence),
+					sentence.getTokens().toList().stream()
+							.map(token -> lemmaCache.computeIfAbsent(token,
+									t -> Collections.unmodifiableSet(
+											AMRServices.lemmatize(t))))
+							.collect(Collectors.toList()));
+		}
+
+		public byte[] encode() throws IOException {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final DataOutputStream output = new DataOutputStream(bytes);
+
+			writeTokens(output, tags);
+
+			output.writeInt(lemmas.size());
+			for (final Set<String> tokenLemmas : lemmas) {
+				output.writeInt(tokenLemmas.size());
+				for (final String lemma : tokenLemmas) {
+					output.writeUTF(lemma);
+				}
+			}
+
+			if (namedEntities == null) {
+				output.writeInt(-1);
+			} else {
+				output.writeInt(namedEntities.size());
+				for (final RecognizedNamedEntity entity : namedEntities) {
+					output.writeUTF(entity.getRawTag());
+					output.writeUTF(entity.getTextConstant().toString());
+					output.writeInt(entity.getTypingConstants().size());
+					for (final LogicalConstant constant : entity
+							.getTypingConstants()) {
+						output.writeUTF(constant.toString());
+					}
+					writeTokens(output, entity.getTokens());
+				}
+			}
+
+			output.flush();
+			return bytes.toByteArray();
+		}
+
+	}
+
+}
@@ -0,0 +1,690 @@
+package edu.uw.cs.lil.amr.data;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
+
+import com.google.common.io.CountingOutputStream;
+
+import edu.cornell.cs.nlp.spf.base.token.TokenSeq;
+import edu.cornell.cs.nlp.spf.ccg.categories.ICategoryServices;
+import edu.cornell.cs.nlp.spf.ccg.categories.syntax.Syntax;
+import edu.cornell.cs.nlp.spf.data.sentence.ITokenizer;
+import edu.cornell.cs.nlp.spf.data.sentence.Sentence;
+import edu.cornell.cs.nlp.spf.data.situated.sentence.SituatedSentence;
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalConstant;
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
+import edu.cornell.cs.nlp.utils.composites.Pair;
+import edu.uw.cs.lil.amr.ner.RecognizedNamedEntity;
+
+/**
+ * Binary cache of pre-processed AMR data. Stores the output of pre-processing
+ * for each sentence: POS tags, lemmas, named entities, and for labeled data
+ * also the sentence, its label and properties, super tags, CCGBank spans and
+ * alignments, so labeled items are decoded without the raw data. The cache
+ * stores the signature of its source (see {@link AnnotationStore#fileHash})
+ * and of the annotators that processed it, to validate it against the raw
+ * data without reading it.
+ * <p>
+ * File format (version {@link #VERSION}): a fixed size header (magic number,
+ * version, labeled flag, number of items and the offset of the trailer), the
+ * items and a trailer (a table of the strings used by the items, the source
+ * and annotators signatures, and the offsets of all items). Integers inside
+ * items are variable length and strings are referenced by their index in the
+ * string table. Items are streamed to the file as they are written, and the
+ * header is completed last, so an incomplete file is detected. The file is
+ * memory-mapped in regions of whole items and each item is decoded only when
+ * accessed.
+ *
+ * @author Yoav Artzi
+ */
+public class AmrCorpusCache {
+
+	private static final int			HEADER_SIZE			= 4 + 4 + 1 + 4 + 8;
+	private static final int			MAGIC				= 0x414D5243;
+
+	/**
+	 * Maximal size of a single memory-mapped region of items.
+	 */
+	private static final long			MAX_REGION_SIZE		= Integer.MAX_VALUE;
+
+	/**
+	 * The position of the number of items in the header.
+	 */
+	private static final int			NUM_ITEMS_POSITION	= 4 + 4 + 1;
+	private static final int			VERSION				= 3;
+
+	private final String				annotators;
+	private final LogicalConstant[]		constants;
+	private final LogicalExpression[]	expressions;
+
+	/**
+	 * The index of the region of each item.
+	 */
+	private final int[]					itemRegions;
+	private final boolean				labeled;
+	private final long[]				offsets;
+
+	/**
+	 * The file offset of the start of each region.
+	 */
+	private final long[]				regionOffsets;
+
+	/**
+	 * Memory-mapped regions of whole items.
+	 */
+	private final ByteBuffer[]			regions;
+	private final String				source;
+	private final String[]				strings;
+	private final Syntax[]				syntax;
+
+	private AmrCorpusCache(ByteBuffer[] regions, long[] regionOffsets,
+			int[] itemRegions, boolean labeled, String source,
+			String annotators, long[] offsets, String[] strings) {
+		this.regions = regions;
+		this.regionOffsets = regionOffsets;
+		this.itemRegions = itemRegions;
+		this.labeled = labeled;
+		this.source = source;
+		this.annotators = annotators;
+		this.offsets = offsets;
+		this.strings = strings;
+		this.constants = new LogicalConstant[strings.length];
+		this.expressions = new LogicalExpression[strings.length];
+		this.syntax = new Syntax[strings.length];
+	}
+
+	/**
+	 * Memory-map a cache file.
+	 *
+	 * @throws IOException
+	 *             If the file can't be read, or is not a complete cache file of
+	 *             the current version.
+	 */
+	public static AmrCorpusCache open(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+				FileChannel channel = raf.getChannel()) {
+			final long fileSize = channel.size();
+			if (fileSize < HEADER_SIZE) {
+				throw new IOException("Not an AMR corpus cache: " + file);
+			}
+			final MappedByteBuffer header = channel
+					.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			if (header.getInt() != MAGIC) {
+				throw new IOException("Not an AMR corpus cache: " + file);
+			}
+			final int version = header.getInt();
+			if (version != VERSION) {
+				throw new IOException(String.format(
+						"Unsupported cache version: %d (expected: %d)", version,
+						VERSION));
+			}
+			final boolean labeled = header.get() != 0;
+			final int numItems = header.getInt();
+			final long trailerOffset = header.getLong();
+			if (trailerOffset < HEADER_SIZE || trailerOffset > fileSize) {
+				throw new IOException("Incomplete AMR corpus cache: " + file);
+			}
+			if (fileSize - trailerOffset > Integer.MAX_VALUE) {
+				throw new IOException("Cache trailer too large: " + file);
+			}
+
+			final MappedByteBuffer trailer = channel.map(
+					FileChannel.MapMode.READ_ONLY, trailerOffset,
+					fileSize - trailerOffset);
+			final String[] strings = new String[readInt(trailer)];
+			for (int i = 0; i < strings.length; ++i) {
+				strings[i] = readInlineString(trailer);
+			}
+			final String source = readInlineString(trailer);
+			final String annotators = readInlineString(trailer);
+			final long[] offsets = new long[numItems + 1];
+			for (int i = 0; i <= numItems; ++i) {
+				offsets[i] = trailer.getLong();
+			}
+
+			// Map the items in regions of whole items, so each region is
+			// addressable with int positions.
+			final List<ByteBuffer> regions = new ArrayList<>();
+			final List<Long> regionOffsets = new ArrayList<>();
+			final int[] itemRegions = new int[numItems];
+			int first = 0;
+			while (first < numItems) {
+				int end = first;
+				while (end < numItems && offsets[end + 1]
+						- offsets[first] <= MAX_REGION_SIZE) {
+					itemRegions[end++] = regions.size();
+				}
+				if (end == first) {
+					throw new IOException(
+							String.format("Item %d too large: %s", first, file));
+				}
+				regions.add(channel.map(FileChannel.MapMode.READ_ONLY,
+						offsets[first], offsets[end] - offsets[first]));
+				regionOffsets.add(offsets[first]);
+				first = end;
+			}
+
+			return new AmrCorpusCache(
+					regions.toArray(new ByteBuffer[regions.size()]),
+					regionOffsets.stream().mapToLong(Long::longValue)
+							.toArray(),
+					itemRegions, labeled, source, annotators, offsets,
+					strings);
+		}
+	}
+
+	/**
+	 * Write a cache of labeled data. Items are streamed to the file.
+	 *
+	 * @param source
+	 *            Signature of the source of the data (see
+	 *            {@link AnnotationStore#fileHash}).
+	 * @param annotators
+	 *            Signature of the annotators that processed the data.
+	 */
+	public static void write(File file, String source, String annotators,
+			Iterable<LabeledAmrSentence> dataItems) throws IOException {
+		try (Writer writer = new Writer(file, true, source,
+				annotators)) {
+			for (final LabeledAmrSentence dataItem : dataItems) {
+				writer.add(dataItem.getSample(), dataItem);
+			}
+			writer.finish();
+		}
+	}
+
+	/**
+	 * Write a cache of unlabeled data. Items are streamed to the file.
+	 *
+	 * @param source
+	 *            Signature of the source of the data (see
+	 *            {@link AnnotationStore#fileHash}).
+	 * @param annotators
+	 *            Signature of the annotators that processed the data.
+	 */
+	public static void writeUnlabeled(File file, String source,
+			String annotators, Iterable<SituatedSentence<AMRMeta>> dataItems)
+			throws IOException {
+		try (Writer writer = new Writer(file, false, source,
+				annotators)) {
+			for (final SituatedSentence<AMRMeta> dataItem : dataItems) {
+				writer.add(dataItem, null);
+			}
+			writer.finish();
+		}
+	}
+
+	private static int readInt(ByteBuffer buffer) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	private static String readInlineString(ByteBuffer buffer) {
+		final byte[] bytes = new byte[readInt(buffer)];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeInt(DataOutputStream out, int value)
+			throws IOException {
+		int remaining = value;
+		while ((remaining & ~0x7F) != 0) {
+			out.writeByte(remaining & 0x7F | 0x80);
+			remaining >>>= 7;
+		}
+		out.writeByte(remaining);
+	}
+
+	private static void writeInlineString(DataOutputStream out, String string)
+			throws IOException {
+		final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		writeInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Signature of the annotators that processed the cached data.
+	 */
+	public String getAnnotators() {
+		return annotators;
+	}
+
+	/**
+	 * Signature of the source the cache was created from.
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	public boolean isLabeled() {
+		return labeled;
+	}
+
+	/**
+	 * Decode a labeled item.
+	 *
+	 * @param tokenizer
+	 *            Tokenizer used to read the raw data.
+	 */
+	public LabeledAmrSentence readLabeled(int index, ITokenizer tokenizer,
+			ICategoryServices<LogicalExpression> categoryServices) {
+		if (!labeled) {
+			throw new IllegalStateException("Cache is not labeled");
+		}
+		final ByteBuffer item = item(index);
+		final Sentence sentence = new Sentence(readInlineString(item),
+				tokenizer);
+		final LogicalExpression label = categoryServices
+				.readSemantics(readInlineString(item));
+		final int numProperties = readInt(item);
+		final Map<String, String> properties = new HashMap<>();
+		for (int i = 0; i < numProperties; ++i) {
+			properties.put(strings[readInt(item)], readInlineString(item));
+		}
+		final AMRMeta meta = readMeta(item, sentence);
+
+		final List<Set<Syntax>> superTags;
+		final int numTagged = readInt(item) - 1;
+		if (numTagged < 0) {
+			superTags = null;
+		} else {
+			superTags = new ArrayList<>(numTagged);
+			for (int i = 0; i < numTagged; ++i) {
+				superTags.add(readSyntaxSet(item));
+			}
+		}
+
+		final Map<TokenSeq, Set<Syntax>> spans;
+		final int numSpans = readInt(item) - 1;
+		if (numSpans < 0) {
+			spans = null;
+		} else {
+			spans = new HashMap<>();
+			for (int i = 0; i < numSpans; ++i) {
+				spans.put(readTokens(item), readSyntaxSet(item));
+			}
+		}
+
+		final Map<Pair<Integer, Integer>, Set<LogicalExpression>> alignments;
+		final int numAlignments = readInt(item) - 1;
+		if (numAlignments < 0) {
+			alignments = null;
+		} else {
+			final Map<Pair<Integer, Integer>, Set<LogicalExpression>> map = new HashMap<>();
+			for (int i = 0; i < numAlignments; ++i) {
+				final Pair<Integer, Integer> span = Pair.of(readInt(item),
+						readInt(item));
+				final int numExps = readInt(item);
+				final Set<LogicalExpression> exps = new HashSet<>();
+				for (int j = 0; j < numExps; ++j) {
+					exps.add(readExpression(item, categoryServices));
+				}
+				map.put(span, exps);
+			}
+			alignments = Collections.unmodifiableMap(map);
+		}
+
+		return new LabeledAmrSentence(new SituatedSentence<>(sentence, meta),
+				label, properties, alignments, superTags, spans);
+	}
+
+	/**
+	 * Decode an unlabeled item.
+	 *
+	 * @param sentence
+	 *            The raw sentence the cached item was created from.
+	 */
+	public SituatedSentence<AMRMeta> readUnlabeled(int index,
+			Sentence sentence) {
+		return new SituatedSentence<>(sentence,
+				readMeta(item(index), sentence));
+	}
+
+	public int size() {
+		return offsets.length - 1;
+	}
+
+	/**
+	 * A buffer positioned at the start of the item. Each call creates a new
+	 * buffer, so items can be decoded concurrently.
+	 */
+	private ByteBuffer item(int index) {
+		final int region = itemRegions[index];
+		final ByteBuffer item = regions[region].duplicate();
+		item.position((int) (offsets[index] - regionOffsets[region]));
+		return item;
+	}
+
+	private LogicalExpression readExpression(ByteBuffer item,
+			ICategoryServices<LogicalExpression> categoryServices) {
+		final int id = readInt(item);
+		if (expressions[id] == null) {
+			expressions[id] = categoryServices.readSemantics(strings[id]);
+		}
+		return expressions[id];
+	}
+
+	private AMRMeta readMeta(ByteBuffer item, Sentence sentence) {
+		final TokenSeq tags = readTokens(item);
+		final int numTokens = tags.size();
+
+		final List<Set<String>> lemmas = new ArrayList<>(numTokens);
+		for (int i = 0; i < numTokens; ++i) {
+			final int numLemmas = readInt(item);
+			final Set<String> tokenLemmas = new HashSet<>();
+			for (int j = 0; j < numLemmas; ++j) {
+				tokenLemmas.add(strings[readInt(item)]);
+			}
+			lemmas.add(Collections.unmodifiableSet(tokenLemmas));
+		}
+
+		final Set<RecognizedNamedEntity> namedEntities;
+		final int numEntities = readInt(item) - 1;
+		if (numEntities < 0) {
+			namedEntities = null;
+		} else {
+			namedEntities = new HashSet<>();
+			for (int i = 0; i < numEntities; ++i) {
+				final String rawTag = strings[readInt(item)];
+				final LogicalConstant textConstant = readConstant(item);
+				final int numTyping = readInt(item);
+				final Set<LogicalConstant> typingConstants = new HashSet<>();
+				for (int j = 0; j < numTyping; ++j) {
+					typingConstants.add(readConstant(item));
+				}
+				namedEntities.add(new RecognizedNamedEntity(textConstant,
+						typingConstants, rawTag, readTokens(item)));
+			}
+		}
+
+		return new AMRMeta(sentence, tags, namedEntities, lemmas);
+	}
+
+	private LogicalConstant readConstant(ByteBuffer item) {
+		final int id = readInt(item);
+		if (constants[id] == null) {
+			constants[id] = LogicalConstant.read(strings[id]);
+		}
+		return constants[id];
+	}
+
+	private Set<Syntax> readSyntaxSet(ByteBuffer item) {
+		final int size = readInt(item);
+		final Set<Syntax> set = new HashSet<>();
+		for (int i = 0; i < size; ++i) {
+			final int id = readInt(item);
+			if (syntax[id] == null) {
+				syntax[id] = Syntax.read(strings[id]);
+			}
+			set.add(syntax[id]);
+		}
+		return set;
+	}
+
+	private TokenSeq readTokens(ByteBuffer item) {
+		final int size = readInt(item);
+		final List<String> tokens = new ArrayList<>(size);
+		for (int i = 0; i < size; ++i) {
+			tokens.add(strings[readInt(item)]);
+		}
+		return TokenSeq.of(tokens);
+	}
+
+	/**
+	 * Read-only list that decodes items on access. Decoded items are softly
+	 * referenced, so repeated access returns the same object unless the
+	 * memory was required. Serialized as a regular list.
+	 */
+	public static class LazyList<T> extends AbstractList<T>
+			implements RandomAccess, Serializable {
+		private static final long										serialVersionUID	= -1838125424961226185L;
+
+		private transient final IntFunction<T>							decoder;
+		private transient final AtomicReferenceArray<SoftReference<T>>	items;
+
+		public LazyList(int size, IntFunction<T> decoder) {
+			this.decoder = decoder;
+			this.items = new AtomicReferenceArray<>(size);
+		}
+
+		@Override
+		public T get(int index) {
+			final SoftReference<T> reference = items.get(index);
+			final T cached = reference == null ? null : reference.get();
+			if (cached != null) {
+				return cached;
+			}
+			final T item = decoder.apply(index);
+			// Keep the first decoded object in case of a race, so all callers
+			// get the same object.
+			if (items.compareAndSet(index, reference,
+					new SoftReference<>(item))) {
+				return item;
+			} else {
+				return get(index);
+			}
+		}
+
+		@Override
+		public int size() {
+			return items.length();
+		}
+
+		private Object writeReplace() {
+			return new ArrayList<>(this);
+		}
+	}
+
+	private static class Writer implements Closeable {
+		private final String				annotators;
+
+		/**
+		 * Counts the bytes written to the file, used to compute the offsets.
+		 */
+		private final CountingOutputStream	counter;
+		private final File					file;
+		private final boolean				labeled;
+		private final List<Long>			offsets	= new ArrayList<>();
+		private final DataOutputStream		out;
+		private final String				source;
+		private final Map<String, Integer>	strings	= new LinkedHashMap<>();
+
+		public Writer(File file, boolean labeled, String source,
+				String annotators) throws IOException {
+			this.file = file;
+			this.labeled = labeled;
+			this.source = source;
+			this.annotators = annotators;
+			this.counter = new CountingOutputStream(
+					new BufferedOutputStream(new FileOutputStream(file)));
+			this.out = new DataOutputStream(counter);
+
+			// Write the header. The number of items and the offset of the
+			// trailer are set by finish(), so an incomplete file is rejected
+			// when opened.
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeByte(labeled ? 1 : 0);
+			out.writeInt(0);
+			out.writeLong(0L);
+		}
+
+		public void add(SituatedSentence<AMRMeta> sentence,
+				LabeledAmrSentence labeledItem) throws IOException {
+			offsets.add(counter.getCount());
+			final AMRMeta meta = sentence.getState();
+			final int numTokens = sentence.getSample().getTokens().size();
+			if (labeled) {
+				writeInlineString(out, sentence.getSample().getString());
+				writeInlineString(out, labeledItem.getLabel().toString());
+				final Map<String, String> properties = labeledItem
+						.getProperties();
+				writeInt(out, properties.size());
+				for (final Entry<String, String> entry : properties
+						.entrySet()) {
+					writeString(entry.getKey());
+					writeInlineString(out, entry.getValue());
+				}
+			}
+
+			writeTokens(meta.getTags());
+
+			for (int i = 0; i < numTokens; ++i) {
+				writeStrings(meta.getLemmas(i));
+			}
+
+			final Set<RecognizedNamedEntity> namedEntities = meta
+					.getNamedEntities();
+			if (namedEntities == null) {
+				writeInt(out, 0);
+			} else {
+				writeInt(out, namedEntities.size() + 1);
+				for (final RecognizedNamedEntity entity : namedEntities) {
+					writeString(entity.getRawTag());
+					writeString(entity.getTextConstant().toString());
+					writeInt(out, entity.getTypingConstants().size());
+					for (final LogicalConstant constant : entity
+							.getTypingConstants()) {
+						writeString(constant.toString());
+					}
+					writeTokens(entity.getTokens());
+				}
+			}
+
+			if (!labeled) {
+				return;
+			}
+
+			final List<Set<Syntax>> superTags = labeledItem.getSuperTags();
+			if (superTags == null) {
+				writeInt(out, 0);
+			} else {
+				writeInt(out, superTags.size() + 1);
+				for (final Set<Syntax> tags : superTags) {
+					writeSyntaxSet(tags);
+				}
+			}
+
+			final Map<TokenSeq, Set<Syntax>> spans = labeledItem.getSpans();
+			if (spans == null) {
+				writeInt(out, 0);
+			} else {
+				writeInt(out, spans.size() + 1);
+				for (final Entry<TokenSeq, Set<Syntax>> entry : spans
+						.entrySet()) {
+					writeTokens(entry.getKey());
+					writeSyntaxSet(entry.getValue());
+				}
+			}
+
+			final Map<Pair<Integer, Integer>, Set<LogicalExpression>> alignments = labeledItem
+					.getAlignments();
+			if (alignments == null) {
+				writeInt(out, 0);
+			} else {
+				writeInt(out, alignments.size() + 1);
+				for (final Entry<Pair<Integer, Integer>, Set<LogicalExpression>> entry : alignments
+						.entrySet()) {
+					writeInt(out, entry.getKey().first());
+					writeInt(out, entry.getKey().second());
+					writeInt(out, entry.getValue().size());
+					for (final LogicalExpression exp : entry.getValue()) {
+						writeString(exp.toString());
+					}
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+
+		/**
+		 * Write the trailer and complete the header.
+		 */
+		public void finish() throws IOException {
+			final long trailerOffset = counter.getCount();
+			offsets.add(trailerOffset);
+			writeInt(out, strings.size());
+			for (final String string : strings.keySet()) {
+				writeInlineString(out, string);
+			}
+			writeInlineString(out, source);
+			writeInlineString(out, annotators);
+			for (final long offset : offsets) {
+				out.writeLong(offset);
+			}
+			out.close();
+
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.seek(NUM_ITEMS_POSITION);
+				raf.writeInt(offsets.size() - 1);
+				raf.writeLong(trailerOffset);
+			}
+		}
+
+		private void writeString(String string) throws IOException {
+			Integer id = strings.get(string);
+			if (id == null) {
+				id = strings.size();
+				strings.put(string, id);
+			}
+			writeInt(out, id);
+		}
+
+		private void writeStrings(Set<String> set) throws IOException {
+			writeInt(out, set.size());
+			for (final String string : set) {
+				writeString(string);
+			}
+		}
+
+		private void writeSyntaxSet(Set<Syntax> set) throws IOException {
+			writeInt(out, set.size());
+			for (final Syntax syntax : set) {
+				writeString(syntax.toString());
+			}
+		}
+
+		private void writeTokens(TokenSeq tokens) throws IOException {
+			final int size = tokens.size();
+			writeInt(out, size);
+			for (int i = 0; i < size; ++i) {
+				writeString(tokens.get(i));
+			}
+		}
+	}
+
+}
@@ -1,22 +1,12 @@
 package edu.uw.cs.lil.amr.data;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Spliterator;
-import java.util.Spliterators;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.stream.IntStream;
 
 import edu.cornell.cs.nlp.spf.data.collection.IDataCollection;
 import edu.cornell.cs.nlp.spf.data.sentence.Sentence;
@@ -29,6 +19,7 @@ import edu.cornell.cs.nlp.spf.explat.resources.IResourceObjectCreator;
 import edu.cornell.cs.nlp.spf.explat.resources.usage.ResourceUsage;
 import edu.cornell.cs.nlp.utils.log.ILogger;
 import edu.cornell.cs.nlp.utils.log.LoggerFactory;
+import edu.uw.cs.lil.amr.lambda.AMRServices;
 
 public class AmrSentenceCollection
 		implements IDataCollection<SituatedSentence<AMRMeta>> {
@@ -41,13 +32,29 @@ public class AmrSentenceCollection
 	private final List<SituatedSentence<AMRMeta>> entries;
 
 	public AmrSentenceCollection(SentenceCollection collection) {
-		this.entries = StreamSupport
-				.stream(Spliterators.spliterator(collection.iterator(),
-						collection.size(), Spliterator.IMMUTABLE), true)
-				.map(s -> new SituatedSentence<>(s, new AMRMeta(s)))
+		this(collection, null);
+	}
+
+	/**
+	 * @param annotationStore
+	 *            Store of sentence annotations (may be null).
+	 */
+	public AmrSentenceCollection(SentenceCollection collection,
+			AnnotationStore annotationStore) {
+		final List<Sentence> sentences = new ArrayList<>(collection.size());
+		collection.forEach(sentences::add);
+		final List<AMRMeta> metas = AMRMetaAnnotator.annotate(sentences,
+				annotationStore);
+		this.entries = IntStream.range(0, sentences.size())
+				.mapToObj(i -> new SituatedSentence<>(sentences.get(i),
+						metas.get(i)))
 				.collect(Collectors.toList());
 	}
 
+	private AmrSentenceCollection(List<SituatedSentence<AMRMeta>> entries) {
+		this.entries = entries;
+	}
+
 	@Override
 	public Iterator<SituatedSentence<AMRMeta>> iterator() {
 		return entries.iterator();
@@ -77,62 +84,66 @@ public class AmrSentenceCollection
 			final SentenceCollection rawData = (SentenceCollection) repo
 					.get(params.get("data"));
 
+			// The cache is validated against the content of the source file
+			// of the raw data and the annotators.
+			String annotators = null;
+			String source = null;
 			if (params.contains("cache")) {
+				annotators = AMRServices.getAnnotatorSignature();
 				final File cacheFile = params.getAsFile("cache");
-				if (cacheFile.exists()) {
-					try (ObjectInput input = new ObjectInputStream(
-							new BufferedInputStream(
-									new FileInputStream(cacheFile)))) {
-						final AmrSentenceCollection dataset = (AmrSentenceCollection) input
-								.readObject();
-
-						// Basic checks to see the cached copy is up to date.
-						// This doesn't guarantee anything, but can catch some
-						// basic cases.
-						boolean valid = true;
-						valid &= dataset.size() == rawData.size();
-						final Iterator<SituatedSentence<AMRMeta>> cachedIterator = dataset
-								.iterator();
-						final Iterator<Sentence> rawIterator = rawData
-								.iterator();
-						while (valid && cachedIterator.hasNext()
-								&& rawIterator.hasNext()) {
-							final SituatedSentence<AMRMeta> cached = cachedIterator
-									.next();
-							final Sentence raw = rawIterator.next();
-							valid &= cached.getSample().getSample().getTokens()
-									.equals(raw.getSample().getTokens());
-						}
-						valid &= cachedIterator.hasNext() == rawIterator
-								.hasNext();
-
-						if (valid) {
-							LOG.info("Using cached copy: %s", cacheFile);
-							return dataset;
-						} else {
-							LOG.info("Cached copy invalid, re-processing");
+				if (!params.contains("source")) {
+					LOG.warn(
+							"Cache requires a source file for validation, ignoring: %s",
+							cacheFile);
+				} else {
+					try {
+						source = AnnotationStore
+								.fileHash(params.getAsFile("source"));
+					} catch (final IOException e) {
+						throw new RuntimeException(e);
+					}
+					if (cacheFile.exists()) {
+						try {
+							final AmrCorpusCache cache = AmrCorpusCache
+									.open(cacheFile);
+							final List<Sentence> raw = new ArrayList<>(
+									rawData.size());
+							rawData.forEach(raw::add);
+							if (!cache.isLabeled()
+									&& cache.getSource().equals(source)
+									&& cache.getAnnotators()
+											.equals(annotators)
+									&& cache.size() == raw.size()) {
+								LOG.info("Using cached copy: %s", cacheFile);
+								return new AmrSentenceCollection(
+										new AmrCorpusCache.LazyList<>(
+												raw.size(),
+												i -> cache.readUnlabeled(i,
+														raw.get(i))));
+							} else {
+								LOG.info(
+										"Cached copy invalid, re-processing");
+							}
+						} catch (final IOException e) {
+							// Ignore and continue.
+							LOG.info(
+									"Exception when loading cached copy, re-processing");
 						}
-					} catch (IOException | ClassNotFoundException e) {
-						// Ignore and continue.
-						LOG.info(
-								"Exception when loading cached copy, re-processing");
+					} else {
+						LOG.info("Cached file missing, re-processing");
 					}
-				} else {
-					LOG.info("Cached file missing, re-processing");
 				}
 			}
 
 			final AmrSentenceCollection dataset = new AmrSentenceCollection(
-					rawData);
-
-			if (params.contains("cache")) {
-				try (final OutputStream os = new FileOutputStream(
-						params.getAsFile("cache"));
-						final OutputStream buffer = new BufferedOutputStream(
-								os);
-						final ObjectOutput output = new ObjectOutputStream(
-								buffer)) {
-					output.writeObject(dataset);
+					rawData,
+					params.contains("annotations") ? AnnotationStore
+							.tryOpen(params.getAsFile("annotations")) : null);
+
+			if (source != null) {
+				try {
+					AmrCorpusCache.writeUnlabeled(params.getAsFile("cache"),
+							source, annotators, dataset);
 					LOG.info("Cached to: %s", params.get("cache"));
 				} catch (final IOException e) {
 					LOG.info("Failed to cache to: %s", params.get("cache"));
@@ -154,8 +165,12 @@ public class AmrSentenceCollection
 					.setDescription("Collection of AMR sentences")
 					.addParam("data", SingleSentenceCollection.class,
 							"Collection of sentences to convert to AMR data.")
+					.addParam("source", File.class,
+							"File the sentences of data were read from, used to validate the cache (default: none)")
 					.addParam("cache", File.class,
-							"Caching file (default: none)")
+							"Binary caching file, memory-mapped and decoded lazily, validated against the content of source and the annotators (requires source) (default: none)")
+					.addParam("annotations", File.class,
+							"Content-hashed store of sentence annotations (POS tags, named entities and lemmas) shared between datasets and experiments (default: none)")
 					.build();
 		}
 
@@ -0,0 +1,286 @@
+package edu.uw.cs.lil.amr.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import edu.cornell.cs.nlp.utils.log.ILogger;
+import edu.cornell.cs.nlp.utils.log.LoggerFactory;
+
+/**
+ * On-disk content-hashed store of sentence annotations. Each record is keyed
+ * by the SHA-1 hash of its content (e.g., the annotator configuration and the
+ * sentence tokens) and holds an opaque encoded payload. The store is an
+ * append-only log file (magic number, version and a sequence of records of the
+ * form hash, payload length and payload), which is read entirely when opened.
+ * A truncated or corrupt record at the end of the file (e.g., due to a crash
+ * while writing) is ignored and overwritten. Stores are shared per file within
+ * the JVM. Writes lock the file, and first read the records appended by other
+ * processes since the store was opened, so concurrent processes may share the
+ * same store.
+ *
+ * @author Yoav Artzi
+ */
+public class AnnotationStore {
+	public static final ILogger							LOG			= LoggerFactory
+			.create(AnnotationStore.class);
+	private static final int							HASH_SIZE	= 20;
+	private static final int							MAGIC		= 0x414D5241;
+	private static final Map<File, AnnotationStore>		STORES		= new HashMap<>();
+	private static final int							VERSION		= 1;
+
+	private final File									file;
+	/**
+	 * The length of the valid part of the file. New records are appended at
+	 * this position.
+	 */
+	private long										length;
+	private final Map<ByteBuffer, byte[]>				records;
+
+	private AnnotationStore(File file, Map<ByteBuffer, byte[]> records,
+			long length) {
+		this.file = file;
+		this.records = records;
+		this.length = length;
+	}
+
+	/**
+	 * Compute a hex digest of the contents of the given files, to identify the
+	 * resources of an annotator (e.g., a model file). Files that don't exist
+	 * are marked as missing.
+	 */
+	public static String fileHash(File... files) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		final byte[] buffer = new byte[1 << 16];
+		for (final File file : files) {
+			if (!file.isFile()) {
+				digest.update(("missing:" + file.getName())
+						.getBytes(StandardCharsets.UTF_8));
+				continue;
+			}
+			try (InputStream input = new FileInputStream(file)) {
+				int read;
+				while ((read = input.read(buffer)) > 0) {
+					digest.update(buffer, 0, read);
+				}
+			}
+			// Separate the contents of consecutive files.
+			digest.update((byte) 0);
+		}
+		final StringBuilder sb = new StringBuilder(HASH_SIZE * 2);
+		for (final byte b : digest.digest()) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Compute the key of the given content.
+	 */
+	public static byte[] hash(String content) {
+		try {
+			return MessageDigest.getInstance("SHA-1")
+					.digest(content.getBytes(StandardCharsets.UTF_8));
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Open the store in the given file, or create it if the file doesn't
+	 * exist.
+	 */
+	public static synchronized AnnotationStore open(File file)
+			throws IOException {
+		final File canonicalFile = file.getCanonicalFile();
+		if (STORES.containsKey(canonicalFile)) {
+			return STORES.get(canonicalFile);
+		}
+
+		final AnnotationStore store = load(canonicalFile);
+		STORES.put(canonicalFile, store);
+		return store;
+	}
+
+	/**
+	 * Read records until the end of the file, or until a truncated or corrupt
+	 * record. Anything after the last complete record is ignored.
+	 *
+	 * @param start
+	 *            The position of the input in the file.
+	 * @return The position after the last complete record.
+	 */
+	private static long readRecords(DataInputStream input,
+			Map<ByteBuffer, byte[]> records, long start, long fileLength)
+					throws IOException {
+		long position = start;
+		try {
+			while (true) {
+				final byte[] hash = new byte[HASH_SIZE];
+				input.readFully(hash);
+				final int payloadLength = input.readInt();
+				if (payloadLength < 0 || payloadLength > fileLength - position
+						- HASH_SIZE - 4) {
+					LOG.warn(
+							"Corrupt record in annotation store at %d (length=%d), ignoring the rest of the file",
+							position, payloadLength);
+					return position;
+				}
+				final byte[] payload = new byte[payloadLength];
+				input.readFully(payload);
+				records.put(ByteBuffer.wrap(hash), payload);
+				position += HASH_SIZE + 4 + payload.length;
+			}
+		} catch (final EOFException e) {
+			// End of file.
+			return position;
+		}
+	}
+
+	/**
+	 * Read the store in the given file, or create it if the file doesn't
+	 * exist. Unlike {@link #open(File)}, the store is not shared, similar to a
+	 * store opened by another process.
+	 */
+	static AnnotationStore load(File canonicalFile) throws IOException {
+		final Map<ByteBuffer, byte[]> records = new HashMap<>();
+		long length = 0;
+		if (canonicalFile.exists() && canonicalFile.length() > 0) {
+			try (RandomAccessFile raf = new RandomAccessFile(canonicalFile,
+					"r");
+					DataInputStream input = new DataInputStream(
+							new BufferedInputStream(Channels
+									.newInputStream(raf.getChannel())))) {
+				if (input.readInt() != MAGIC) {
+					throw new IOException(
+							"Not an annotation store: " + canonicalFile);
+				}
+				final int version = input.readInt();
+				if (version != VERSION) {
+					throw new IOException(String.format(
+							"Unsupported annotation store version %d: %s",
+							version, canonicalFile));
+				}
+				length = readRecords(input, records, 8, raf.length());
+			}
+			LOG.info("Opened annotation store: %s (%d records)",
+					canonicalFile, records.size());
+		} else {
+			try (DataOutputStream output = new DataOutputStream(
+					new FileOutputStream(canonicalFile))) {
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+			}
+			length = 8;
+			LOG.info("Created annotation store: %s", canonicalFile);
+		}
+
+		return new AnnotationStore(canonicalFile, records, length);
+	}
+
+	/**
+	 * Open the store, but log and return null on failure, so the caller can
+	 * proceed without it.
+	 */
+	static AnnotationStore tryOpen(File file) {
+		try {
+			return open(file);
+		} catch (final IOException e) {
+			LOG.error("Failed to open annotation store: %s (%s)", file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return The payload stored for the given hash, or null if not in the
+	 *         store.
+	 */
+	public synchronized byte[] get(byte[] hash) {
+		return records.get(ByteBuffer.wrap(hash));
+	}
+
+	/**
+	 * Add a batch of records and append them to the file.
+	 *
+	 * @param batch
+	 *            Map of hashes to payloads.
+	 */
+	public synchronized void putAll(Map<byte[], byte[]> batch)
+			throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+				FileLock lock = raf.getChannel().lock()) {
+			// Read the records other processes appended since the last write.
+			if (raf.length() > length) {
+				raf.seek(length);
+				final long previousLength = length;
+				final int previousSize = records.size();
+				length = readRecords(
+						new DataInputStream(new BufferedInputStream(
+								Channels.newInputStream(raf.getChannel()))),
+						records, length, raf.length());
+				if (records.size() > previousSize) {
+					LOG.info("Read %d records appended to %s (%d bytes)",
+							records.size() - previousSize, file,
+							length - previousLength);
+				}
+			}
+
+			// Drop any partial record at the end of the file. Writers hold the
+			// lock, so it's left by a failed write.
+			raf.setLength(length);
+			raf.seek(length);
+			final DataOutputStream output = new DataOutputStream(
+					new BufferedOutputStream(
+							Channels.newOutputStream(raf.getChannel())));
+			final Map<ByteBuffer, byte[]> added = new HashMap<>();
+			long addedLength = 0;
+			for (final Entry<byte[], byte[]> entry : batch.entrySet()) {
+				if (entry.getKey().length != HASH_SIZE) {
+					throw new IllegalArgumentException(
+							"Invalid hash size: " + entry.getKey().length);
+				}
+				final ByteBuffer hash = ByteBuffer.wrap(entry.getKey());
+				if (records.containsKey(hash) || added.containsKey(hash)) {
+					continue;
+				}
+				output.write(entry.getKey());
+				output.writeInt(entry.getValue().length);
+				output.write(entry.getValue());
+				added.put(hash, entry.getValue());
+				addedLength += HASH_SIZE + 4 + entry.getValue().length;
+			}
+			output.flush();
+
+			// Only commit the records once they are written.
+			records.putAll(added);
+			length += addedLength;
+		}
+	}
+
+	public synchronized int size() {
+		return records.size();
+	}
+
+}
@@ -88,6 +88,14 @@ public class LabeledAmrSentence
 		return superTags == null ? null : superTags.get(index);
 	}
 
+	List<Set<Syntax>> getSuperTags() {
+		return superTags;
+	}
+
+	Map<TokenSeq, Set<Syntax>> getSpans() {
+		return spans;
+	}
+
 	public boolean hasAlignments() {
 		return alignments != null;
 	}
@@ -16,27 +16,18 @@
  *******************************************************************************/
 package edu.uw.cs.lil.amr.data;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInput;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
-import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Spliterator;
-import java.util.Spliterators;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.stream.IntStream;
 
 import edu.cornell.cs.nlp.spf.ccg.categories.ICategoryServices;
 import edu.cornell.cs.nlp.spf.data.collection.IDataCollection;
+import edu.cornell.cs.nlp.spf.data.sentence.ITokenizer;
 import edu.cornell.cs.nlp.spf.data.singlesentence.SingleSentence;
 import edu.cornell.cs.nlp.spf.data.singlesentence.SingleSentenceCollection;
 import edu.cornell.cs.nlp.spf.data.situated.labeled.LabeledSituatedSentence;
@@ -51,6 +42,7 @@ import edu.cornell.cs.nlp.utils.log.ILogger;
 import edu.cornell.cs.nlp.utils.log.LoggerFactory;
 import edu.uw.cs.lil.amr.ccgbank.IBankParser;
 import edu.uw.cs.lil.amr.ccgbank.ISuperTagger;
+import edu.uw.cs.lil.amr.lambda.AMRServices;
 
 /**
  * Dataset of {@link LabeledSituatedSentence}s.
@@ -71,19 +63,40 @@ public class LabeledAmrSentenceCollection
 			ISuperTagger superTagger,
 			ICategoryServices<LogicalExpression> categoryServices,
 			IBankParser bankParser) {
-		this.data = Collections.unmodifiableList(StreamSupport
-				.stream(Spliterators.spliterator(dataset.iterator(),
-						dataset.size(), Spliterator.IMMUTABLE), true)
-				.map((di) -> {
+		this(dataset, superTagger, categoryServices, bankParser, null);
+	}
+
+	/**
+	 * @param annotationStore
+	 *            Store of sentence annotations (may be null).
+	 */
+	public LabeledAmrSentenceCollection(SingleSentenceCollection dataset,
+			ISuperTagger superTagger,
+			ICategoryServices<LogicalExpression> categoryServices,
+			IBankParser bankParser, AnnotationStore annotationStore) {
+		final List<SingleSentence> raw = new ArrayList<>(dataset.size());
+		dataset.forEach(raw::add);
+		final List<AMRMeta> metas = AMRMetaAnnotator.annotate(
+				raw.stream().map(SingleSentence::getSample)
+						.collect(Collectors.toList()),
+				annotationStore);
+		this.data = Collections.unmodifiableList(IntStream
+				.range(0, raw.size()).parallel().mapToObj((i) -> {
+					final SingleSentence di = raw.get(i);
 					return new LabeledAmrSentence(
 							new SituatedSentence<>(di.getSample(),
-									new AMRMeta(di.getSample())),
+									metas.get(i)),
 							di.getLabel(), di.getProperties(), categoryServices,
 							superTagger, bankParser);
 				}).collect(Collectors.toList()));
 		LOG.info("Init %s :: data.size=%d", getClass(), data.size());
 	}
 
+	private LabeledAmrSentenceCollection(List<LabeledAmrSentence> data) {
+		this.data = Collections.unmodifiableList(data);
+		LOG.info("Init %s :: data.size=%d (cached)", getClass(), data.size());
+	}
+
 	@Override
 	public Iterator<LabeledAmrSentence> iterator() {
 		return data.iterator();
@@ -110,72 +123,83 @@ public class LabeledAmrSentenceCollection
 		@Override
 		public LabeledAmrSentenceCollection create(Parameters params,
 				IResourceRepository repo) {
-			final SingleSentenceCollection rawData = (SingleSentenceCollection) repo
-					.get(params.get("data"));
-
+			final ICategoryServices<LogicalExpression> categoryServices = repo
+					.get(ParameterizedExperiment.CATEGORY_SERVICES_RESOURCE);
+			final File sourceFile = params.contains("file")
+					? params.getAsFile("file") : null;
+			final ITokenizer tokenizer = params.contains("tokenizer")
+					? repo.get(params.get("tokenizer")) : new Tokenizer();
+
+			// The cache is validated against the content of the source file
+			// and the annotators, so a valid cache is used without reading the
+			// raw data.
+			String annotators = null;
+			String source = null;
 			if (params.contains("cache")) {
+				annotators = String.format(
+						"%s;tokenizer=%s;tagger=%s;bankParser=%s",
+						AMRServices.getAnnotatorSignature(),
+						params.get("tokenizer", "default"),
+						params.get("tagger", "none"),
+						params.get("bankParser", "none"));
 				final File cacheFile = params.getAsFile("cache");
-				if (cacheFile.exists()) {
-					try (ObjectInput input = new ObjectInputStream(
-							new BufferedInputStream(
-									new FileInputStream(cacheFile)))) {
-						final LabeledAmrSentenceCollection dataset = (LabeledAmrSentenceCollection) input
-								.readObject();
-
-						// Basic checks to see the cached copy is up to date.
-						// This doesn't guarantee anything, but can catch some
-						// basic cases.
-						boolean valid = true;
-						valid &= dataset.size() == rawData.size();
-						final Iterator<LabeledAmrSentence> cachedIterator = dataset
-								.iterator();
-						final Iterator<SingleSentence> rawIterator = rawData
-								.iterator();
-						while (valid && cachedIterator.hasNext()
-								&& rawIterator.hasNext()) {
-							final LabeledAmrSentence cached = cachedIterator
-									.next();
-							final SingleSentence raw = rawIterator.next();
-							valid &= cached.getLabel().equals(raw.getLabel());
-							valid &= cached.getSample().getSample().getTokens()
-									.equals(raw.getSample().getTokens());
-						}
-						valid &= cachedIterator.hasNext() == rawIterator
-								.hasNext();
-
-						if (valid) {
-							LOG.info("Using cached copy: %s", cacheFile);
-							return dataset;
-						} else {
-							LOG.info("Cached copy invalid, re-processing");
+				if (sourceFile == null) {
+					LOG.warn(
+							"Cache requires a source file for validation, ignoring: %s",
+							cacheFile);
+				} else {
+					try {
+						source = AnnotationStore.fileHash(sourceFile);
+					} catch (final IOException e) {
+						throw new RuntimeException(e);
+					}
+					if (cacheFile.exists()) {
+						try {
+							final AmrCorpusCache cache = AmrCorpusCache
+									.open(cacheFile);
+							if (cache.isLabeled()
+									&& cache.getSource().equals(source)
+									&& cache.getAnnotators()
+											.equals(annotators)) {
+								LOG.info("Using cached copy: %s", cacheFile);
+								return new LabeledAmrSentenceCollection(
+										new AmrCorpusCache.LazyList<>(
+												cache.size(),
+												i -> cache.readLabeled(i,
+														tokenizer,
+														categoryServices)));
+							} else {
+								LOG.info(
+										"Cached copy invalid, re-processing");
+							}
+						} catch (final IOException e) {
+							// Ignore and continue.
+							LOG.info(
+									"Exception when loading cached copy, re-processing");
 						}
-					} catch (IOException | ClassNotFoundException e) {
-						// Ignore and continue.
-						LOG.info(
-								"Exception when loading cached copy, re-processing");
+					} else {
+						LOG.info("Cached file missing, re-processing");
 					}
-				} else {
-					LOG.info("Cached file missing, re-processing");
 				}
 			}
 
+			final SingleSentenceCollection rawData = sourceFile == null
+					? (SingleSentenceCollection) repo.get(params.get("data"))
+					: SingleSentenceCollection.read(sourceFile, tokenizer);
 			final LabeledAmrSentenceCollection dataset = new LabeledAmrSentenceCollection(
 					rawData,
 					params.contains("tagger") ? repo.get(params.get("tagger"))
 							: null,
-					repo.get(
-							ParameterizedExperiment.CATEGORY_SERVICES_RESOURCE),
+					categoryServices,
 					params.contains("bankParser")
-							? repo.get(params.get("bankParser")) : null);
-
-			if (params.contains("cache")) {
-				try (final OutputStream os = new FileOutputStream(
-						params.getAsFile("cache"));
-						final OutputStream buffer = new BufferedOutputStream(
-								os);
-						final ObjectOutput output = new ObjectOutputStream(
-								buffer)) {
-					output.writeObject(dataset);
+							? repo.get(params.get("bankParser")) : null,
+					params.contains("annotations") ? AnnotationStore
+							.tryOpen(params.getAsFile("annotations")) : null);
+
+			if (source != null) {
+				try {
+					AmrCorpusCache.write(params.getAsFile("cache"), source,
+							annotators, dataset);
 					LOG.info("Cached to: %s", params.get("cache"));
 				} catch (final IOException e) {
 					LOG.info("Failed to cache to: %s", params.get("cache"));
@@ -197,13 +221,19 @@ public class LabeledAmrSentenceCollection
 					LabeledAmrSentenceCollection.class)
 							.setDescription("Data set of labeled AMR sentences")
 							.addParam("data", SingleSentenceCollection.class,
-									"Dataset of sentences paired with logical forms to convert to AMR data.")
+									"Dataset of sentences paired with logical forms to convert to AMR data (ignored if file is given)")
+							.addParam("file", File.class,
+									"File of sentences paired with logical forms to read and convert to AMR data, only read if the cache is invalid (default: none)")
+							.addParam("tokenizer", ITokenizer.class,
+									"Tokenizer for the sentences in file (default: AMR tokenizer)")
 							.addParam("tagger", ISuperTagger.class,
 									"CCGBank super tagger (default: none)")
 							.addParam("bankParser", IBankParser.class,
 									"CCGBank parser (default: none)")
+							.addParam("annotations", File.class,
+									"Content-hashed store of sentence annotations (POS tags, named entities and lemmas) shared between datasets and experiments (default: none)")
 							.addParam("cache", File.class,
-									"Caching file (default: none)")
+									"Binary caching file, memory-mapped and decoded lazily, validated against the content of file and the annotators (requires file) (default: none)")
 							.build();
 		}
 
@@ -31,6 +31,7 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.StreamSupport;
 
 import edu.cornell.cs.nlp.spf.ccg.categories.ICategoryServices;
@@ -70,11 +71,30 @@ public class LabeledAmrSentenceLexCollection
 			ISuperTagger superTagger,
 			ICategoryServices<LogicalExpression> categoryServices,
 			IBankParser bankParser) {
-		this.data = Collections.unmodifiableList(
-				StreamSupport.stream(dataset.spliterator(), true).map((di) -> {
+		this(dataset, superTagger, categoryServices, bankParser, null);
+	}
+
+	/**
+	 * @param annotationStore
+	 *            Store of sentence annotations (may be null).
+	 */
+	public LabeledAmrSentenceLexCollection(SingleSentenceLexDataset dataset,
+			ISuperTagger superTagger,
+			ICategoryServices<LogicalExpression> categoryServices,
+			IBankParser bankParser, AnnotationStore annotationStore) {
+		final List<SingleSentenceLex> raw = StreamSupport
+				.stream(dataset.spliterator(), false)
+				.collect(Collectors.toList());
+		final List<AMRMeta> metas = AMRMetaAnnotator.annotate(
+				raw.stream().map(SingleSentenceLex::getSample)
+						.collect(Collectors.toList()),
+				annotationStore);
+		this.data = Collections.unmodifiableList(IntStream
+				.range(0, raw.size()).parallel().mapToObj((i) -> {
+					final SingleSentenceLex di = raw.get(i);
 					return new LabeledAmrSentenceLex(
 							new SituatedSentence<>(di.getSample(),
-									new AMRMeta(di.getSample())),
+									metas.get(i)),
 							di.getLabel(), di.getProperties(),
 							di.getEntries().stream()
 									.map(e -> AMRServices
@@ -166,7 +186,9 @@ public class LabeledAmrSentenceLexCollection
 					repo.get(
 							ParameterizedExperiment.CATEGORY_SERVICES_RESOURCE),
 					params.contains("bankParser")
-							? repo.get(params.get("bankParser")) : null);
+							? repo.get(params.get("bankParser")) : null,
+					params.contains("annotations") ? AnnotationStore
+							.tryOpen(params.getAsFile("annotations")) : null);
 
 			if (params.contains("cache")) {
 				try (final OutputStream os = new FileOutputStream(
@@ -203,6 +225,8 @@ public class LabeledAmrSentenceLexCollection
 									"CCGBank super tagger (default: none)")
 							.addParam("bankParser", IBankParser.class,
 									"CCGBank parser (default: none)")
+							.addParam("annotations", File.class,
+									"Content-hashed store of sentence annotations (POS tags, named entities and lemmas) shared between datasets and experiments (default: none)")
 							.addParam("cache", File.class,
 									"Caching file (default: none)")
 							.build();
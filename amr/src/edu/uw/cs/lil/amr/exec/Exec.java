@@ -34,6 +34,7 @@ import edu.uw.cs.lil.amr.data.AMRMeta;
 import edu.uw.cs.lil.amr.data.LabeledAmrSentence;
 import edu.uw.cs.lil.amr.parser.AbstractAmrParser;
 import edu.uw.cs.lil.amr.parser.GraphAmrParser;
+import edu.uw.cs.lil.amr.parser.metrics.MetricsRegistry;
 
 /**
  * {@link IExec} wrapper for {@link GraphAmrParser}.
@@ -161,6 +162,14 @@ public class Exec
 		return new ExecOutput(output, dataItemModel, breakTies);
 	}
 
+	/**
+	 * The metrics of the parser (see {@link AbstractAmrParser#getMetrics()}).
+	 * The parser may be shared, so the metrics include all of its inference.
+	 */
+	public MetricsRegistry getMetrics() {
+		return parser.getMetrics();
+	}
+
 	public IJointModelImmutable<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> getModel() {
 		return model;
 	}
@@ -12,6 +12,8 @@ import edu.cornell.cs.nlp.utils.collections.ListUtils;
 import edu.cornell.cs.nlp.utils.filter.IFilter;
 import edu.cornell.cs.nlp.utils.log.ILogger;
 import edu.cornell.cs.nlp.utils.log.LoggerFactory;
+import edu.uw.cs.lil.amr.parser.AbstractAmrParserOutput;
+import edu.uw.cs.lil.amr.parser.DegradationLevel;
 import edu.uw.cs.lil.amr.parser.GraphAmrParserOutput;
 
 /**
@@ -43,6 +45,17 @@ public class ExecOutput implements IExecOutput<LogicalExpression> {
 		}).collect(Collectors.toList());
 	}
 
+	/**
+	 * The degradation of inference to stay within the time budget of the
+	 * parser (see {@link AbstractAmrParserOutput#getDegradationLevel()}).
+	 */
+	public DegradationLevel getDegradationLevel() {
+		return output instanceof AbstractAmrParserOutput
+				? ((AbstractAmrParserOutput<?, ?>) output)
+						.getDegradationLevel()
+				: DegradationLevel.NONE;
+	}
+
 	@Override
 	public long getExecTime() {
 		return output.getInferenceTime();
@@ -58,6 +58,7 @@ import edu.uw.cs.lil.amr.Init;
 import edu.uw.cs.lil.amr.data.AMRMeta;
 import edu.uw.cs.lil.amr.data.LabeledAmrSentence;
 import edu.uw.cs.lil.amr.learn.gradient.GradientChecker;
+import edu.uw.cs.lil.amr.parser.AbstractAmrParser;
 
 public class AmrExp extends DistributedExperiment {
 	public static final ILogger						LOG	= LoggerFactory
@@ -89,7 +90,8 @@ public class AmrExp extends DistributedExperiment {
 				globalParams.getAsFile("nerConfig"),
 				globalParams.getAsFile("nerTranslation"),
 				globalParams.getAsFile("propBank"),
-				globalParams.getAsBoolean("underspecifyPropBank", false));
+				globalParams.getAsBoolean("underspecifyPropBank", false),
+				globalParams.getAsBoolean("internLogicalForms", false));
 
 		// //////////////////////////////////////////////////
 		// Category services for logical expressions.
@@ -117,6 +119,18 @@ public class AmrExp extends DistributedExperiment {
 		this(initFile, argsToMap(args), new AmrResourceRepo());
 	}
 
+	@Override
+	public void end() {
+		// Release the worker threads of the parser.
+		if (hasResource(PARSER_RESOURCE)) {
+			final Object parser = get(PARSER_RESOURCE);
+			if (parser instanceof AbstractAmrParser) {
+				((AbstractAmrParser<?>) parser).shutdown();
+			}
+		}
+		super.end();
+	}
+
 	private static Map<String, String> argsToMap(String[] args) {
 		final Map<String, String> map = new HashMap<>();
 		for (final String arg : args) {
@@ -267,7 +281,11 @@ public class AmrExp extends DistributedExperiment {
 				createJobOutputFile(params.get("id")),
 				createJobLogFile(params.get("id")),
 				get(params.get("sentences")), get(params.get("exec")),
-				params.getAsBoolean("allowSloppy", true));
+				params.getAsBoolean("allowSloppy", true),
+				params.getAsInteger("threads", 1),
+				params.getAsInteger("queue", 100),
+				params.contains("metrics") ? params.getAsFile("metrics")
+						: null);
 	}
 
 	private <DI extends ISituatedDataItem<?, ?>, MR, ESTEP> Job createProcessingJob(
@@ -2,8 +2,12 @@ package edu.uw.cs.lil.amr.exp;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import edu.cornell.cs.nlp.spf.data.situated.sentence.SituatedSentence;
 import edu.cornell.cs.nlp.spf.exec.IExecOutput;
@@ -13,55 +17,102 @@ import edu.cornell.cs.nlp.spf.explat.Job;
 import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
 import edu.cornell.cs.nlp.utils.log.ILogger;
 import edu.cornell.cs.nlp.utils.log.LoggerFactory;
+import edu.cornell.cs.nlp.utils.log.thread.LoggingThreadFactory;
 import edu.uw.cs.lil.amr.data.AMRMeta;
 import edu.uw.cs.lil.amr.data.AmrSentenceCollection;
 import edu.uw.cs.lil.amr.exec.Exec;
+import edu.uw.cs.lil.amr.exec.ExecOutput;
 import edu.uw.cs.lil.amr.lambda.convert.LogicalExpressionToAmr;
+import edu.uw.cs.lil.amr.parser.DegradationLevel;
+import edu.uw.cs.lil.amr.parser.metrics.MetricsRegistry;
+import edu.uw.cs.lil.amr.util.concurrent.ReorderBuffer;
 
 /**
  * Parsing job. Parses a single sentence with logging and writing the result to
- * the output stream.
+ * the output stream. With more than one thread, sentences are parsed
+ * concurrently: a bounded number of sentences is queued for the parsing
+ * threads, sloppy inference is scheduled as a follow-up task for sentences
+ * that fail the first pass, and the results are written in input order. The
+ * parser metrics recorded during the job are logged (and optionally written
+ * to a file) when it completes. The metrics are shared with other jobs of the
+ * experiment, so they are not reset, and only the difference from a snapshot
+ * taken when the job starts is reported.
  *
  * @author Yoav Artzi
  */
 public class ParseJob extends Job {
 
-	public static final ILogger			LOG			= LoggerFactory
+	public static final ILogger			LOG					= LoggerFactory
 			.create(ParseJob.class);
-	private static final String			EMPTY_AMR	= "(a / amr-empty)";
+	private static final String			EMPTY_AMR			= "(a / amr-empty)";
+	/**
+	 * Number of written sentences between throughput reports.
+	 */
+	private static final int			REPORT_INTERVAL		= 100;
 	private final boolean				allowSloppy;
 	private final Exec					exec;
-
+	/**
+	 * File to write the parser metrics to, as CSV if the name ends with ".csv"
+	 * and as JSON otherwise. If null, the metrics are only logged.
+	 */
+	private final File					metricsFile;
+	private final int					numThreads;
+	private final StageStats			parseStats			= new StageStats(
+			"parse");
+	/**
+	 * Maximum number of sentences waiting for a parsing thread.
+	 */
+	private final int					queueSize;
+	private final StageStats			queueStats			= new StageStats(
+			"queue");
+	private final StageStats			reorderStats		= new StageStats(
+			"reorder");
 	private final AmrSentenceCollection	sentences;
+	private final StageStats			sloppyParseStats	= new StageStats(
+			"sloppy parse");
 
 	public ParseJob(String id, Set<String> dependencyIds,
 			IJobListener jobListener, File outputFile, File logFile,
-			AmrSentenceCollection sentences, Exec exec, boolean allowSloppy)
+			AmrSentenceCollection sentences, Exec exec, boolean allowSloppy,
+			int numThreads, int queueSize, File metricsFile)
 					throws FileNotFoundException {
 		super(id, dependencyIds, jobListener, outputFile, logFile);
 		this.sentences = sentences;
 		this.exec = exec;
 		this.allowSloppy = allowSloppy;
+		this.numThreads = numThreads;
+		this.queueSize = queueSize;
+		this.metricsFile = metricsFile;
 	}
 
 	private LogicalExpression doInference(SituatedSentence<AMRMeta> dataItem,
-			boolean sloppy) {
+			boolean sloppy, int itemNumber) {
 		final IExecOutput<LogicalExpression> output = exec.execute(dataItem,
 				sloppy);
 
-		LOG.info("%s time: %.3fsec", sloppy ? "Sloppy parsing" : "Parsing",
+		LOG.info("%d : %s time: %.3fsec", itemNumber,
+				sloppy ? "Sloppy parsing" : "Parsing",
 				output.getExecTime() / 1000.0);
+		(sloppy ? sloppyParseStats : parseStats).add(output.getExecTime());
+		if (output instanceof ExecOutput && ((ExecOutput) output)
+				.getDegradationLevel() != DegradationLevel.NONE) {
+			LOG.info(
+					"%d : Degraded %sinference to stay within the time budget: %s",
+					itemNumber, sloppy ? "sloppy " : "",
+					((ExecOutput) output).getDegradationLevel());
+		}
 
 		final List<IExecution<LogicalExpression>> maxes = output
 				.getMaxExecutions();
 		final List<IExecution<LogicalExpression>> all = output
 				.getAllExecutions();
-		LOG.info("Generated %d %sderivations and %d max-scoring derivations",
-				all.size(), sloppy ? "sloppy " : "", maxes.size());
+		LOG.info(
+				"%d : Generated %d %sderivations and %d max-scoring derivations",
+				itemNumber, all.size(), sloppy ? "sloppy " : "", maxes.size());
 
 		LOG.info(() -> {
 			if (!maxes.isEmpty()) {
-				LOG.info("Max-scoring %sderivations [%d]:",
+				LOG.info("%d : Max-scoring %sderivations [%d]:", itemNumber,
 						sloppy ? "sloppy " : "", maxes.size());
 				for (final IExecution<LogicalExpression> derivation : maxes) {
 					LOG.info("[%.4f] %s", derivation.score(),
@@ -74,16 +125,165 @@ public class ParseJob extends Job {
 
 		if (maxes.size() != 1) {
 			LOG.info(
-					"Multiple or no max-scoring %sderivations [%d], writing an empty AMR to output",
-					sloppy ? "sloppy " : "", maxes.size());
+					"%d : Multiple or no max-scoring %sderivations [%d], writing an empty AMR to output",
+					itemNumber, sloppy ? "sloppy " : "", maxes.size());
 			return null;
 		} else {
 			return maxes.get(0).getResult();
 		}
 	}
 
+	private void doParallelJob(MetricsRegistry metricsBefore) {
+		final long startTime = System.currentTimeMillis();
+		final ExecutorService executor = Executors.newFixedThreadPool(
+				numThreads, new LoggingThreadFactory("parse"));
+		// Each permit is a sentence that is queued, parsed or waiting to be
+		// written. Permits are released when a sentence is written.
+		final ReorderBuffer<Result> buffer = new ReorderBuffer<>(
+				numThreads + queueSize, (itemNumber, next) -> {
+					write(next.dataItem, next.result);
+					reorderStats.add(System.currentTimeMillis() - next.time);
+					if (itemNumber % REPORT_INTERVAL == 0) {
+						LOG.info("Written %d sentences: %s", itemNumber,
+								throughput(itemNumber, startTime));
+					}
+				});
+		try {
+			int itemCounter = 0;
+			for (final SituatedSentence<AMRMeta> dataItem : sentences) {
+				if (buffer.getFailure() != null) {
+					// Stop queueing sentences, the job failed.
+					break;
+				}
+				final int itemNumber = ++itemCounter;
+				buffer.acquire();
+				final long queueTime = System.currentTimeMillis();
+				executor.execute(() -> {
+					LogicalExpression result = null;
+					boolean followUp = false;
+					try {
+						queueStats.add(System.currentTimeMillis() - queueTime);
+						LOG.info("%d : ==================", itemNumber);
+						LOG.info("%d : %s", itemNumber, dataItem);
+
+						// First-pass of inference.
+						result = safeInference(dataItem, false, itemNumber,
+								buffer);
+
+						// Case first-pass failed (no derivations) and we allow
+						// for sloppy inference, schedule it as a follow-up
+						// task, so the thread is free for the next queued
+						// sentence.
+						if (result == null && allowSloppy) {
+							executor.execute(() -> {
+								LogicalExpression sloppyResult = null;
+								try {
+									sloppyResult = safeInference(dataItem,
+											true, itemNumber, buffer);
+								} finally {
+									buffer.add(itemNumber,
+											new Result(dataItem, sloppyResult));
+								}
+							});
+							followUp = true;
+						}
+					} catch (final Throwable t) {
+						buffer.fail(itemNumber, t);
+					} finally {
+						// Every sentence must reach the buffer, or the writing
+						// (and the release of its permit) is blocked.
+						if (!followUp) {
+							buffer.add(itemNumber,
+									new Result(dataItem, result));
+						}
+					}
+				});
+			}
+			// Wait for all sentences to be written.
+			buffer.awaitAll();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		if (buffer.getFailure() != null) {
+			throw new RuntimeException("Parsing job failed",
+					buffer.getFailure());
+		}
+
+		LOG.info("=======================");
+		LOG.info("=======================");
+		LOG.info("Parsing job completed: %.2fsec",
+				(System.currentTimeMillis() - startTime) / 1000.0);
+		LOG.info("Throughput: %s", throughput(buffer.numDone(), startTime));
+		LOG.info("Stage latencies: %s, %s, %s, %s", queueStats, parseStats,
+				sloppyParseStats, reorderStats);
+		dumpMetrics(metricsBefore);
+	}
+
+	private void dumpMetrics(MetricsRegistry metricsBefore) {
+		final MetricsRegistry metrics = exec.getMetrics().since(metricsBefore);
+		LOG.info("Parser metrics: %s", metrics.toJson());
+		if (metricsFile != null) {
+			try {
+				metrics.write(metricsFile);
+				LOG.info("Wrote parser metrics to %s", metricsFile);
+			} catch (final IOException e) {
+				LOG.error("Failed to write parser metrics to %s: %s",
+						metricsFile, e);
+			}
+		}
+	}
+
+	/**
+	 * Inference that logs and recovers from exceptions, so the output of the
+	 * remaining sentences is not blocked. Errors are recorded as failures of
+	 * the job.
+	 */
+	private LogicalExpression safeInference(SituatedSentence<AMRMeta> dataItem,
+			boolean sloppy, int itemNumber, ReorderBuffer<Result> buffer) {
+		try {
+			return doInference(dataItem, sloppy, itemNumber);
+		} catch (final RuntimeException e) {
+			LOG.error("%d : %sinference failed: %s", itemNumber,
+					sloppy ? "Sloppy " : "", e);
+			return null;
+		} catch (final Throwable t) {
+			// Errors fail the job.
+			buffer.fail(itemNumber, t);
+			return null;
+		}
+	}
+
+	private static String throughput(int numSentences, long startTime) {
+		final long time = Math.max(1, System.currentTimeMillis() - startTime);
+		return String.format("%.2f sentences/sec (%d sentences)",
+				numSentences * 1000.0 / time, numSentences);
+	}
+
+	private void write(SituatedSentence<AMRMeta> dataItem,
+			LogicalExpression result) {
+		getOutputStream().println(dataItem.getString());
+		if (result == null) {
+			getOutputStream().println(EMPTY_AMR);
+		} else {
+			getOutputStream().println(LogicalExpressionToAmr.of(result, true));
+		}
+		getOutputStream().println();
+	}
+
 	@Override
 	protected void doJob() {
+		// Snapshot the parser metrics, so the dumped metrics only reflect this
+		// job.
+		final MetricsRegistry metricsBefore = exec.getMetrics().snapshot();
+		if (numThreads > 1) {
+			doParallelJob(metricsBefore);
+			return;
+		}
+
 		int itemCounter = 0;
 		final long startTime = System.currentTimeMillis();
 		for (final SituatedSentence<AMRMeta> dataItem : sentences) {
@@ -91,29 +291,66 @@ public class ParseJob extends Job {
 			LOG.info("%s", dataItem);
 
 			// First-pass of inference.
-			LogicalExpression result = doInference(dataItem, false);
+			LogicalExpression result = doInference(dataItem, false,
+					itemCounter);
 
 			// Case first-pass failed (no derivations) and we allow for sloppy
 			// inference.
 			if (result == null && allowSloppy) {
-				result = doInference(dataItem, true);
+				result = doInference(dataItem, true, itemCounter);
 			}
 
 			// Write output.
-			getOutputStream().println(dataItem.getString());
-			if (result == null) {
-				getOutputStream().println(EMPTY_AMR);
-			} else {
-				getOutputStream()
-						.println(LogicalExpressionToAmr.of(result, true));
-			}
-			getOutputStream().println();
-
+			write(dataItem, result);
 		}
 		LOG.info("=======================");
 		LOG.info("=======================");
 		LOG.info("Parsing job completed: %.2fsec",
 				(System.currentTimeMillis() - startTime) / 1000.0);
+		LOG.info("Throughput: %s", throughput(itemCounter, startTime));
+		LOG.info("Stage latencies: %s, %s", parseStats, sloppyParseStats);
+		dumpMetrics(metricsBefore);
+	}
+
+	private static class Result {
+		private final SituatedSentence<AMRMeta>	dataItem;
+		private final LogicalExpression			result;
+		private final long						time;
+
+		public Result(SituatedSentence<AMRMeta> dataItem,
+				LogicalExpression result) {
+			this.dataItem = dataItem;
+			this.result = result;
+			this.time = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Latency statistics of a single stage of the parsing pipeline.
+	 */
+	private static class StageStats {
+		private final AtomicLong	count	= new AtomicLong();
+		private final AtomicLong	max		= new AtomicLong();
+		private final String		name;
+		private final AtomicLong	total	= new AtomicLong();
+
+		public StageStats(String name) {
+			this.name = name;
+		}
+
+		public void add(long time) {
+			count.incrementAndGet();
+			total.addAndGet(time);
+			max.accumulateAndGet(time, Math::max);
+		}
+
+		@Override
+		public String toString() {
+			final long n = count.get();
+			return String.format("%s [n=%d, mean=%.3fsec, max=%.3fsec]", name,
+					n, n == 0 ? 0.0 : total.get() / 1000.0 / n,
+					max.get() / 1000.0);
+		}
 	}
 
 }
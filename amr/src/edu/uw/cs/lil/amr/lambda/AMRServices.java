@@ -10,6 +10,9 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
 import edu.cornell.cs.nlp.spf.base.token.TokenSeq;
 import edu.cornell.cs.nlp.spf.ccg.categories.Category;
 import edu.cornell.cs.nlp.spf.ccg.categories.syntax.Syntax;
@@ -31,6 +34,7 @@ import edu.cornell.cs.nlp.spf.mr.language.type.Type;
 import edu.cornell.cs.nlp.utils.collections.ArrayUtils;
 import edu.cornell.cs.nlp.utils.collections.SetUtils;
 import edu.stanford.nlp.tagger.maxent.MaxentTagger;
+import edu.uw.cs.lil.amr.data.AnnotationStore;
 import edu.uw.cs.lil.amr.ner.IllinoisNERWrapper;
 import edu.uw.cs.lil.amr.ner.RecognizedNamedEntity;
 import edu.uw.cs.lil.amr.util.propbank.PropBank;
@@ -88,8 +92,21 @@ public class AMRServices {
 	private final ILogicalExpressionPrinter				amrPrinter				= new LogicalExpressionToIndentedString.Printer(
 			"  ");
 
+	/**
+	 * Identifies the configuration of the sentence annotators (tagger, NER
+	 * and lemmatizer). Computed on first use, since it requires reading the
+	 * model files.
+	 */
+	private String										annotatorSignature;
+
 	private final LogicalConstant						dummyEntity;
 
+	/**
+	 * Weak interner for hash-consing of logical forms (see {@link Intern}),
+	 * or null if interning is disabled.
+	 */
+	private final Interner<LogicalExpression>			interner;
+
 	private final ILemmatizer							lemmatizer;
 
 	private final SpecificationMapping					mapping;
@@ -115,6 +132,8 @@ public class AMRServices {
 	 */
 	private transient final Map<Type, LogicalConstant>	skolemPredicatesCache	= new ConcurrentHashMap<>();
 
+	private final File									stanfordModelFile;
+
 	private final MaxentTagger							tagger;
 
 	private final Type									textType;
@@ -126,7 +145,7 @@ public class AMRServices {
 			File stanfordModelFile, String opPredicatePrefix,
 			LogicalConstant dummyEntity, LogicalConstant nameInstancePredicate,
 			Type typingPredicateType, IllinoisNERWrapper namedEntityRecognizer,
-			File propBankDir) throws IOException {
+			File propBankDir, boolean interning) throws IOException {
 		this.opPredicatePrefix = opPredicatePrefix;
 		this.dummyEntity = dummyEntity;
 		this.nameInstancePredicate = nameInstancePredicate;
@@ -142,6 +161,8 @@ public class AMRServices {
 		this.tagger = stanfordModelFile == null ? null
 				: new MaxentTagger(stanfordModelFile.getAbsolutePath());
 		this.propBank = propBankDir == null ? null : new PropBank(propBankDir);
+		this.interner = interning ? Interners.newWeakInterner() : null;
+		this.stanfordModelFile = stanfordModelFile;
 	}
 
 	/**
@@ -217,6 +238,14 @@ public class AMRServices {
 		return createTextConstant(tokens.toList());
 	}
 
+	/**
+	 * A string identifying the configuration of the sentence annotators. Used
+	 * to key cached annotations.
+	 */
+	public static String getAnnotatorSignature() {
+		return INSTANCE.computeAnnotatorSignature();
+	}
+
 	public static Syntax getCompleteSentenceSyntax() {
 		return AMRServices.AMR;
 	}
@@ -324,6 +353,20 @@ public class AMRServices {
 				true);
 	}
 
+	/**
+	 * Hash-cons the logical form, if interning is enabled (see
+	 * {@link Intern}). The canonical instances are weakly referenced, so they
+	 * are collected when no longer used.
+	 *
+	 * @return An equal logical form that shares its closed sub-expressions
+	 *         with all other interned logical forms, or the given logical form
+	 *         if interning is disabled.
+	 */
+	public static LogicalExpression intern(LogicalExpression exp) {
+		return INSTANCE.interner == null ? exp
+				: Intern.of(exp, INSTANCE.interner);
+	}
+
 	public static boolean isAmrRelation(LogicalConstant c) {
 		return c.getBaseName().startsWith("c_");
 	}
@@ -673,11 +716,30 @@ public class AMRServices {
 
 	public static LogicalExpression underspecifyAndStrip(
 			LogicalExpression exp) {
-		return stripSkolemIds(Underspecify.of(exp, INSTANCE.mapping));
+		return intern(stripSkolemIds(Underspecify.of(exp, INSTANCE.mapping)));
+	}
+
+	private synchronized String computeAnnotatorSignature() {
+		if (annotatorSignature == null) {
+			// Models are identified by the digest of their contents, so a
+			// model that is re-trained in place gets a new signature.
+			try {
+				annotatorSignature = String.format(
+						"tagger=%s;ner=%s;lemmatizer=wordnet+lowercase",
+						stanfordModelFile == null ? "none"
+								: AnnotationStore.fileHash(stanfordModelFile),
+						namedEntityRecognizer == null ? "none"
+								: namedEntityRecognizer.getSignature());
+			} catch (final IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return annotatorSignature;
 	}
 
 	public static class Builder {
 		private final LogicalConstant	dummyEntity;
+		private boolean					interning	= false;
 		private SpecificationMapping	mapping		= new SpecificationMapping(
 				false);
 		private IllinoisNERWrapper		namedEntityRecognizer;
@@ -710,7 +772,17 @@ public class AMRServices {
 			return new AMRServices(skolemPredicateBaseName, textType,
 					refPredicateBaseName, mapping, stanfordModelFile,
 					opPredicatePrefix, dummyEntity, nameInstancePredicate,
-					typingPredicateType, namedEntityRecognizer, probBankDir);
+					typingPredicateType, namedEntityRecognizer, probBankDir,
+					interning);
+		}
+
+		/**
+		 * Hash-cons the logical forms created by the AMR visitors (see
+		 * {@link AMRServices#intern(LogicalExpression)}).
+		 */
+		public Builder setInterning(boolean interning) {
+			this.interning = interning;
+			return this;
 		}
 
 		public Builder setNamedEntityRecognizer(
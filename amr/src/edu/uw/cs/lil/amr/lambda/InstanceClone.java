@@ -44,7 +44,7 @@ public class InstanceClone implements ILogicalExpressionVisitor {
 		final ReplaceVariables replaceVisitor = new ReplaceVariables(
 				visitor.variableMapping);
 		replaceVisitor.visit(visitor.result);
-		return replaceVisitor.result;
+		return AMRServices.intern(replaceVisitor.result);
 	}
 
 	@Override
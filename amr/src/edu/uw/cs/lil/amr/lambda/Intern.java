@@ -0,0 +1,100 @@
+package edu.uw.cs.lil.amr.lambda;
+
+import com.google.common.collect.Interner;
+
+import edu.cornell.cs.nlp.spf.mr.lambda.Lambda;
+import edu.cornell.cs.nlp.spf.mr.lambda.Literal;
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalConstant;
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
+import edu.cornell.cs.nlp.spf.mr.lambda.Variable;
+import edu.cornell.cs.nlp.spf.mr.lambda.visitor.ILogicalExpressionVisitor;
+
+/**
+ * Hash-consing of {@link LogicalExpression}s. Replaces every closed literal
+ * and lambda expression with its canonical instance, bottom-up, so equal
+ * sub-expressions are shared. Since the sub-expressions of a canonical
+ * expression are canonical themselves, comparing them usually stops at
+ * reference equality. Sub-expressions with free variables (including skolem
+ * IDs) are never interned: equality treats free variables as equal up to
+ * renaming, so the canonical instance may refer to a different variable
+ * object than the one bound by the enclosing lambda. Such sub-expressions are
+ * re-created only if one of their closed sub-expressions was replaced.
+ * Constants and variables are not interned. See
+ * {@link AMRServices#intern(LogicalExpression)}.
+ *
+ * @author Yoav Artzi
+ */
+public class Intern implements ILogicalExpressionVisitor {
+
+	private final Interner<LogicalExpression>	interner;
+
+	private LogicalExpression					result		= null;
+
+	private Intern(Interner<LogicalExpression> interner) {
+		this.interner = interner;
+	}
+
+	public static LogicalExpression of(LogicalExpression exp,
+			Interner<LogicalExpression> interner) {
+		if (exp == null) {
+			return null;
+		}
+		final Intern visitor = new Intern(interner);
+		visitor.visit(exp);
+		return visitor.result;
+	}
+
+	@Override
+	public void visit(Lambda lambda) {
+		lambda.getBody().accept(this);
+		if (lambda.getBody() != result) {
+			result = intern(new Lambda(lambda.getArgument(), result));
+		} else {
+			result = intern(lambda);
+		}
+	}
+
+	@Override
+	public void visit(Literal literal) {
+		literal.getPredicate().accept(this);
+		final LogicalExpression newPredicate = result;
+
+		final int len = literal.numArgs();
+		final LogicalExpression[] newArgs = new LogicalExpression[len];
+		boolean argChanged = false;
+		for (int i = 0; i < len; ++i) {
+			final LogicalExpression arg = literal.getArg(i);
+			arg.accept(this);
+			argChanged |= arg != result;
+			newArgs[i] = result;
+		}
+
+		if (argChanged) {
+			result = intern(new Literal(newPredicate, newArgs));
+		} else if (newPredicate != literal.getPredicate()) {
+			result = intern(new Literal(newPredicate, literal));
+		} else {
+			result = intern(literal);
+		}
+	}
+
+	@Override
+	public void visit(LogicalConstant logicalConstant) {
+		result = logicalConstant;
+	}
+
+	@Override
+	public void visit(LogicalExpression logicalExpression) {
+		logicalExpression.accept(this);
+	}
+
+	@Override
+	public void visit(Variable variable) {
+		result = variable;
+	}
+
+	private LogicalExpression intern(LogicalExpression exp) {
+		return exp.numFreeVariables() == 0 ? interner.intern(exp) : exp;
+	}
+
+}
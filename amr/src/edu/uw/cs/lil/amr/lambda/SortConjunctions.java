@@ -78,7 +78,7 @@ public class SortConjunctions implements ILogicalExpressionVisitor {
 		}
 		final SortConjunctions visitor = new SortConjunctions();
 		visitor.visit(exp);
-		return visitor.result;
+		return AMRServices.intern(visitor.result);
 	}
 
 	@Override
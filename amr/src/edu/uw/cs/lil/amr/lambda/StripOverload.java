@@ -31,7 +31,7 @@ public class StripOverload implements ILogicalExpressionVisitor {
 	public static LogicalExpression of(LogicalExpression exp) {
 		final StripOverload visitor = new StripOverload();
 		visitor.visit(exp);
-		return visitor.result;
+		return AMRServices.intern(visitor.result);
 	}
 
 	@Override
@@ -30,7 +30,7 @@ public class Underspecify implements ILogicalExpressionVisitor {
 			SpecificationMapping mapping) {
 		final Underspecify visitor = new Underspecify(mapping);
 		visitor.visit(exp);
-		return visitor.result;
+		return AMRServices.intern(visitor.result);
 	}
 
 	@Override
@@ -193,14 +193,19 @@ public abstract class AbstractLearner implements
 
 		final ILexiconImmutable<LogicalExpression> generatedLexicon = genlex
 				.generate(dataItem, model, categoryServices);
-		stats.mean("GENLEX",
-				(System.currentTimeMillis() - genlexStart) / 1000.0, "sec");
-		LOG.info("Generated lexicon size = %d (%.4fsec) [mean: %.4fsec]",
-				generatedLexicon.size(),
-				(System.currentTimeMillis() - genlexStart) / 1000.0,
-				stats.getMean("GENLEX"));
-		if (generatedLexicon.size() > 0) {
-			stats.count("Reachable under GENLEX", epochNumber);
+		// The statistics are synchronized, since samples may be processed
+		// concurrently.
+		synchronized (stats) {
+			stats.mean("GENLEX",
+					(System.currentTimeMillis() - genlexStart) / 1000.0,
+					"sec");
+			LOG.info("Generated lexicon size = %d (%.4fsec) [mean: %.4fsec]",
+					generatedLexicon.size(),
+					(System.currentTimeMillis() - genlexStart) / 1000.0,
+					stats.getMean("GENLEX"));
+			if (generatedLexicon.size() > 0) {
+				stats.count("Reachable under GENLEX", epochNumber);
+			}
 		}
 
 		// Log the newly created entries.
@@ -232,8 +237,10 @@ public abstract class AbstractLearner implements
 
 		// Record statistics.
 		if (newLexicalEntries > 0) {
-			stats.appendSampleStat(dataItemNumber, epochNumber,
-					newLexicalEntries);
+			synchronized (stats) {
+				stats.appendSampleStat(dataItemNumber, epochNumber,
+						newLexicalEntries);
+			}
 		}
 
 		return generatedLexicon;
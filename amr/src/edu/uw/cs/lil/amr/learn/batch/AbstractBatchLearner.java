@@ -16,18 +16,25 @@
  *******************************************************************************/
 package edu.uw.cs.lil.amr.learn.batch;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.IntConsumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import edu.cornell.cs.nlp.spf.base.token.TokenSeq;
 import edu.cornell.cs.nlp.spf.ccg.categories.ICategoryServices;
@@ -43,7 +50,8 @@ import edu.cornell.cs.nlp.spf.parser.joint.IJointInferenceFilterFactory;
 import edu.cornell.cs.nlp.spf.parser.joint.IJointOutputLogger;
 import edu.cornell.cs.nlp.spf.parser.joint.model.IJointModelImmutable;
 import edu.cornell.cs.nlp.spf.parser.joint.model.JointModel;
-import edu.cornell.cs.nlp.utils.accumulator.DoubleAccumulator;
+import edu.cornell.cs.nlp.utils.composites.Pair;
+import edu.cornell.cs.nlp.utils.log.thread.LoggingThreadFactory;
 import edu.cornell.cs.nlp.utils.system.MemoryReport;
 import edu.uw.cs.lil.amr.data.AMRMeta;
 import edu.uw.cs.lil.amr.data.LabeledAmrSentence;
@@ -55,15 +63,54 @@ import edu.uw.cs.lil.amr.parser.GraphAmrParser;
 
 /**
  * Batch abstract learner. Lexical induction and parameter estimation are done
- * in batch.
+ * in batch. Optionally, epochs are pipelined: the GENLEX of each sample is
+ * immediately followed by its gradient computation, and the generated lexicons
+ * are buffered until a sync point, every fixed number of samples, where voting
+ * and lexicon updates are done. Entries generated for a sample are therefore
+ * only available to the gradients of samples following the next sync point.
+ * Pruning and alignment entries are applied at the end of each epoch.
  *
  * @author Yoav Artzi
  */
 public abstract class AbstractBatchLearner extends AbstractLearner {
 
+	/**
+	 * Minimal number of generated lexicons to aggregate their votes in
+	 * parallel.
+	 */
+	private static final int																																		PARALLEL_AGGREGATION		= 64;
+
+	/**
+	 * Maximal number of voting logs waiting to be written in the background.
+	 * Each pending log holds the generated lexicons of its sync point, so when
+	 * the queue is full, the log is written by the voting thread instead.
+	 */
+	private static final int																																		VOTE_LOG_QUEUE_SIZE			= 2;
+
 	private final ILexiconGenerator<LabeledAmrSentence, LogicalExpression, IJointModelImmutable<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression>>	alignmentGenlex;
+
+	/**
+	 * Log all generated entries with their votes and generating samples when
+	 * voting.
+	 */
+	private final boolean																																			logVotes;
+
 	private final boolean																																			pruneLexicon;
 
+	/**
+	 * Number of samples between lexicon sync points in a pipelined epoch. If
+	 * not positive, epochs are not pipelined: lexical induction is done for
+	 * all samples, followed by parameter estimation for all samples.
+	 */
+	private final int																																				syncInterval;
+
+	/**
+	 * Writes the detailed voting logs in the background during training. If
+	 * null, the logs are written immediately. The queue of the executor is
+	 * bounded (see {@link #VOTE_LOG_QUEUE_SIZE}).
+	 */
+	private ExecutorService																																			voteLogExecutor				= null;
+
 	private final BiFunction<Predicate<LexicalEntry<LogicalExpression>>, Map<LexicalEntry<LogicalExpression>, Double>, Set<LexicalEntry<LogicalExpression>>>		votingProcedure;
 
 	protected final ILexiconImmutable<LogicalExpression>																											entriesNotToPrune;
@@ -71,7 +118,9 @@ public abstract class AbstractBatchLearner extends AbstractLearner {
 	/**
 	 * The indices of all data items that were reachable during the last epoch.
 	 * This information is collected during pruning and is used to skip GENLEX
-	 * for all reachable entries. Following GENLEX, this set is cleared.
+	 * for all reachable entries. Following GENLEX, this set is cleared. In a
+	 * pipelined epoch, the index of each sample is removed when its GENLEX is
+	 * done.
 	 */
 	protected final Set<Integer>																																	reachableDuringLastEpoch	= new HashSet<>();
 
@@ -89,12 +138,15 @@ public abstract class AbstractBatchLearner extends AbstractLearner {
 			Integer conditionedInferenceBeam,
 			ILexiconGenerator<LabeledAmrSentence, LogicalExpression, IJointModelImmutable<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression>> alignmentGenlex,
 			boolean resumedLearning,
-			ILexiconImmutable<LogicalExpression> entriesNotToPrune) {
+			ILexiconImmutable<LogicalExpression> entriesNotToPrune,
+			int syncInterval, boolean logVotes) {
 		super(numIterations, trainingData, sortData, maxSentenceLength, parser,
 				parserOutputLogger, categoryServices, genlex, filterFactory,
 				postIteration, estimator, gradientFunction,
 				conditionedInferenceBeam, resumedLearning);
 		this.pruneLexicon = pruneLexicon;
+		this.syncInterval = syncInterval;
+		this.logVotes = logVotes;
 		this.votingProcedure = votingProcedure;
 		this.alignmentGenlex = alignmentGenlex;
 		this.entriesNotToPrune = entriesNotToPrune;
@@ -106,46 +158,55 @@ public abstract class AbstractBatchLearner extends AbstractLearner {
 				alignmentGenlex);
 		LOG.info("Init %s: size(entriesNotToPrune)=%d",
 				this.getClass().getSimpleName(), entriesNotToPrune.size());
+		LOG.info("Init %s: syncInterval=%d", this.getClass().getSimpleName(),
+				syncInterval);
+		LOG.info("Init %s: logVotes=%s", this.getClass().getSimpleName(),
+				logVotes);
 	}
 
 	private static Map<LexicalEntry<LogicalExpression>, Double> aggregateVotes(
 			List<ILexiconImmutable<LogicalExpression>> generatedLexicons) {
-		final Map<LexicalEntry<LogicalExpression>, DoubleAccumulator> votes = new HashMap<>();
-
-		for (final ILexiconImmutable<LogicalExpression> generatedLexicon : generatedLexicons) {
-
-			// Index by tokens.
-			final Map<TokenSeq, List<LexicalEntry<LogicalExpression>>> tokenEntries = new HashMap<>();
-			for (final LexicalEntry<LogicalExpression> entry : generatedLexicon
-					.toCollection()) {
-				final TokenSeq tokens = entry.getTokens();
-				if (tokenEntries.containsKey(tokens)) {
-					tokenEntries.get(tokens).add(entry);
-				} else {
-					final List<LexicalEntry<LogicalExpression>> entries = new LinkedList<>();
-					entries.add(entry);
-					tokenEntries.put(tokens, entries);
-				}
-			}
-
-			// Update votes. Each data item (generated lexicon) distributes a
-			// total of 1.0 between all entries of the same token sequence.
-			for (final List<LexicalEntry<LogicalExpression>> entries : tokenEntries
-					.values()) {
-				final int size = entries.size();
-				for (final LexicalEntry<LogicalExpression> entry : entries) {
-					final double vote = 1.0 / size;
-					if (votes.containsKey(entry)) {
-						votes.get(entry).add(vote);
-					} else {
-						votes.put(entry, new DoubleAccumulator(vote));
-					}
-				}
+		// Compute the votes of each data item (generated lexicon)
+		// independently, and group them by entry. The grouping preserves the
+		// order of the data items, so the votes of each entry are summed in
+		// the same order when aggregating in parallel.
+		final Stream<ILexiconImmutable<LogicalExpression>> lexiconStream = generatedLexicons
+				.size() >= PARALLEL_AGGREGATION
+						? generatedLexicons.parallelStream()
+						: generatedLexicons.stream();
+		final Map<LexicalEntry<LogicalExpression>, List<Double>> entryVotes = lexiconStream
+				.flatMap(AbstractBatchLearner::itemVotes)
+				.collect(Collectors.groupingBy(Pair::first, Collectors
+						.mapping(Pair::second, Collectors.toList())));
+
+		final Map<LexicalEntry<LogicalExpression>, Double> votes = new HashMap<>();
+		for (final Entry<LexicalEntry<LogicalExpression>, List<Double>> entry : entryVotes
+				.entrySet()) {
+			double sum = 0.0;
+			for (final Double vote : entry.getValue()) {
+				sum += vote;
 			}
+			votes.put(entry.getKey(), sum);
 		}
+		return votes;
+	}
 
-		return votes.entrySet().stream().collect(
-				Collectors.toMap(e -> e.getKey(), e -> e.getValue().value()));
+	/**
+	 * The votes of a single data item. Each data item (generated lexicon)
+	 * distributes a total of 1.0 between all entries of the same token
+	 * sequence.
+	 */
+	private static Stream<Pair<LexicalEntry<LogicalExpression>, Double>> itemVotes(
+			ILexiconImmutable<LogicalExpression> generatedLexicon) {
+		// Index by tokens.
+		final Map<TokenSeq, List<LexicalEntry<LogicalExpression>>> tokenEntries = generatedLexicon
+				.toCollection().stream()
+				.collect(Collectors.groupingBy(LexicalEntry::getTokens));
+
+		return tokenEntries.values().stream().flatMap(entries -> {
+			final double vote = 1.0 / entries.size();
+			return entries.stream().map(entry -> Pair.of(entry, vote));
+		});
 	}
 
 	@Override
@@ -172,44 +233,36 @@ public abstract class AbstractBatchLearner extends AbstractLearner {
 		// learning starts.
 		addAlignmentEntries(-1, model);
 
-		// Epochs.
-		for (int epochNumber = 0; epochNumber < epochs; ++epochNumber) {
-			// Training epoch, iterate over all training samples in batch.
-			final long epochStartTime = System.currentTimeMillis();
-
-			// Batch lexical induction.
-			lexiconInduction(epochNumber, model);
-
-			// Batch parameter update.
-			final Set<LexicalEntry<LogicalExpression>> viterbiEntries = parameterEstimation(
-					epochNumber, model);
-
-			// Prune the lexicon using the entries from parameter estimation
-			pruneLexicon(epochNumber, model, viterbiEntries);
-
-			// Add high-precision heuristic alignment entries to the model.
-			addAlignmentEntries(epochNumber, model);
-
-			// Output epoch statistics.
-			LOG.info("Epoch time: %.2fsec",
-					(System.currentTimeMillis() - epochStartTime) / 1000.0);
-			LOG.info("Epoch stats:");
-			LOG.info(stats);
-
-			// Run the post-iteration job.
-			postIteration.accept(epochNumber);
+		if (!logVotes) {
+			trainEpochs(model);
+			return;
 		}
 
+		// If the queue is full, the voting thread writes the log itself, so
+		// the generated lexicons of at most a few sync points are retained.
+		voteLogExecutor = new ThreadPoolExecutor(1, 1, 0L,
+				TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(VOTE_LOG_QUEUE_SIZE),
+				new LoggingThreadFactory("vote-log"),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		try {
+			trainEpochs(model);
+		} finally {
+			// Wait for the pending voting logs.
+			voteLogExecutor.shutdown();
+			try {
+				voteLogExecutor.awaitTermination(Long.MAX_VALUE,
+						TimeUnit.MILLISECONDS);
+			} catch (final InterruptedException e) {
+				LOG.error("Interrupted while writing the voting logs: %s", e);
+			}
+			voteLogExecutor = null;
+		}
 	}
 
-	private void lexiconInduction(int epochNumber,
+	private void initGenlex(
 			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model) {
-		LOG.info("=========================");
-		LOG.info("Training epoch %d: Lexicon Induction", epochNumber);
-		LOG.info("=========================");
-
 		if (genlex == null) {
-			LOG.info("No GENLEX procedure -- skipping lexical induction");
 			return;
 		}
 
@@ -224,6 +277,20 @@ public abstract class AbstractBatchLearner extends AbstractLearner {
 		if (alignmentGenlex != null) {
 			alignmentGenlex.init(model);
 		}
+	}
+
+	private void lexiconInduction(int epochNumber,
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model) {
+		LOG.info("=========================");
+		LOG.info("Training epoch %d: Lexicon Induction", epochNumber);
+		LOG.info("=========================");
+
+		if (genlex == null) {
+			LOG.info("No GENLEX procedure -- skipping lexical induction");
+			return;
+		}
+
+		initGenlex(model);
 
 		final long batchStartTime = System.currentTimeMillis();
 
@@ -258,11 +325,152 @@ public abstract class AbstractBatchLearner extends AbstractLearner {
 		return viterbiEntries;
 	}
 
+	/**
+	 * Pipelined lexical induction and parameter estimation. The data is
+	 * processed in segments of {@link #syncInterval} samples. Only the current
+	 * segment is held, so lazily loaded training data can be released between
+	 * segments.
+	 */
+	private Set<LexicalEntry<LogicalExpression>> pipelinedEpoch(
+			int epochNumber,
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model) {
+		LOG.info("=========================");
+		LOG.info(
+				"Training epoch %d: Pipelined Lexicon Induction and Parameter Estimation",
+				epochNumber);
+		LOG.info("=========================");
+
+		initGenlex(model);
+
+		final long batchStartTime = System.currentTimeMillis();
+
+		final Set<LexicalEntry<LogicalExpression>> viterbiEntries = new HashSet<>();
+		final int numItems = trainingData.size();
+		final Iterator<LabeledAmrSentence> iterator = trainingData.iterator();
+		int firstItem = 0;
+		while (iterator.hasNext()) {
+			final List<LabeledAmrSentence> segment = new ArrayList<>(
+					Math.max(Math.min(syncInterval, numItems - firstItem), 0));
+			while (segment.size() < syncInterval && iterator.hasNext()) {
+				segment.add(iterator.next());
+			}
+			LOG.info("Training epoch %d: segment [%d-%d]", epochNumber,
+					firstItem, firstItem + segment.size() - 1);
+
+			final List<ILexiconImmutable<LogicalExpression>> generatedLexicons = new ArrayList<>(
+					segment.size());
+			viterbiEntries.addAll(doPipelinedSegment(epochNumber, model,
+					segment, firstItem, generatedLexicons));
+
+			// Sync point: vote and update the lexicon of the model.
+			if (genlex != null) {
+				updateModel(model, generatedLexicons);
+			}
+
+			firstItem += segment.size();
+		}
+
+		endPipelinedEpoch(epochNumber, model);
+
+		// Output batch statistics.
+		LOG.info("Pipelined lexical induction and parameter estimation time: %.2f",
+				(System.currentTimeMillis() - batchStartTime) / 1000.0);
+		LOG.info("System memory: %s", MemoryReport.generate());
+
+		return viterbiEntries;
+	}
+
+	private void trainEpochs(
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model) {
+		for (int epochNumber = 0; epochNumber < epochs; ++epochNumber) {
+			// Training epoch, iterate over all training samples in batch.
+			final long epochStartTime = System.currentTimeMillis();
+
+			final Set<LexicalEntry<LogicalExpression>> viterbiEntries;
+			if (syncInterval > 0) {
+				viterbiEntries = pipelinedEpoch(epochNumber, model);
+			} else {
+				// Batch lexical induction.
+				lexiconInduction(epochNumber, model);
+
+				// Batch parameter update.
+				viterbiEntries = parameterEstimation(epochNumber, model);
+			}
+
+			// Prune the lexicon using the entries from parameter estimation
+			pruneLexicon(epochNumber, model, viterbiEntries);
+
+			// Add high-precision heuristic alignment entries to the model.
+			addAlignmentEntries(epochNumber, model);
+
+			// Output epoch statistics.
+			LOG.info("Epoch time: %.2fsec",
+					(System.currentTimeMillis() - epochStartTime) / 1000.0);
+			LOG.info("Epoch stats:");
+			LOG.info(stats);
+
+			// Run the post-iteration job.
+			postIteration.accept(epochNumber);
+		}
+
+	}
+
 	private Set<LexicalEntry<LogicalExpression>> vote(
 			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
 			List<ILexiconImmutable<LogicalExpression>> generatedLexicons) {
+		// Get the votes.
+		final Map<LexicalEntry<LogicalExpression>, Double> votes = aggregateVotes(
+				generatedLexicons);
+
+		// Apply the voting strategy.
+		final Predicate<LexicalEntry<LogicalExpression>> hardFilter = entry -> !model
+				.getLexicon().contains(entry) && genlex.isGenerated(entry)
+				&& !entry.isDynamic();
+		final Set<LexicalEntry<LogicalExpression>> votedEntries = votingProcedure
+				.apply(hardFilter, votes);
+
+		// Make sure that the set of votedEntries doesn't contain any entries
+		// the hard filter should prune.
+		final Set<LexicalEntry<LogicalExpression>> toAdd = votedEntries.stream()
+				.filter(hardFilter).collect(Collectors.toSet());
+
+		// Record the existing and dynamically generated entries for logging.
+		// The model is updated before the log is written.
+		final Set<LexicalEntry<LogicalExpression>> known = new HashSet<>();
+		final Set<LexicalEntry<LogicalExpression>> dynamic = new HashSet<>();
+		for (final LexicalEntry<LogicalExpression> entry : votes.keySet()) {
+			if (model.getLexicon().contains(entry)) {
+				known.add(entry);
+			} else if (logVotes && !genlex.isGenerated(entry)) {
+				dynamic.add(entry);
+			}
+		}
+
+		// Logging all generated entries requires sorting them, so it's done in
+		// the background.
+		if (logVotes) {
+			final Runnable logJob = () -> logVotes(generatedLexicons, votes,
+					toAdd, known, dynamic);
+			if (voteLogExecutor == null) {
+				logJob.run();
+			} else {
+				voteLogExecutor.execute(logJob);
+			}
+		}
+
+		LOG.info("Adding %d lexical entries", toAdd.size());
+		LOG.info("Skipped adding %d entries",
+				votes.size() - toAdd.size() - known.size());
+		return toAdd;
+	}
+
+	private static void logVotes(
+			List<ILexiconImmutable<LogicalExpression>> generatedLexicons,
+			Map<LexicalEntry<LogicalExpression>, Double> votes,
+			Set<LexicalEntry<LogicalExpression>> toAdd,
+			Set<LexicalEntry<LogicalExpression>> known,
+			Set<LexicalEntry<LogicalExpression>> dynamic) {
 		// For each lexical entry, get the list of data items that proposed it.
-		// This is used for logging only.
 		int i = 0;
 		final Map<LexicalEntry<LogicalExpression>, List<Integer>> genertingDataItems = new HashMap<>();
 		for (final ILexiconImmutable<LogicalExpression> lexicon : generatedLexicons) {
@@ -279,22 +487,6 @@ public abstract class AbstractBatchLearner extends AbstractLearner {
 			++i;
 		}
 
-		// Get the votes.
-		final Map<LexicalEntry<LogicalExpression>, Double> votes = aggregateVotes(
-				generatedLexicons);
-
-		// Apply the voting strategy.
-		final Predicate<LexicalEntry<LogicalExpression>> hardFilter = entry -> !model
-				.getLexicon().contains(entry) && genlex.isGenerated(entry)
-				&& !entry.isDynamic();
-		final Set<LexicalEntry<LogicalExpression>> votedEntries = votingProcedure
-				.apply(hardFilter, votes);
-
-		// Make sure that the set of votedEntries doesn't contain any entries
-		// the hard filter should prune.
-		final Set<LexicalEntry<LogicalExpression>> toAdd = votedEntries.stream()
-				.filter(hardFilter).collect(Collectors.toSet());
-
 		// Sort the generated entries according to word and vote for logging.
 		final List<Entry<LexicalEntry<LogicalExpression>, Double>> sorted = votes
 				.entrySet().stream().sorted((e1, e2) -> {
@@ -307,8 +499,6 @@ public abstract class AbstractBatchLearner extends AbstractLearner {
 				}).collect(Collectors.toList());
 
 		// Log all generated entries and mark voted ones.
-		int skipped = 0;
-		int adding = 0;
 		LOG.info("Entries generated [%d]:", sorted.size());
 		for (final Entry<LexicalEntry<LogicalExpression>, Double> entryVote : sorted) {
 			final double vote = entryVote.getValue();
@@ -316,30 +506,20 @@ public abstract class AbstractBatchLearner extends AbstractLearner {
 			final String generatingItemsString = genertingDataItems.get(entry)
 					.stream().map(index -> index.toString())
 					.collect(Collectors.joining(", "));
-			final boolean voted = toAdd.contains(entry);
-			final boolean known = model.getLexicon().contains(entry);
-			if (voted) {
-				++adding;
-			} else if (!known) {
-				++skipped;
-			}
-			if (known) {
+			if (known.contains(entry)) {
 				// Existing entry.
 				LOG.info("[%f - exists] {%s} %s <- {%s}", vote,
 						entry.getOrigin(), entry, generatingItemsString);
-			} else if (genlex.isGenerated(entry)) {
-				LOG.info("[%f%s] {%s} %s <- {%s}", vote, voted ? " - ADD" : "",
-						entry.getOrigin(), entry, generatingItemsString);
-			} else {
+			} else if (dynamic.contains(entry)) {
 				// Dynamically generated entry.
 				LOG.info("[%f - dynamic] {%s} %s <- {%s}", vote,
 						entry.getOrigin(), entry, generatingItemsString);
+			} else {
+				LOG.info("[%f%s] {%s} %s <- {%s}", vote,
+						toAdd.contains(entry) ? " - ADD" : "",
+						entry.getOrigin(), entry, generatingItemsString);
 			}
-
 		}
-		LOG.info("Adding %d lexical entries", adding);
-		LOG.info("Skipped adding %d entries", skipped);
-		return toAdd;
 	}
 
 	protected boolean addAlignmentEntries(int epochNumber,
@@ -378,6 +558,9 @@ public abstract class AbstractBatchLearner extends AbstractLearner {
 		}
 	}
 
+	/**
+	 * Lexical induction method. Updates the model with the voted entries.
+	 */
 	abstract protected void doLexiconInduction(int epochNumber,
 			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model);
 
@@ -388,6 +571,37 @@ public abstract class AbstractBatchLearner extends AbstractLearner {
 			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
 			int epochNumber);
 
+	/**
+	 * Pipelined lexical induction and parameter estimation of a segment. The
+	 * GENLEX of each sample is immediately followed by its gradient
+	 * computation. The lexicon of the model must not be updated: the voting
+	 * and lexicon updates are done at the sync point following the segment.
+	 * GENLEX is skipped for samples in {@link #reachableDuringLastEpoch}, and
+	 * their indices are removed from it.
+	 *
+	 * @param segment
+	 *            The samples of the segment.
+	 * @param firstItem
+	 *            The index of the first sample of the segment in the training
+	 *            data.
+	 * @param generatedLexicons
+	 *            Output list for the lexicons generated for the segment.
+	 * @return The viterbi entries of the segment.
+	 */
+	protected abstract Set<LexicalEntry<LogicalExpression>> doPipelinedSegment(
+			int epochNumber,
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
+			List<LabeledAmrSentence> segment, int firstItem,
+			List<ILexiconImmutable<LogicalExpression>> generatedLexicons);
+
+	/**
+	 * Called at the end of a pipelined epoch, following its last sync point.
+	 */
+	protected void endPipelinedEpoch(int epochNumber,
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model) {
+		// Nothing to do by default.
+	}
+
 	protected boolean pruneLexicon(int epochNumber,
 			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
 			Set<LexicalEntry<LogicalExpression>> viterbiEntries) {
@@ -1,5 +1,6 @@
 package edu.uw.cs.lil.amr.learn.batch;
 
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -45,12 +46,13 @@ public abstract class AbstractVanillaBatchLearner extends AbstractBatchLearner {
 			Integer conditionedInferenceBeam,
 			ILexiconGenerator<LabeledAmrSentence, LogicalExpression, IJointModelImmutable<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression>> alignmentGenlex,
 			boolean resumedLearning,
-			ILexiconImmutable<LogicalExpression> entriesNotToPrune) {
+			ILexiconImmutable<LogicalExpression> entriesNotToPrune,
+			int syncInterval, boolean logVotes) {
 		super(numIterations, trainingData, sortData, maxSentenceLength, parser,
 				parserOutputLogger, categoryServices, genlex, filterFactory,
 				postIteration, pruneLexicon, votingProcedure, estimator,
 				gradientFunction, conditionedInferenceBeam, alignmentGenlex,
-				resumedLearning, entriesNotToPrune);
+				resumedLearning, entriesNotToPrune, syncInterval, logVotes);
 	}
 
 	@Override
@@ -61,60 +63,148 @@ public abstract class AbstractVanillaBatchLearner extends AbstractBatchLearner {
 		int itemCounter = -1;
 		final List<ILexiconImmutable<LogicalExpression>> generatedLexicons = new LinkedList<>();
 		for (final LabeledAmrSentence dataItem : trainingData) {
-			// Record sample processing start time.
-			final long startTime = System.currentTimeMillis();
-
-			// Log sample header.
-			LOG.info("%d : ================== [%d / LEX]", ++itemCounter,
-					epochNumber);
-			LOG.info("Sample type: %s", dataItem.getClass().getSimpleName());
-			LOG.info("%s", dataItem);
-
-			// Skip sample if reachable in last epoch.
-			if (reachableDuringLastEpoch.contains(itemCounter)) {
-				LOG.info("Reachable during last epoch -- skipping");
-				continue;
+			++itemCounter;
+			final ILexiconImmutable<LogicalExpression> generatedLexicon = induceLexicon(
+					epochNumber, model, dataItem, itemCounter,
+					reachableDuringLastEpoch.contains(itemCounter));
+			if (generatedLexicon != null) {
+				generatedLexicons.add(generatedLexicon);
 			}
+		}
 
-			// Skip sample, if over the length limit.
-			if (dataItem.getSample().getSample().getTokens()
-					.size() > maxSentenceLength) {
-				LOG.info("Training sample too long, skipping");
-				generatedLexicons.add(new Lexicon<>());
-				continue;
-			}
+		// Add all the entries to the model.
+		updateModel(model, generatedLexicons);
+	}
 
-			// Skip sample of the label is invalid.
-			if (!IsValidAmr.of(dataItem.getLabel(), true, true)) {
-				LOG.warn("Annotated LF is an invalid AMR -- skipping");
-				generatedLexicons.add(new Lexicon<>());
-				continue;
-			}
+	@Override
+	protected Set<LexicalEntry<LogicalExpression>> doParameterEstimation(
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
+			int epochNumber) {
 
-			stats.count("Processed for lexical induction", epochNumber);
+		// Iterate over the data to collect the gradients.
+		int itemCounter = -1;
+		final Set<LexicalEntry<LogicalExpression>> viterbiEntries = new HashSet<>();
+		for (final LabeledAmrSentence dataItem : trainingData) {
+			estimateSample(model, epochNumber, dataItem, ++itemCounter,
+					viterbiEntries);
+		}
+
+		endParameterEstimation(model);
+
+		return viterbiEntries;
+	}
 
-			// Track the number of data items that propose an entry.
-			final ILexiconImmutable<LogicalExpression> generatedLexicon = generateLexicalEntries(
-					dataItem, model, itemCounter, epochNumber);
-			LOG.info("Generated %d entries", generatedLexicon.size());
-			if (generatedLexicon.size() > 0) {
-				stats.count("Reachable under GENLEX", epochNumber);
+	@Override
+	protected Set<LexicalEntry<LogicalExpression>> doPipelinedSegment(
+			int epochNumber,
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
+			List<LabeledAmrSentence> segment, int firstItem,
+			List<ILexiconImmutable<LogicalExpression>> generatedLexicons) {
+		int itemCounter = firstItem - 1;
+		final Set<LexicalEntry<LogicalExpression>> viterbiEntries = new HashSet<>();
+		for (final LabeledAmrSentence dataItem : segment) {
+			++itemCounter;
+
+			// Lexical induction. The generated lexicon is voted on at the sync
+			// point.
+			if (genlex != null) {
+				final ILexiconImmutable<LogicalExpression> generatedLexicon = induceLexicon(
+						epochNumber, model, dataItem, itemCounter,
+						reachableDuringLastEpoch.remove(itemCounter));
+				if (generatedLexicon != null) {
+					generatedLexicons.add(generatedLexicon);
+				}
 			}
-			generatedLexicons.add(generatedLexicon);
 
-			// Record statistics.
-			stats.mean("Sample lexical induction",
-					(System.currentTimeMillis() - startTime) / 1000.0, "sec");
-			LOG.info(
-					"Total sample lexical induction time: %.4fsec [mean: %.4fsec]",
-					(System.currentTimeMillis() - startTime) / 1000.0,
-					stats.getMean("Sample lexical induction"));
-			LOG.info("System memory: %s", MemoryReport.generate());
+			// Parameter estimation.
+			estimateSample(model, epochNumber, dataItem, itemCounter,
+					viterbiEntries);
+		}
+		return viterbiEntries;
+	}
 
+	@Override
+	protected void endPipelinedEpoch(int epochNumber,
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model) {
+		endParameterEstimation(model);
+	}
+
+	/**
+	 * Called at the end of the parameter estimation of an epoch.
+	 */
+	protected void endParameterEstimation(
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model) {
+		// Nothing to do by default.
+	}
+
+	/**
+	 * Parameter estimation for a single sample.
+	 *
+	 * @param viterbiEntries
+	 *            Output set to aggregate the viterbi entries of the sample.
+	 */
+	protected abstract void estimateSample(
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
+			int epochNumber, LabeledAmrSentence dataItem, int itemCounter,
+			Set<LexicalEntry<LogicalExpression>> viterbiEntries);
+
+	/**
+	 * Lexical induction for a single sample.
+	 *
+	 * @return The generated lexicon, or null if the sample was reachable
+	 *         during the last epoch.
+	 */
+	private ILexiconImmutable<LogicalExpression> induceLexicon(int epochNumber,
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
+			LabeledAmrSentence dataItem, int itemCounter,
+			boolean reachableInPrev) {
+		// Record sample processing start time.
+		final long startTime = System.currentTimeMillis();
+
+		// Log sample header.
+		LOG.info("%d : ================== [%d / LEX]", itemCounter,
+				epochNumber);
+		LOG.info("Sample type: %s", dataItem.getClass().getSimpleName());
+		LOG.info("%s", dataItem);
+
+		// Skip sample if reachable in last epoch.
+		if (reachableInPrev) {
+			LOG.info("Reachable during last epoch -- skipping");
+			return null;
 		}
 
-		// Add all the entries to the model.
-		updateModel(model, generatedLexicons);
+		// Skip sample, if over the length limit.
+		if (dataItem.getSample().getSample().getTokens()
+				.size() > maxSentenceLength) {
+			LOG.info("Training sample too long, skipping");
+			return new Lexicon<>();
+		}
+
+		// Skip sample of the label is invalid.
+		if (!IsValidAmr.of(dataItem.getLabel(), true, true)) {
+			LOG.warn("Annotated LF is an invalid AMR -- skipping");
+			return new Lexicon<>();
+		}
+
+		stats.count("Processed for lexical induction", epochNumber);
+
+		// Track the number of data items that propose an entry.
+		final ILexiconImmutable<LogicalExpression> generatedLexicon = generateLexicalEntries(
+				dataItem, model, itemCounter, epochNumber);
+		LOG.info("Generated %d entries", generatedLexicon.size());
+		if (generatedLexicon.size() > 0) {
+			stats.count("Reachable under GENLEX", epochNumber);
+		}
+
+		// Record statistics.
+		stats.mean("Sample lexical induction",
+				(System.currentTimeMillis() - startTime) / 1000.0, "sec");
+		LOG.info("Total sample lexical induction time: %.4fsec [mean: %.4fsec]",
+				(System.currentTimeMillis() - startTime) / 1000.0,
+				stats.getMean("Sample lexical induction"));
+		LOG.info("System memory: %s", MemoryReport.generate());
+
+		return generatedLexicon;
 	}
 
 }
@@ -1,6 +1,5 @@
 package edu.uw.cs.lil.amr.learn.batch;
 
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.BiFunction;
@@ -38,17 +37,27 @@ import edu.uw.cs.lil.amr.learn.gradient.GradientComputation;
 import edu.uw.cs.lil.amr.learn.gradient.IGradientFunction;
 import edu.uw.cs.lil.amr.parser.GraphAmrParser;
 import edu.uw.cs.lil.amr.parser.IsValidAmr;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.FeatureWeights;
 
 /**
- * Simple batch learner. Simply sums the gradients.
+ * Simple batch learner. Simply sums the gradients. The update, including L2
+ * regularization, is applied once at the end of each epoch, also when the
+ * epoch is pipelined, so the sync interval doesn't change the objective.
+ * However, in a pipelined epoch, the gradients of samples following a sync
+ * point are computed with the lexicon voted at that point.
  *
  * @author Yoav Artzi
  */
 public class BatchLearner extends AbstractVanillaBatchLearner {
 
-	private final Double	regularizationCoef;
+	private final Double		regularizationCoef;
 
-	private final double	stepSize;
+	private final double		stepSize;
+
+	/**
+	 * The update aggregated during the current epoch.
+	 */
+	private final IHashVector	update	= HashVectorFactory.create();
 
 	public BatchLearner(int numIterations,
 			IDataCollection<LabeledAmrSentence> trainingData, boolean sortData,
@@ -65,86 +74,20 @@ public class BatchLearner extends AbstractVanillaBatchLearner {
 			Integer conditionedInferenceBeam,
 			ILexiconGenerator<LabeledAmrSentence, LogicalExpression, IJointModelImmutable<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression>> alignmentGenlex,
 			boolean resumedLearning,
-			ILexiconImmutable<LogicalExpression> entriesNotToPrune) {
+			ILexiconImmutable<LogicalExpression> entriesNotToPrune,
+			int syncInterval, boolean logVotes) {
 		super(numIterations, trainingData, sortData, maxSentenceLength, parser,
 				parserOutputLogger, categoryServices, genlex, filterFactory,
 				postIteration, pruneLexicon, votingProcedure, estimator,
 				gradientFunction, conditionedInferenceBeam, alignmentGenlex,
-				resumedLearning, entriesNotToPrune);
+				resumedLearning, entriesNotToPrune, syncInterval, logVotes);
 		this.stepSize = stepSize;
 		this.regularizationCoef = regularizationCoef;
 	}
 
 	@Override
-	protected Set<LexicalEntry<LogicalExpression>> doParameterEstimation(
-			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
-			int epochNumber) {
-
-		// Iterate over the data to collect the gradients.
-		final IHashVector update = HashVectorFactory.create();
-		int itemCounter = -1;
-		final Set<LexicalEntry<LogicalExpression>> viterbiEntries = new HashSet<>();
-		for (final LabeledAmrSentence dataItem : trainingData) {
-			// Record sample processing start time.
-			final long startTime = System.currentTimeMillis();
-
-			// Log sample header.
-			LOG.info("%d : ================== [%d / PARAM]", ++itemCounter,
-					epochNumber);
-			LOG.info("Sample type: %s", dataItem.getClass().getSimpleName());
-			LOG.info("%s", dataItem);
-
-			// Skip sample, if over the length limit.
-			if (dataItem.getSample().getSample().getTokens()
-					.size() > maxSentenceLength) {
-				LOG.warn("Training sample too long, skipping");
-				continue;
-			}
-
-			// Skip sample of the label is invalid.
-			if (!IsValidAmr.of(dataItem.getLabel(), true, true)) {
-				LOG.warn("Annotated LF is an invalid AMR -- skipping");
-				continue;
-			}
-
-			stats.count("Processed for parameter estimation", epochNumber);
-
-			// Compute the gradient.
-			final GradientComputation gradientComputation = gradientFunction
-					.of(dataItem,
-							model.createJointDataItemModel(
-									dataItem.getSample()),
-							itemCounter, epochNumber, parser, filterFactory,
-							parserOutputLogger);
-
-			// Apply updates to the learning statistics.
-			gradientComputation.getStatUpdates().accept(stats);
-
-			// Aggregate the viterbi entries.
-			viterbiEntries.addAll(gradientComputation.getViterbiEntries());
-
-			// Mark the sample as reachable.
-			if (!gradientComputation.getViterbiEntries().isEmpty()) {
-				reachableDuringLastEpoch.add(itemCounter);
-			}
-
-			if (gradientComputation.getGradient() == null) {
-				LOG.info("No gradient for data item");
-				continue;
-			}
-
-			if (!model.isValidWeightVector(gradientComputation.getGradient())) {
-				throw new IllegalStateException("Invalid gradient: "
-						+ gradientComputation.getGradient());
-			}
-
-			// Add the gradient into the update.
-			gradientComputation.getGradient().addTimesInto(1.0, update);
-
-			LOG.info("Data item processing time: %.2fsec",
-					(System.currentTimeMillis() - startTime) / 1000.0);
-		}
-
+	protected void endParameterEstimation(
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model) {
 		// Scale the update.
 		update.multiplyBy(stepSize);
 
@@ -161,8 +104,72 @@ public class BatchLearner extends AbstractVanillaBatchLearner {
 
 		// Apply the update.
 		update.addTimesInto(1.0, model.getTheta());
+		FeatureWeights.invalidate(model.getTheta());
+
+		update.clear();
+	}
+
+	@Override
+	protected void estimateSample(
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
+			int epochNumber, LabeledAmrSentence dataItem, int itemCounter,
+			Set<LexicalEntry<LogicalExpression>> viterbiEntries) {
+		// Record sample processing start time.
+		final long startTime = System.currentTimeMillis();
+
+		// Log sample header.
+		LOG.info("%d : ================== [%d / PARAM]", itemCounter,
+				epochNumber);
+		LOG.info("Sample type: %s", dataItem.getClass().getSimpleName());
+		LOG.info("%s", dataItem);
+
+		// Skip sample, if over the length limit.
+		if (dataItem.getSample().getSample().getTokens()
+				.size() > maxSentenceLength) {
+			LOG.warn("Training sample too long, skipping");
+			return;
+		}
+
+		// Skip sample of the label is invalid.
+		if (!IsValidAmr.of(dataItem.getLabel(), true, true)) {
+			LOG.warn("Annotated LF is an invalid AMR -- skipping");
+			return;
+		}
+
+		stats.count("Processed for parameter estimation", epochNumber);
+
+		// Compute the gradient.
+		final GradientComputation gradientComputation = gradientFunction.of(
+				dataItem, model.createJointDataItemModel(dataItem.getSample()),
+				itemCounter, epochNumber, parser, filterFactory,
+				parserOutputLogger);
+
+		// Apply updates to the learning statistics.
+		gradientComputation.getStatUpdates().accept(stats);
+
+		// Aggregate the viterbi entries.
+		viterbiEntries.addAll(gradientComputation.getViterbiEntries());
+
+		// Mark the sample as reachable.
+		if (!gradientComputation.getViterbiEntries().isEmpty()) {
+			reachableDuringLastEpoch.add(itemCounter);
+		}
+
+		if (gradientComputation.getGradient() == null) {
+			LOG.info("No gradient for data item");
+			return;
+		}
+
+		if (!model.isValidWeightVector(gradientComputation.getGradient())) {
+			throw new IllegalStateException(
+					"Invalid gradient: " + gradientComputation.getGradient());
+		}
+
+		// Add the gradient into the update.
+		gradientComputation.getGradient().addTimesInto(1.0, update);
 
-		return viterbiEntries;
+		LOG.info("Data item processing time: %.2fsec",
+				(System.currentTimeMillis() - startTime) / 1000.0);
 	}
 
 	public static class Creator
@@ -278,7 +285,8 @@ public class BatchLearner extends AbstractVanillaBatchLearner {
 					repo.get(params.get("estimator")),
 					repo.get(params.get("gradient")), conditionedInferenceBeam,
 					alignmentGenlex, params.getAsBoolean("resume", false),
-					keepEntries);
+					keepEntries, params.getAsInteger("syncInterval", 0),
+					params.getAsBoolean("logVotes", true));
 		}
 
 		@Override
@@ -289,6 +297,10 @@ public class BatchLearner extends AbstractVanillaBatchLearner {
 		@Override
 		public ResourceUsage usage() {
 			return ResourceUsage.builder(type, BatchLearner.class)
+					.addParam("syncInterval", "int",
+							"Number of samples between lexicon sync points. If positive, the gradient of each sample is computed immediately following its GENLEX, and voting is done at sync points. The update and L2 regularization are applied once per epoch (default: 0, no pipelining)")
+					.addParam("logVotes", Boolean.class,
+							"Log every generated lexical entry with its votes and the samples that generated it at each voting step (default: true)")
 					.addParam("keepEntries", ILexiconImmutable.class,
 							"Entries to keep during lexicon prunning despite if they are used or not (default: none)")
 					.addParam("resume", Boolean.class,
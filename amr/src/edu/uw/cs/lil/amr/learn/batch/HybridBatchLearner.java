@@ -1,6 +1,5 @@
 package edu.uw.cs.lil.amr.learn.batch;
 
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.BiFunction;
@@ -37,9 +36,12 @@ import edu.uw.cs.lil.amr.learn.gradient.GradientComputation;
 import edu.uw.cs.lil.amr.learn.gradient.IGradientFunction;
 import edu.uw.cs.lil.amr.parser.GraphAmrParser;
 import edu.uw.cs.lil.amr.parser.IsValidAmr;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.FeatureWeights;
 
 /**
- * Batch learner with an online AdaGrad parameter estimation step.
+ * Batch learner with an online AdaGrad parameter estimation step. When
+ * pipelined, each update is applied immediately following the GENLEX and
+ * gradient computation of its sample.
  *
  * @author Yoav Artzi
  */
@@ -59,88 +61,82 @@ public class HybridBatchLearner extends AbstractVanillaBatchLearner {
 			Integer conditionedInferenceBeam,
 			ILexiconGenerator<LabeledAmrSentence, LogicalExpression, IJointModelImmutable<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression>> alignmentGenlex,
 			boolean resumedLearning,
-			ILexiconImmutable<LogicalExpression> entriesNotToPrune) {
+			ILexiconImmutable<LogicalExpression> entriesNotToPrune,
+			int syncInterval, boolean logVotes) {
 		super(numIterations, trainingData, sortData, maxSentenceLength, parser,
 				parserOutputLogger, categoryServices, genlex, filterFactory,
 				postIteration, pruneLexicon, votingProcedure, estimator,
 				gradientFunction, conditionedInferenceBeam, alignmentGenlex,
-				resumedLearning, entriesNotToPrune);
+				resumedLearning, entriesNotToPrune, syncInterval, logVotes);
 	}
 
 	@Override
-	protected Set<LexicalEntry<LogicalExpression>> doParameterEstimation(
+	protected void estimateSample(
 			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
-			int epochNumber) {
-
-		// Iterate over the data to collect the gradients.
-		int itemCounter = -1;
-		final Set<LexicalEntry<LogicalExpression>> viterbiEntries = new HashSet<>();
-		for (final LabeledAmrSentence dataItem : trainingData) {
-			// Record sample processing start time.
-			final long startTime = System.currentTimeMillis();
-
-			final IJointDataItemModel<LogicalExpression, LogicalExpression> dataItemModel = model
-					.createJointDataItemModel(dataItem.getSample());
-
-			// Log sample header.
-			LOG.info("%d : ================== [%d / PARAM]", ++itemCounter,
-					epochNumber);
-			LOG.info("Sample type: %s", dataItem.getClass().getSimpleName());
-			LOG.info("%s", dataItem);
-
-			// Skip sample, if over the length limit.
-			if (dataItem.getSample().getSample().getTokens()
-					.size() > maxSentenceLength) {
-				LOG.warn("Training sample too long, skipping");
-				continue;
-			}
+			int epochNumber, LabeledAmrSentence dataItem, int itemCounter,
+			Set<LexicalEntry<LogicalExpression>> viterbiEntries) {
+		// Record sample processing start time.
+		final long startTime = System.currentTimeMillis();
+
+		final IJointDataItemModel<LogicalExpression, LogicalExpression> dataItemModel = model
+				.createJointDataItemModel(dataItem.getSample());
+
+		// Log sample header.
+		LOG.info("%d : ================== [%d / PARAM]", itemCounter,
+				epochNumber);
+		LOG.info("Sample type: %s", dataItem.getClass().getSimpleName());
+		LOG.info("%s", dataItem);
+
+		// Skip sample, if over the length limit.
+		if (dataItem.getSample().getSample().getTokens()
+				.size() > maxSentenceLength) {
+			LOG.warn("Training sample too long, skipping");
+			return;
+		}
 
-			// Skip sample of the label is invalid.
-			if (!IsValidAmr.of(dataItem.getLabel(), true, true)) {
-				LOG.warn("Annotated LF is an invalid AMR -- skipping");
-				continue;
-			}
+		// Skip sample of the label is invalid.
+		if (!IsValidAmr.of(dataItem.getLabel(), true, true)) {
+			LOG.warn("Annotated LF is an invalid AMR -- skipping");
+			return;
+		}
 
-			stats.count("Processed for parameter estimation", epochNumber);
+		stats.count("Processed for parameter estimation", epochNumber);
 
-			final GradientComputation gradientComputation = gradientFunction.of(
-					dataItem, dataItemModel, itemCounter, epochNumber, parser,
-					filterFactory, parserOutputLogger);
+		final GradientComputation gradientComputation = gradientFunction.of(
+				dataItem, dataItemModel, itemCounter, epochNumber, parser,
+				filterFactory, parserOutputLogger);
 
-			// Apply updates to the learning statistics.
-			gradientComputation.getStatUpdates().accept(stats);
+		// Apply updates to the learning statistics.
+		gradientComputation.getStatUpdates().accept(stats);
 
-			// Aggregate the viterbi entries.
-			viterbiEntries.addAll(gradientComputation.getViterbiEntries());
+		// Aggregate the viterbi entries.
+		viterbiEntries.addAll(gradientComputation.getViterbiEntries());
 
-			// Mark the sample as reachable.
-			if (!gradientComputation.getViterbiEntries().isEmpty()) {
-				reachableDuringLastEpoch.add(itemCounter);
-			}
+		// Mark the sample as reachable.
+		if (!gradientComputation.getViterbiEntries().isEmpty()) {
+			reachableDuringLastEpoch.add(itemCounter);
+		}
 
-			if (gradientComputation.getGradient() != null) {
-				// Validate the gradient.
-				if (!model.isValidWeightVector(
-						gradientComputation.getGradient())) {
-					throw new IllegalStateException("Invalid gradient: "
-							+ gradientComputation.getGradient());
-				}
-
-				if (updateProcedure.applyUpdate(
-						gradientComputation.getGradient(), model.getTheta())) {
-					stats.count("Update", epochNumber);
-				} else {
-					LOG.info("No update%s",
-							gradientComputation.isLabelIsOptimal() ? ""
-									: ", although best is not the correct result");
-				}
+		if (gradientComputation.getGradient() != null) {
+			// Validate the gradient.
+			if (!model.isValidWeightVector(gradientComputation.getGradient())) {
+				throw new IllegalStateException("Invalid gradient: "
+						+ gradientComputation.getGradient());
 			}
 
-			LOG.info("Data item processing time: %.2fsec",
-					(System.currentTimeMillis() - startTime) / 1000.0);
+			if (updateProcedure.applyUpdate(gradientComputation.getGradient(),
+					model.getTheta())) {
+				FeatureWeights.invalidate(model.getTheta());
+				stats.count("Update", epochNumber);
+			} else {
+				LOG.info("No update%s",
+						gradientComputation.isLabelIsOptimal() ? ""
+								: ", although best is not the correct result");
+			}
 		}
 
-		return viterbiEntries;
+		LOG.info("Data item processing time: %.2fsec",
+				(System.currentTimeMillis() - startTime) / 1000.0);
 	}
 
 	public static class Creator
@@ -252,7 +248,8 @@ public class HybridBatchLearner extends AbstractVanillaBatchLearner {
 					repo.<IWeightUpdateProcedure> get(params.get("estimator")),
 					repo.get(params.get("gradient")), conditionedInferenceBeam,
 					alignmentGenlex, params.getAsBoolean("resume", false),
-					keepEntries);
+					keepEntries, params.getAsInteger("syncInterval", 0),
+					params.getAsBoolean("logVotes", true));
 		}
 
 		@Override
@@ -263,6 +260,10 @@ public class HybridBatchLearner extends AbstractVanillaBatchLearner {
 		@Override
 		public ResourceUsage usage() {
 			return ResourceUsage.builder(type, HybridBatchLearner.class)
+					.addParam("syncInterval", "int",
+							"Number of samples between lexicon sync points. If positive, the update of each sample is computed and applied immediately following its GENLEX, and voting is done at sync points (default: 0, no pipelining)")
+					.addParam("logVotes", Boolean.class,
+							"Log every generated lexical entry with its votes and the samples that generated it at each voting step (default: true)")
 					.addParam("keepEntries", ILexiconImmutable.class,
 							"Entries to keep during lexicon prunning despite if they are used or not (default: none)")
 					.addParam("resume", Boolean.class,
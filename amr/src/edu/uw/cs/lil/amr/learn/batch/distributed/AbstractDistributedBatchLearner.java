@@ -16,7 +16,9 @@ import java.util.function.Function;
 import java.util.function.IntConsumer;
 import java.util.function.Predicate;
 
-import edu.cornell.cs.nlp.spf.base.hashvector.IHashVectorImmutable;
+import edu.cornell.cs.nlp.spf.base.hashvector.HashVectorFactory;
+import edu.cornell.cs.nlp.spf.base.hashvector.IHashVector;
+import edu.cornell.cs.nlp.spf.base.hashvector.KeyArgs;
 import edu.cornell.cs.nlp.spf.ccg.categories.ICategoryServices;
 import edu.cornell.cs.nlp.spf.ccg.lexicon.ILexiconImmutable;
 import edu.cornell.cs.nlp.spf.ccg.lexicon.LexicalEntry;
@@ -34,6 +36,7 @@ import edu.cornell.cs.nlp.spf.reliabledist.EnvironmentConfig;
 import edu.cornell.cs.nlp.spf.reliabledist.JobFuture;
 import edu.cornell.cs.nlp.spf.reliabledist.ReliableManager;
 import edu.cornell.cs.nlp.spf.test.exec.distributed.ExecTestEnvironment;
+import edu.cornell.cs.nlp.utils.composites.Pair;
 import edu.cornell.cs.nlp.utils.log.ILogger;
 import edu.cornell.cs.nlp.utils.log.LoggerFactory;
 import edu.cornell.cs.nlp.utils.system.MemoryReport;
@@ -41,9 +44,11 @@ import edu.uw.cs.lil.amr.data.AMRMeta;
 import edu.uw.cs.lil.amr.data.LabeledAmrSentence;
 import edu.uw.cs.lil.amr.learn.batch.AbstractBatchLearner;
 import edu.uw.cs.lil.amr.learn.estimators.IWeightUpdateProcedure;
+import edu.uw.cs.lil.amr.learn.gradient.CompressedHashVector;
 import edu.uw.cs.lil.amr.learn.gradient.IGradientFunction;
 import edu.uw.cs.lil.amr.parser.GraphAmrParser;
 import edu.uw.cs.lil.amr.parser.IsValidAmr;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.FeatureWeights;
 
 public abstract class AbstractDistributedBatchLearner
 		extends AbstractBatchLearner {
@@ -52,8 +57,28 @@ public abstract class AbstractDistributedBatchLearner
 			.create(AbstractDistributedBatchLearner.class);
 
 	private final LearningEnvironment	environment;
+	/**
+	 * Force the next parameters broadcast to send a full snapshot instead of
+	 * a delta. Set when a worker reports a gap in the parameter versions.
+	 */
+	protected boolean					forceParametersSnapshot		= false;
 	protected final ReliableManager		manager;
-	protected boolean					remoteModelIsUpToDate	= false;
+	/**
+	 * The version of the last parameters update sent to the workers.
+	 */
+	protected long						parametersVersion			= 0;
+	protected boolean					remoteModelIsUpToDate		= false;
+	/**
+	 * The parameters of the remote model as of {@link #parametersVersion}.
+	 * Used to compute the delta of the next update.
+	 */
+	private IHashVector					remoteParameters			= null;
+	/**
+	 * Set to false when the model parameters are updated, but the model
+	 * structure is unchanged. In this case, only the changed parameters are
+	 * sent to the workers.
+	 */
+	protected boolean					remoteParametersAreUpToDate	= true;
 
 	public AbstractDistributedBatchLearner(int numIterations,
 			IDataCollection<LabeledAmrSentence> trainingData, boolean sortData,
@@ -69,12 +94,13 @@ public abstract class AbstractDistributedBatchLearner
 			Integer conditionedInferenceBeam,
 			ILexiconGenerator<LabeledAmrSentence, LogicalExpression, IJointModelImmutable<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression>> alignmentGenlex,
 			boolean resumedLearning,
-			ILexiconImmutable<LogicalExpression> entriesNotToPrune) {
+			ILexiconImmutable<LogicalExpression> entriesNotToPrune,
+			int syncInterval, boolean logVotes) {
 		super(numIterations, trainingData, sortData, maxSentenceLength, parser,
 				parserOutputLogger, categoryServices, genlex, filterFactory,
 				postIteration, pruneLexicon, votingProcedure, estimator,
 				gradientFunction, conditionedInferenceBeam, alignmentGenlex,
-				resumedLearning, entriesNotToPrune);
+				resumedLearning, entriesNotToPrune, syncInterval, logVotes);
 		this.manager = manager;
 		this.environment = new LearningEnvironment();
 	}
@@ -109,23 +135,10 @@ public abstract class AbstractDistributedBatchLearner
 		manager.updateEnviroment(LearningEnvironment.setGenlex(genlex));
 
 		// Update the environment with the most current model.
-		if (!remoteModelIsUpToDate) {
-			if (!manager
-					.updateEnviroment(LearningEnvironment.setModel(model))) {
-				LOG.error("Failed to update environment");
-				throw new IllegalStateException();
-			}
-			remoteModelIsUpToDate = true;
-		}
+		updateRemoteModel(model);
 
-		final List<JobFuture<LexiconInductionResult>> futures = new ArrayList<>(
-				trainingData.size());
-		int itemCounter = -1;
-		for (final LabeledAmrSentence dataItem : trainingData) {
-			itemCounter++;
-			futures.add(manager.execute(new LexiconInductionJob(dataItem,
-					reachableDuringLastEpoch.contains(itemCounter))));
-		}
+		final List<JobFuture<LexiconInductionResult>> futures = submitLexiconInduction(
+				trainingData, 0, trainingData.size());
 
 		boolean working = true;
 		final long distStartTime = System.currentTimeMillis();
@@ -159,52 +172,19 @@ public abstract class AbstractDistributedBatchLearner
 				.iterator();
 		final Iterator<JobFuture<LexiconInductionResult>> futureIterator = futures
 				.iterator();
-		itemCounter = -1;
+		int itemCounter = -1;
 		long computeTime = 0;
 		final List<ILexiconImmutable<LogicalExpression>> generatedLexicons = new LinkedList<>();
 		while (dataIterator.hasNext()) {
-			final LabeledAmrSentence dataItem = dataIterator.next();
-			final JobFuture<LexiconInductionResult> future = futureIterator
-					.next();
-
-			// Log sample header.
-			LOG.info("%d : ================== [%d / LEX]", ++itemCounter,
-					epochNumber);
-			LOG.info("Sample type: %s", dataItem.getClass().getSimpleName());
-			LOG.info("%s", dataItem);
-
-			final LexiconInductionResult result;
-			try {
-				result = future.get();
-			} catch (InterruptedException | ExecutionException e) {
-				LOG.error("Job failed: %s", e);
-				continue;
-			}
-
-			try {
-				LOG.info(future.getLog());
-			} catch (final InterruptedException e) {
-				LOG.error("Failed to get log due to an exception: %s", e);
+			final LexiconInductionResult result = collectLexiconInduction(
+					epochNumber, ++itemCounter, dataIterator.next(),
+					futureIterator.next());
+			if (result != null) {
+				computeTime += result.totalTime;
+
+				// Add the generated lexicon to the list of lexicons.
+				generatedLexicons.add(result.generatedLexicon);
 			}
-
-			// Record stored statistics.
-			if (!result.skipped) {
-				stats.count("Processed for lexical induction", epochNumber);
-				stats.mean("GENLEX", result.genlexTime / 1000.0, "sec");
-				if (result.generatedLexicon.size() > 0) {
-					stats.count("Reachable under GENLEX", epochNumber);
-				}
-				if (result.newLexicalEntries > 0) {
-					stats.appendSampleStat(itemCounter, epochNumber,
-							result.newLexicalEntries);
-				}
-			}
-			stats.mean("Sample lexical induction", result.totalTime / 1000.0,
-					"sec");
-			computeTime += result.totalTime;
-
-			// Add the generated lexicon to the list of lexicons.
-			generatedLexicons.add(result.generatedLexicon);
 		}
 
 		// Log speedup.
@@ -215,15 +195,192 @@ public abstract class AbstractDistributedBatchLearner
 				computeTime / (double) realTotalTime);
 
 		// Add all the entries to the model.
-		if (updateModel(model, generatedLexicons)) {
-			remoteModelIsUpToDate = false;
-		}
+		updateModel(model, generatedLexicons);
+	}
+
+	/**
+	 * Wait for a lexical induction job and record its statistics.
+	 *
+	 * @return The result of the job, or null if it failed.
+	 */
+	protected LexiconInductionResult collectLexiconInduction(int epochNumber,
+			int itemCounter, LabeledAmrSentence dataItem,
+			JobFuture<LexiconInductionResult> future) {
+		// Log sample header.
+		LOG.info("%d : ================== [%d / LEX]", itemCounter,
+				epochNumber);
+		LOG.info("Sample type: %s", dataItem.getClass().getSimpleName());
+		LOG.info("%s", dataItem);
+
+		final LexiconInductionResult result;
+		try {
+			result = future.get();
+		} catch (InterruptedException | ExecutionException e) {
+			LOG.error("Job failed: %s", e);
+			return null;
+		}
+
+		try {
+			LOG.info(future.getLog());
+		} catch (final InterruptedException e) {
+			LOG.error("Failed to get log due to an exception: %s", e);
+		}
+
+		recordLexiconInduction(epochNumber, itemCounter, result);
+		return result;
 	}
 
 	protected LearningEnvironment getEnvironment() {
 		return environment;
 	}
 
+	/**
+	 * Record the statistics of a lexical induction result.
+	 */
+	protected void recordLexiconInduction(int epochNumber, int itemCounter,
+			LexiconInductionResult result) {
+		// A worker missed a parameter update, so the next broadcast must be
+		// a full snapshot.
+		if (result.staleParameters) {
+			stats.count("Stale remote parameters", epochNumber);
+			forceParametersSnapshot = true;
+		}
+
+		// Record stored statistics.
+		if (!result.skipped) {
+			stats.count("Processed for lexical induction", epochNumber);
+			stats.mean("GENLEX", result.genlexTime / 1000.0, "sec");
+			if (result.generatedLexicon.size() > 0) {
+				stats.count("Reachable under GENLEX", epochNumber);
+			}
+			if (result.newLexicalEntries > 0) {
+				stats.appendSampleStat(itemCounter, epochNumber,
+						result.newLexicalEntries);
+			}
+		}
+		stats.mean("Sample lexical induction", result.totalTime / 1000.0,
+				"sec");
+	}
+
+	/**
+	 * Submit a lexical induction job for each sample. GENLEX is skipped for
+	 * samples that were reachable during the last epoch, and their indices
+	 * are removed from {@link #reachableDuringLastEpoch}.
+	 */
+	protected List<JobFuture<LexiconInductionResult>> submitLexiconInduction(
+			Iterable<LabeledAmrSentence> data, int firstItem, int size) {
+		final List<JobFuture<LexiconInductionResult>> futures = new ArrayList<>(
+				size);
+		int itemCounter = firstItem - 1;
+		for (final LabeledAmrSentence dataItem : data) {
+			itemCounter++;
+			futures.add(manager.execute(new LexiconInductionJob(dataItem,
+					reachableDuringLastEpoch.remove(itemCounter),
+					parametersVersion)));
+		}
+		return futures;
+	}
+
+	@Override
+	protected boolean updateModel(
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
+			List<ILexiconImmutable<LogicalExpression>> generatedLexicons) {
+		if (super.updateModel(model, generatedLexicons)) {
+			remoteModelIsUpToDate = false;
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	/**
+	 * Send the changes in the model parameters since the last update to the
+	 * workers. The update is versioned. Workers apply the updates in order,
+	 * and report a version gap back through the jobs they process, in which
+	 * case the next update is a full snapshot of the parameters. A snapshot of
+	 * unchanged parameters keeps the current version, so jobs that expect it
+	 * remain valid on workers that didn't miss any update.
+	 */
+	protected void updateRemoteParameters(
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model) {
+		final IHashVector theta = model.getTheta();
+		if (remoteParameters == null) {
+			sendParametersSnapshot(theta, ++parametersVersion);
+		} else {
+			// Collect the changed parameters. Parameters that were removed are
+			// sent as zeros.
+			final IHashVector delta = HashVectorFactory.create();
+			for (final Pair<KeyArgs, Double> keyValue : theta) {
+				if (remoteParameters.get(keyValue.first()) != keyValue
+						.second()) {
+					delta.set(keyValue.first(), keyValue.second());
+				}
+			}
+			for (final Pair<KeyArgs, Double> keyValue : remoteParameters) {
+				if (keyValue.second() != 0.0
+						&& theta.get(keyValue.first()) == 0.0) {
+					delta.set(keyValue.first(), 0.0);
+				}
+			}
+
+			if (forceParametersSnapshot) {
+				sendParametersSnapshot(theta, delta.size() > 0
+						? ++parametersVersion : parametersVersion);
+			} else if (delta.size() > 0) {
+				final CompressedHashVector compressedDelta = CompressedHashVector
+						.of(delta);
+				updateEnvironment(LearningEnvironment.updateModelParameters(
+						new ParametersUpdate(++parametersVersion,
+								compressedDelta)));
+				for (final Pair<KeyArgs, Double> keyValue : delta) {
+					remoteParameters.set(keyValue.first(), keyValue.second());
+				}
+				LOG.info(
+						"Sent parameters delta v%d: %d/%d features (%d bytes)",
+						parametersVersion, compressedDelta.size(),
+						theta.size(), compressedDelta.numBytes());
+			}
+		}
+		remoteParametersAreUpToDate = true;
+	}
+
+	private void sendParametersSnapshot(IHashVector theta, long version) {
+		final CompressedHashVector snapshot = CompressedHashVector.of(theta);
+		updateEnvironment(LearningEnvironment
+				.setModelParameters(new ParametersUpdate(version, snapshot)));
+		remoteParameters = HashVectorFactory.create(theta);
+		forceParametersSnapshot = false;
+		LOG.info("Sent parameters snapshot v%d: %d features (%d bytes)",
+				version, snapshot.size(), snapshot.numBytes());
+	}
+
+	private void updateEnvironment(EnvironmentConfig<?> update) {
+		if (!manager.updateEnviroment(update)) {
+			LOG.error("Failed to update environment");
+			throw new IllegalStateException();
+		}
+	}
+
+	/**
+	 * Update the remote model. If the structure of the model changed, the
+	 * entire model is sent. Otherwise, only the parameters are updated, if
+	 * required.
+	 */
+	protected void updateRemoteModel(
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model) {
+		if (!remoteModelIsUpToDate) {
+			updateEnvironment(LearningEnvironment.setModel(model));
+			updateEnvironment(
+					LearningEnvironment.setParametersVersion(++parametersVersion));
+			remoteParameters = HashVectorFactory.create(model.getTheta());
+			forceParametersSnapshot = false;
+			remoteModelIsUpToDate = true;
+			remoteParametersAreUpToDate = true;
+		} else if (!remoteParametersAreUpToDate || forceParametersSnapshot) {
+			updateRemoteParameters(model);
+		}
+	}
+
 	@Override
 	protected boolean pruneLexicon(int epochNumber,
 			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
@@ -259,13 +416,22 @@ public abstract class AbstractDistributedBatchLearner
 		super.train(model);
 	}
 
-	private static class LexiconInductionJob
+	/**
+	 * Lexical induction job. Returns the lexicon generated for a single
+	 * sample, without updating the model.
+	 */
+	protected static class LexiconInductionJob
 			implements Function<LearningEnvironment, LexiconInductionResult>,
 			Serializable {
 
 		private static final long			serialVersionUID	= -5926342583825314214L;
 		private final LabeledAmrSentence	dataItem;
 
+		/**
+		 * The version of the parameters the job expects the worker to have.
+		 */
+		private final long					parametersVersion;
+
 		/**
 		 * Flag to indicate if the data item was reachable in the previous
 		 * epoch.
@@ -273,9 +439,10 @@ public abstract class AbstractDistributedBatchLearner
 		private final boolean				reachableInPrev;
 
 		public LexiconInductionJob(LabeledAmrSentence dataItem,
-				boolean reachableInPrev) {
+				boolean reachableInPrev, long parametersVersion) {
 			this.dataItem = dataItem;
 			this.reachableInPrev = reachableInPrev;
+			this.parametersVersion = parametersVersion;
 		}
 
 		@Override
@@ -288,11 +455,22 @@ public abstract class AbstractDistributedBatchLearner
 			// Record sample processing start time.
 			final long startTime = System.currentTimeMillis();
 
+			// The worker missed a parameters update. Process the sample
+			// anyway, since GENLEX is only weakly affected by the parameters,
+			// but report it so the next update is a full snapshot.
+			final boolean staleParameters = env
+					.getParametersVersion() != parametersVersion;
+			if (staleParameters) {
+				LOG.warn("Stale parameters: v%d, expected v%d",
+						env.getParametersVersion(), parametersVersion);
+			}
+
 			// Skip sample if reachable in last epoch.
 			if (reachableInPrev) {
 				LOG.info("Reachable during last epoch -- skipping");
 				return new LexiconInductionResult(
-						System.currentTimeMillis() - startTime);
+						System.currentTimeMillis() - startTime,
+						staleParameters);
 			}
 
 			// Skip sample, if over the length limit.
@@ -300,14 +478,16 @@ public abstract class AbstractDistributedBatchLearner
 					.size() > env.maxSentenceLength) {
 				LOG.info("Training sample too long, skipping");
 				return new LexiconInductionResult(
-						System.currentTimeMillis() - startTime);
+						System.currentTimeMillis() - startTime,
+						staleParameters);
 			}
 
 			// Skip sample of the label is invalid.
 			if (!IsValidAmr.of(dataItem.getLabel(), true, true)) {
 				LOG.warn("Annotated LF is an invalid AMR -- skipping");
 				return new LexiconInductionResult(
-						System.currentTimeMillis() - startTime);
+						System.currentTimeMillis() - startTime,
+						staleParameters);
 			}
 
 			// Generate lexical entries.
@@ -353,38 +533,64 @@ public abstract class AbstractDistributedBatchLearner
 					totalTime / 1000.0);
 			LOG.info("System memory: %s", MemoryReport.generate());
 			return new LexiconInductionResult(generatedLexicon, genlexTime,
-					newLexicalEntries, totalTime);
+					newLexicalEntries, totalTime, staleParameters);
 
 		}
 
 	}
 
-	private static class LexiconInductionResult implements Serializable {
+	protected static class LexiconInductionResult implements Serializable {
 		private static final long							serialVersionUID	= -4846358599787720549L;
 		private final ILexiconImmutable<LogicalExpression>	generatedLexicon;
 		private final long									genlexTime;
 		private final int									newLexicalEntries;
 		private final boolean								skipped;
+		private final boolean								staleParameters;
 		private final long									totalTime;
 
 		public LexiconInductionResult(
 				ILexiconImmutable<LogicalExpression> generatedLexicon,
-				long genlexTime, int newLexicalEntries, long totalTime) {
+				long genlexTime, int newLexicalEntries, long totalTime,
+				boolean staleParameters) {
 			this.genlexTime = genlexTime;
 			this.newLexicalEntries = newLexicalEntries;
 			this.totalTime = totalTime;
+			this.staleParameters = staleParameters;
 			this.skipped = false;
 			this.generatedLexicon = generatedLexicon;
 		}
 
-		public LexiconInductionResult(long totalTime) {
+		public LexiconInductionResult(long totalTime,
+				boolean staleParameters) {
 			this.totalTime = totalTime;
+			this.staleParameters = staleParameters;
 			this.skipped = true;
 			this.generatedLexicon = new Lexicon<>();
 			this.genlexTime = 0;
 			this.newLexicalEntries = 0;
 		}
 
+		public ILexiconImmutable<LogicalExpression> getGeneratedLexicon() {
+			return generatedLexicon;
+		}
+
+	}
+
+	/**
+	 * A versioned update of the model parameters. Either a full snapshot, or
+	 * the new values of the parameters that changed since the previous
+	 * version.
+	 */
+	protected static class ParametersUpdate implements Serializable {
+		private static final long			serialVersionUID	= 3614870256412349117L;
+		private final CompressedHashVector	values;
+		private final long					version;
+
+		public ParametersUpdate(long version, CompressedHashVector values) {
+			this.version = version;
+			this.values = values;
+		}
+
 	}
 
 	protected static class LearningEnvironment extends
@@ -397,6 +603,8 @@ public abstract class AbstractDistributedBatchLearner
 		private static final String																																		CONFIG_MAX_SENTENCE_LENGTH			= "maxSentenceLength";
 		private static final String																																		CONFIG_MODEL						= "model";
 		private static final String																																		CONFIG_MODEL_PARAMS					= "modelSetParams";
+		private static final String																																		CONFIG_MODEL_PARAMS_DELTA			= "modelUpdateParams";
+		private static final String																																		CONFIG_PARAMS_VERSION				= "paramsVersion";
 		private static final String																																		CONFIG_PARSER						= "parser";
 		private static final String																																		CONFIG_PARSER_OUTPUT_LOGGER			= "parserOutputLogger";
 		private static final long																																		serialVersionUID					= -4284828823131925469L;
@@ -408,6 +616,7 @@ public abstract class AbstractDistributedBatchLearner
 		private IGradientFunction																																		gradientFunction;
 		private int																																						maxSentenceLength;
 		private JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression>																				model								= null;
+		private long																																					parametersVersion					= -1;
 		private GraphAmrParser																																				parser								= null;
 		private IJointOutputLogger<LogicalExpression, LogicalExpression, LogicalExpression>																				parserOutputLogger					= null;
 
@@ -455,9 +664,30 @@ public abstract class AbstractDistributedBatchLearner
 					CONFIG_MODEL, model);
 		}
 
-		public static EnvironmentConfig<IHashVectorImmutable> setModelParameters(
-				IHashVectorImmutable weights) {
-			return new EnvironmentConfig<>(CONFIG_MODEL_PARAMS, weights);
+		/**
+		 * Replace the model parameters with a full snapshot.
+		 */
+		public static EnvironmentConfig<ParametersUpdate> setModelParameters(
+				ParametersUpdate snapshot) {
+			return new EnvironmentConfig<>(CONFIG_MODEL_PARAMS, snapshot);
+		}
+
+		/**
+		 * Set the version of the current parameters. Used when the entire
+		 * model is set.
+		 */
+		public static EnvironmentConfig<Long> setParametersVersion(
+				long version) {
+			return new EnvironmentConfig<>(CONFIG_PARAMS_VERSION, version);
+		}
+
+		/**
+		 * Update the model parameters with a delta relative to the previous
+		 * version.
+		 */
+		public static EnvironmentConfig<ParametersUpdate> updateModelParameters(
+				ParametersUpdate delta) {
+			return new EnvironmentConfig<>(CONFIG_MODEL_PARAMS_DELTA, delta);
 		}
 
 		public static EnvironmentConfig<GraphAmrParser> updateParser(
@@ -479,6 +709,8 @@ public abstract class AbstractDistributedBatchLearner
 				case CONFIG_MODEL:
 					model = (JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression>) update
 							.getValue();
+					// Unknown until the version is set.
+					parametersVersion = -1;
 					break;
 				case CONFIG_CATEGORY_SERVICES:
 					categoryServices = (ICategoryServices<LogicalExpression>) update
@@ -505,11 +737,42 @@ public abstract class AbstractDistributedBatchLearner
 					parserOutputLogger = (IJointOutputLogger<LogicalExpression, LogicalExpression, LogicalExpression>) update
 							.getValue();
 					break;
-				case CONFIG_MODEL_PARAMS:
+				case CONFIG_MODEL_PARAMS: {
 					// Case re-set model weights.
+					final ParametersUpdate snapshot = (ParametersUpdate) update
+							.getValue();
 					model.getTheta().clear();
-					((IHashVectorImmutable) update.getValue()).addTimesInto(1.0,
+					snapshot.values.decode().addTimesInto(1.0,
 							model.getTheta());
+					FeatureWeights.invalidate(model.getTheta());
+					parametersVersion = snapshot.version;
+					break;
+				}
+				case CONFIG_MODEL_PARAMS_DELTA: {
+					// Case set the changed model weights. The delta holds
+					// the new values, so applying it again is harmless.
+					final ParametersUpdate delta = (ParametersUpdate) update
+							.getValue();
+					if (parametersVersion == delta.version - 1
+							|| parametersVersion == delta.version) {
+						final IHashVector theta = model.getTheta();
+						for (final Pair<KeyArgs, Double> keyValue : delta.values
+								.decode()) {
+							theta.set(keyValue.first(), keyValue.second());
+						}
+						FeatureWeights.invalidate(theta);
+						parametersVersion = delta.version;
+					} else {
+						// Keep the current version. Jobs will detect the gap
+						// and report it, so the next update is a snapshot.
+						LOG.warn(
+								"Parameters version gap: v%d, received delta v%d",
+								parametersVersion, delta.version);
+					}
+					break;
+				}
+				case CONFIG_PARAMS_VERSION:
+					parametersVersion = (Long) update.getValue();
 					break;
 				case CONFIG_CONDITIONED_INFERENCE_BEAM:
 					conditionedInferenceBeam = (Integer) update.getValue();
@@ -546,6 +809,10 @@ public abstract class AbstractDistributedBatchLearner
 			return model;
 		}
 
+		public long getParametersVersion() {
+			return parametersVersion;
+		}
+
 		public GraphAmrParser getParser() {
 			return parser;
 		}
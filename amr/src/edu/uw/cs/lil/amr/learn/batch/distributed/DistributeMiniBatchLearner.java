@@ -7,15 +7,16 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.IntConsumer;
 import java.util.function.Predicate;
 
-import edu.cornell.cs.nlp.spf.base.hashvector.HashVectorFactory;
 import edu.cornell.cs.nlp.spf.base.hashvector.IHashVector;
 import edu.cornell.cs.nlp.spf.ccg.categories.ICategoryServices;
 import edu.cornell.cs.nlp.spf.ccg.lexicon.ILexiconImmutable;
@@ -45,23 +46,35 @@ import edu.uw.cs.lil.amr.data.AMRMeta;
 import edu.uw.cs.lil.amr.data.LabeledAmrSentence;
 import edu.uw.cs.lil.amr.learn.batch.voting.StubVoting;
 import edu.uw.cs.lil.amr.learn.estimators.IWeightUpdateProcedure;
+import edu.uw.cs.lil.amr.learn.gradient.CompressedHashVector;
+import edu.uw.cs.lil.amr.learn.gradient.GradientAccumulator;
 import edu.uw.cs.lil.amr.learn.gradient.GradientComputation;
 import edu.uw.cs.lil.amr.learn.gradient.IGradientFunction;
 import edu.uw.cs.lil.amr.parser.GraphAmrParser;
 import edu.uw.cs.lil.amr.parser.IsValidAmr;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.FeatureWeights;
 
 /**
  * Distributed learner. Each epoch includes two main passes: lexical generation
  * and parameter estimation. Lexical generation is done with a batch pass that
  * is fully distributed. Parameter estimation is done with mini batches. Each
- * mini batch is distributed.
+ * mini batch is distributed. When pipelined, each job does the GENLEX of its
+ * sample immediately followed by its gradient, and the generated lexicons are
+ * buffered until the next sync point. Mini batches don't cross sync points.
  *
  * @author Yoav Artzi
  */
 public class DistributeMiniBatchLearner
 		extends AbstractDistributedBatchLearner {
 
-	private final int batchSize;
+	/**
+	 * Time to wait for a single job before checking for other completed jobs
+	 * to aggregate.
+	 */
+	private static final long	AGGREGATION_POLL_TIME	= 100;
+
+	private final int			batchSize;
+	private final boolean		compressGradients;
 
 	public DistributeMiniBatchLearner(int numIterations,
 			IDataCollection<LabeledAmrSentence> trainingData, boolean sortData,
@@ -78,41 +91,120 @@ public class DistributeMiniBatchLearner
 			Integer conditionedInferenceBeam,
 			ILexiconGenerator<LabeledAmrSentence, LogicalExpression, IJointModelImmutable<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression>> alignmentGenlex,
 			boolean resumedLearning,
-			ILexiconImmutable<LogicalExpression> entriesNotToPrune) {
+			ILexiconImmutable<LogicalExpression> entriesNotToPrune,
+			boolean compressGradients, int syncInterval, boolean logVotes) {
 		super(numIterations, trainingData, sortData, maxSentenceLength, parser,
 				parserOutputLogger, categoryServices, genlex, filterFactory,
 				postIteration, pruneLexicon, votingProcedure, manager,
 				estimator, gradientFunction, conditionedInferenceBeam,
-				alignmentGenlex, resumedLearning, entriesNotToPrune);
+				alignmentGenlex, resumedLearning, entriesNotToPrune,
+				syncInterval, logVotes);
 		this.batchSize = batchSize;
-		LOG.info("Init %s: batchSize=%d", getClass().getSimpleName(),
-				batchSize);
+		this.compressGradients = compressGradients;
+		LOG.info("Init %s: batchSize=%d, compressGradients=%s",
+				getClass().getSimpleName(), batchSize, compressGradients);
+	}
+
+	/**
+	 * Add the gradient of a completed job into the accumulator.
+	 */
+	private static void aggregate(JobFuture<GradientResult> future,
+			GradientAccumulator accumulator, AtomicLong compressedBytes) {
+		final GradientResult result;
+		try {
+			result = future.get();
+		} catch (InterruptedException | ExecutionException e) {
+			// Logged when processing the results.
+			return;
+		}
+		if (result.processed && !result.staleParameters) {
+			if (result.compressedGradient != null) {
+				compressedBytes
+						.addAndGet(result.compressedGradient.numBytes());
+			}
+			final IHashVector gradient = result.getGradient();
+			if (gradient != null) {
+				accumulator.add(gradient);
+			}
+		}
+	}
+
+	/**
+	 * Checks if a completed job was processed with stale parameters.
+	 */
+	private static boolean isStale(JobFuture<GradientResult> future) {
+		try {
+			return future.get().staleParameters;
+		} catch (InterruptedException | ExecutionException e) {
+			// Logged when processing the results.
+			return false;
+		}
 	}
 
 	@Override
 	protected Set<LexicalEntry<LogicalExpression>> doParameterEstimation(
 			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
 			int epochNumber) {
-		final long startTime = System.currentTimeMillis();
+		return estimateMiniBatches(model, epochNumber, trainingData.iterator(),
+				0, null);
+	}
 
-		if (!remoteModelIsUpToDate) {
-			// Update the environment.
-			// Update the entire model. This is the only time we do it. Further
-			// updates will be incremental. We never update the structure of the
-			// model, just the parameters. This is why we can do incremental
-			// updates easily. And it will save transfer costs.
-			if (!manager
-					.updateEnviroment(LearningEnvironment.setModel(model))) {
-				LOG.error("Failed to update environment");
-				throw new IllegalStateException();
-			}
-			remoteModelIsUpToDate = true;
+	@Override
+	protected Set<LexicalEntry<LogicalExpression>> doPipelinedSegment(
+			int epochNumber,
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
+			List<LabeledAmrSentence> segment, int firstItem,
+			List<ILexiconImmutable<LogicalExpression>> generatedLexicons) {
+		if (genlex == null) {
+			return estimateMiniBatches(model, epochNumber, segment.iterator(),
+					firstItem, null);
 		}
 
-		final Iterator<LabeledAmrSentence> dataIterator = trainingData
-				.iterator();
-		int itemCounter = -1;
+		// Update GENLEX. It might contain new templates following the last
+		// sync point.
+		manager.updateEnviroment(LearningEnvironment.setGenlex(genlex));
+
+		return estimateMiniBatches(model, epochNumber, segment.iterator(),
+				firstItem, generatedLexicons);
+	}
+
+	private GradientJob createJob(LabeledAmrSentence dataItem,
+			int epochNumber, int itemNumber, boolean induceLexicon,
+			boolean reachableInPrev) {
+		return new GradientJob(dataItem, epochNumber, itemNumber,
+				compressGradients, parametersVersion,
+				induceLexicon ? new LexiconInductionJob(dataItem,
+						reachableInPrev, parametersVersion) : null);
+	}
+
+	/**
+	 * Distributed mini-batch parameter estimation.
+	 *
+	 * @param firstItem
+	 *            The index of the first sample in the training data.
+	 * @param generatedLexicons
+	 *            If not null, each job first does lexical induction for its
+	 *            sample, and the generated lexicons are added to this list.
+	 */
+	private Set<LexicalEntry<LogicalExpression>> estimateMiniBatches(
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
+			int epochNumber, Iterator<LabeledAmrSentence> dataIterator,
+			int firstItem,
+			List<ILexiconImmutable<LogicalExpression>> generatedLexicons) {
+		final long startTime = System.currentTimeMillis();
+
+		// Update the environment. The entire model is only sent if its
+		// structure changed. Further updates are incremental, and only include
+		// the parameters that changed. We never update the structure of the
+		// model during parameter estimation, this is why we can do incremental
+		// updates easily. And it will save transfer costs.
+		updateRemoteModel(model);
+
+		final boolean induceLexicon = generatedLexicons != null;
+		int itemCounter = firstItem - 1;
 		long computeTime = 0;
+		long waitTime = 0;
+		double aggregationTime = 0.0;
 		int miniBatchCounter = -1;
 		final Set<LexicalEntry<LogicalExpression>> viterbiEntries = new HashSet<>();
 		while (dataIterator.hasNext()) {
@@ -121,50 +213,116 @@ public class DistributeMiniBatchLearner
 					++miniBatchCounter);
 
 			// Create the mini batch and submit the jobs.
-			int batchBaseNumber = itemCounter;
+			final int batchBaseNumber = itemCounter + 1;
 			final List<LabeledAmrSentence> batch = new ArrayList<>(batchSize);
 			final List<JobFuture<GradientResult>> futures = new ArrayList<>(
 					batchSize);
+			final boolean[] reachableInPrev = new boolean[batchSize];
 			while (batch.size() < batchSize && dataIterator.hasNext()) {
 				final LabeledAmrSentence dataItem = dataIterator.next();
+				final int itemNumber = batchBaseNumber + batch.size();
+				if (induceLexicon) {
+					reachableInPrev[batch.size()] = reachableDuringLastEpoch
+							.remove(itemNumber);
+				}
+				futures.add(manager.execute(createJob(dataItem, epochNumber,
+						itemNumber, induceLexicon,
+						reachableInPrev[batch.size()])));
 				batch.add(dataItem);
-				futures.add(manager.execute(new GradientJob(dataItem,
-						epochNumber, ++batchBaseNumber)));
 			}
 
-			// Wait for all jobs to complete.
-			boolean working = true;
+			// Wait for all jobs to complete. Gradients are aggregated
+			// asynchronously as jobs complete.
+			final GradientAccumulator accumulator = new GradientAccumulator();
+			final AtomicLong compressedBytes = new AtomicLong();
+			final List<CompletableFuture<Void>> aggregations = new ArrayList<>(
+					futures.size());
+			final boolean[] aggregated = new boolean[futures.size()];
+			final boolean[] resubmitted = new boolean[futures.size()];
+			boolean snapshotSent = false;
+			int completed = 0;
 			final long distStartTime = System.currentTimeMillis();
-			while (working) {
-				working = false;
-				int completed = 0;
+			long lastLogTime = distStartTime;
+			while (completed < futures.size()) {
 				JobFuture<GradientResult> remainingFuture = null;
-				for (final JobFuture<GradientResult> future : futures) {
-					if (!future.isDone()) {
-						remainingFuture = future;
-						working = true;
-					} else {
+				for (int i = 0; i < futures.size(); ++i) {
+					final JobFuture<GradientResult> future = futures.get(i);
+					if (aggregated[i]) {
+						continue;
+					} else if (future.isDone()) {
+						if (!resubmitted[i] && isStale(future)) {
+							// The worker missed a parameters update. Send a
+							// snapshot and re-compute the gradient. Only
+							// re-submit once to avoid looping on a worker
+							// that keeps falling behind.
+							stats.count("Stale remote parameters",
+									epochNumber);
+							if (!snapshotSent) {
+								forceParametersSnapshot = true;
+								updateRemoteParameters(model);
+								snapshotSent = true;
+							}
+							futures.set(i,
+									manager.execute(createJob(batch.get(i),
+											epochNumber, batchBaseNumber + i,
+											induceLexicon,
+											reachableInPrev[i])));
+							resubmitted[i] = true;
+							remainingFuture = futures.get(i);
+							continue;
+						}
+						aggregated[i] = true;
 						++completed;
+						aggregations.add(CompletableFuture.runAsync(
+								() -> aggregate(future, accumulator,
+										compressedBytes)));
+					} else if (remainingFuture == null) {
+						remainingFuture = future;
 					}
 				}
-				LOG.info("Completed %d/%d (%.3fsec)", completed, futures.size(),
-						(System.currentTimeMillis() - distStartTime) / 1000.0);
+				if (System.currentTimeMillis() - lastLogTime >= 10000) {
+					LOG.info("Completed %d/%d (%.3fsec)", completed,
+							futures.size(),
+							(System.currentTimeMillis() - distStartTime)
+									/ 1000.0);
+					lastLogTime = System.currentTimeMillis();
+				}
 				if (remainingFuture != null) {
 					try {
-						remainingFuture.get(10, TimeUnit.SECONDS);
+						remainingFuture.get(AGGREGATION_POLL_TIME,
+								TimeUnit.MILLISECONDS);
 					} catch (InterruptedException | ExecutionException
 							| TimeoutException e) {
 						// Ignore.
 					}
 				}
 			}
-			LOG.info("TinyDist complete (%f.3sec)",
-					(System.currentTimeMillis() - distStartTime) / 1000.0);
+			final long jobsCompleteTime = System.currentTimeMillis();
+			LOG.info("TinyDist complete (%.3fsec)",
+					(jobsCompleteTime - distStartTime) / 1000.0);
+
+			// Wait for the aggregation of the last gradients.
+			CompletableFuture.allOf(aggregations
+					.toArray(new CompletableFuture<?>[aggregations.size()]))
+					.join();
+			final IHashVector aggregateGradient = accumulator.toVector();
+			final long aggregationTailTime = System.currentTimeMillis()
+					- jobsCompleteTime;
+			waitTime += jobsCompleteTime - distStartTime;
+			aggregationTime += accumulator.getAddTime();
+			LOG.info(
+					"Aggregated %d features: %.3fsec waiting for jobs, %.3fsec aggregating (%.3fsec after jobs completed)%s",
+					accumulator.size(),
+					(jobsCompleteTime - distStartTime) / 1000.0,
+					accumulator.getAddTime() / 1000.0,
+					aggregationTailTime / 1000.0,
+					compressGradients ? String.format(
+							", %d compressed gradient bytes",
+							compressedBytes.get()) : "");
 
 			final Iterator<LabeledAmrSentence> batchIterator = batch.iterator();
 			final Iterator<JobFuture<GradientResult>> futureIterator = futures
 					.iterator();
-			final IHashVector aggregateGradient = HashVectorFactory.create();
 			while (batchIterator.hasNext()) {
 				final LabeledAmrSentence dataItem = batchIterator.next();
 				final JobFuture<GradientResult> future = futureIterator.next();
@@ -192,7 +350,17 @@ public class DistributeMiniBatchLearner
 
 				computeTime += result.processingTime;
 
-				if (result.processed) {
+				// Buffer the generated lexicon for the next sync point.
+				if (result.lexiconInduction != null) {
+					recordLexiconInduction(epochNumber, itemCounter,
+							result.lexiconInduction);
+					generatedLexicons
+							.add(result.lexiconInduction.getGeneratedLexicon());
+				}
+
+				if (result.staleParameters) {
+					LOG.error("Gradient skipped due to stale parameters");
+				} else if (result.processed) {
 					stats.count("Processed for parameter estimation",
 							epochNumber);
 
@@ -209,12 +377,6 @@ public class DistributeMiniBatchLearner
 						reachableDuringLastEpoch.add(itemCounter);
 					}
 
-					if (result.computedGradient.getGradient() != null) {
-						// Add the gradient into the aggregate vector.
-						result.computedGradient.getGradient().addTimesInto(1.0,
-								aggregateGradient);
-					}
-
 					LOG.info("Data item processing time: %.2fsec",
 							result.processingTime / 1000.0);
 				}
@@ -224,18 +386,13 @@ public class DistributeMiniBatchLearner
 			if (updateProcedure.applyUpdate(aggregateGradient,
 					model.getTheta())) {
 				// Apply the update.
-				remoteModelIsUpToDate = false;
+				FeatureWeights.invalidate(model.getTheta());
+				remoteParametersAreUpToDate = false;
 				stats.count("Mini batch update", epochNumber);
 
-				// Refresh the parameters of the remote model. Clone the
-				// parameters to get a snapshot of the current parameters.
-				if (!manager.updateEnviroment(
-						LearningEnvironment.setModelParameters(
-								HashVectorFactory.create(model.getTheta())))) {
-					LOG.error("Failed to update environment");
-					throw new IllegalStateException();
-				}
-				remoteModelIsUpToDate = true;
+				// Refresh the parameters of the remote model. Only the
+				// parameters that changed are sent.
+				updateRemoteParameters(model);
 			}
 		}
 
@@ -245,6 +402,9 @@ public class DistributeMiniBatchLearner
 		LOG.info("Real time: %.3f, compute time: %.3f, speedup: %.3f",
 				realTotalTime / 1000.0, computeTime / 1000.0,
 				computeTime / (double) realTotalTime);
+		LOG.info(
+				"Gradient aggregation: %.3fsec waiting for jobs, %.3fsec aggregating",
+				waitTime / 1000.0, aggregationTime / 1000.0);
 
 		return viterbiEntries;
 
@@ -360,7 +520,9 @@ public class DistributeMiniBatchLearner
 					repo.get(params.get("estimator")),
 					repo.get(params.get("gradient")), conditionedInferenceBeam,
 					alignmentGenlex, params.getAsBoolean("resume", false),
-					keepEntries);
+					keepEntries, params.getAsBoolean("compress", false),
+					params.getAsInteger("syncInterval", 0),
+					params.getAsBoolean("logVotes", true));
 		}
 
 		@Override
@@ -371,6 +533,12 @@ public class DistributeMiniBatchLearner
 		@Override
 		public ResourceUsage usage() {
 			return ResourceUsage.builder(type, DistributeMiniBatchLearner.class)
+					.addParam("compress", Boolean.class,
+							"Compress gradients before transferring them from the workers (default: false)")
+					.addParam("syncInterval", "int",
+							"Number of samples between lexicon sync points. If positive, each job computes the gradient of its sample immediately following its GENLEX, and voting is done at sync points. Mini batches don't cross sync points (default: 0, no pipelining)")
+					.addParam("logVotes", Boolean.class,
+							"Log every generated lexical entry with its votes and the samples that generated it at each voting step (default: true)")
 					.addParam("keepEntries", ILexiconImmutable.class,
 							"Entries to keep during lexicon prunning despite if they are used or not (default: none)")
 					.addParam("resume", Boolean.class,
@@ -414,15 +582,29 @@ public class DistributeMiniBatchLearner
 			Function<LearningEnvironment, GradientResult>, Serializable {
 
 		private static final long			serialVersionUID	= -531673379742439999L;
+		private final boolean				compress;
 		private final LabeledAmrSentence	dataItem;
 		private final int					epochNumber;
 		private final int					itemNumber;
+		/**
+		 * Optional lexical induction job to run before computing the
+		 * gradient.
+		 */
+		private final LexiconInductionJob	lexiconInductionJob;
+		/**
+		 * The version of the parameters the job expects the worker to have.
+		 */
+		private final long					parametersVersion;
 
 		public GradientJob(LabeledAmrSentence dataItem, int epochNumber,
-				int itemNumber) {
+				int itemNumber, boolean compress, long parametersVersion,
+				LexiconInductionJob lexiconInductionJob) {
 			this.dataItem = dataItem;
 			this.epochNumber = epochNumber;
 			this.itemNumber = itemNumber;
+			this.compress = compress;
+			this.parametersVersion = parametersVersion;
+			this.lexiconInductionJob = lexiconInductionJob;
 		}
 
 		@Override
@@ -431,6 +613,20 @@ public class DistributeMiniBatchLearner
 			// Record sample processing start time.
 			final long startTime = System.currentTimeMillis();
 
+			// The worker missed a parameters update (e.g., after reconnecting
+			// to the master), request a snapshot.
+			if (env.getParametersVersion() != parametersVersion) {
+				LOG.warn("Stale parameters: v%d, expected v%d",
+						env.getParametersVersion(), parametersVersion);
+				return new GradientResult(false, null, null,
+						System.currentTimeMillis() - startTime, true, null);
+			}
+
+			// Lexical induction, immediately followed by the gradient of the
+			// same sample.
+			final LexiconInductionResult lexiconInduction = lexiconInductionJob == null
+					? null : lexiconInductionJob.apply(env);
+
 			final IJointDataItemModel<LogicalExpression, LogicalExpression> dataItemModel = env
 					.getModel().createJointDataItemModel(dataItem.getSample());
 
@@ -439,14 +635,16 @@ public class DistributeMiniBatchLearner
 					.getMaxSentenceLength()) {
 				LOG.warn("Training sample too long, skipping");
 				return new GradientResult(false, null,
-						System.currentTimeMillis() - startTime);
+						System.currentTimeMillis() - startTime,
+						lexiconInduction);
 			}
 
 			// Skip sample if the label is invalid.
 			if (!IsValidAmr.of(dataItem.getLabel(), true, true)) {
 				LOG.warn("Annotated LF is an invalid AMR -- skipping");
 				return new GradientResult(false, null,
-						System.currentTimeMillis() - startTime);
+						System.currentTimeMillis() - startTime,
+						lexiconInduction);
 			}
 
 			final GradientComputation gradientComputation = env
@@ -465,24 +663,75 @@ public class DistributeMiniBatchLearner
 				LOG.info("No gradient");
 			}
 
+			if (compress && gradientComputation.getGradient() != null) {
+				// Transfer the gradient in a compact encoding.
+				return new GradientResult(true,
+						gradientComputation.cloneWithGradient(null),
+						CompressedHashVector
+								.of(gradientComputation.getGradient()),
+						System.currentTimeMillis() - startTime,
+						lexiconInduction);
+			}
+
 			return new GradientResult(true, gradientComputation,
-					System.currentTimeMillis() - startTime);
+					System.currentTimeMillis() - startTime, lexiconInduction);
 		}
 
 	}
 
 	private static class GradientResult implements Serializable {
 
-		private static final long			serialVersionUID	= 4225274940539731344L;
-		private final GradientComputation	computedGradient;
-		private final boolean				processed;
-		private final long					processingTime;
+		private static final long				serialVersionUID	= 4225274940539731344L;
+		/**
+		 * The gradient, if transferred separately from the computation in a
+		 * compact encoding.
+		 */
+		private final CompressedHashVector		compressedGradient;
+		private final GradientComputation		computedGradient;
+		/**
+		 * The result of the lexical induction of the sample, if requested.
+		 */
+		private final LexiconInductionResult	lexiconInduction;
+		private final boolean					processed;
+		private final long						processingTime;
+		/**
+		 * The job was not processed since the worker parameters are not of
+		 * the expected version.
+		 */
+		private final boolean					staleParameters;
 
 		public GradientResult(boolean processed,
-				GradientComputation computedGradient, long processingTime) {
+				GradientComputation computedGradient,
+				CompressedHashVector compressedGradient, long processingTime,
+				boolean staleParameters,
+				LexiconInductionResult lexiconInduction) {
 			this.processed = processed;
 			this.computedGradient = computedGradient;
+			this.compressedGradient = compressedGradient;
 			this.processingTime = processingTime;
+			this.staleParameters = staleParameters;
+			this.lexiconInduction = lexiconInduction;
+		}
+
+		public GradientResult(boolean processed,
+				GradientComputation computedGradient,
+				CompressedHashVector compressedGradient, long processingTime,
+				LexiconInductionResult lexiconInduction) {
+			this(processed, computedGradient, compressedGradient,
+					processingTime, false, lexiconInduction);
+		}
+
+		public GradientResult(boolean processed,
+				GradientComputation computedGradient, long processingTime,
+				LexiconInductionResult lexiconInduction) {
+			this(processed, computedGradient, null, processingTime,
+					lexiconInduction);
+		}
+
+		public IHashVector getGradient() {
+			return compressedGradient == null
+					? computedGradient.getGradient()
+					: compressedGradient.decode();
 		}
 
 	}
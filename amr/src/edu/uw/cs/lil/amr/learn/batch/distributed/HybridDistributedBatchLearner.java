@@ -1,6 +1,7 @@
 package edu.uw.cs.lil.amr.learn.batch.distributed;
 
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.BiFunction;
@@ -29,6 +30,7 @@ import edu.cornell.cs.nlp.spf.parser.joint.JointInferenceFilterUtils;
 import edu.cornell.cs.nlp.spf.parser.joint.model.IJointDataItemModel;
 import edu.cornell.cs.nlp.spf.parser.joint.model.IJointModelImmutable;
 import edu.cornell.cs.nlp.spf.parser.joint.model.JointModel;
+import edu.cornell.cs.nlp.spf.reliabledist.JobFuture;
 import edu.cornell.cs.nlp.spf.reliabledist.ReliableManager;
 import edu.uw.cs.lil.amr.data.AMRMeta;
 import edu.uw.cs.lil.amr.data.LabeledAmrSentence;
@@ -39,11 +41,15 @@ import edu.uw.cs.lil.amr.learn.gradient.GradientComputation;
 import edu.uw.cs.lil.amr.learn.gradient.IGradientFunction;
 import edu.uw.cs.lil.amr.parser.GraphAmrParser;
 import edu.uw.cs.lil.amr.parser.IsValidAmr;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.FeatureWeights;
 
 /**
  * Distributed learner with batch lexical induction and online (non-distributed)
  * parameter estimation. Each iteration includes a batch fully distributed
- * lexical generation pass and an online parameter estimation pass.
+ * lexical generation pass and an online parameter estimation pass. When
+ * pipelined, the GENLEX jobs of each segment are distributed, and the update of
+ * each sample is computed and applied locally as soon as its lexicon is
+ * generated.
  *
  * @author Yoav Artzi
  */
@@ -64,12 +70,14 @@ public class HybridDistributedBatchLearner
 			Integer conditionedInferenceBeam,
 			ILexiconGenerator<LabeledAmrSentence, LogicalExpression, IJointModelImmutable<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression>> alignmentGenlex,
 			boolean resumedLearning,
-			ILexiconImmutable<LogicalExpression> entriesNotToPrune) {
+			ILexiconImmutable<LogicalExpression> entriesNotToPrune,
+			int syncInterval, boolean logVotes) {
 		super(numIterations, trainingData, sortData, maxSentenceLength, parser,
 				parserOutputLogger, categoryServices, genlex, filterFactory,
 				postIteration, pruneLexicon, votingProcedure, manager,
 				estimator, gradientFunction, conditionedInferenceBeam,
-				alignmentGenlex, resumedLearning, entriesNotToPrune);
+				alignmentGenlex, resumedLearning, entriesNotToPrune,
+				syncInterval, logVotes);
 	}
 
 	@Override
@@ -81,72 +89,124 @@ public class HybridDistributedBatchLearner
 		int itemCounter = -1;
 		final Set<LexicalEntry<LogicalExpression>> viterbiEntries = new HashSet<>();
 		for (final LabeledAmrSentence dataItem : trainingData) {
-			// Record sample processing start time.
-			final long startTime = System.currentTimeMillis();
-
-			final IJointDataItemModel<LogicalExpression, LogicalExpression> dataItemModel = model
-					.createJointDataItemModel(dataItem.getSample());
-
-			// Log sample header.
-			LOG.info("%d : ================== [%d / PARAM]", ++itemCounter,
-					epochNumber);
-			LOG.info("Sample type: %s", dataItem.getClass().getSimpleName());
-			LOG.info("%s", dataItem);
-
-			// Skip sample, if over the length limit.
-			if (dataItem.getSample().getSample().getTokens()
-					.size() > maxSentenceLength) {
-				LOG.warn("Training sample too long, skipping");
-				continue;
-			}
+			estimateSample(model, epochNumber, dataItem, ++itemCounter,
+					viterbiEntries);
+		}
+
+		return viterbiEntries;
+	}
 
-			// Skip sample of the label is invalid.
-			if (!IsValidAmr.of(dataItem.getLabel(), true, true)) {
-				LOG.warn("Annotated LF is an invalid AMR -- skipping");
-				continue;
+	@Override
+	protected Set<LexicalEntry<LogicalExpression>> doPipelinedSegment(
+			int epochNumber,
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
+			List<LabeledAmrSentence> segment, int firstItem,
+			List<ILexiconImmutable<LogicalExpression>> generatedLexicons) {
+
+		// Submit the GENLEX jobs of the entire segment. The workers generate
+		// the lexicons of later samples while the gradients of earlier ones
+		// are computed locally.
+		final List<JobFuture<LexiconInductionResult>> futures;
+		if (genlex != null) {
+			manager.updateEnviroment(LearningEnvironment.setGenlex(genlex));
+			updateRemoteModel(model);
+			futures = submitLexiconInduction(segment, firstItem,
+					segment.size());
+		} else {
+			futures = null;
+		}
+
+		int itemCounter = firstItem - 1;
+		final Set<LexicalEntry<LogicalExpression>> viterbiEntries = new HashSet<>();
+		for (final LabeledAmrSentence dataItem : segment) {
+			++itemCounter;
+
+			// Wait for the generated lexicon of the sample. It is voted on at
+			// the sync point.
+			if (futures != null) {
+				final LexiconInductionResult result = collectLexiconInduction(
+						epochNumber, itemCounter, dataItem,
+						futures.get(itemCounter - firstItem));
+				if (result != null) {
+					generatedLexicons.add(result.getGeneratedLexicon());
+				}
 			}
 
-			stats.count("Processed for parameter estimation", epochNumber);
+			estimateSample(model, epochNumber, dataItem, itemCounter,
+					viterbiEntries);
+		}
 
-			final GradientComputation gradientComputation = gradientFunction.of(
-					dataItem, dataItemModel, itemCounter, epochNumber, parser,
-					filterFactory, parserOutputLogger);
+		return viterbiEntries;
+	}
 
-			// Apply updates to the learning statistics.
-			gradientComputation.getStatUpdates().accept(stats);
+	private void estimateSample(
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
+			int epochNumber, LabeledAmrSentence dataItem, int itemCounter,
+			Set<LexicalEntry<LogicalExpression>> viterbiEntries) {
+		// Record sample processing start time.
+		final long startTime = System.currentTimeMillis();
+
+		final IJointDataItemModel<LogicalExpression, LogicalExpression> dataItemModel = model
+				.createJointDataItemModel(dataItem.getSample());
+
+		// Log sample header.
+		LOG.info("%d : ================== [%d / PARAM]", itemCounter,
+				epochNumber);
+		LOG.info("Sample type: %s", dataItem.getClass().getSimpleName());
+		LOG.info("%s", dataItem);
+
+		// Skip sample, if over the length limit.
+		if (dataItem.getSample().getSample().getTokens()
+				.size() > maxSentenceLength) {
+			LOG.warn("Training sample too long, skipping");
+			return;
+		}
 
-			// Aggregate the viterbi entries.
-			viterbiEntries.addAll(gradientComputation.getViterbiEntries());
+		// Skip sample of the label is invalid.
+		if (!IsValidAmr.of(dataItem.getLabel(), true, true)) {
+			LOG.warn("Annotated LF is an invalid AMR -- skipping");
+			return;
+		}
 
-			// Mark the sample as reachable.
-			if (!gradientComputation.getViterbiEntries().isEmpty()) {
-				reachableDuringLastEpoch.add(itemCounter);
-			}
+		stats.count("Processed for parameter estimation", epochNumber);
 
-			if (gradientComputation.getGradient() != null) {
-				// Validate the gradient.
-				if (!model.isValidWeightVector(
-						gradientComputation.getGradient())) {
-					throw new IllegalStateException("Invalid gradient: "
-							+ gradientComputation.getGradient());
-				}
+		final GradientComputation gradientComputation = gradientFunction.of(
+				dataItem, dataItemModel, itemCounter, epochNumber, parser,
+				filterFactory, parserOutputLogger);
 
-				if (updateProcedure.applyUpdate(
-						gradientComputation.getGradient(), model.getTheta())) {
-					// Parameters changed.
-					remoteModelIsUpToDate = false;
-					stats.count("Update", epochNumber);
-				} else {
-					LOG.info("No update%s",
-							gradientComputation.isLabelIsOptimal() ? ""
-									: ", although best is not the correct result");
-				}
-			}
-			LOG.info("Data item processing time: %.2fsec",
-					(System.currentTimeMillis() - startTime) / 1000.0);
+		// Apply updates to the learning statistics.
+		gradientComputation.getStatUpdates().accept(stats);
+
+		// Aggregate the viterbi entries.
+		viterbiEntries.addAll(gradientComputation.getViterbiEntries());
+
+		// Mark the sample as reachable.
+		if (!gradientComputation.getViterbiEntries().isEmpty()) {
+			reachableDuringLastEpoch.add(itemCounter);
 		}
 
-		return viterbiEntries;
+		if (gradientComputation.getGradient() != null) {
+			// Validate the gradient.
+			if (!model.isValidWeightVector(gradientComputation.getGradient())) {
+				throw new IllegalStateException("Invalid gradient: "
+						+ gradientComputation.getGradient());
+			}
+
+			if (updateProcedure.applyUpdate(gradientComputation.getGradient(),
+					model.getTheta())) {
+				// Parameters changed. Only the parameters are sent to the
+				// workers before the next distributed pass.
+				FeatureWeights.invalidate(model.getTheta());
+				remoteParametersAreUpToDate = false;
+				stats.count("Update", epochNumber);
+			} else {
+				LOG.info("No update%s",
+						gradientComputation.isLabelIsOptimal() ? ""
+								: ", although best is not the correct result");
+			}
+		}
+		LOG.info("Data item processing time: %.2fsec",
+				(System.currentTimeMillis() - startTime) / 1000.0);
 	}
 
 	public static class Creator
@@ -258,7 +318,8 @@ public class HybridDistributedBatchLearner
 					repo.get(params.get("estimator")),
 					repo.get(params.get("gradient")), conditionedInferenceBeam,
 					alignmentGenlex, params.getAsBoolean("resume", false),
-					keepEntries);
+					keepEntries, params.getAsInteger("syncInterval", 0),
+					params.getAsBoolean("logVotes", true));
 		}
 
 		@Override
@@ -269,6 +330,10 @@ public class HybridDistributedBatchLearner
 		@Override
 		public ResourceUsage usage() {
 			return ResourceUsage.builder(type, HybridBatchLearner.class)
+					.addParam("syncInterval", "int",
+							"Number of samples between lexicon sync points. If positive, the update of each sample is computed and applied as soon as its GENLEX job completes, and voting is done at sync points (default: 0, no pipelining)")
+					.addParam("logVotes", Boolean.class,
+							"Log every generated lexical entry with its votes and the samples that generated it at each voting step (default: true)")
 					.addParam("keepEntries", ILexiconImmutable.class,
 							"Entries to keep during lexicon prunning despite if they are used or not (default: none)")
 					.addParam("resume", Boolean.class,
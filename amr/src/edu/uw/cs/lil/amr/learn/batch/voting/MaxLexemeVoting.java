@@ -1,12 +1,14 @@
 package edu.uw.cs.lil.amr.learn.batch.voting;
 
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import edu.cornell.cs.nlp.spf.base.token.TokenSeq;
 import edu.cornell.cs.nlp.spf.ccg.lexicon.LexicalEntry;
@@ -23,7 +25,8 @@ import edu.cornell.cs.nlp.utils.log.LoggerFactory;
 /**
  * MaxVoting for {@link Lexeme}s. Similar to the max voting procedure described
  * in Artzi et al. 2014. Although it's applied to {@link LexicalEntry}s, it
- * actually does the voting over {@link Lexeme}s.
+ * actually does the voting over {@link Lexeme}s. Each entry is factored once,
+ * in parallel for large votes.
  *
  * @author Yoav Artzi
  */
@@ -41,14 +44,24 @@ public class MaxLexemeVoting
 	public Set<LexicalEntry<LogicalExpression>> apply(
 			Predicate<LexicalEntry<LogicalExpression>> hardFilter,
 			final Map<LexicalEntry<LogicalExpression>, Double> votes) {
+		// Factor all entries that pass the hard filter. Factoring is the most
+		// expensive step of voting.
+		final Stream<LexicalEntry<LogicalExpression>> entryStream = votes
+				.size() >= MaxVotingFunction.PARALLEL_VOTING
+						? votes.keySet().parallelStream()
+						: votes.keySet().stream();
+		final Map<LexicalEntry<LogicalExpression>, Lexeme> lexemes = entryStream
+				.filter(hardFilter)
+				.collect(Collectors.toMap(Function.identity(),
+						entry -> FactoringServices.factor(entry).getLexeme()));
+
 		// Create a voting dictionary for lexemes, aggregated over the lexical
 		// entry votes.
 		final Map<Lexeme, Double> lexemeVotes = new HashMap<>();
 		for (final Entry<LexicalEntry<LogicalExpression>, Double> vote : votes
 				.entrySet()) {
-			if (hardFilter.test(vote.getKey())) {
-				final Lexeme lexeme = FactoringServices.factor(vote.getKey())
-						.getLexeme();
+			final Lexeme lexeme = lexemes.get(vote.getKey());
+			if (lexeme != null) {
 				final Double value = vote.getValue();
 				if (lexemeVotes.containsKey(lexeme)) {
 					lexemeVotes.put(lexeme, lexemeVotes.get(lexeme) + value);
@@ -63,17 +76,10 @@ public class MaxLexemeVoting
 				lexemeVotes);
 
 		// Get all entries that pass the hard filter and their lexeme was voted.
-		final Set<LexicalEntry<LogicalExpression>> votedEntries = new HashSet<>();
-		for (final Entry<LexicalEntry<LogicalExpression>, Double> vote : votes
-				.entrySet()) {
-			if (hardFilter.test(vote.getKey())) {
-				final Lexeme lexeme = FactoringServices.factor(vote.getKey())
-						.getLexeme();
-				if (votedLexemes.contains(lexeme)) {
-					votedEntries.add(vote.getKey());
-				}
-			}
-		}
+		final Set<LexicalEntry<LogicalExpression>> votedEntries = lexemes
+				.entrySet().stream()
+				.filter(entry -> votedLexemes.contains(entry.getValue()))
+				.map(Entry::getKey).collect(Collectors.toSet());
 
 		return votedEntries;
 	}
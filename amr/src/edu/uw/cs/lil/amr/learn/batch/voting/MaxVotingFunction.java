@@ -1,63 +1,81 @@
 package edu.uw.cs.lil.amr.learn.batch.voting;
 
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * MaxVoting voting strategy, as described in Artzi et al. 2014. This is a
- * generic implementation that can be applied to any object.
+ * generic implementation that can be applied to any object. Large votes are
+ * partitioned by group and reduced in parallel, so the hard filter and the
+ * grouper may be called concurrently. The result doesn't depend on the order
+ * of the votes.
  *
  * @author Yoav Artzi
  */
 public class MaxVotingFunction<ITEM, COMMON> implements
 		BiFunction<Predicate<ITEM>, Map<ITEM, Double>, Set<ITEM>> {
 
+	/**
+	 * Minimal number of votes to vote in parallel.
+	 */
+	static final int						PARALLEL_VOTING	= 1000;
+
 	private final Function<ITEM, COMMON>	grouper;
 
 	public MaxVotingFunction(Function<ITEM, COMMON> grouper) {
 		this.grouper = grouper;
 	}
 
-	@Override
-	public Set<ITEM> apply(Predicate<ITEM> hardFilter,
-			final Map<ITEM, Double> votes) {
-		// Create index of tokens to the max-voted lexical entry, if there
-		// exists a single one. Ignore entries that use templates that appear
-		// only in one data item (not in validTemplates). Also, ignore known
-		// entries.
-		final Map<COMMON, ITEM> maxEntries = new HashMap<>();
-		final Map<COMMON, Double> maxVotes = new HashMap<>();
-		for (final Entry<ITEM, Double> entryVote : votes.entrySet()) {
+	/**
+	 * @return The max-voted item of the group, if there exists a single one,
+	 *         or null.
+	 */
+	private static <ITEM> ITEM max(List<Entry<ITEM, Double>> group) {
+		ITEM maxItem = null;
+		double maxVote = 0.0;
+		boolean first = true;
+		for (final Entry<ITEM, Double> entryVote : group) {
 			final double vote = entryVote.getValue();
-			final ITEM entry = entryVote.getKey();
-			// Only process if passes the hard filter.
-			if (hardFilter.test(entry)) {
-				final COMMON tokens = grouper.apply(entry);
-				if (maxVotes.containsKey(tokens)) {
-					final double currentMax = maxVotes.get(tokens);
-					if (vote > currentMax) {
-						maxEntries.put(tokens, entry);
-						maxVotes.put(tokens, vote);
-					} else if (vote == currentMax) {
-						maxEntries.put(tokens, (ITEM) null);
-					}
-				} else {
-					maxVotes.put(tokens, vote);
-					maxEntries.put(tokens, entry);
-				}
+			if (first || vote > maxVote) {
+				maxItem = entryVote.getKey();
+				maxVote = vote;
+				first = false;
+			} else if (vote == maxVote) {
+				maxItem = null;
 			}
 		}
+		return maxItem;
+	}
+
+	@Override
+	public Set<ITEM> apply(Predicate<ITEM> hardFilter,
+			final Map<ITEM, Double> votes) {
+		// Partition the votes by their group (e.g., tokens) and get the
+		// max-voted item of each group, if there exists a single one. Only
+		// items that pass the hard filter participate.
+		final boolean parallel = votes.size() >= PARALLEL_VOTING;
+		final Stream<Entry<ITEM, Double>> voteStream = parallel
+				? votes.entrySet().parallelStream()
+				: votes.entrySet().stream();
+		final Map<COMMON, List<Entry<ITEM, Double>>> groups = voteStream
+				.filter(entryVote -> hardFilter.test(entryVote.getKey()))
+				.collect(Collectors.groupingByConcurrent(
+						entryVote -> grouper.apply(entryVote.getKey())));
 
 		// The set of of entries to be added.
-		final Set<ITEM> votedEntries = maxEntries.values().stream()
-				.filter(e -> e != null).collect(Collectors.toSet());
-		return votedEntries;
+		final Stream<List<Entry<ITEM, Double>>> groupStream = parallel
+				? groups.values().parallelStream()
+				: groups.values().stream();
+		return groupStream.map(MaxVotingFunction::max)
+				.filter(Objects::nonNull).collect(Collectors.toSet());
 	}
 
 }
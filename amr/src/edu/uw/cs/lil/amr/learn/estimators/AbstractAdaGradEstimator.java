@@ -7,6 +7,7 @@ import org.apache.commons.lang.text.StrBuilder;
 import edu.cornell.cs.nlp.spf.base.hashvector.HashVectorFactory;
 import edu.cornell.cs.nlp.spf.base.hashvector.IHashVector;
 import edu.cornell.cs.nlp.spf.base.hashvector.IHashVectorImmutable;
+import edu.cornell.cs.nlp.spf.base.hashvector.KeyArgs;
 import edu.cornell.cs.nlp.utils.log.ILogger;
 import edu.cornell.cs.nlp.utils.log.LoggerFactory;
 
@@ -18,9 +19,6 @@ public abstract class AbstractAdaGradEstimator
 
 	private static final long serialVersionUID = -7475984241776411616L;
 
-	private static final IHashVector.ValueFunction updateHistoryTransformer = value -> Math
-			.pow(value, -0.5);
-
 	private final IHashVector gradientHistory = HashVectorFactory.create();
 
 	private final boolean initHistory;
@@ -50,48 +48,54 @@ public abstract class AbstractAdaGradEstimator
 				.append(initHistory).append("]").toString();
 	}
 
+	/**
+	 * Updates the gradient history and computes the adaptive update. Only the
+	 * features present in the gradient are touched, so the cost of an update
+	 * is proportional to the size of the gradient, and not to the number of
+	 * features in the history.
+	 */
 	protected IHashVectorImmutable computeUpdate(IHashVector gradient) {
 
 		// Clean some noise.
 		gradient.dropNoise();
 
-		LOG.info("Gradient: %s", gradient);
+		LOG.debug("Gradient: %s", gradient);
 
 		if (gradient.size() == 0) {
 			return null;
 		}
 
-		// Update the gradient history.
-		if (initHistory) {
-			// Initialize the history vector with 1.0 for each feature seen.
-			// This a modification of the vanilla AdaGrad algorithm.
-			gradient.pairWiseProduct(gradient).forEach(entry -> {
-				if (!gradientHistory.contains(entry.first())) {
-					gradientHistory.set(entry.first(), 1.0);
-				}
-				gradientHistory.add(entry.first(), entry.second());
-			});
-		} else {
-			// Vanilla AdaGrad history update.
-			gradient.pairWiseProduct(gradient).addTimesInto(1.0,
-					gradientHistory);
-		}
+		final double rate = rateFunction.apply(numUpdates);
+		final IHashVector adaUpdate = HashVectorFactory.create();
+		gradient.forEach(entry -> {
+			final KeyArgs key = entry.first();
+			final double value = entry.second();
+
+			// Update the gradient history.
+			if (initHistory && !gradientHistory.contains(key)) {
+				// Initialize the history vector with 1.0 for each feature
+				// seen. This a modification of the vanilla AdaGrad algorithm.
+				gradientHistory.set(key, 1.0);
+			}
+			gradientHistory.add(key, value * value);
+
+			// Create the adaptive update and scale it (apply the learning
+			// rate).
+			final double update = value
+					* Math.pow(gradientHistory.get(key), -0.5) * rate;
+			if (update != 0.0) {
+				adaUpdate.set(key, update);
+			}
+		});
 
-		// Create the adaptive update.
 		LOG.debug(() -> {
 			LOG.debug("Gradient history: %s",
 					gradientHistory.printValues(gradient));
-			LOG.debug("Multiplier for update: %s",
-					createUpdateHistoryMultiplier().printValues(gradient));
+			LOG.debug("Adaptive update (learning rate of %f): %s", rate,
+					adaUpdate);
 		});
-		final IHashVector adaUpdate = gradient
-				.pairWiseProduct(createUpdateHistoryMultiplier());
-
-		LOG.info("Adaptive update (w/o learning rate of %f): %s",
-				rateFunction.apply(numUpdates), adaUpdate);
-
-		// Scale the update (apply the learning rate).
-		adaUpdate.multiplyBy(rateFunction.apply(numUpdates));
+		LOG.info("Adaptive update: %d features, learning rate %f",
+				adaUpdate.size(), rate);
 
 		if (!adaUpdate.valuesInRange(-100, 100)) {
 			LOG.warn("Large update");
@@ -100,11 +104,4 @@ public abstract class AbstractAdaGradEstimator
 		return adaUpdate;
 	}
 
-	protected IHashVector createUpdateHistoryMultiplier() {
-		final IHashVector updateHistoryCopy = HashVectorFactory
-				.create(gradientHistory);
-		updateHistoryCopy.applyFunction(updateHistoryTransformer);
-		return updateHistoryCopy;
-	}
-
 }
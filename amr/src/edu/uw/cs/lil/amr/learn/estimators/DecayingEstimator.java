@@ -76,7 +76,7 @@ public class DecayingEstimator implements IWeightUpdateProcedure {
 			return null;
 		}
 
-		LOG.info("Update: %s", gradient);
+		LOG.debug("Update: %s", gradient);
 
 		// Check for NaNs and super large updates
 		if (gradient.isBad()) {
@@ -0,0 +1,155 @@
+package edu.uw.cs.lil.amr.learn.gradient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import edu.cornell.cs.nlp.spf.base.hashvector.HashVectorFactory;
+import edu.cornell.cs.nlp.spf.base.hashvector.IHashVector;
+import edu.cornell.cs.nlp.spf.base.hashvector.IHashVectorImmutable;
+import edu.cornell.cs.nlp.spf.base.hashvector.KeyArgs;
+import edu.cornell.cs.nlp.utils.composites.Pair;
+
+/**
+ * Compact serializable encoding of a sparse vector, used to reduce the cost of
+ * transferring gradients and parameter updates. Entries are sorted by their
+ * keys, and each key is delta encoded with respect to the previous one: only
+ * the number of leading arguments it shares with the previous key and the
+ * remaining arguments are stored. The encoded entries are deflated.
+ *
+ * @author Yoav Artzi
+ */
+public class CompressedHashVector implements Serializable {
+
+	private static final long	serialVersionUID	= -2416254317934212219L;
+
+	private final byte[]		bytes;
+	private final int			size;
+
+	private CompressedHashVector(byte[] bytes, int size) {
+		this.bytes = bytes;
+		this.size = size;
+	}
+
+	public static CompressedHashVector of(IHashVectorImmutable vector) {
+		final List<Pair<String[], Double>> entries = new ArrayList<>();
+		for (final Pair<KeyArgs, Double> keyValue : vector) {
+			entries.add(Pair.of(toArgs(keyValue.first()), keyValue.second()));
+		}
+		Collections.sort(entries,
+				(e1, e2) -> compareKeys(e1.first(), e2.first()));
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(
+				new DeflaterOutputStream(bytes))) {
+			String[] previous = new String[0];
+			for (final Pair<String[], Double> entry : entries) {
+				final String[] args = entry.first();
+				int shared = 0;
+				while (shared < args.length && shared < previous.length
+						&& args[shared].equals(previous[shared])) {
+					++shared;
+				}
+				out.writeByte(args.length);
+				out.writeByte(shared);
+				for (int i = shared; i < args.length; ++i) {
+					out.writeUTF(args[i]);
+				}
+				out.writeDouble(entry.second());
+				previous = args;
+			}
+		} catch (final IOException e) {
+			// Writing to memory, not expected.
+			throw new IllegalStateException(e);
+		}
+		return new CompressedHashVector(bytes.toByteArray(), entries.size());
+	}
+
+	private static int compareKeys(String[] key1, String[] key2) {
+		final int len = Math.min(key1.length, key2.length);
+		for (int i = 0; i < len; ++i) {
+			final int comparison = key1[i].compareTo(key2[i]);
+			if (comparison != 0) {
+				return comparison;
+			}
+		}
+		return Integer.compare(key1.length, key2.length);
+	}
+
+	private static String[] toArgs(KeyArgs key) {
+		final String[] args = new String[] { key.getArg1(), key.getArg2(),
+				key.getArg3(), key.getArg4(), key.getArg5() };
+		int length = 0;
+		while (length < args.length && args[length] != null) {
+			++length;
+		}
+		final String[] trimmed = new String[length];
+		System.arraycopy(args, 0, trimmed, 0, length);
+		return trimmed;
+	}
+
+	public IHashVector decode() {
+		final IHashVector vector = HashVectorFactory.create();
+		try (DataInputStream in = new DataInputStream(
+				new InflaterInputStream(new ByteArrayInputStream(bytes)))) {
+			String[] previous = new String[0];
+			for (int n = 0; n < size; ++n) {
+				final String[] args = new String[in.readByte()];
+				final int shared = in.readByte();
+				System.arraycopy(previous, 0, args, 0, shared);
+				for (int i = shared; i < args.length; ++i) {
+					args[i] = in.readUTF();
+				}
+				final double value = in.readDouble();
+				switch (args.length) {
+					case 1:
+						vector.set(args[0], value);
+						break;
+					case 2:
+						vector.set(args[0], args[1], value);
+						break;
+					case 3:
+						vector.set(args[0], args[1], args[2], value);
+						break;
+					case 4:
+						vector.set(args[0], args[1], args[2], args[3], value);
+						break;
+					case 5:
+						vector.set(args[0], args[1], args[2], args[3], args[4],
+								value);
+						break;
+					default:
+						throw new IllegalStateException(
+								"Invalid key length: " + args.length);
+				}
+				previous = args;
+			}
+		} catch (final IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return vector;
+	}
+
+	/**
+	 * Number of bytes in the encoded vector.
+	 */
+	public int numBytes() {
+		return bytes.length;
+	}
+
+	/**
+	 * Number of entries in the vector.
+	 */
+	public int size() {
+		return size;
+	}
+
+}
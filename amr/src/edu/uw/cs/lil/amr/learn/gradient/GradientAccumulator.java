@@ -0,0 +1,70 @@
+package edu.uw.cs.lil.amr.learn.gradient;
+
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.cornell.cs.nlp.spf.base.hashvector.HashVectorFactory;
+import edu.cornell.cs.nlp.spf.base.hashvector.IHashVector;
+import edu.cornell.cs.nlp.spf.base.hashvector.IHashVectorImmutable;
+import edu.cornell.cs.nlp.spf.base.hashvector.KeyArgs;
+import edu.cornell.cs.nlp.utils.composites.Pair;
+
+/**
+ * Concurrent sparse accumulator for gradients. Gradients may be added from
+ * multiple threads without a global lock: the underlying map is sharded by the
+ * hash of the feature key, and concurrent updates only contend when they touch
+ * the same shard.
+ * <p>
+ * The values of each feature are summed in the order the gradients are added,
+ * which depends on the scheduling of the threads. Floating-point addition is
+ * not associative, so the sums may differ slightly between runs.
+ *
+ * @author Yoav Artzi
+ */
+public class GradientAccumulator {
+
+	/**
+	 * Total time spent adding gradients, in nanoseconds.
+	 */
+	private final AtomicLong						addTime	= new AtomicLong();
+	private final ConcurrentHashMap<KeyArgs, Double>	values;
+
+	public GradientAccumulator() {
+		this.values = new ConcurrentHashMap<>(1024, 0.75f,
+				Runtime.getRuntime().availableProcessors());
+	}
+
+	public void add(IHashVectorImmutable gradient) {
+		final long startTime = System.nanoTime();
+		for (final Pair<KeyArgs, Double> keyValue : gradient) {
+			values.merge(keyValue.first(), keyValue.second(), Double::sum);
+		}
+		addTime.addAndGet(System.nanoTime() - startTime);
+	}
+
+	/**
+	 * Total time spent adding gradients (summed over all threads) in
+	 * milliseconds.
+	 */
+	public double getAddTime() {
+		return addTime.get() / 1000000.0;
+	}
+
+	public int size() {
+		return values.size();
+	}
+
+	/**
+	 * The sum of all gradients added so far. Should be called once all
+	 * additions completed.
+	 */
+	public IHashVector toVector() {
+		final IHashVector vector = HashVectorFactory.create();
+		for (final Entry<KeyArgs, Double> entry : values.entrySet()) {
+			vector.set(entry.getKey(), entry.getValue());
+		}
+		return vector;
+	}
+
+}
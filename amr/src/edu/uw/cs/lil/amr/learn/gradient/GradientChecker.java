@@ -26,6 +26,7 @@ import edu.uw.cs.lil.amr.parser.AbstractAmrParserOutput;
 import edu.uw.cs.lil.amr.parser.GraphAmrDerivation;
 import edu.uw.cs.lil.amr.parser.GraphAmrParser;
 import edu.uw.cs.lil.amr.parser.GraphAmrParserOutput;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.FeatureWeights;
 
 /**
  * A gradient checking procedure.
@@ -155,6 +156,7 @@ public class GradientChecker {
 
 				// Compute function value for weight + epsilon.
 				model.getTheta().set(key, originalWeight + epsilon);
+				FeatureWeights.invalidate(model.getTheta());
 				final GraphAmrParserOutput plusOutput = parser
 						.parse(dataItem.getSample(), dim);
 				if (!plusOutput.isExact()) {
@@ -182,6 +184,7 @@ public class GradientChecker {
 
 				// Computer function value for weight - epsilon.
 				model.getTheta().set(key, originalWeight - epsilon);
+				FeatureWeights.invalidate(model.getTheta());
 				final GraphAmrParserOutput minusOutput = parser
 						.parse(dataItem.getSample(), dim);
 				if (!minusOutput.isExact()) {
@@ -221,6 +224,7 @@ public class GradientChecker {
 
 				// Restore original weight.
 				model.getTheta().set(key, originalWeight);
+				FeatureWeights.invalidate(model.getTheta());
 			}
 
 			LOG.info("Sample processing time: %.2f",
@@ -39,6 +39,15 @@ public class GradientComputation implements Serializable {
 		this.viterbiEntries = Collections.unmodifiableSet(viterbiEntries);
 	}
 
+	/**
+	 * A copy of this computation with a different gradient. For example, to
+	 * transfer the gradient separately in a compact encoding.
+	 */
+	public GradientComputation cloneWithGradient(IHashVector newGradient) {
+		return new GradientComputation(newGradient, partial, labelIsOptimal,
+				statUpdates, viterbiEntries, exact);
+	}
+
 	public IHashVector getGradient() {
 		return gradient;
 	}
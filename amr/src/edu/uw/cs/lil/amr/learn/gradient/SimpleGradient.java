@@ -47,10 +47,12 @@ import edu.uw.cs.lil.amr.lambda.GetAmrSubExpressions;
 import edu.uw.cs.lil.amr.lambda.StripOverload;
 import edu.uw.cs.lil.amr.learn.LearningServices;
 import edu.uw.cs.lil.amr.parser.AbstractAmrParser;
+import edu.uw.cs.lil.amr.parser.DegradationLevel;
 import edu.uw.cs.lil.amr.parser.EvaluationResult;
 import edu.uw.cs.lil.amr.parser.GraphAmrDerivation;
 import edu.uw.cs.lil.amr.parser.GraphAmrParser;
 import edu.uw.cs.lil.amr.parser.GraphAmrParserOutput;
+import edu.uw.cs.lil.amr.parser.InferenceMethod;
 
 /**
  * Computes an approximate gradient for a single data item with the objective of
@@ -70,15 +72,21 @@ public class SimpleGradient implements IGradientFunction {
 	private final boolean		doSecondStageUpdates;
 	private final boolean		doUnreachableUpdates;
 	private final boolean		hard;
+	/**
+	 * Derive the conditioned parse from the model parse when the model parse
+	 * is exact, instead of parsing each sentence twice.
+	 */
+	private final boolean		sharedChart;
 
 	public SimpleGradient(boolean hard, Integer conditionedBeam,
 			boolean doSecondStageUpdates, boolean doPartialUpdates,
-			boolean doUnreachableUpdates) {
+			boolean doUnreachableUpdates, boolean sharedChart) {
 		this.hard = hard;
 		this.conditionedBeam = conditionedBeam;
 		this.doSecondStageUpdates = doSecondStageUpdates;
 		this.doPartialUpdates = doPartialUpdates;
 		this.doUnreachableUpdates = doUnreachableUpdates;
+		this.sharedChart = sharedChart;
 	}
 
 	@Override
@@ -92,20 +100,38 @@ public class SimpleGradient implements IGradientFunction {
 		// updates on the network, if the stats objects in on another machine.
 		final StatUpdates statUpdates = new StatUpdates();
 
+		// Parse with the current model.
+		final GraphAmrParserOutput modelOutput = parser
+				.parse(dataItem.getSample(), dataItemModel);
+		final long modelInferenceTime = modelOutput.getInferenceTime();
+		statUpdates.mean("model parse", modelInferenceTime / 1000.0, "sec");
+		parserOutputLogger.log(modelOutput, dataItemModel,
+				String.format("%d-%d-model", epochNumber, dataItemNumber));
+		LOG.info("Model inference time: %.4fsec",
+				modelOutput.getInferenceTime() / 1000.0);
+
 		// Parse with current model conditioned on getting the correct logical
-		// form.
-		final GraphAmrParserOutput conditionedOutput = parser.parse(
-				dataItem.getSample(), dataItemModel,
-				filterFactory.createJointFilter(dataItem), conditionedBeam);
-		// The values that are pending to be recoded in stats must be extracted,
-		// so we won't be forced to transfer the entire output.
-		final long inferenceTime = conditionedOutput.getInferenceTime();
-		statUpdates.mean("conditioned inference", inferenceTime / 1000.0,
-				"sec");
-		LOG.info("Conditioned inference time: %.4fsec",
-				conditionedOutput.getInferenceTime() / 1000.0);
-		parserOutputLogger.log(conditionedOutput, dataItemModel, String
-				.format("%d-%d-conditioned", epochNumber, dataItemNumber));
+		// form. If possible, the conditioned parse is derived from the model
+		// parse.
+		final GraphAmrParserOutput conditionedOutput;
+		if (sharedChart && isConditionedView(modelOutput, dataItem)) {
+			LOG.info("Conditioned inference shares the model parse");
+			statUpdates.count("Shared conditioned inference", epochNumber);
+			conditionedOutput = modelOutput;
+		} else {
+			conditionedOutput = parser.parse(dataItem.getSample(),
+					dataItemModel, filterFactory.createJointFilter(dataItem),
+					conditionedBeam);
+			// The values that are pending to be recoded in stats must be
+			// extracted, so we won't be forced to transfer the entire output.
+			final long inferenceTime = conditionedOutput.getInferenceTime();
+			statUpdates.mean("conditioned inference", inferenceTime / 1000.0,
+					"sec");
+			LOG.info("Conditioned inference time: %.4fsec",
+					conditionedOutput.getInferenceTime() / 1000.0);
+			parserOutputLogger.log(conditionedOutput, dataItemModel, String
+					.format("%d-%d-conditioned", epochNumber, dataItemNumber));
+		}
 
 		// Conditioned derivations.
 		final List<GraphAmrDerivation> conditionedDerivations = conditionedOutput
@@ -116,16 +142,6 @@ public class SimpleGradient implements IGradientFunction {
 				conditionedOutput, dataItem, epochNumber, dataItemNumber,
 				dataItemModel, conditionedDerivations);
 
-		// Parse with the current model.
-		final GraphAmrParserOutput modelOutput = parser
-				.parse(dataItem.getSample(), dataItemModel);
-		final long modelInferenceTime = modelOutput.getInferenceTime();
-		statUpdates.mean("model parse", modelInferenceTime / 1000.0, "sec");
-		parserOutputLogger.log(modelOutput, dataItemModel,
-				String.format("%d-%d-model", epochNumber, dataItemNumber));
-		LOG.info("Model inference time: %.4fsec",
-				modelOutput.getInferenceTime() / 1000.0);
-
 		// The underspecified form is used for logging and early update.
 		final Category<LogicalExpression> underspecifiedCategory = Category
 				.create(AMRServices.getCompleteSentenceSyntax(),
@@ -750,6 +766,31 @@ public class SimpleGradient implements IGradientFunction {
 				true, false, statUpdates, Collections.emptySet(), false);
 	}
 
+	/**
+	 * Checks if the model parse can be used as the conditioned parse. The
+	 * supervised filter only prunes parsing steps that can't be part of a
+	 * derivation of the label, and restricts the intermediate and final
+	 * logical forms to the label. Therefore, if the model parse pruned
+	 * nothing, its derivations of the label are exactly those of the
+	 * conditioned parse, and the label-conditioned accessors of the output
+	 * provide the conditioned view. Otherwise, the beam of the model parse may
+	 * have dropped parts of the conditioned parse.
+	 * <p>
+	 * {@link InferenceMethod#VITERBI} outputs only keep the derivations of the
+	 * k-best logical forms. Their exact flag is set only if the k-best list
+	 * includes all the configurations of each factor graph, not when the
+	 * k-best are merely exact, so an exact output is complete as well.
+	 */
+	private boolean isConditionedView(GraphAmrParserOutput modelOutput,
+			LabeledAmrSentence dataItem) {
+		// Partial and unreachable updates require the chart of the
+		// conditioned parse, so if the label is not reachable, the
+		// conditioned parse is required.
+		return modelOutput.isExact()
+				&& modelOutput.getDegradationLevel() == DegradationLevel.NONE
+				&& !modelOutput.getDerivations(dataItem.getLabel()).isEmpty();
+	}
+
 	public static class Creator
 			implements IResourceObjectCreator<SimpleGradient> {
 
@@ -776,7 +817,8 @@ public class SimpleGradient implements IGradientFunction {
 			return new SimpleGradient(params.getAsBoolean("hard", false),
 					conditionedBeam, params.getAsBoolean("secondStage", true),
 					params.getAsBoolean("partialUpdates", true),
-					params.getAsBoolean("unreachableUpdates", true));
+					params.getAsBoolean("unreachableUpdates", true),
+					params.getAsBoolean("sharedChart", false));
 		}
 
 		@Override
@@ -799,6 +841,8 @@ public class SimpleGradient implements IGradientFunction {
 							"Beam size for conditioned inference (default: null, use default beam)")
 					.addParam("hard", Boolean.class,
 							"Hard updates (similar to hard EM) (default: false)")
+					.addParam("sharedChart", Boolean.class,
+							"Derive the conditioned parse from the model parse when the model parse is exact (no pruning), instead of parsing twice. Otherwise, falls back to a separate conditioned parse (default: false)")
 					.build();
 		}
 
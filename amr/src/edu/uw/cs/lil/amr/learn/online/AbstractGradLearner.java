@@ -62,11 +62,13 @@ public abstract class AbstractGradLearner extends AbstractOnlineLearner {
 			IntConsumer postIteration, boolean sortData,
 			IWeightUpdateProcedure estimator,
 			IGradientFunction gradientFunction,
-			Integer conditionedInferenceBeam, boolean resumeLearning) {
+			Integer conditionedInferenceBeam, boolean resumeLearning,
+			int numThreads, int maxStaleness, int flushThreshold) {
 		super(numIterations, trainingData, maxSentenceLength, parser,
 				parserOutputLogger, categoryServices, genlex, filterFactory,
 				postIteration, sortData, estimator, gradientFunction,
-				conditionedInferenceBeam, resumeLearning);
+				conditionedInferenceBeam, resumeLearning, numThreads,
+				maxStaleness, flushThreshold);
 	}
 
 	@Override
@@ -79,8 +81,11 @@ public abstract class AbstractGradLearner extends AbstractOnlineLearner {
 				dataItem, dataItemModel, dataItemNumber, epochNumber, parser,
 				filterFactory, parserOutputLogger);
 
-		// Apply updates to the learning statistics.
-		gradientComputation.getStatUpdates().accept(stats);
+		// Apply updates to the learning statistics. Synchronized, since
+		// samples may be processed concurrently.
+		synchronized (stats) {
+			gradientComputation.getStatUpdates().accept(stats);
+		}
 
 		if (gradientComputation.getGradient() == null) {
 			return;
@@ -89,10 +94,11 @@ public abstract class AbstractGradLearner extends AbstractOnlineLearner {
 		// Apply the update.
 
 		// Apply the update.
-		if (updateProcedure.applyUpdate(gradientComputation.getGradient(),
-				model.getTheta())) {
+		if (applyUpdate(gradientComputation.getGradient(), model)) {
 			// Apply the update.
-			stats.count("Update", epochNumber);
+			synchronized (stats) {
+				stats.count("Update", epochNumber);
+			}
 		} else {
 			LOG.info("No update%s", gradientComputation.isLabelIsOptimal() ? ""
 					: ", although best is not the correct result");
@@ -18,8 +18,17 @@
  ******************************************************************************/
 package edu.uw.cs.lil.amr.learn.online;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.IntConsumer;
 
+import edu.cornell.cs.nlp.spf.base.hashvector.IHashVector;
 import edu.cornell.cs.nlp.spf.ccg.categories.ICategoryServices;
 import edu.cornell.cs.nlp.spf.ccg.lexicon.ILexiconImmutable;
 import edu.cornell.cs.nlp.spf.ccg.lexicon.LexicalEntry;
@@ -36,6 +45,7 @@ import edu.cornell.cs.nlp.spf.parser.joint.model.IJointModelImmutable;
 import edu.cornell.cs.nlp.spf.parser.joint.model.JointModel;
 import edu.cornell.cs.nlp.utils.log.ILogger;
 import edu.cornell.cs.nlp.utils.log.LoggerFactory;
+import edu.cornell.cs.nlp.utils.log.thread.LoggingThreadFactory;
 import edu.cornell.cs.nlp.utils.system.MemoryReport;
 import edu.uw.cs.lil.amr.data.AMRMeta;
 import edu.uw.cs.lil.amr.data.LabeledAmrSentence;
@@ -44,6 +54,7 @@ import edu.uw.cs.lil.amr.learn.estimators.IWeightUpdateProcedure;
 import edu.uw.cs.lil.amr.learn.gradient.IGradientFunction;
 import edu.uw.cs.lil.amr.parser.GraphAmrParser;
 import edu.uw.cs.lil.amr.parser.IsValidAmr;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.FeatureWeights;
 
 /**
  * AMR-specific version of {@link AbstractSituatedLearner} for supervised online
@@ -56,9 +67,34 @@ import edu.uw.cs.lil.amr.parser.IsValidAmr;
  *            Data item used for learning.
  */
 public abstract class AbstractOnlineLearner extends AbstractLearner {
-	public static final ILogger LOG = LoggerFactory
+	public static final ILogger	LOG				= LoggerFactory
 			.create(AbstractOnlineLearner.class);
 
+	/**
+	 * Number of held back asynchronous updates that forces the workers to
+	 * stop for a flush. See {@link HogwildUpdater}.
+	 */
+	private final int			flushThreshold;
+
+	/**
+	 * Staleness bound for asynchronous updates, as a number of updates. See
+	 * {@link HogwildUpdater}.
+	 */
+	private final int			maxStaleness;
+
+	/**
+	 * Number of learning workers. With a single worker, samples are processed
+	 * sequentially and learning is deterministic. With multiple workers,
+	 * samples are processed concurrently with asynchronous updates.
+	 */
+	private final int			numThreads;
+
+	/**
+	 * Shared model updates of the concurrent workers. Only set while training
+	 * with multiple workers.
+	 */
+	private HogwildUpdater		updater			= null;
+
 	protected AbstractOnlineLearner(int numIterations,
 			IDataCollection<LabeledAmrSentence> trainingData,
 			int maxSentenceLength, GraphAmrParser parser,
@@ -69,11 +105,19 @@ public abstract class AbstractOnlineLearner extends AbstractLearner {
 			IntConsumer postIteration, boolean sortData,
 			IWeightUpdateProcedure estimator,
 			IGradientFunction gradientFunction,
-			Integer conditionedInferenceBeam, boolean resumeLearning) {
+			Integer conditionedInferenceBeam, boolean resumeLearning,
+			int numThreads, int maxStaleness, int flushThreshold) {
 		super(numIterations, trainingData, sortData, maxSentenceLength, parser,
 				parserOutputLogger, categoryServices, genlex, filterFactory,
 				postIteration, estimator, gradientFunction,
 				conditionedInferenceBeam, resumeLearning);
+		this.numThreads = numThreads;
+		this.maxStaleness = maxStaleness;
+		this.flushThreshold = flushThreshold;
+		LOG.info(
+				"Init %s: ... numThreads=%d, maxStaleness=%d, flushThreshold=%d",
+				this.getClass().getSimpleName(), numThreads, maxStaleness,
+				flushThreshold);
 	}
 
 	@Override
@@ -85,6 +129,11 @@ public abstract class AbstractOnlineLearner extends AbstractLearner {
 			updateProcedure.init();
 		}
 
+		if (numThreads > 1) {
+			trainConcurrently(model);
+			return;
+		}
+
 		// Epochs
 		for (int epochNumber = 0; epochNumber < epochs; ++epochNumber) {
 			// Training epoch, iterate over all training samples
@@ -109,16 +158,7 @@ public abstract class AbstractOnlineLearner extends AbstractLearner {
 						dataItem.getClass().getSimpleName());
 				LOG.info("%s", dataItem);
 
-				// Skip sample, if over the length limit.
-				if (dataItem.getSample().getSample().getTokens()
-						.size() > maxSentenceLength) {
-					LOG.warn("Training sample too long, skipping");
-					continue;
-				}
-
-				// Skip sample of the label is invalid.
-				if (!IsValidAmr.of(dataItem.getLabel(), true, true)) {
-					LOG.warn("Annotated LF is an invalid AMR -- skipping");
+				if (!isTrainable(dataItem)) {
 					continue;
 				}
 
@@ -166,6 +206,159 @@ public abstract class AbstractOnlineLearner extends AbstractLearner {
 		}
 	}
 
+	/**
+	 * Process a single sample by a concurrent worker. The model is read
+	 * without locking, and structural changes to the model (i.e., adding
+	 * lexical entries) are done exclusively. The exclusive lock is only taken
+	 * if GENLEX generated entries that are not already in the model.
+	 */
+	private void processConcurrently(LabeledAmrSentence dataItem,
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
+			int itemCounter, int epochNumber) {
+		final long startTime = System.currentTimeMillis();
+
+		LOG.info("%d : ================== [%d]", itemCounter, epochNumber);
+		LOG.info("Sample type: %s", dataItem.getClass().getSimpleName());
+		LOG.info("%s", dataItem);
+
+		if (!isTrainable(dataItem)) {
+			return;
+		}
+
+		synchronized (stats) {
+			stats.count("Processed", epochNumber);
+		}
+
+		// Step I: Lexical induction. Adding the entries modifies the
+		// structure of the model.
+		if (genlex != null) {
+			final ILexiconImmutable<LogicalExpression> entries = updater
+					.read(() -> {
+						final ILexiconImmutable<LogicalExpression> generated = generateLexicalEntries(
+								dataItem, model, itemCounter, epochNumber);
+						return hasNewEntries(model, generated) ? generated
+								: null;
+					});
+			if (entries != null) {
+				updater.exclusive(() -> updateModel(model, entries));
+			}
+		}
+
+		// Step II: Update model parameters.
+		updater.read(() -> {
+			parameterUpdate(dataItem,
+					model.createJointDataItemModel(dataItem.getSample()),
+					model, itemCounter, epochNumber);
+			return null;
+		});
+		updater.flushIfNeeded();
+
+		synchronized (stats) {
+			stats.mean("Sample processing",
+					(System.currentTimeMillis() - startTime) / 1000.0, "sec");
+		}
+		LOG.info("%d : Total sample handling time: %.4fsec", itemCounter,
+				(System.currentTimeMillis() - startTime) / 1000.0);
+	}
+
+	/**
+	 * Concurrent training. Workers pull samples from a shared queue and
+	 * update the shared model asynchronously (see {@link HogwildUpdater}).
+	 * Samples are processed in an arbitrary order, so learning is not
+	 * deterministic.
+	 */
+	private void trainConcurrently(
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model) {
+		updater = new HogwildUpdater(model.getTheta(), updateProcedure,
+				maxStaleness, flushThreshold);
+		final ExecutorService executor = Executors.newFixedThreadPool(
+				numThreads, new LoggingThreadFactory("learn"));
+		try {
+			for (int epochNumber = 0; epochNumber < epochs; ++epochNumber) {
+				LOG.info("=========================");
+				LOG.info("Training epoch %d (%d workers)", epochNumber,
+						numThreads);
+				LOG.info("=========================");
+
+				final long epochStartTime = System.currentTimeMillis();
+				final int epoch = epochNumber;
+				final Iterator<LabeledAmrSentence> queue = trainingData
+						.iterator();
+				final AtomicInteger itemCounter = new AtomicInteger(-1);
+				final List<Future<?>> workers = new ArrayList<>(numThreads);
+				for (int i = 0; i < numThreads; ++i) {
+					workers.add(executor.submit(() -> {
+						while (true) {
+							final LabeledAmrSentence dataItem;
+							final int itemNumber;
+							synchronized (queue) {
+								if (!queue.hasNext()) {
+									return;
+								}
+								dataItem = queue.next();
+								itemNumber = itemCounter.incrementAndGet();
+							}
+							processConcurrently(dataItem, model, itemNumber,
+									epoch);
+						}
+					}));
+				}
+				for (final Future<?> worker : workers) {
+					worker.get();
+				}
+				// Flush all held back updates before the end of the epoch.
+				updater.exclusive(() -> {
+					// Nothing to do beyond flushing.
+				});
+
+				// Output epoch statistics
+				LOG.info("Epoch time: %.2f",
+						(System.currentTimeMillis() - epochStartTime) / 1000.0);
+				LOG.info("Stale gradients dropped so far: %d",
+						updater.getStaleDrops());
+				LOG.info("System memory: %s", MemoryReport.generate());
+				LOG.info("Epoch stats:");
+				LOG.info(stats);
+
+				// Run the post-iteration job.
+				postIteration.accept(epochNumber);
+			}
+		} catch (final InterruptedException e) {
+			throw new RuntimeException(e);
+		} catch (final ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+			updater = null;
+		}
+	}
+
+	/**
+	 * Checks if adding the given entries will change the model's lexicon.
+	 * Only reads the model.
+	 */
+	private boolean hasNewEntries(
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
+			ILexiconImmutable<LogicalExpression> entries) {
+		for (final LexicalEntry<LogicalExpression> entry : entries
+				.toCollection()) {
+			if (genlex.isGenerated(entry)) {
+				if (!model.getLexicon()
+						.contains(LexiconGenerationServices.unmark(entry))) {
+					return true;
+				}
+				for (final LexicalEntry<LogicalExpression> linkedEntry : entry
+						.getLinkedEntries()) {
+					if (!model.getLexicon().contains(
+							LexiconGenerationServices.unmark(linkedEntry))) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
 	private void updateModel(
 			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model,
 			ILexiconImmutable<LogicalExpression> entriesToAdd) {
@@ -197,6 +390,46 @@ public abstract class AbstractOnlineLearner extends AbstractLearner {
 		}
 	}
 
+	/**
+	 * Compute the update for the given gradient and apply it to the model
+	 * parameters. With multiple workers, the update is applied asynchronously,
+	 * and might be dropped if the gradient is stale.
+	 *
+	 * @return 'true' iff an update was applied.
+	 */
+	protected boolean applyUpdate(IHashVector gradient,
+			JointModel<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression> model) {
+		if (updater == null) {
+			if (updateProcedure.applyUpdate(gradient, model.getTheta())) {
+				FeatureWeights.invalidate(model.getTheta());
+				return true;
+			}
+			return false;
+		} else {
+			return updater.apply(gradient);
+		}
+	}
+
+	/**
+	 * Checks if the sample should be used for training.
+	 */
+	protected boolean isTrainable(LabeledAmrSentence dataItem) {
+		// Skip sample, if over the length limit.
+		if (dataItem.getSample().getSample().getTokens()
+				.size() > maxSentenceLength) {
+			LOG.warn("Training sample too long, skipping");
+			return false;
+		}
+
+		// Skip sample of the label is invalid.
+		if (!IsValidAmr.of(dataItem.getLabel(), true, true)) {
+			LOG.warn("Annotated LF is an invalid AMR -- skipping");
+			return false;
+		}
+
+		return true;
+	}
+
 	/**
 	 * Parameter update method.
 	 */
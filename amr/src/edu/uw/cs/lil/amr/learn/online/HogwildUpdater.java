@@ -0,0 +1,215 @@
+package edu.uw.cs.lil.amr.learn.online;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import edu.cornell.cs.nlp.spf.base.hashvector.HashVectorFactory;
+import edu.cornell.cs.nlp.spf.base.hashvector.IHashVector;
+import edu.cornell.cs.nlp.spf.base.hashvector.KeyArgs;
+import edu.cornell.cs.nlp.utils.composites.Pair;
+import edu.cornell.cs.nlp.utils.log.ILogger;
+import edu.cornell.cs.nlp.utils.log.LoggerFactory;
+import edu.uw.cs.lil.amr.learn.estimators.IWeightUpdateProcedure;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.FeatureWeights;
+
+/**
+ * Asynchronous (Hogwild-style) updates of a shared weight vector by
+ * concurrent learning workers. Workers read the weights without locking.
+ * Updates of existing weights are applied in place, and concurrent updates of
+ * the same weight may be lost. Updates of new features change the structure
+ * of the weight vector, so they are held back and flushed while no worker
+ * reads the weights. The estimator is not thread-safe, so computing updates is
+ * serialized, but only takes time proportional to the size of the gradient.
+ * <p>
+ * The staleness bound is a number of updates applied between the time a
+ * worker starts reading the weights and the time its gradient is applied.
+ * Stale gradients are dropped. Held back updates are flushed whenever a worker
+ * finds that no other worker reads the weights, so flushing doesn't stop the
+ * workers. Only when the number of held back updates reaches the flush
+ * threshold, the workers are stopped to flush them.
+ *
+ * @author Yoav Artzi
+ */
+class HogwildUpdater {
+	public static final ILogger				LOG				= LoggerFactory
+			.create(HogwildUpdater.class);
+
+	/**
+	 * Number of held back updates that forces a flush, even if it requires
+	 * waiting for all workers to stop reading the model.
+	 */
+	private final int						flushThreshold;
+
+	/**
+	 * Workers hold the read lock while reading the model. Structural changes
+	 * of the model require the write lock.
+	 */
+	private final ReadWriteLock				lock			= new ReentrantReadWriteLock(
+			true);
+
+	private final int						maxStaleness;
+
+	/**
+	 * Updates of features that are not in the weight vector, held back until
+	 * the next flush. Guards itself and {@link #pendingUpdates}.
+	 */
+	private final IHashVector				pending			= HashVectorFactory
+			.create();
+
+	/**
+	 * Number of updates held back (completely or partially) since the last
+	 * flush.
+	 */
+	private int								pendingUpdates	= 0;
+
+	private final AtomicInteger				staleDrops		= new AtomicInteger();
+
+	/**
+	 * The weight vector version when the current worker started reading the
+	 * model.
+	 */
+	private final ThreadLocal<Long>			startVersion	= new ThreadLocal<>();
+
+	private final IHashVector				theta;
+
+	private final IWeightUpdateProcedure	updateProcedure;
+
+	/**
+	 * Number of updates applied so far.
+	 */
+	private final AtomicLong				version			= new AtomicLong();
+
+	HogwildUpdater(IHashVector theta, IWeightUpdateProcedure updateProcedure,
+			int maxStaleness, int flushThreshold) {
+		this.theta = theta;
+		this.updateProcedure = updateProcedure;
+		this.maxStaleness = maxStaleness;
+		this.flushThreshold = flushThreshold;
+	}
+
+	/**
+	 * Compute the update for the given gradient and apply it. Must be called
+	 * while reading the model (see {@link #read(Supplier)}), so the structure
+	 * of the weight vector doesn't change while the update is applied.
+	 *
+	 * @return 'true' iff an update was applied. 'false' if the estimator
+	 *         decided not to update, or if the gradient is stale.
+	 */
+	public boolean apply(IHashVector gradient) {
+		final Long start = startVersion.get();
+		if (start != null && version.get() - start > maxStaleness) {
+			LOG.info("Dropping stale gradient (staleness=%d, bound=%d)",
+					version.get() - start, maxStaleness);
+			staleDrops.incrementAndGet();
+			return false;
+		}
+
+		final IHashVector update = HashVectorFactory.create();
+		synchronized (updateProcedure) {
+			if (!updateProcedure.applyUpdate(gradient, update)) {
+				return false;
+			}
+		}
+
+		boolean held = false;
+		for (final Pair<KeyArgs, Double> keyValue : update) {
+			if (theta.contains(keyValue.first())) {
+				theta.add(keyValue.first(), keyValue.second());
+			} else {
+				synchronized (pending) {
+					pending.add(keyValue.first(), keyValue.second());
+				}
+				held = true;
+			}
+		}
+		if (held) {
+			synchronized (pending) {
+				++pendingUpdates;
+			}
+		}
+		FeatureWeights.invalidate(theta);
+		version.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Run the given procedure while no worker reads the model. Also flushes
+	 * the updates held back.
+	 */
+	public void exclusive(Runnable procedure) {
+		lock.writeLock().lock();
+		try {
+			flush();
+			procedure.run();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Flush the updates held back if no worker reads the model. If the flush
+	 * threshold is reached, waits for the workers to stop reading. Must not be
+	 * called while reading the model.
+	 */
+	public void flushIfNeeded() {
+		final int held;
+		synchronized (pending) {
+			held = pendingUpdates;
+		}
+		if (held == 0) {
+			return;
+		}
+
+		if (held >= flushThreshold) {
+			exclusive(() -> {
+				// Nothing to do beyond flushing.
+			});
+		} else if (lock.writeLock().tryLock()) {
+			// Acquired only if no worker reads the model, without waiting.
+			try {
+				flush();
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	public int getStaleDrops() {
+		return staleDrops.get();
+	}
+
+	/**
+	 * Read the model. Marks the start of the gradient computation of the
+	 * current worker.
+	 */
+	public <T> T read(Supplier<T> procedure) {
+		lock.readLock().lock();
+		try {
+			startVersion.set(version.get());
+			return procedure.get();
+		} finally {
+			startVersion.remove();
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Must be called while holding the write lock.
+	 */
+	private void flush() {
+		synchronized (pending) {
+			if (pendingUpdates > 0) {
+				LOG.info("Flushing %d held back updates (%d features)",
+						pendingUpdates, pending.size());
+				pending.addTimesInto(1.0, theta);
+				FeatureWeights.invalidate(theta);
+				pending.clear();
+				pendingUpdates = 0;
+			}
+		}
+	}
+
+}
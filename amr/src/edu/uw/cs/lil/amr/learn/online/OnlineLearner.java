@@ -54,15 +54,19 @@ public class OnlineLearner extends AbstractGradLearner {
 			IntConsumer postIteration, boolean sortData,
 			IWeightUpdateProcedure estimator,
 			IGradientFunction gradientFunction,
-			Integer conditionedInferenceBeam, boolean resumeLearning) {
+			Integer conditionedInferenceBeam, boolean resumeLearning,
+			int numThreads, int maxStaleness, int flushThreshold) {
 		super(numIterations, trainingData, maxSentenceLength, parser,
 				parserOutputLogger, categoryServices, genlex, filterFactory,
 				postIteration, sortData, estimator, gradientFunction,
-				conditionedInferenceBeam, resumeLearning);
+				conditionedInferenceBeam, resumeLearning, numThreads,
+				maxStaleness, flushThreshold);
 	}
 
 	public static class Builder {
 
+		public static final int																																			DEFAULT_FLUSH_THRESHOLD		= 100;
+
 		/**
 		 * Required for lexical induction.
 		 */
@@ -91,6 +95,12 @@ public class OnlineLearner extends AbstractGradLearner {
 																																																		}
 																																																	};
 
+		/**
+		 * Number of held back asynchronous updates that forces the workers to
+		 * stop for a flush. If null, {@link #DEFAULT_FLUSH_THRESHOLD}.
+		 */
+		private Integer																																					flushThreshold				= null;
+
 		/**
 		 * GENLEX procedure. If 'null' skip lexical induction.
 		 */
@@ -104,9 +114,21 @@ public class OnlineLearner extends AbstractGradLearner {
 		 */
 		private int																																						maxSentenceLength			= Integer.MAX_VALUE;
 
+		/**
+		 * Staleness bound for asynchronous updates (number of updates). If
+		 * null, twice the number of workers.
+		 */
+		private Integer																																					maxStaleness				= null;
+
 		/** Number of training iterations */
 		private int																																						numIterations				= 4;
 
+		/**
+		 * Number of learning workers. A single worker processes the samples
+		 * sequentially and deterministically.
+		 */
+		private int																																						numThreads					= 1;
+
 		private final GraphAmrParser																																	parser;
 
 		private IJointOutputLogger<LogicalExpression, LogicalExpression, LogicalExpression>																				parserOutputLogger			= new IJointOutputLogger<LogicalExpression, LogicalExpression, LogicalExpression>() {
@@ -166,7 +188,10 @@ public class OnlineLearner extends AbstractGradLearner {
 					maxSentenceLength, parser, parserOutputLogger,
 					categoryServices, genlex, filterFactory, postIteration,
 					sortData, estimator, gradientFunction,
-					conditionedInferenceBeam, resumeLearning);
+					conditionedInferenceBeam, resumeLearning, numThreads,
+					maxStaleness == null ? 2 * numThreads : maxStaleness,
+					flushThreshold == null ? DEFAULT_FLUSH_THRESHOLD
+							: flushThreshold);
 		}
 
 		public Builder setConditionedInferenceBeam(
@@ -181,6 +206,11 @@ public class OnlineLearner extends AbstractGradLearner {
 			return this;
 		}
 
+		public Builder setFlushThreshold(Integer flushThreshold) {
+			this.flushThreshold = flushThreshold;
+			return this;
+		}
+
 		public Builder setGenlex(
 				ILexiconGeneratorPrecise<LabeledAmrSentence, LogicalExpression, IJointModelImmutable<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression>> genlex,
 				ICategoryServices<LogicalExpression> categoryServices) {
@@ -194,11 +224,21 @@ public class OnlineLearner extends AbstractGradLearner {
 			return this;
 		}
 
+		public Builder setMaxStaleness(Integer maxStaleness) {
+			this.maxStaleness = maxStaleness;
+			return this;
+		}
+
 		public Builder setNumIterations(int numIterations) {
 			this.numIterations = numIterations;
 			return this;
 		}
 
+		public Builder setNumThreads(int numThreads) {
+			this.numThreads = numThreads;
+			return this;
+		}
+
 		public Builder setParserOutputLogger(
 				IJointOutputLogger<LogicalExpression, LogicalExpression, LogicalExpression> parserOutputLogger) {
 			this.parserOutputLogger = parserOutputLogger;
@@ -280,6 +320,19 @@ public class OnlineLearner extends AbstractGradLearner {
 						params.getAsInteger("conditionedBeam"));
 			}
 
+			if (params.contains("threads")) {
+				builder.setNumThreads(params.getAsInteger("threads"));
+			}
+
+			if (params.contains("maxStaleness")) {
+				builder.setMaxStaleness(params.getAsInteger("maxStaleness"));
+			}
+
+			if (params.contains("flushThreshold")) {
+				builder.setFlushThreshold(
+						params.getAsInteger("flushThreshold"));
+			}
+
 			return builder.build();
 		}
 
@@ -313,6 +366,13 @@ public class OnlineLearner extends AbstractGradLearner {
 					.addParam("iter", "int", "Number of training iterations")
 					.addParam("postIteration", Runnable.class,
 							"Task to run after each iteration")
+					.addParam("threads", Integer.class,
+							"Number of learning workers. With multiple workers, samples are processed concurrently with asynchronous (Hogwild-style) updates, and learning is not deterministic (default: 1)")
+					.addParam("maxStaleness", Integer.class,
+							"Staleness bound for asynchronous updates: gradients computed before more than this number of updates are dropped (default: 2 * threads)")
+					.addParam("flushThreshold", Integer.class,
+							"Number of held back asynchronous updates of new features that forces the workers to stop until they are added to the model. Held back updates are also added whenever no worker reads the model (default: "
+									+ Builder.DEFAULT_FLUSH_THRESHOLD + ")")
 					.build();
 		}
 
@@ -1,6 +1,7 @@
 package edu.uw.cs.lil.amr.learn.tasks;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.function.IntConsumer;
@@ -22,11 +23,16 @@ import edu.cornell.cs.nlp.utils.log.ILogger;
 import edu.cornell.cs.nlp.utils.log.LoggerFactory;
 import edu.uw.cs.lil.amr.data.AMRMeta;
 import edu.uw.cs.lil.amr.data.LabeledAmrSentence;
+import edu.uw.cs.lil.amr.exec.Exec;
 import edu.uw.cs.lil.amr.learn.online.AbstractOnlineLearner;
+import edu.uw.cs.lil.amr.parser.metrics.MetricsRegistry;
 import edu.uw.cs.lil.amr.test.SmatchStats;
 
 /**
- * A runnable to do testing after each learning iteration.
+ * A runnable to do testing after each learning iteration. If the execution
+ * wrapper is an {@link Exec}, the parser metrics recorded during testing are
+ * dumped when testing completes. The parser may be shared, so its metrics are
+ * not reset. Instead, the metrics recorded before testing are subtracted.
  *
  * @author Yoav Artzi
  * @see AbstractOnlineLearner
@@ -36,30 +42,28 @@ public class TestLearningTask implements IntConsumer {
 			.create(TestLearningTask.class);
 	private final IDataCollection<LabeledAmrSentence>											data;
 	private final IExec<SituatedSentence<AMRMeta>, LogicalExpression>							exec;
-	private final int																			smatchMaxRetries;
-	private final String																		smatchPath;
+	/**
+	 * File to write the parser metrics to after each testing run, with the
+	 * epoch number appended to the file name. As CSV if the name ends with
+	 * ".csv" and as JSON otherwise. If null, the metrics are only logged.
+	 */
+	private final File																			metricsFile;
 	private final int																			smatchRounds;
-	private final long																			smatchTimeout;
 	private final IExecTester<SituatedSentence<AMRMeta>, LogicalExpression, LabeledAmrSentence>	tester;
 
 	public TestLearningTask(IDataCollection<LabeledAmrSentence> data,
 			IExecTester<SituatedSentence<AMRMeta>, LogicalExpression, LabeledAmrSentence> tester,
 			IExec<SituatedSentence<AMRMeta>, LogicalExpression> exec,
-			File smatchPath, long smatchTimeout, int smatchMaxRetries,
-			int smatchRounds) {
+			int smatchRounds, File metricsFile) {
 		this.data = data;
 		this.tester = tester;
 		this.exec = exec;
-		this.smatchTimeout = smatchTimeout;
-		this.smatchMaxRetries = smatchMaxRetries;
 		this.smatchRounds = smatchRounds;
-		this.smatchPath = smatchPath.getAbsolutePath();
+		this.metricsFile = metricsFile;
 		LOG.info("Init %s: size(data)=%d", getClass().getSimpleName(),
 				data.size());
-		LOG.info(
-				"Init %s: timeout=%d, maxRetries=%d, smatchRounds=%d, smatchPath=%s",
-				getClass().getSimpleName(), smatchTimeout, smatchMaxRetries,
-				smatchRounds, smatchPath);
+		LOG.info("Init %s: smatchRounds=%d", getClass().getSimpleName(),
+				smatchRounds);
 	}
 
 	@Override
@@ -71,12 +75,16 @@ public class TestLearningTask implements IntConsumer {
 		// Create test statistics.
 		final List<ITestingStatistics<SituatedSentence<AMRMeta>, LogicalExpression, LabeledAmrSentence>> testingMetrics = new LinkedList<>();
 		testingMetrics.add(new ExactMatchTestingStatistics<>("exact"));
-		final SmatchStats smatch = new SmatchStats(smatchPath, smatchTimeout,
-				smatchMaxRetries, smatchRounds, false);
+		final SmatchStats smatch = new SmatchStats(smatchRounds, false);
 		testingMetrics.add(smatch);
 		final ITestingStatistics<SituatedSentence<AMRMeta>, LogicalExpression, LabeledAmrSentence> testStatistics = new CompositeTestingStatistics<>(
 				testingMetrics);
 
+		// Snapshot the parser metrics, so the dumped metrics only reflect the
+		// testing run.
+		final MetricsRegistry metricsBefore = exec instanceof Exec
+				? ((Exec) exec).getMetrics().snapshot() : null;
+
 		// Record start time.
 		final long startTime = System.currentTimeMillis();
 
@@ -92,10 +100,34 @@ public class TestLearningTask implements IntConsumer {
 		LOG.info("Total run time %.4f seconds",
 				(System.currentTimeMillis() - startTime) / 1000.0);
 
+		if (metricsBefore != null) {
+			dumpMetrics(((Exec) exec).getMetrics().since(metricsBefore),
+					epochNumber);
+		}
+
 		// Job completed
 		LOG.info("============ (Testing run completed)");
 	}
 
+	private void dumpMetrics(MetricsRegistry metrics, int epochNumber) {
+		LOG.info("Parser metrics: %s", metrics.toJson());
+		if (metricsFile != null) {
+			// Insert the epoch number before the file extension.
+			final String name = metricsFile.getName();
+			final int dot = name.lastIndexOf('.');
+			final File file = new File(metricsFile.getParentFile(),
+					dot < 0 ? name + "-" + epochNumber
+							: name.substring(0, dot) + "-" + epochNumber
+									+ name.substring(dot));
+			try {
+				metrics.write(file);
+				LOG.info("Wrote parser metrics to %s", file);
+			} catch (final IOException e) {
+				LOG.error("Failed to write parser metrics to %s: %s", file, e);
+			}
+		}
+	}
+
 	public static class Creator
 			implements IResourceObjectCreator<TestLearningTask> {
 
@@ -114,10 +146,10 @@ public class TestLearningTask implements IntConsumer {
 				IResourceRepository repo) {
 			return new TestLearningTask(repo.get(params.get("data")),
 					repo.get(params.get("tester")),
-					repo.get(params.get("exec")), params.getAsFile("smatch"),
-					params.getAsLong("smatchTimeout", 5000),
-					params.getAsInteger("smatchRetries", 2),
-					params.getAsInteger("smatchRounds", 4));
+					repo.get(params.get("exec")),
+					params.getAsInteger("smatchRounds", 4),
+					params.contains("metrics") ? params.getAsFile("metrics")
+							: null);
 		}
 
 		@Override
@@ -132,15 +164,13 @@ public class TestLearningTask implements IntConsumer {
 							"Nubmer of random restarts when computing smatch (default: 4)")
 					.setDescription(
 							"Runnable to do testing after every learning iteration")
-					.addParam("smatchRetries", Integer.class,
-							"Max smatch retries (default: 2)")
-					.addParam("smatch", File.class, "SMATCH script path")
-					.addParam("smatchTimeout", Long.class,
-							"Timeout for SMATCH process in milliseconds (default: 5000)")
 					.addParam("data", IDataCollection.class,
 							"Labeled testing data")
 					.addParam("tester", ExecTester.class, "Tester object")
-					.addParam("exec", IExec.class, "Execution wrapper").build();
+					.addParam("exec", IExec.class, "Execution wrapper")
+					.addParam("metrics", File.class,
+							"File to write the parser metrics to after each testing run, with the epoch number appended to the name, as CSV if the name ends with .csv and as JSON otherwise (default: only log the metrics)")
+					.build();
 		}
 
 	}
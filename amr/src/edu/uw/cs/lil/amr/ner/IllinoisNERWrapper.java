@@ -5,9 +5,12 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -18,6 +21,7 @@ import edu.cornell.cs.nlp.spf.base.token.TokenSeq;
 import edu.cornell.cs.nlp.spf.mr.lambda.LogicalConstant;
 import edu.illinois.cs.cogcomp.LbjNer.LbjTagger.NETagPlain;
 import edu.illinois.cs.cogcomp.LbjNer.LbjTagger.Parameters;
+import edu.uw.cs.lil.amr.data.AnnotationStore;
 import edu.uw.cs.lil.amr.lambda.AMRServices;
 
 /**
@@ -27,6 +31,16 @@ public class IllinoisNERWrapper {
 
 	private static final Pattern					TAGGING_PATTERN	= new Pattern(
 																			"\\[({tag}[A-Z]+) ({text}.+?)\\]");
+	/**
+	 * Identifies the configuration of the recognizer: a digest of the contents
+	 * of the configuration, translation and model files. Computed on first
+	 * use.
+	 */
+	private String									signature;
+	/**
+	 * The configuration, translation and model files.
+	 */
+	private final File[]							signatureFiles;
 	private final Map<String, Set<LogicalConstant>>	translationTable;
 
 	public IllinoisNERWrapper(File configFile, File translationFile)
@@ -34,6 +48,39 @@ public class IllinoisNERWrapper {
 		Parameters.readConfigAndLoadExternalData(configFile.getAbsolutePath(),
 				false);
 		this.translationTable = readTranslationFile(translationFile);
+		final List<File> files = new ArrayList<>();
+		files.add(configFile);
+		files.add(translationFile);
+		files.addAll(modelFiles(configFile));
+		this.signatureFiles = files.toArray(new File[files.size()]);
+	}
+
+	/**
+	 * The model files of the given configuration: all files that share the
+	 * prefix given by the "pathToModelFile" field (e.g., the model of each
+	 * level), sorted by name.
+	 */
+	private static List<File> modelFiles(File configFile) throws IOException {
+		try (BufferedReader reader = new BufferedReader(
+				new FileReader(configFile))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final String[] split = line.trim().split("\\s+");
+				if (split.length == 2 && split[0].equals("pathToModelFile")) {
+					final File prefix = new File(split[1]);
+					final File dir = prefix.getAbsoluteFile().getParentFile();
+					final File[] models = dir == null ? null
+							: dir.listFiles(file -> file.isFile() && file
+									.getName().startsWith(prefix.getName()));
+					if (models == null) {
+						return Collections.emptyList();
+					}
+					Arrays.sort(models);
+					return Arrays.asList(models);
+				}
+			}
+		}
+		return Collections.emptyList();
 	}
 
 	private static Map<String, Set<LogicalConstant>> readTranslationFile(
@@ -56,6 +103,13 @@ public class IllinoisNERWrapper {
 		}
 	}
 
+	public synchronized String getSignature() throws IOException {
+		if (signature == null) {
+			signature = "illinois:" + AnnotationStore.fileHash(signatureFiles);
+		}
+		return signature;
+	}
+
 	public Set<RecognizedNamedEntity> getNamedEntities(TokenSeq tokens) {
 		try {
 			final String tagged = NETagPlain.tagLine(tokens.toString(" "));
@@ -6,6 +6,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -34,18 +36,27 @@ import edu.uw.cs.lil.amr.data.AMRMeta;
 import edu.uw.cs.lil.amr.lambda.AMRServices;
 import edu.uw.cs.lil.amr.lambda.IsUnderspecifiedAndStripped;
 import edu.uw.cs.lil.amr.parser.factorgraph.FactorGraph;
+import edu.uw.cs.lil.amr.parser.factorgraph.FactorGraphCache;
 import edu.uw.cs.lil.amr.parser.factorgraph.assignmentgen.IAssignmentGeneratorFactory;
 import edu.uw.cs.lil.amr.parser.factorgraph.features.IFactorGraphFeatureSet;
+import edu.uw.cs.lil.amr.parser.factorgraph.inference.BPStatus;
 import edu.uw.cs.lil.amr.parser.factorgraph.inference.BeamSearch;
+import edu.uw.cs.lil.amr.parser.factorgraph.inference.CompiledLoopyBP;
+import edu.uw.cs.lil.amr.parser.factorgraph.inference.KBestViterbi;
 import edu.uw.cs.lil.amr.parser.factorgraph.inference.LoopyBP;
+import edu.uw.cs.lil.amr.parser.factorgraph.inference.ResidualBP;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.CreateFactorGraph;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.IFactor;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.INode;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table.LazyFactorTable;
+import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetEdges;
 import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetFactors;
 import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetMapping;
 import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetMaxEvaluations;
 import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetVariables;
 import edu.uw.cs.lil.amr.parser.factorgraph.visitor.MarginalsProduct;
+import edu.uw.cs.lil.amr.parser.metrics.MetricsRegistry;
+import edu.uw.cs.lil.amr.parser.metrics.ParserMetrics;
 
 public abstract class AbstractAmrParser<DERIV extends IDerivation<LogicalExpression>>
 		implements
@@ -59,43 +70,85 @@ public abstract class AbstractAmrParser<DERIV extends IDerivation<LogicalExpress
 	protected final AmrParsingFilter			amrParsingFilter	= new AmrParsingFilter();
 
 	protected final IAssignmentGeneratorFactory	assignmentGeneratorFactory;
+	/**
+	 * Use {@link CompiledLoopyBP} instead of {@link LoopyBP}. Both compute
+	 * identical marginals.
+	 */
+	protected final boolean						bpCompiled;
 	protected final double						bpConvergenceThreshold;
 	protected final int							bpMaxIterations;
 	protected final Long						bpMaxTime;
+	/**
+	 * Minimum number of edges in a factor graph to use edge-level parallelism
+	 * when running LBP over multiple graphs in {@link #bpPool}. Smaller graphs
+	 * are processed by a single worker.
+	 */
+	protected final int							bpParallelEdges;
+	/**
+	 * Number of worker threads when running LBP over multiple factor graphs.
+	 * If 1, the graphs are processed one after the other.
+	 */
+	protected final int							bpThreads;
 	protected final int							defaultBeamSize;
+	/**
+	 * Maximum number of factor graph templates to cache, 0 to disable caching
+	 * (see {@link FactorGraphCache}).
+	 */
+	protected final int							factorGraphCacheSize;
 	protected final Set<IFactorGraphFeatureSet>	factorGraphFeatures;
 	protected final int							factorLimit;
 	protected final InferenceMethod				inferenceMethod;
+	/**
+	 * Create factor tables that compute their rows on demand (see
+	 * {@link LazyFactorTable}). Useful with {@link InferenceMethod#BEAM}, which
+	 * doesn't visit the rows of pruned configurations.
+	 */
+	protected final boolean						lazyFactorTables;
 	protected final int							maxLimit;
+	/**
+	 * The maximum number of joint assignments of the variables conditioned on
+	 * to break cycles in {@link KBestViterbi}.
+	 */
+	protected final int							viterbiConditioning;
+	/**
+	 * Bounded worker pool for LBP over multiple factor graphs. Created lazily,
+	 * since the parser may be de-serialized, and released with
+	 * {@link #shutdown()}.
+	 */
+	private transient ForkJoinPool				bpPool;
+	/**
+	 * Created lazily, since the parser may be de-serialized.
+	 */
+	private transient FactorGraphCache			factorGraphCache;
+	/**
+	 * Latency histograms and event counters (see {@link ParserMetrics}).
+	 * Created lazily, since the parser may be de-serialized.
+	 */
+	private transient MetricsRegistry			metrics;
 
 	public AbstractAmrParser(
 			IAssignmentGeneratorFactory assignmentGeneratorFactory,
-			double bpConvergenceThreshold, int bpMaxIterations, Long bpMaxTime,
-			int defaultBeamSize,
+			boolean bpCompiled, double bpConvergenceThreshold,
+			int bpMaxIterations, Long bpMaxTime, int bpParallelEdges,
+			int bpThreads, int defaultBeamSize, int factorGraphCacheSize,
 			Set<IFactorGraphFeatureSet> factorGraphFeatures, int factorLimit,
-			InferenceMethod inferenceMethod, int maxLimit) {
+			InferenceMethod inferenceMethod, boolean lazyFactorTables,
+			int maxLimit, int viterbiConditioning) {
 		this.assignmentGeneratorFactory = assignmentGeneratorFactory;
+		this.bpCompiled = bpCompiled;
 		this.bpConvergenceThreshold = bpConvergenceThreshold;
 		this.bpMaxIterations = bpMaxIterations;
 		this.bpMaxTime = bpMaxTime;
+		this.bpParallelEdges = bpParallelEdges;
+		this.bpThreads = bpThreads;
 		this.defaultBeamSize = defaultBeamSize;
+		this.factorGraphCacheSize = factorGraphCacheSize;
 		this.factorGraphFeatures = factorGraphFeatures;
 		this.factorLimit = factorLimit;
 		this.inferenceMethod = inferenceMethod;
+		this.lazyFactorTables = lazyFactorTables;
 		this.maxLimit = maxLimit;
-	}
-
-	private static Pair<List<EvaluationResult>, Boolean> doBeamSearchInference(
-			FactorGraph graph, boolean sloppyInference, int beamSize) {
-		final long startTime = System.currentTimeMillis();
-		final Pair<List<EvaluationResult>, Boolean> inferencePair = BeamSearch
-				.of(graph, beamSize, sloppyInference);
-		LOG.debug(
-				"Beam search stats: time=%.4f, variables=%d, factors=%d, beam=%d, #results=%d",
-				(System.currentTimeMillis() - startTime) / 1000.0,
-				GetVariables.of(graph).size(), GetFactors.of(graph).size(),
-				beamSize, inferencePair.first().size());
-		return inferencePair;
+		this.viterbiConditioning = viterbiConditioning;
 	}
 
 	private static Pair<List<EvaluationResult>, Boolean> doFactorGraphDummyInference(
@@ -140,7 +193,7 @@ public abstract class AbstractAmrParser<DERIV extends IDerivation<LogicalExpress
 			// Collect the features using the mapping.
 			final IHashVector features = HashVectorFactory.create();
 			for (final IFactor factor : GetFactors.of(graph)) {
-				factor.getTable().getFeatures(mapping).addTimesInto(1.0,
+				factor.getTable().getCompactFeatures(mapping).addTimesInto(1.0,
 						features);
 			}
 
@@ -195,8 +248,14 @@ public abstract class AbstractAmrParser<DERIV extends IDerivation<LogicalExpress
 				inferencePair = doBeamSearchInference(graph, false,
 						beamSize == null ? defaultBeamSize : beamSize);
 				break;
+			case VITERBI:
+				inferencePair = doViterbiInference(graph, false,
+						beamSize == null ? defaultBeamSize : beamSize);
+				break;
 			case LBP:
-				inferencePair = doLoopyBPInference(graph, model, false);
+			case RBP:
+				inferencePair = doLoopyBPInference(graph, model, false, true,
+						bpMaxTime);
 				break;
 			case NONE:
 				inferencePair = doFactorGraphDummyInference(graph);
@@ -217,6 +276,48 @@ public abstract class AbstractAmrParser<DERIV extends IDerivation<LogicalExpress
 			AMRMeta meta,
 			IJointDataItemModel<LogicalExpression, LogicalExpression> model,
 			boolean sloppyClosure) {
+		return createFactorGraph(semantics, meta, model, sloppyClosure,
+				factorGraphFeatures);
+	}
+
+	/**
+	 * Graphs created with a subset of the feature sets are never cached, so
+	 * they don't replace complete graphs in the cache.
+	 */
+	private FactorGraph createFactorGraph(LogicalExpression semantics,
+			AMRMeta meta,
+			IJointDataItemModel<LogicalExpression, LogicalExpression> model,
+			boolean sloppyClosure, Set<IFactorGraphFeatureSet> features) {
+		if (factorGraphCacheSize > 0 && features == factorGraphFeatures) {
+			return getFactorGraphCache().get(semantics, meta, sloppyClosure,
+					model, () -> doCreateFactorGraph(semantics, meta, model,
+							sloppyClosure, features));
+		} else {
+			return doCreateFactorGraph(semantics, meta, model, sloppyClosure,
+					features);
+		}
+	}
+
+	private Pair<List<EvaluationResult>, Boolean> doBeamSearchInference(
+			FactorGraph graph, boolean sloppyInference, int beamSize) {
+		final long startTime = System.currentTimeMillis();
+		final Pair<List<EvaluationResult>, Boolean> inferencePair = BeamSearch
+				.of(graph, beamSize, sloppyInference);
+		if (!inferencePair.second()) {
+			getMetrics().increment(ParserMetrics.BEAM_OVERFLOWS);
+		}
+		LOG.debug(
+				"Beam search stats: time=%.4f, variables=%d, factors=%d, beam=%d, #results=%d",
+				(System.currentTimeMillis() - startTime) / 1000.0,
+				GetVariables.of(graph).size(), GetFactors.of(graph).size(),
+				beamSize, inferencePair.first().size());
+		return inferencePair;
+	}
+
+	private FactorGraph doCreateFactorGraph(LogicalExpression semantics,
+			AMRMeta meta,
+			IJointDataItemModel<LogicalExpression, LogicalExpression> model,
+			boolean sloppyClosure, Set<IFactorGraphFeatureSet> features) {
 		// Create IDs in the logical form and merge identical named entities.
 		final SetIds setIdsVisitor = new SetIds();
 		setIdsVisitor.visit(semantics);
@@ -230,16 +331,21 @@ public abstract class AbstractAmrParser<DERIV extends IDerivation<LogicalExpress
 		final FactorGraph graph = CreateFactorGraph.of(underspecified,
 				assignmentGeneratorFactory.create(underspecified),
 				sloppyClosure);
+		graph.setLazyTables(lazyFactorTables);
+		final long featuresStartTime = System.currentTimeMillis();
+		getMetrics().record(ParserMetrics.GRAPH_BUILD,
+				featuresStartTime - factorsStartTime);
 
 		// Populate factor graph with features (i.e., factor nodes). First
 		// create the jobs, then execute them in parallel.
 		final List<Runnable> factorRunnables = new LinkedList<>();
-		for (final IFactorGraphFeatureSet featureSet : factorGraphFeatures) {
+		for (final IFactorGraphFeatureSet featureSet : features) {
 			factorRunnables
 					.addAll(featureSet.createFactorJobs(graph, meta, model));
 		}
 
 		if (factorRunnables.size() > factorLimit) {
+			getMetrics().increment(ParserMetrics.FACTOR_LIMIT_REJECTIONS);
 			LOG.debug(
 					"Created %d factor jobs (over the limit of %d), pruning intermediate",
 					factorRunnables.size(), factorLimit);
@@ -254,6 +360,8 @@ public abstract class AbstractAmrParser<DERIV extends IDerivation<LogicalExpress
 					LOG.debug("Running factor job: %s", r);
 					r.run();
 				});
+		getMetrics().record(ParserMetrics.GRAPH_FEATURES,
+				System.currentTimeMillis() - featuresStartTime);
 
 		LOG.debug(
 				"Created a factor graph with %d factors and %d variables (%.4fsec)",
@@ -264,7 +372,8 @@ public abstract class AbstractAmrParser<DERIV extends IDerivation<LogicalExpress
 
 	/**
 	 * Do LBP inference for the factor graph and extract the
-	 * {@link EvaluationResult}s.
+	 * {@link EvaluationResult}s. Uses {@link ResidualBP} if the inference
+	 * method is {@link InferenceMethod#RBP}.
 	 *
 	 *
 	 * @return Pair with list of {@link EvaluationResult} and an inference flag
@@ -274,9 +383,24 @@ public abstract class AbstractAmrParser<DERIV extends IDerivation<LogicalExpress
 	private Pair<List<EvaluationResult>, Boolean> doLoopyBPInference(
 			FactorGraph graph,
 			IJointDataItemModel<LogicalExpression, LogicalExpression> model,
-			boolean sloppyInference) {
+			boolean sloppyInference, boolean parallel, Long maxTime) {
 		// Loopy BP inference
-		LoopyBP.of(graph, bpConvergenceThreshold, bpMaxIterations, bpMaxTime);
+		final BPStatus status;
+		if (inferenceMethod == InferenceMethod.RBP) {
+			status = ResidualBP.of(graph, bpConvergenceThreshold,
+					bpMaxIterations, maxTime, parallel);
+		} else if (bpCompiled) {
+			status = CompiledLoopyBP.of(graph, bpConvergenceThreshold,
+					bpMaxIterations, maxTime, parallel);
+		} else {
+			status = LoopyBP.of(graph, bpConvergenceThreshold, bpMaxIterations,
+					maxTime, parallel);
+		}
+		if (status == BPStatus.MAX_ITERATIONS) {
+			getMetrics().increment(ParserMetrics.LBP_NOT_CONVERGED);
+		} else if (status == BPStatus.TIMEOUT) {
+			getMetrics().increment(ParserMetrics.LBP_TIMEOUTS);
+		}
 
 		// Get the max configurations.
 		final List<EvaluationResult> argmax = new LinkedList<>(
@@ -284,6 +408,68 @@ public abstract class AbstractAmrParser<DERIV extends IDerivation<LogicalExpress
 		return Pair.of(argmax, !argmax.isEmpty());
 	}
 
+	/**
+	 * Exact k-best inference with {@link KBestViterbi}. Falls back to beam
+	 * search if the graph has too many cycles. As with beam search, the
+	 * returned flag is 'true' only if no configuration was pruned, so k-best
+	 * results of a graph with more than k configurations are flagged as
+	 * inexact, although they are the exact k-best.
+	 */
+	private Pair<List<EvaluationResult>, Boolean> doViterbiInference(
+			FactorGraph graph, boolean sloppyInference, int beamSize) {
+		final long startTime = System.currentTimeMillis();
+		final KBestViterbi.Result result = KBestViterbi.of(graph, beamSize,
+				viterbiConditioning);
+		if (result == null) {
+			LOG.debug("Falling back to beam search");
+			return doBeamSearchInference(graph, sloppyInference, beamSize);
+		}
+		LOG.debug(
+				"Viterbi stats: time=%.4f, variables=%d, factors=%d, k=%d, #results=%d, topKExact=%s, complete=%s",
+				(System.currentTimeMillis() - startTime) / 1000.0,
+				GetVariables.of(graph).size(), GetFactors.of(graph).size(),
+				beamSize, result.getResults().size(), result.isTopKExact(),
+				result.isComplete());
+		return Pair.of(result.getResults(),
+				result.isTopKExact() && result.isComplete());
+	}
+
+	private synchronized ForkJoinPool getBPPool() {
+		if (bpPool == null) {
+			bpPool = new ForkJoinPool(bpThreads);
+		}
+		return bpPool;
+	}
+
+	/**
+	 * Shut down the LBP worker pool. The pool is re-created if the parser is
+	 * used again.
+	 */
+	public synchronized void shutdown() {
+		if (bpPool != null) {
+			bpPool.shutdown();
+			bpPool = null;
+		}
+	}
+
+	public synchronized MetricsRegistry getMetrics() {
+		if (metrics == null) {
+			metrics = new MetricsRegistry();
+		}
+		return metrics;
+	}
+
+	protected synchronized FactorGraphCache getFactorGraphCache() {
+		if (factorGraphCache == null) {
+			factorGraphCache = new FactorGraphCache(factorGraphCacheSize);
+		}
+		return factorGraphCache;
+	}
+
+	/**
+	 * Beam search inference for the second stage, or exact k-best inference
+	 * if the inference method is {@link InferenceMethod#VITERBI}.
+	 */
 	protected List<Triplet<DERIV, List<EvaluationResult>, Boolean>> beamSearchInference(
 			List<Pair<DERIV, FactorGraph>> graphPairs, boolean sloppyInference,
 			int beamSize) {
@@ -293,8 +479,11 @@ public abstract class AbstractAmrParser<DERIV extends IDerivation<LogicalExpress
 				.stream(Spliterators.spliterator(graphPairs,
 						Spliterator.IMMUTABLE), true)
 				.map(pair -> {
-					final Pair<List<EvaluationResult>, Boolean> inferencePair = doBeamSearchInference(
-							pair.second(), sloppyInference, beamSize);
+					final Pair<List<EvaluationResult>, Boolean> inferencePair = inferenceMethod == InferenceMethod.VITERBI
+							? doViterbiInference(pair.second(),
+									sloppyInference, beamSize)
+							: doBeamSearchInference(pair.second(),
+									sloppyInference, beamSize);
 					return Triplet.of(pair.first(), inferencePair.first(),
 							inferencePair.second());
 				}).collect(Collectors.toList());
@@ -307,6 +496,20 @@ public abstract class AbstractAmrParser<DERIV extends IDerivation<LogicalExpress
 			IJointDataItemModel<LogicalExpression, LogicalExpression> model,
 			Predicate<LogicalExpression> intermediateFilter,
 			boolean sloppyInference) {
+		return createFactorGraph(derivation, meta, model, intermediateFilter,
+				sloppyInference, factorGraphFeatures);
+	}
+
+	/**
+	 * @param features
+	 *            The feature sets to create the factors with, possibly a
+	 *            subset of {@link #factorGraphFeatures}.
+	 */
+	protected Pair<DERIV, FactorGraph> createFactorGraph(DERIV derivation,
+			AMRMeta meta,
+			IJointDataItemModel<LogicalExpression, LogicalExpression> model,
+			Predicate<LogicalExpression> intermediateFilter,
+			boolean sloppyInference, Set<IFactorGraphFeatureSet> features) {
 
 		// Sanity check. All generated LFs should be valid AMR, even if not a
 		// complete one.
@@ -335,13 +538,14 @@ public abstract class AbstractAmrParser<DERIV extends IDerivation<LogicalExpress
 		}
 
 		if (semantics == null || !intermediateFilter.test(semantics)) {
+			getMetrics().increment(ParserMetrics.PRUNED_INTERMEDIATES);
 			LOG.debug("Pruned intermediate: %s", rootCategory);
 			return null;
 		}
 
 		// Create the actual factor graph for the processed logical form.
 		final FactorGraph graph = createFactorGraph(semantics, meta, model,
-				sloppy);
+				sloppy, features);
 
 		return Pair.of(derivation, graph);
 	}
@@ -358,14 +562,52 @@ public abstract class AbstractAmrParser<DERIV extends IDerivation<LogicalExpress
 			List<Pair<DERIV, FactorGraph>> graphPairs,
 			IJointDataItemModel<LogicalExpression, LogicalExpression> model,
 			boolean sloppyInference) {
-		final List<Triplet<DERIV, List<EvaluationResult>, Boolean>> inferenceTriplets = new LinkedList<>();
-
-		// Mapping of final results to derivation builders.
-		for (final Pair<DERIV, FactorGraph> resultPair : graphPairs) {
-			final Pair<List<EvaluationResult>, Boolean> inferencePair = doLoopyBPInference(
-					resultPair.second(), model, sloppyInference);
-			inferenceTriplets.add(Triplet.of(resultPair.first(),
-					inferencePair.first(), inferencePair.second()));
+		return loopyBPInference(graphPairs, model, sloppyInference, bpMaxTime);
+	}
+
+	/**
+	 * LBP inference for the second stage with the given time limit for each
+	 * graph, instead of {@link #bpMaxTime}.
+	 */
+	protected List<Triplet<DERIV, List<EvaluationResult>, Boolean>> loopyBPInference(
+			List<Pair<DERIV, FactorGraph>> graphPairs,
+			IJointDataItemModel<LogicalExpression, LogicalExpression> model,
+			boolean sloppyInference, Long maxTime) {
+		if (bpThreads <= 1 || graphPairs.size() <= 1) {
+			final List<Triplet<DERIV, List<EvaluationResult>, Boolean>> inferenceTriplets = new LinkedList<>();
+			for (final Pair<DERIV, FactorGraph> resultPair : graphPairs) {
+				final Pair<List<EvaluationResult>, Boolean> inferencePair = doLoopyBPInference(
+						resultPair.second(), model, sloppyInference, true,
+						maxTime);
+				inferenceTriplets.add(Triplet.of(resultPair.first(),
+						inferencePair.first(), inferencePair.second()));
+			}
+			return inferenceTriplets;
+		}
+
+		// Distribute the graphs between the workers of the pool. Within each
+		// graph, edge-level parallel streams are only used for large graphs.
+		// Since the streams are created by the pool workers, they execute in
+		// the same pool, so the total number of threads is bounded.
+		final List<Triplet<DERIV, List<EvaluationResult>, Boolean>> inferenceTriplets;
+		try {
+			inferenceTriplets = getBPPool().submit(() -> StreamSupport
+					.stream(Spliterators.spliterator(graphPairs,
+							Spliterator.IMMUTABLE), true)
+					.map(pair -> {
+						final Pair<List<EvaluationResult>, Boolean> inferencePair = doLoopyBPInference(
+								pair.second(), model, sloppyInference,
+								GetEdges.of(pair.second())
+										.size() >= bpParallelEdges,
+								maxTime);
+						return Triplet.of(pair.first(), inferencePair.first(),
+								inferencePair.second());
+					}).collect(Collectors.toList())).get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (final ExecutionException e) {
+			throw new RuntimeException(e);
 		}
 
 		return inferenceTriplets;
@@ -35,6 +35,11 @@ public abstract class AbstractAmrParserOutput<DERIV extends IJointDerivation<Log
 	public static final ILogger							LOG	= LoggerFactory
 			.create(AbstractAmrParserOutput.class);
 
+	/**
+	 * The most severe degradation of inference to stay within the time budget
+	 * of the sentence.
+	 */
+	protected final DegradationLevel					degradationLevel;
 	protected final List<Pair<BASEDERIV, FactorGraph>>	derviationPairs;
 	protected final InferenceMethod						inferenceMethod;
 	protected final long								inferenceTime;
@@ -44,13 +49,15 @@ public abstract class AbstractAmrParserOutput<DERIV extends IJointDerivation<Log
 
 	protected final IHashVectorImmutable				theta;
 
-	public AbstractAmrParserOutput(
+	public AbstractAmrParserOutput(DegradationLevel degradationLevel,
 			List<Pair<BASEDERIV, FactorGraph>> derviationPairs,
 			InferenceMethod inferenceMethod, long inferenceTime,
 			List<DERIV> jointDerivations, boolean outputExact,
 			IHashVectorImmutable theta) {
 		assert InferenceMethod.LBP != inferenceMethod
+				&& InferenceMethod.RBP != inferenceMethod
 				|| theta != null : "If using LBP for inference, theta must be provided to compute viterbi score for new derivation pairs";
+		this.degradationLevel = degradationLevel;
 		this.derviationPairs = derviationPairs;
 		this.inferenceMethod = inferenceMethod;
 		this.inferenceTime = inferenceTime;
@@ -76,6 +83,10 @@ public abstract class AbstractAmrParserOutput<DERIV extends IJointDerivation<Log
 
 	}
 
+	public DegradationLevel getDegradationLevel() {
+		return degradationLevel;
+	}
+
 	@Override
 	public List<DERIV> getDerivations() {
 		return jointDerivations;
@@ -91,10 +102,12 @@ public abstract class AbstractAmrParserOutput<DERIV extends IJointDerivation<Log
 		switch (inferenceMethod) {
 			case NONE:
 			case BEAM:
+			case VITERBI:
 				return jointDerivations.stream()
 						.filter(d -> filter.test(d.getResult()))
 						.collect(Collectors.toList());
 			case LBP:
+			case RBP:
 				throw new IllegalStateException(
 						"Derivation filtering is not possible with AMR LBP inference since we can't enumerate parses and the filter doesn't decompose");
 			default:
@@ -106,6 +119,10 @@ public abstract class AbstractAmrParserOutput<DERIV extends IJointDerivation<Log
 	@Override
 	public abstract List<DERIV> getDerivations(LogicalExpression result);
 
+	public InferenceMethod getInferenceMethod() {
+		return inferenceMethod;
+	}
+
 	@Override
 	public long getInferenceTime() {
 		return inferenceTime;
@@ -126,6 +143,7 @@ public abstract class AbstractAmrParserOutput<DERIV extends IJointDerivation<Log
 		switch (inferenceMethod) {
 			case NONE:
 			case BEAM:
+			case VITERBI:
 				final List<DERIV> filtered = jointDerivations.stream()
 						.filter(d -> filter.test(d.getResult()))
 						.collect(Collectors.toList());
@@ -142,6 +160,7 @@ public abstract class AbstractAmrParserOutput<DERIV extends IJointDerivation<Log
 				}
 				return maxScoring;
 			case LBP:
+			case RBP:
 				throw new IllegalStateException(
 						"Max-scoring derivation filtering is not possible with AMR LBP inference since we can't enumerate parses and the filter doesn't decompose");
 			default:
@@ -193,7 +212,8 @@ public abstract class AbstractAmrParserOutput<DERIV extends IJointDerivation<Log
 					double beliefSum = 0.0;
 					for (final IFactor factor : GetFactors.of(graph)) {
 						final FactorTable table = factor.getTable();
-						table.getFeatures(mapping).addTimesInto(1.0, features);
+						table.getCompactFeatures(mapping).addTimesInto(1.0,
+								features);
 						beliefSum += table.get(mapping);
 					}
 
@@ -0,0 +1,55 @@
+package edu.uw.cs.lil.amr.parser;
+
+/**
+ * How much {@link GraphAmrParser} degraded its inference to stay within the
+ * per-sentence time budget. Ordered by severity, a parser output is flagged
+ * with the most severe level it reached (see {@link ParseDeadline}).
+ *
+ * @author Yoav Artzi
+ */
+public enum DegradationLevel {
+	/**
+	 * Complete inference within the budget.
+	 */
+	NONE,
+
+	/**
+	 * The second stage beam (or the LBP time limit) was reduced.
+	 */
+	REDUCED_BEAM,
+
+	/**
+	 * The factor graphs were created with the reduced set of factor graph
+	 * features.
+	 */
+	REDUCED_FEATURES,
+
+	/**
+	 * Inference over the factor graphs was skipped, as with
+	 * {@link InferenceMethod#NONE}.
+	 */
+	NO_FACTOR_GRAPH,
+
+	/**
+	 * The budget ran out while processing the base derivations. Only the
+	 * highest scoring base derivations were processed and the rest were
+	 * dropped.
+	 */
+	PARTIAL;
+
+	/**
+	 * 'true' iff the output may still be exact at this level. Reducing the
+	 * features, skipping inference or dropping base derivations changes the
+	 * result set.
+	 */
+	public boolean isExact() {
+		return compareTo(REDUCED_FEATURES) < 0;
+	}
+
+	/**
+	 * The more severe of the two levels.
+	 */
+	public DegradationLevel max(DegradationLevel other) {
+		return other.compareTo(this) > 0 ? other : this;
+	}
+}
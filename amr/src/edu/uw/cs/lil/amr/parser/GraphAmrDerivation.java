@@ -11,7 +11,6 @@ import edu.cornell.cs.nlp.spf.parser.joint.InferencePair;
 import edu.cornell.cs.nlp.spf.parser.joint.graph.JointGraphDerivation;
 import edu.cornell.cs.nlp.utils.log.ILogger;
 import edu.cornell.cs.nlp.utils.log.LoggerFactory;
-import edu.cornell.cs.nlp.utils.math.LogSumExp;
 import edu.uw.cs.lil.amr.lambda.AMRServices;
 
 public class GraphAmrDerivation
@@ -40,7 +39,7 @@ public class GraphAmrDerivation
 	}
 
 	public static class Builder {
-		private final List<InferenceTriplet>	inferenceTriplets	= new LinkedList<>();
+		private final List<InferenceTriplet>	inferenceTriplets	= new ArrayList<>();
 
 		private final LogicalExpression			result;
 
@@ -72,14 +71,30 @@ public class GraphAmrDerivation
 			return this;
 		}
 
+		/**
+		 * Add an inference pair that is known to lead to the result of the
+		 * builder (e.g., the builder was looked up by the result), without
+		 * comparing the logical forms. Only verified with assertions.
+		 */
+		Builder addEqualInferencePair(
+				IGraphDerivation<LogicalExpression> baseDerivation,
+				IEvaluation<LogicalExpression> evaluationResult,
+				double evalLogNorm) {
+			assert result == null ? evaluationResult.getResult() == null
+					: result.equals(evaluationResult
+							.getResult()) : "JointDerivation can only account for a single final outcome";
+			inferenceTriplets.add(new InferenceTriplet(baseDerivation,
+					evaluationResult, evalLogNorm));
+			return this;
+		}
+
 		public GraphAmrDerivation build() {
 			double maxScore = -Double.MAX_VALUE;
 			final List<InferenceTriplet> maxTriplets = new LinkedList<>();
 			// The derivation probability marginalizes over all underspecified
 			// logical form that result in the final logical form and all CCG
 			// trees. The probability is normalized.
-			final List<Double> logInsideScores = new ArrayList<>(
-					inferenceTriplets.size());
+			final StreamingLogSumExp logInsideScore = new StreamingLogSumExp();
 			for (final InferenceTriplet triplet : inferenceTriplets) {
 				// The score of a single derivation. This is a partially viterbi
 				// score, since it takes the viterbi score for the base
@@ -96,12 +111,12 @@ public class GraphAmrDerivation
 
 				// Update the log inside score with this triplet (including both
 				// the evaluation and base derivation).
-				logInsideScores.add(triplet.logProbability()
+				logInsideScore.add(triplet.logProbability()
 						+ triplet.getBaseDerivation().getLogInsideScore());
 			}
 
 			return new GraphAmrDerivation(maxTriplets, inferenceTriplets,
-					result, maxScore, LogSumExp.of(logInsideScores));
+					result, maxScore, logInsideScore.get());
 		}
 
 		/**
@@ -17,13 +17,13 @@
 package edu.uw.cs.lil.amr.parser;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import edu.cornell.cs.nlp.spf.base.hashvector.HashVectorFactory;
 import edu.cornell.cs.nlp.spf.ccg.lexicon.ILexiconImmutable;
@@ -46,35 +46,94 @@ import edu.cornell.cs.nlp.utils.composites.Pair;
 import edu.cornell.cs.nlp.utils.composites.Triplet;
 import edu.cornell.cs.nlp.utils.log.ILogger;
 import edu.cornell.cs.nlp.utils.log.LoggerFactory;
-import edu.cornell.cs.nlp.utils.math.LogSumExp;
 import edu.uw.cs.lil.amr.data.AMRMeta;
 import edu.uw.cs.lil.amr.parser.GraphAmrDerivation.Builder;
 import edu.uw.cs.lil.amr.parser.factorgraph.FactorGraph;
 import edu.uw.cs.lil.amr.parser.factorgraph.assignmentgen.IAssignmentGeneratorFactory;
 import edu.uw.cs.lil.amr.parser.factorgraph.features.IFactorGraphFeatureSet;
+import edu.uw.cs.lil.amr.parser.factorgraph.nodes.IFactor;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table.FactorTable;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table.LazyFactorTable;
+import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetFactors;
+import edu.uw.cs.lil.amr.parser.metrics.MetricsRegistry;
+import edu.uw.cs.lil.amr.parser.metrics.ParserMetrics;
 
 public class GraphAmrParser extends
 		AbstractAmrParser<IGraphDerivation<LogicalExpression>> implements
 		IJointGraphParser<SituatedSentence<AMRMeta>, LogicalExpression, LogicalExpression, LogicalExpression> {
 
-	public static final ILogger													LOG					= LoggerFactory
+	public static final ILogger													LOG						= LoggerFactory
 			.create(GraphAmrParser.class);
 
-	private static final long													serialVersionUID	= 71078477728726201L;
+	/**
+	 * Below this remaining fraction of the time budget, factor graphs are
+	 * created with {@link #budgetGraphFeatures} and the second stage beam is
+	 * scaled down.
+	 */
+	private static final double													DEGRADE_FRACTION		= 0.5;
+
+	/**
+	 * Below this remaining fraction of the time budget, inference over the
+	 * factor graphs is skipped.
+	 */
+	private static final double													NO_INFERENCE_FRACTION	= 0.1;
+
+	/**
+	 * Minimal number of inference triplets or results to aggregate in
+	 * parallel when creating the derivations.
+	 */
+	private static final int													PARALLEL_AGGREGATION	= 64;
+
+	/**
+	 * Below this remaining fraction of the time budget, no more base
+	 * derivations are processed.
+	 */
+	private static final double													PARTIAL_FRACTION		= 0.25;
+
+	private static final long													serialVersionUID		= 71078477728726201L;
 
 	private final IGraphParser<SituatedSentence<AMRMeta>, LogicalExpression>	baseParser;
 
+	/**
+	 * Factor graph feature sets to use when running out of time, usually the
+	 * cheaper subset of {@link #factorGraphFeatures}.
+	 */
+	private final Set<IFactorGraphFeatureSet>									budgetGraphFeatures;
+
+	/**
+	 * Time budget for parsing a sentence in milliseconds, or null for no
+	 * limit. As the budget runs out, inference degrades (see
+	 * {@link DegradationLevel}). CKY parsing can't be interrupted, so the
+	 * budget may be exceeded by the base parser.
+	 */
+	private final Long															timeBudget;
+
 	public GraphAmrParser(
 			IGraphParser<SituatedSentence<AMRMeta>, LogicalExpression> baseParser,
 			IAssignmentGeneratorFactory assignmentGeneratorFactory,
 			Set<IFactorGraphFeatureSet> factorGraphFeatures,
 			double bpConvergenceThreshold, int bpMaxIterations, int maxLimit,
 			Long bpMaxTime, InferenceMethod inferenceMethod, int beamSize,
-			int factorLimit) {
-		super(assignmentGeneratorFactory, bpConvergenceThreshold,
-				bpMaxIterations, bpMaxTime, beamSize, factorGraphFeatures,
-				factorLimit, inferenceMethod, maxLimit);
+			int factorLimit, boolean bpCompiled, int bpThreads,
+			int bpParallelEdges, int factorGraphCacheSize,
+			boolean lazyFactorTables, int viterbiConditioning, Long timeBudget,
+			Set<IFactorGraphFeatureSet> budgetGraphFeatures) {
+		super(assignmentGeneratorFactory, bpCompiled, bpConvergenceThreshold,
+				bpMaxIterations, bpMaxTime, bpParallelEdges, bpThreads,
+				beamSize, factorGraphCacheSize, factorGraphFeatures,
+				factorLimit, inferenceMethod, lazyFactorTables, maxLimit,
+				viterbiConditioning);
 		this.baseParser = baseParser;
+		this.timeBudget = timeBudget;
+		this.budgetGraphFeatures = budgetGraphFeatures;
+		if (timeBudget != null && timeBudget <= 0) {
+			throw new IllegalArgumentException(
+					"Time budget must be positive: " + timeBudget);
+		}
+		if (!factorGraphFeatures.containsAll(budgetGraphFeatures)) {
+			throw new IllegalArgumentException(
+					"Budget graph features must be a subset of the graph features");
+		}
 	}
 
 	/**
@@ -90,52 +149,44 @@ public class GraphAmrParser extends
 			IJointInferenceFilter<LogicalExpression, LogicalExpression, LogicalExpression> filter,
 			List<Triplet<IGraphDerivation<LogicalExpression>, List<EvaluationResult>, Boolean>> inferenceTriplets) {
 
-		// Aggregate the results.
-
-		// Builders to accumulate the results from the factor graph.
-		final Map<LogicalExpression, GraphAmrDerivation.Builder> builders = new HashMap<>();
+		// Filter the results of each triplet and compute the log norm of their
+		// scores. Done in parallel for large outputs.
+		final Stream<Triplet<IGraphDerivation<LogicalExpression>, List<EvaluationResult>, Boolean>> tripletStream = inferenceTriplets
+				.size() >= PARALLEL_AGGREGATION
+						? inferenceTriplets.parallelStream()
+						: inferenceTriplets.stream();
+		final List<FilteredTriplet> filteredTriplets = tripletStream
+				.map(triplet -> new FilteredTriplet(triplet, filter))
+				.collect(Collectors.toList());
+
+		// Aggregate the results. Builders to accumulate the results from the
+		// factor graph, in the order their results were first seen. Results
+		// from different base derivations are created independently, so each
+		// result is hashed once to find its builder.
+		final Map<LogicalExpression, GraphAmrDerivation.Builder> builders = new LinkedHashMap<>();
 		boolean exact = true;
-
-		for (final Triplet<IGraphDerivation<LogicalExpression>, List<EvaluationResult>, Boolean> triplet : inferenceTriplets) {
-			final IGraphDerivation<LogicalExpression> baseDerivation = triplet
-					.first();
-
+		for (final FilteredTriplet triplet : filteredTriplets) {
 			// If a single triplet is not exact, the output is no longer exact;
-			exact &= triplet.third();
-
-			// Sum the exponentiated score for all evaluations for this triplet.
-			// These are all the evaluations for this base derivation, since
-			// each base derivation appears in at most one triplet.
-			final List<Double> scores = new ArrayList<>();
-			for (final EvaluationResult result : triplet.second()) {
-				// Only take into account results that pass the pruning filter.
-				// The entire distribution is conditioned on this filter.
-				if (filter.testResult(result.getResult())) {
-					// The addition expects the log score, so the linear score
-					// is the log score of the exponentiated score.
-					scores.add(result.getScore());
-				}
-			}
-			final double evalLogNorm = LogSumExp.of(scores);
-
-			for (final EvaluationResult result : triplet.second()) {
-				if (filter.testResult(result.getResult())) {
-					if (builders.containsKey(result.getResult())) {
-						builders.get(result.getResult()).addInferencePair(
-								baseDerivation, result, evalLogNorm);
-					} else {
-						builders.put(result.getResult(),
-								new GraphAmrDerivation.Builder(baseDerivation,
-										result, evalLogNorm));
-					}
-				}
+			exact &= triplet.exact;
+
+			for (int i = 0; i < triplet.size; ++i) {
+				final EvaluationResult evaluation = triplet.evaluations[i];
+				builders.computeIfAbsent(evaluation.getResult(),
+						GraphAmrDerivation.Builder::new)
+						.addEqualInferencePair(triplet.baseDerivation,
+								evaluation, triplet.evalLogNorm);
 			}
 		}
+		final List<GraphAmrDerivation.Builder> orderedBuilders = new ArrayList<>(
+				builders.values());
 
-		final List<GraphAmrDerivation> jointDerivations = new LinkedList<GraphAmrDerivation>();
-		for (final Builder builder : builders.values()) {
-			jointDerivations.add(builder.build());
-		}
+		// Building computes the scores of each derivation.
+		final Stream<GraphAmrDerivation.Builder> builderStream = orderedBuilders
+				.size() >= PARALLEL_AGGREGATION
+						? orderedBuilders.parallelStream()
+						: orderedBuilders.stream();
+		final List<GraphAmrDerivation> jointDerivations = builderStream
+				.map(Builder::build).collect(Collectors.toList());
 
 		return Pair.of(jointDerivations, exact);
 	}
@@ -205,6 +256,7 @@ public class GraphAmrParser extends
 			Integer beamSize) {
 
 		final long startTime = System.currentTimeMillis();
+		final ParseDeadline deadline = new ParseDeadline(startTime, timeBudget);
 
 		// Create the base parsing filter with the given filter.
 		final Predicate<ParsingOp<LogicalExpression>> parsingFilter = amrParsingFilter
@@ -235,53 +287,139 @@ public class GraphAmrParser extends
 		// derivation. Some derivations might be dropped.
 		final List<Pair<IGraphDerivation<LogicalExpression>, FactorGraph>> graphPairs = new ArrayList<>(
 				baseOutput.getAllDerivations().size());
-		for (final IGraphDerivation<LogicalExpression> derivation : baseOutput
-				.getAllDerivations()) {
+		// With a time budget, process the highest scoring base derivations
+		// first, so they are kept if processing is cut short.
+		final List<IGraphDerivation<LogicalExpression>> baseDerivations = new ArrayList<>(
+				baseOutput.getAllDerivations());
+		if (deadline.isLimited()) {
+			baseDerivations.sort(
+					(d1, d2) -> Double.compare(d2.getScore(), d1.getScore()));
+		}
+		// The feature set is selected once, so all factor graphs of the
+		// sentence are scored with the same features.
+		final Set<IFactorGraphFeatureSet> features;
+		if (deadline.remainingFraction(
+				System.currentTimeMillis()) < DEGRADE_FRACTION) {
+			deadline.degrade(DegradationLevel.REDUCED_FEATURES);
+			features = budgetGraphFeatures;
+		} else {
+			features = factorGraphFeatures;
+		}
+		int numProcessed = 0;
+		for (final IGraphDerivation<LogicalExpression> derivation : baseDerivations) {
+			if (deadline.remainingFraction(
+					System.currentTimeMillis()) < PARTIAL_FRACTION
+					&& !graphPairs.isEmpty()) {
+				deadline.degrade(DegradationLevel.PARTIAL);
+				break;
+			}
 			final Pair<IGraphDerivation<LogicalExpression>, FactorGraph> pair = createFactorGraph(
 					derivation, dataItem.getState(), model, intermediateFilter,
-					sloppyInference);
+					sloppyInference, features);
 			if (pair != null) {
 				graphPairs.add(pair);
 			}
+			++numProcessed;
 		}
 		final long baseProcessingTime = System.currentTimeMillis()
 				- baseProcessingStart;
 
 		// Do the inference over the factor graph and create the complete
-		// derivations.
-		final Pair<List<GraphAmrDerivation>, Boolean> inferencePair;
+		// derivations. If running out of time, reduce the beam and the LBP
+		// time limit, or skip inference altogether.
+		final List<Triplet<IGraphDerivation<LogicalExpression>, List<EvaluationResult>, Boolean>> inferenceTriplets;
 		final long secondStageInferenceStart = System.currentTimeMillis();
-		switch (inferenceMethod) {
+		final double inferenceRemaining = deadline
+				.remainingFraction(secondStageInferenceStart);
+		final InferenceMethod method;
+		int inferenceBeam = beamSize == null ? defaultBeamSize : beamSize;
+		Long inferenceMaxTime = bpMaxTime;
+		if (inferenceMethod == InferenceMethod.NONE
+				|| inferenceRemaining >= DEGRADE_FRACTION) {
+			method = inferenceMethod;
+		} else if (inferenceRemaining < NO_INFERENCE_FRACTION) {
+			method = InferenceMethod.NONE;
+			deadline.degrade(DegradationLevel.NO_FACTOR_GRAPH);
+		} else {
+			method = inferenceMethod;
+			inferenceBeam = Math.max(1, (int) (inferenceBeam
+					* inferenceRemaining / DEGRADE_FRACTION));
+			// Split the remaining time between the graphs processed by each
+			// LBP worker.
+			final long graphsPerThread = Math.max(1,
+					(graphPairs.size() + bpThreads - 1) / bpThreads);
+			final long maxTime = Math.max(1,
+					deadline.remaining(secondStageInferenceStart)
+							/ graphsPerThread);
+			inferenceMaxTime = bpMaxTime == null ? maxTime
+					: Math.min(bpMaxTime, maxTime);
+			deadline.degrade(DegradationLevel.REDUCED_BEAM);
+		}
+		switch (method) {
 			case BEAM:
-				inferencePair = createDerivations(filter,
-						beamSearchInference(graphPairs, sloppyInference,
-								beamSize == null ? defaultBeamSize : beamSize));
+			case VITERBI:
+				inferenceTriplets = beamSearchInference(graphPairs,
+						sloppyInference, inferenceBeam);
 				break;
 			case LBP:
-				inferencePair = createDerivations(filter,
-						loopyBPInference(graphPairs, model, sloppyInference));
+			case RBP:
+				inferenceTriplets = loopyBPInference(graphPairs, model,
+						sloppyInference, inferenceMaxTime);
 				break;
 			case NONE:
-				inferencePair = createDerivations(filter,
-						noFactorGraphDummyInference(graphPairs));
+				inferenceTriplets = noFactorGraphDummyInference(graphPairs);
 				break;
 			default:
 				throw new IllegalStateException(
-						"Invalid inference method: " + inferenceMethod);
+						"Invalid inference method: " + method);
 		}
+		final long aggregationStart = System.currentTimeMillis();
+		final Pair<List<GraphAmrDerivation>, Boolean> inferencePair = createDerivations(
+				filter, inferenceTriplets);
+		final long aggregationTime = System.currentTimeMillis()
+				- aggregationStart;
 		final long secondStageInferenceTime = System.currentTimeMillis()
 				- secondStageInferenceStart;
 
 		// Copying theta so that the output won't be sensitive to model changes.
-		// Only do this if using LBP, otherwise can get the saved viterbi scores
-		// from the factor graph.
+		// Only do this if using LBP (or RBP), otherwise can get the saved
+		// viterbi scores from the factor graph.
+		// Reducing the features, skipping inference or dropping base
+		// derivations makes the output inexact.
 		final GraphAmrParserOutput output = new GraphAmrParserOutput(
 				inferencePair.first(), baseOutput,
 				System.currentTimeMillis() - startTime, graphPairs,
-				inferencePair.second() && baseOutput.isExact(),
-				inferenceMethod == InferenceMethod.LBP
+				inferencePair.second() && baseOutput.isExact()
+						&& deadline.getLevel().isExact(),
+				method == InferenceMethod.LBP || method == InferenceMethod.RBP
 						? HashVectorFactory.create(model.getTheta()) : null,
-				inferenceMethod);
+				method, deadline.getLevel());
+
+		// Record the stage latencies.
+		final int numTokens = dataItem.getTokens().size();
+		final MetricsRegistry metrics = getMetrics();
+		metrics.increment(ParserMetrics.SENTENCES);
+		metrics.record(ParserMetrics.CKY, numTokens,
+				baseOutput.getParsingTime());
+		metrics.record(ParserMetrics.PROCESS_DERIVATIONS, numTokens,
+				baseProcessingTime);
+		metrics.record(ParserMetrics.INFERENCE, numTokens,
+				secondStageInferenceTime - aggregationTime);
+		metrics.record(ParserMetrics.DERIVATION_AGGREGATION, numTokens,
+				aggregationTime);
+		metrics.record(ParserMetrics.TOTAL, numTokens,
+				output.getInferenceTime());
+		if (deadline.getLevel() != DegradationLevel.NONE) {
+			metrics.increment(ParserMetrics.DEGRADATIONS);
+			metrics.increment(String.format("%s[%s]",
+					ParserMetrics.DEGRADATIONS, deadline.getLevel()));
+			LOG.info(
+					"Used %.2f%% of the time budget (%dms), degraded inference: %s (processed %d of %d base parses)",
+					100 * (1.0 - deadline.remainingFraction(
+							System.currentTimeMillis())),
+					timeBudget, deadline.getLevel(), numProcessed,
+					baseDerivations.size());
+		}
 
 		final double perecentCky = 100 * baseOutput.getParsingTime()
 				/ (double) output.getInferenceTime();
@@ -301,6 +439,28 @@ public class GraphAmrParser extends
 		LOG.info("Second stage inference time (%d pairs): %.4fsec (%.2f%%)",
 				graphPairs.size(), secondStageInferenceTime / 1000.0,
 				percentSecond);
+		if (factorGraphCacheSize > 0) {
+			LOG.info("Factor graph cache: %s", getFactorGraphCache());
+		}
+		if (lazyFactorTables) {
+			long numMaterialized = 0;
+			long numRows = 0;
+			for (final Pair<IGraphDerivation<LogicalExpression>, FactorGraph> pair : graphPairs) {
+				if (pair.second() == null) {
+					continue;
+				}
+				for (final IFactor factor : GetFactors.of(pair.second())) {
+					final FactorTable table = factor.getTable();
+					numRows += table.size();
+					numMaterialized += table instanceof LazyFactorTable
+							? ((LazyFactorTable) table).numMaterialized()
+							: table.size();
+				}
+			}
+			LOG.info("Lazy factor tables: materialized %d of %d rows (%.2f%%)",
+					numMaterialized, numRows,
+					numRows == 0 ? 0.0 : 100.0 * numMaterialized / numRows);
+		}
 
 		return output;
 	}
@@ -342,7 +502,19 @@ public class GraphAmrParser extends
 							: null,
 					InferenceMethod.valueOf(params.get("infer")),
 					params.getAsInteger("beam", 50),
-					params.getAsInteger("factorLimit", 1000));
+					params.getAsInteger("factorLimit", 1000),
+					params.getAsBoolean("bpCompiled", false),
+					params.getAsInteger("bpThreads",
+							Runtime.getRuntime().availableProcessors()),
+					params.getAsInteger("bpParallelEdges", 200),
+					params.getAsInteger("factorGraphCache", 0),
+					params.getAsBoolean("lazyTables", false),
+					params.getAsInteger("viterbiConditioning", 64),
+					params.contains("timeBudget")
+							? params.getAsLong("timeBudget") : null,
+					params.getSplit("budgetGraphFeatures").stream()
+							.map((id) -> (IFactorGraphFeatureSet) repo.get(id))
+							.collect(Collectors.toSet()));
 		}
 
 		@Override
@@ -354,25 +526,81 @@ public class GraphAmrParser extends
 		public ResourceUsage usage() {
 			return new ResourceUsage.Builder(type, GraphAmrParser.class)
 					.addParam("beam", Integer.class,
-							"Beam size for beam search inference (not used with LBP) (default: 50)")
+							"Beam size for beam search inference, and the number of configurations for VITERBI (not used with LBP) (default: 50)")
 					.addParam("infer", InferenceMethod.class,
-							"Inference method to use (BEAM, LBP and NONE)")
+							"Inference method to use (BEAM, LBP, RBP, VITERBI and NONE)")
 					.addParam("bpTime", Long.class,
 							"Maximum time for LBP in millisecond (not used with BEAM) (default: no limit)")
 					.addParam("baseParser", IGraphParser.class,
 							"Chart-based parser")
 					.addParam("factorLimit", Integer.class,
 							"Hard limit of the number of factors in a factor graph (default: 1000)")
+					.addParam("factorGraphCache", Integer.class,
+							"Number of factor graph templates to cache, re-using graph construction and feature computation for repeated logical forms (default: 0, no caching)")
 					.addParam("graphFeatures", IFactorGraphFeatureSet.class,
 							"List of factor graph feature sets")
 					.addParam("bpThreshold", Double.class,
 							"LBP convergence threshold (not used with BEAM) (default: 0.001)")
 					.addParam("bpIter", Integer.class,
 							"LBP maximum number of iterations (not used with BEAM) (default: 100)")
+					.addParam("bpCompiled", Boolean.class,
+							"Use the compiled LBP message passing engine, which computes identical marginals (not used with BEAM) (default: false)")
+					.addParam("bpThreads", Integer.class,
+							"Number of threads to run LBP over multiple factor graphs, if 1 the graphs are processed sequentially (not used with BEAM) (default: number of processors)")
+					.addParam("bpParallelEdges", Integer.class,
+							"Minimal number of edges in a factor graph to parallelize its LBP computation when processing multiple graphs (not used with BEAM) (default: 200)")
+					.addParam("lazyTables", Boolean.class,
+							"Compute the rows of factor tables on demand, when first accessed by inference. Most useful with BEAM, LBP accesses all rows. Cached factor graphs share the features of computed rows with their copies (default: false)")
+					.addParam("viterbiConditioning", Integer.class,
+							"Maximum number of joint assignments of the variables conditioned on to break cycles in VITERBI inference, graphs that require more fall back to BEAM (default: 64)")
+					.addParam("timeBudget", Long.class,
+							"Time budget for parsing a sentence in milliseconds. As the budget runs out, factor graphs are created with budgetGraphFeatures, the second stage beam and LBP time are reduced, inference over the factor graphs is skipped, and finally only the highest scoring base parses are processed. CKY parsing can't be interrupted (default: no limit)")
+					.addParam("budgetGraphFeatures",
+							IFactorGraphFeatureSet.class,
+							"Subset of graphFeatures to use when running out of the time budget (default: none)")
 					.addParam("maxParsesLimit", Integer.class,
 							"Max number of expressions to extract from a factor graph (default: 200)")
 					.build();
 		}
 	}
 
+	/**
+	 * The results of an inference triplet that pass the filter and the log
+	 * norm of their scores.
+	 *
+	 * @author Yoav Artzi
+	 */
+	private static class FilteredTriplet {
+		private final IGraphDerivation<LogicalExpression>	baseDerivation;
+		private final double								evalLogNorm;
+		private final EvaluationResult[]					evaluations;
+		private final boolean								exact;
+		private final int									size;
+
+		public FilteredTriplet(
+				Triplet<IGraphDerivation<LogicalExpression>, List<EvaluationResult>, Boolean> triplet,
+				IJointInferenceFilter<LogicalExpression, LogicalExpression, LogicalExpression> filter) {
+			this.baseDerivation = triplet.first();
+			this.exact = triplet.third();
+			final List<EvaluationResult> all = triplet.second();
+			this.evaluations = new EvaluationResult[all.size()];
+
+			// Only take into account results that pass the pruning filter. The
+			// entire distribution is conditioned on this filter. Sum the
+			// exponentiated score for all evaluations for this triplet. These
+			// are all the evaluations for this base derivation, since each
+			// base derivation appears in at most one triplet.
+			final StreamingLogSumExp logNorm = new StreamingLogSumExp();
+			int numResults = 0;
+			for (final EvaluationResult evaluation : all) {
+				if (filter.testResult(evaluation.getResult())) {
+					evaluations[numResults++] = evaluation;
+					logNorm.add(evaluation.getScore());
+				}
+			}
+			this.size = numResults;
+			this.evalLogNorm = logNorm.get();
+		}
+	}
+
 }
@@ -49,9 +49,10 @@ public class GraphAmrParserOutput extends
 			long inferenceTime,
 			List<Pair<IGraphDerivation<LogicalExpression>, FactorGraph>> derviationPairs,
 			boolean outputExact, IHashVectorImmutable theta,
-			InferenceMethod inferenceMethod) {
-		super(derviationPairs, inferenceMethod, inferenceTime, jointDerivations,
-				outputExact, theta);
+			InferenceMethod inferenceMethod,
+			DegradationLevel degradationLevel) {
+		super(degradationLevel, derviationPairs, inferenceMethod,
+				inferenceTime, jointDerivations, outputExact, theta);
 		this.baseOutput = baseOutput;
 
 		assert jointDerivations.stream().map(d -> d.getResult())
@@ -145,8 +146,10 @@ public class GraphAmrParserOutput extends
 		switch (inferenceMethod) {
 			case NONE:
 			case BEAM:
+			case VITERBI:
 				return logExpectedFeaturesBeam(lf -> true);
 			case LBP:
+			case RBP:
 				return logExpectedFeaturesExpectation();
 			default:
 				throw new IllegalStateException(
@@ -159,8 +162,10 @@ public class GraphAmrParserOutput extends
 		switch (inferenceMethod) {
 			case NONE:
 			case BEAM:
+			case VITERBI:
 				return logExpectedFeaturesBeam(filter::test);
 			case LBP:
+			case RBP:
 				throw new IllegalStateException(
 						"expected features filtering is not possible with AMR joint parses since we can't enumerate parses and the filter doesn't decompose");
 			default:
@@ -176,10 +181,12 @@ public class GraphAmrParserOutput extends
 		switch (inferenceMethod) {
 			case NONE:
 			case BEAM:
+			case VITERBI:
 				LOG.warn(
 						"logExpectedFeatures(LogicalExpression) is not optimally implemented for a beam search");
 				return logExpectedFeaturesBeam(d -> d.equals(result));
 			case LBP:
+			case RBP:
 				return logExpectedFeaturesExpectation(result);
 			default:
 				throw new IllegalStateException(
@@ -198,8 +205,10 @@ public class GraphAmrParserOutput extends
 		switch (inferenceMethod) {
 			case NONE:
 			case BEAM:
+			case VITERBI:
 				return computeLogNorm(filter::test);
 			case LBP:
+			case RBP:
 				throw new IllegalStateException(
 						"norm filtering is not possible with an AMR joint derivation that is based on comptuing expectations");
 			default:
@@ -216,10 +225,12 @@ public class GraphAmrParserOutput extends
 		switch (inferenceMethod) {
 			case NONE:
 			case BEAM:
+			case VITERBI:
 				LOG.warn(
 						"logExpectedFeatures(LogicalExpression) is not optimally implemented for a beam search");
 				return computeLogNorm(lf -> lf.equals(result));
 			case LBP:
+			case RBP:
 				return logNormExpectation(result);
 			default:
 				throw new IllegalStateException(
@@ -1,7 +1,9 @@
 package edu.uw.cs.lil.amr.parser;
 
 import edu.uw.cs.lil.amr.parser.factorgraph.inference.BeamSearch;
+import edu.uw.cs.lil.amr.parser.factorgraph.inference.KBestViterbi;
 import edu.uw.cs.lil.amr.parser.factorgraph.inference.LoopyBP;
+import edu.uw.cs.lil.amr.parser.factorgraph.inference.ResidualBP;
 
 /**
  * Inference methods used in {@link GraphAmrParser} for the second step (inference
@@ -20,6 +22,19 @@ public enum InferenceMethod {
 	 */
 	LBP,
 
+	/**
+	 * Residual (priority-scheduled) belief propagation. Computes marginals
+	 * similar to {@link #LBP}. See {@link ResidualBP}.
+	 */
+	RBP,
+
+	/**
+	 * Exact k-best max-product inference for graphs that are trees or close to
+	 * trees. Falls back to {@link #BEAM} for other graphs. The results are
+	 * used similar to {@link #BEAM}. See {@link KBestViterbi}.
+	 */
+	VITERBI,
+
 	/**
 	 * Skip the the factor graph by simply taking the root expression. Dummy
 	 * inference for inference without the factor graph.
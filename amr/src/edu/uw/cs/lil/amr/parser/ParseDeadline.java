@@ -0,0 +1,67 @@
+package edu.uw.cs.lil.amr.parser;
+
+/**
+ * Time budget of parsing a single sentence. Tracks the remaining fraction of
+ * the budget and the most severe {@link DegradationLevel} reached. Not
+ * thread-safe, a new deadline is created for each sentence.
+ *
+ * @author Yoav Artzi
+ */
+public class ParseDeadline {
+
+	/**
+	 * Budget in milliseconds, or null for no limit.
+	 */
+	private final Long			budget;
+
+	private DegradationLevel	level	= DegradationLevel.NONE;
+
+	private final long			startTime;
+
+	public ParseDeadline(long startTime, Long budget) {
+		if (budget != null && budget <= 0) {
+			throw new IllegalArgumentException(
+					"Time budget must be positive: " + budget);
+		}
+		this.startTime = startTime;
+		this.budget = budget;
+	}
+
+	/**
+	 * Record that the given degradation level was reached.
+	 */
+	public void degrade(DegradationLevel reached) {
+		level = level.max(reached);
+	}
+
+	public DegradationLevel getLevel() {
+		return level;
+	}
+
+	public boolean isLimited() {
+		return budget != null;
+	}
+
+	/**
+	 * @return Remaining time in milliseconds at the given time, 0 if the
+	 *         budget is exhausted, or null if there is no limit.
+	 */
+	public Long remaining(long time) {
+		return budget == null ? null
+				: Math.max(0, startTime + budget - time);
+	}
+
+	/**
+	 * @return The remaining fraction of the budget at the given time, in
+	 *         [0,1]. Always 1.0 if there is no limit.
+	 */
+	public double remainingFraction(long time) {
+		return budget == null ? 1.0 : remaining(time) / (double) budget;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("[budget=%s, level=%s]", budget, level);
+	}
+
+}
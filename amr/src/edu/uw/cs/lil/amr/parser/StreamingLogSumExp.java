@@ -0,0 +1,49 @@
+package edu.uw.cs.lil.amr.parser;
+
+/**
+ * Computes the log of the sum of exponents of a stream of values in a single
+ * pass, without collecting them. Keeps the running maximum and the sum scaled
+ * by it, so it's as stable as a two-pass computation and computes a single
+ * exponent for each value. Not thread-safe.
+ *
+ * @author Yoav Artzi
+ */
+public class StreamingLogSumExp {
+
+	private double	max	= Double.NEGATIVE_INFINITY;
+
+	/**
+	 * The sum of exp(value - max) over all values.
+	 */
+	private double	sum	= 0.0;
+
+	public StreamingLogSumExp add(double value) {
+		if (Double.isNaN(max)) {
+			return this;
+		} else if (value <= max) {
+			if (value != Double.NEGATIVE_INFINITY) {
+				sum += Math.exp(value - max);
+			}
+		} else if (value == Double.POSITIVE_INFINITY
+				|| Double.isNaN(value)) {
+			max = value;
+			sum = 1.0;
+		} else {
+			sum = sum * Math.exp(max - value) + 1.0;
+			max = value;
+		}
+		return this;
+	}
+
+	/**
+	 * @return The log of the sum of exponents of all values added, or
+	 *         negative infinity if no value was added.
+	 */
+	public double get() {
+		if (sum == 0.0 || Double.isInfinite(max) || Double.isNaN(max)) {
+			return max;
+		}
+		return max + Math.log(sum);
+	}
+
+}
@@ -1,6 +1,10 @@
 package edu.uw.cs.lil.amr.parser.factorgraph;
 
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
+import edu.cornell.cs.nlp.spf.parser.joint.model.IJointDataItemModel;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.IBaseNode;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.FeatureWeights;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table.LazyFactorTable;
 import edu.uw.cs.lil.amr.parser.factorgraph.visitor.FactorGraphToString;
 
 /**
@@ -13,8 +17,20 @@ public class FactorGraph {
 
 	private final boolean	closure;
 
+	/**
+	 * Dense view of the model parameters used to score the factors of this
+	 * graph when it's created.
+	 */
+	private FeatureWeights	featureWeights	= null;
+
 	private boolean			hasMarginals	= false;
 
+	/**
+	 * Create factor tables that compute their rows on demand (see
+	 * {@link LazyFactorTable}).
+	 */
+	private boolean			lazyTables		= false;
+
 	private final IBaseNode	root;
 
 	public FactorGraph(IBaseNode root, boolean closure) {
@@ -23,6 +39,18 @@ public class FactorGraph {
 		this.closure = closure;
 	}
 
+	/**
+	 * The weights to score the factors of this graph. All feature sets share
+	 * the same weights, so each weight is looked up once per graph.
+	 */
+	public synchronized FeatureWeights getFeatureWeights(
+			IJointDataItemModel<LogicalExpression, LogicalExpression> model) {
+		if (featureWeights == null) {
+			featureWeights = new FeatureWeights(model.getTheta(), lazyTables);
+		}
+		return featureWeights;
+	}
+
 	public IBaseNode getRoot() {
 		return root;
 	}
@@ -35,10 +63,25 @@ public class FactorGraph {
 		return closure;
 	}
 
+	public synchronized boolean isLazyTables() {
+		return lazyTables;
+	}
+
 	public void setHasMarginals(boolean hasMarginals) {
 		this.hasMarginals = hasMarginals;
 	}
 
+	/**
+	 * Must be set before any factor is added to the graph.
+	 */
+	public synchronized void setLazyTables(boolean lazyTables) {
+		if (featureWeights != null) {
+			throw new IllegalStateException(
+					"Factors were already added to the graph");
+		}
+		this.lazyTables = lazyTables;
+	}
+
 	@Override
 	public String toString() {
 		return FactorGraphToString.of(this, true);
@@ -0,0 +1,159 @@
+package edu.uw.cs.lil.amr.parser.factorgraph;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import edu.cornell.cs.nlp.spf.base.token.TokenSeq;
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
+import edu.cornell.cs.nlp.spf.parser.joint.model.IJointDataItemModel;
+import edu.uw.cs.lil.amr.data.AMRMeta;
+import edu.uw.cs.lil.amr.parser.factorgraph.nodes.CopyFactorGraph;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.FeatureWeights;
+
+/**
+ * Bounded cache of factor graph templates. Each template stores the structure
+ * of the graph and the feature vectors of all factors, and is keyed by the
+ * underspecified and stripped logical form (before skolem IDs are assigned),
+ * the sentence tokens and the closure flag. The sentence meta data is a
+ * function of its tokens, so the key is stable even if the meta data object
+ * is re-created (e.g., when decoded again from {@code AmrCorpusCache}). A
+ * cache hit returns a fresh copy of the template, so graphs are never shared
+ * between inference calls. Logical forms for which no graph is created (e.g.,
+ * over the factor limit) are cached as negative entries.
+ * <p>
+ * The feature vectors do not depend on the model parameters, so templates
+ * remain valid as the parameters are updated. Factor values are scores of the
+ * cached features. The tables of a copy are lazy (see
+ * {@link CopyFactorGraph}), so each row is scored with the given model only
+ * when inference accesses it. If the graph was created with lazy tables, the
+ * template shares the row features with it, and rows are computed at most
+ * once for the graph and all its copies, when first accessed by any of them.
+ * Therefore, a lazy template references the graph it was created from until
+ * it's evicted.
+ *
+ * @author Yoav Artzi
+ */
+public class FactorGraphCache {
+
+	private final Cache<Key, Optional<FactorGraph>>	cache;
+	private final AtomicLong						hits	= new AtomicLong();
+	private final AtomicLong						misses	= new AtomicLong();
+
+	public FactorGraphCache(int size) {
+		this.cache = CacheBuilder.newBuilder().maximumSize(size).build();
+	}
+
+	/**
+	 * Get the factor graph for the given logical form from the cache, or
+	 * create it using the given supplier and cache it.
+	 *
+	 * @param semantics
+	 *            Underspecified and stripped logical form.
+	 * @param graphSupplier
+	 *            Creates the factor graph in case of a miss. May return null,
+	 *            in which case a negative entry is cached. Must be
+	 *            deterministic.
+	 * @return A factor graph that is not shared with any other caller, or null
+	 *         if the supplier returned (or previously returned) null.
+	 */
+	public FactorGraph get(LogicalExpression semantics, AMRMeta meta,
+			boolean closure,
+			IJointDataItemModel<LogicalExpression, LogicalExpression> model,
+			Supplier<FactorGraph> graphSupplier) {
+		final Key key = new Key(semantics, meta.getSentence().getTokens(),
+				closure);
+		final Optional<FactorGraph> template = cache.getIfPresent(key);
+		if (template != null) {
+			hits.incrementAndGet();
+			if (!template.isPresent()) {
+				return null;
+			}
+			return CopyFactorGraph.of(template.get(),
+					new FeatureWeights(model.getTheta()));
+		}
+
+		misses.incrementAndGet();
+		final FactorGraph graph = graphSupplier.get();
+		// Cache a copy, since the created graph is returned to the caller and
+		// will be used for inference. Lazy tables are not materialized.
+		cache.put(key, graph == null ? Optional.empty()
+				: Optional.of(CopyFactorGraph.of(graph)));
+		return graph;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("hits=%d, misses=%d, size=%d", hits.get(),
+				misses.get(), cache.size());
+	}
+
+	private static class Key {
+		private final boolean			closure;
+		private final int				hashCode;
+		private final LogicalExpression	semantics;
+		private final TokenSeq			tokens;
+
+		public Key(LogicalExpression semantics, TokenSeq tokens,
+				boolean closure) {
+			this.semantics = semantics;
+			this.tokens = tokens;
+			this.closure = closure;
+			this.hashCode = calcHashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null) {
+				return false;
+			}
+			if (getClass() != obj.getClass()) {
+				return false;
+			}
+			final Key other = (Key) obj;
+			if (closure != other.closure) {
+				return false;
+			}
+			if (!semantics.equals(other.semantics)) {
+				return false;
+			}
+			if (!tokens.equals(other.tokens)) {
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		private int calcHashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + (closure ? 1231 : 1237);
+			result = prime * result + semantics.hashCode();
+			result = prime * result + tokens.hashCode();
+			return result;
+		}
+	}
+
+}
@@ -34,6 +34,7 @@ import edu.uw.cs.lil.amr.parser.factorgraph.FactorGraph;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.IBaseNode;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.LiteralNode;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.SkolemIdNode;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.FeatureWeights;
 
 /**
  * Create a single global factor to account for closure in the underspecified
@@ -65,6 +66,7 @@ public class ClosureFeature implements IFactorGraphFeatureSet {
 					&& ((LiteralNode) root).getArgs().size() == 2
 					&& ((LiteralNode) root).getArgs()
 							.get(0) instanceof SkolemIdNode) {
+				final FeatureWeights weights = graph.getFeatureWeights(model);
 				return ListUtils
 						.createSingletonList(() -> FactorGraphFeatureServices
 								.addFactor((values, nodes) -> {
@@ -73,7 +75,7 @@ public class ClosureFeature implements IFactorGraphFeatureSet {
 											.create();
 									features.set(FEATURE_TAG, 1.0);
 									return features;
-								} , model, FEATURE_TAG,
+								} , weights, FEATURE_TAG,
 										((LiteralNode) root).getArgs().get(0)));
 
 			}
@@ -27,7 +27,6 @@ import java.util.stream.Collectors;
 import edu.cornell.cs.nlp.spf.base.hashvector.IHashVectorImmutable;
 import edu.cornell.cs.nlp.spf.mr.lambda.LogicLanguageServices;
 import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
-import edu.cornell.cs.nlp.spf.parser.joint.model.IJointDataItemModel;
 import edu.cornell.cs.nlp.utils.collections.CollectionUtils;
 import edu.cornell.cs.nlp.utils.composites.Pair;
 import edu.cornell.cs.nlp.utils.log.ILogger;
@@ -43,7 +42,10 @@ import edu.uw.cs.lil.amr.parser.factorgraph.nodes.LiteralNode;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.LogicalConstantNode;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.SkolemIdNode;
 import edu.uw.cs.lil.amr.parser.factorgraph.table.ColumnHeader;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.CompactFeatures;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.FeatureWeights;
 import edu.uw.cs.lil.amr.parser.factorgraph.table.Table.FactorTable;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table.LazyFactorTable;
 import edu.uw.cs.lil.amr.parser.factorgraph.visitor.IFactorGraphVisitor;
 
 public class FactorGraphFeatureServices {
@@ -54,14 +56,17 @@ public class FactorGraphFeatureServices {
 	/**
 	 * Create a factor using the given feature function and connect it as
 	 * required to the given nodes. The factor involves only the provided nodes.
-	 * However, it won't be explicitly connected to dummy nodes.
+	 * However, it won't be explicitly connected to dummy nodes. If no row of
+	 * the factor table has features, the factor is not created.
 	 *
 	 * @param featureFunction
 	 *            A function to generate the vector containing the feature. It
 	 *            takes logical expression in the same order the nodes are
 	 *            provided. This function doesn't modify the input array.
 	 * @param weights
-	 *            Model weights.
+	 *            Model weights (see {@link FactorGraph#getFeatureWeights}).
+	 *            Lazy tables keep the weights to score rows when they are
+	 *            accessed.
 	 * @param nodes
 	 *            The nodes connected to the factor. At least one of the nodes
 	 *            must be a non-dummy node. Dummy nodes won't have explicit
@@ -69,8 +74,7 @@ public class FactorGraphFeatureServices {
 	 */
 	public static void addFactor(
 			BiFunction<LogicalExpression[], IBaseNode[], IHashVectorImmutable> featureFunction,
-			IJointDataItemModel<LogicalExpression, LogicalExpression> model,
-			String factorId, IBaseNode... nodes) {
+			FeatureWeights weights, String factorId, IBaseNode... nodes) {
 		final int numNodes = nodes.length;
 
 		final long startTime = System.currentTimeMillis();
@@ -110,6 +114,33 @@ public class FactorGraphFeatureServices {
 			}
 		}
 
+		// With lazy tables, the rows are computed when they are first
+		// accessed, and scored with the given weights. To skip factors
+		// without features, rows are only computed until the first one with
+		// features is found.
+		if (weights.isLazyTables()) {
+			final LazyFactorTable table = new LazyFactorTable(columnValues -> {
+				final LogicalExpression[] rowValues = Arrays.copyOf(nodeValues,
+						numNodes);
+				for (int i = 0; i < nonDummyNodes.length; ++i) {
+					rowValues[nonDummyNodes[i]] = columnValues[i];
+				}
+				return CompactFeatures.of(
+						featureFunction.apply(rowValues, nodes),
+						weights);
+			} , weights, headers);
+			if (!table.hasFeatures()) {
+				LOG.debug("Skipped creating an empty factor");
+				return;
+			}
+			createFactor(table, factorId, nodes, nonDummyNodes);
+			LOG.debug(
+					"Created a factor between %d nodes with a lazy table of size %d: %.4fsec",
+					numNodes, table.size(),
+					(System.currentTimeMillis() - startTime) / 1000.0);
+			return;
+		}
+
 		// Create the table.
 		final long timeMarker = System.currentTimeMillis();
 		final FactorTable table = new FactorTable(true, headers);
@@ -138,16 +169,18 @@ public class FactorGraphFeatureServices {
 				nodeValues[nonDummyNodes[i]] = values.get(i);
 			}
 
-			// Compute the features.
-			final IHashVectorImmutable featureVector = featureFunction
-					.apply(nodeValues, nodes);
+			// Compute the features and map them to their IDs. The string-keyed
+			// vector is discarded.
+			final CompactFeatures featureVector = CompactFeatures.of(
+					featureFunction.apply(nodeValues, nodes),
+					weights);
 
 			if (featureVector.size() != 0) {
 				featuresSet = true;
 			}
 
 			// Set the appropriate value in the table with the features.
-			table.set(mapping, model.score(featureVector), featureVector);
+			table.set(mapping, featureVector.score(weights), featureVector);
 		}
 
 		// If no features were set, don't create the factor.
@@ -157,15 +190,7 @@ public class FactorGraphFeatureServices {
 		}
 
 		// Create the factor.
-		final Factor factor = new Factor(table, factorId);
-
-		// Create the connecting edges (to all non-dummy nodes).
-		for (int i = 0; i < nonDummyCount; ++i) {
-			final INode variableNode = (INode) nodes[nonDummyNodes[i]];
-			final Edge edge = new Edge(variableNode, factor, true);
-			factor.addEdge(edge);
-			variableNode.addEdge(edge);
-		}
+		createFactor(table, factorId, nodes, nonDummyNodes);
 
 		LOG.debug(
 				"Created a factor between %d nodes with a table of size %d: %.4fsec",
@@ -227,6 +252,21 @@ public class FactorGraphFeatureServices {
 		}
 	}
 
+	/**
+	 * Create the factor for the given table and the connecting edges (to all
+	 * non-dummy nodes).
+	 */
+	private static void createFactor(FactorTable table, String factorId,
+			IBaseNode[] nodes, int[] nonDummyNodes) {
+		final Factor factor = new Factor(table, factorId);
+		for (final int index : nonDummyNodes) {
+			final INode variableNode = (INode) nodes[index];
+			final Edge edge = new Edge(variableNode, factor, true);
+			factor.addEdge(edge);
+			variableNode.addEdge(edge);
+		}
+	}
+
 	/**
 	 * Extracts all pairs of skolem IDs and their instance typing predicate. If
 	 * a skolem ID has no instance typing predicate, pair it with null.
@@ -40,6 +40,7 @@ import edu.uw.cs.lil.amr.parser.factorgraph.nodes.LambdaNode;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.LiteralNode;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.LogicalConstantNode;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.SkolemIdNode;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.FeatureWeights;
 import edu.uw.cs.lil.amr.parser.factorgraph.visitor.IFactorGraphVisitor;
 
 /**
@@ -202,7 +203,8 @@ public class RefControlFeatureSet implements IFactorGraphFeatureSet {
 	@Override
 	public List<Runnable> createFactorJobs(FactorGraph graph, AMRMeta meta,
 			IJointDataItemModel<LogicalExpression, LogicalExpression> model) {
-		final CreateFactors visitor = new CreateFactors(model);
+		final CreateFactors visitor = new CreateFactors(
+				graph.getFeatureWeights(model));
 		visitor.visit(graph.getRoot());
 		return visitor.jobs;
 	}
@@ -245,14 +247,13 @@ public class RefControlFeatureSet implements IFactorGraphFeatureSet {
 
 	private class CreateFactors implements IFactorGraphVisitor {
 
-		private int																counter			= 0;
-		private InstanceSummary													currentSummary	= null;
-		private final List<Runnable>											jobs			= new LinkedList<>();
-		private final IJointDataItemModel<LogicalExpression, LogicalExpression>	model;
+		private int						counter			= 0;
+		private InstanceSummary			currentSummary	= null;
+		private final List<Runnable>	jobs			= new LinkedList<>();
+		private final FeatureWeights	weights;
 
-		public CreateFactors(
-				IJointDataItemModel<LogicalExpression, LogicalExpression> model) {
-			this.model = model;
+		public CreateFactors(FeatureWeights weights) {
+			this.weights = weights;
 		}
 
 		@Override
@@ -316,7 +317,7 @@ public class RefControlFeatureSet implements IFactorGraphFeatureSet {
 										} else {
 											return HashVectorFactory.empty();
 										}
-									} , model, featureTag + factorNumber,
+									} , weights, featureTag + factorNumber,
 													parent.typingNode,
 													parent.relationNodes[jobParentIndex],
 													parent.relatedIdNodes[jobParentIndex],
@@ -45,6 +45,7 @@ import edu.uw.cs.lil.amr.parser.factorgraph.nodes.LiteralNode;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.LogicalConstantNode;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.SkolemIdNode;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.VariableNode;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.FeatureWeights;
 import edu.uw.cs.lil.amr.parser.factorgraph.visitor.IFactorGraphVisitor;
 
 /**
@@ -65,7 +66,8 @@ public class RelationSelectionalPreference implements IFactorGraphFeatureSet {
 	@Override
 	public List<Runnable> createFactorJobs(FactorGraph graph, AMRMeta meta,
 			IJointDataItemModel<LogicalExpression, LogicalExpression> model) {
-		final SetFeatures visitor = new SetFeatures(model,
+		final SetFeatures visitor = new SetFeatures(
+				graph.getFeatureWeights(model),
 				FactorGraphFeatureServices.getInstancePairs(graph));
 		visitor.visit(graph.getRoot());
 		return visitor.jobs;
@@ -107,16 +109,15 @@ public class RelationSelectionalPreference implements IFactorGraphFeatureSet {
 	}
 
 	private class SetFeatures implements IFactorGraphVisitor {
-		private int																counter					= 0;
-		private final List<Pair<IBaseNode, SkolemIdNode>>						instancePairs;
-		private final List<Runnable>											jobs					= new LinkedList<>();
-		private final IJointDataItemModel<LogicalExpression, LogicalExpression>	model;
-		private final Map<Variable, LiteralNode>								variableToTypingNode	= new HashMap<>();
-
-		public SetFeatures(
-				IJointDataItemModel<LogicalExpression, LogicalExpression> model,
+		private int											counter					= 0;
+		private final List<Pair<IBaseNode, SkolemIdNode>>	instancePairs;
+		private final List<Runnable>						jobs					= new LinkedList<>();
+		private final Map<Variable, LiteralNode>			variableToTypingNode	= new HashMap<>();
+		private final FeatureWeights						weights;
+
+		public SetFeatures(FeatureWeights weights,
 				List<Pair<IBaseNode, SkolemIdNode>> instancePairs) {
-			this.model = model;
+			this.weights = weights;
 			this.instancePairs = instancePairs;
 		}
 
@@ -319,7 +320,7 @@ public class RelationSelectionalPreference implements IFactorGraphFeatureSet {
 											}
 										}
 										return features;
-									} , model, FEATURE_TAG + factorNumber,
+									} , weights, FEATURE_TAG + factorNumber,
 													firstArgTypingPredicate,
 													referringNode,
 													instancePair.first(),
@@ -455,7 +456,7 @@ public class RelationSelectionalPreference implements IFactorGraphFeatureSet {
 												1.0);
 									}
 									return features;
-								} , model, FEATURE_TAG + factorNumber,
+								} , weights, FEATURE_TAG + factorNumber,
 												firstArgTypingPredicate,
 												node.getPredicate(),
 												secondArgTypingPredicate);
@@ -566,7 +567,7 @@ public class RelationSelectionalPreference implements IFactorGraphFeatureSet {
 
 								}
 								return features;
-							} , model, FEATURE_TAG + factorNumber,
+							} , weights, FEATURE_TAG + factorNumber,
 											firstArgTypingPredicate,
 											node.getPredicate(),
 											node.getArgs().get(1));
@@ -34,6 +34,7 @@ import edu.uw.cs.lil.amr.lambda.AMRServices;
 import edu.uw.cs.lil.amr.lambda.OverloadedLogicalConstant;
 import edu.uw.cs.lil.amr.parser.factorgraph.FactorGraph;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.LogicalConstantNode;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.FeatureWeights;
 import edu.uw.cs.lil.amr.parser.factorgraph.visitor.IFactorGraphVisitor;
 
 /**
@@ -51,7 +52,7 @@ public class SurfaceFormFeature implements IFactorGraphFeatureSet {
 	@Override
 	public List<Runnable> createFactorJobs(FactorGraph graph, AMRMeta meta,
 			IJointDataItemModel<LogicalExpression, LogicalExpression> model) {
-		final Visitor visitor = new Visitor(model);
+		final Visitor visitor = new Visitor(graph.getFeatureWeights(model));
 		visitor.visit(graph.getRoot());
 		return visitor.jobs;
 	}
@@ -94,13 +95,12 @@ public class SurfaceFormFeature implements IFactorGraphFeatureSet {
 
 	private static class Visitor implements IFactorGraphVisitor {
 
-		private int																counter	= 0;
-		private final List<Runnable>											jobs	= new LinkedList<>();
-		private final IJointDataItemModel<LogicalExpression, LogicalExpression>	model;
+		private int						counter	= 0;
+		private final List<Runnable>	jobs	= new LinkedList<>();
+		private final FeatureWeights	weights;
 
-		public Visitor(
-				IJointDataItemModel<LogicalExpression, LogicalExpression> model) {
-			this.model = model;
+		public Visitor(FeatureWeights weights) {
+			this.weights = weights;
 		}
 
 		@Override
@@ -144,7 +144,7 @@ public class SurfaceFormFeature implements IFactorGraphFeatureSet {
 										1.0);
 							}
 							return features;
-						} , model, FEATURE_TAG + factorNumber, node);
+						} , weights, FEATURE_TAG + factorNumber, node);
 					});
 
 				}
@@ -32,6 +32,7 @@ import edu.uw.cs.lil.amr.data.AMRMeta;
 import edu.uw.cs.lil.amr.lambda.AMRServices;
 import edu.uw.cs.lil.amr.parser.factorgraph.FactorGraph;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.LogicalConstantNode;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.FeatureWeights;
 import edu.uw.cs.lil.amr.parser.factorgraph.visitor.IFactorGraphVisitor;
 
 /**
@@ -59,7 +60,7 @@ public class UnaryBiasFeatures implements IFactorGraphFeatureSet {
 	@Override
 	public List<Runnable> createFactorJobs(FactorGraph graph, AMRMeta meta,
 			IJointDataItemModel<LogicalExpression, LogicalExpression> model) {
-		final Visitor visitor = new Visitor(model);
+		final Visitor visitor = new Visitor(graph.getFeatureWeights(model));
 		visitor.visit(graph.getRoot());
 		return visitor.jobs;
 	}
@@ -100,13 +101,12 @@ public class UnaryBiasFeatures implements IFactorGraphFeatureSet {
 
 	private static class Visitor implements IFactorGraphVisitor {
 
-		private int																counter	= 0;
-		private final List<Runnable>											jobs	= new LinkedList<>();
-		private final IJointDataItemModel<LogicalExpression, LogicalExpression>	model;
+		private int						counter	= 0;
+		private final List<Runnable>	jobs	= new LinkedList<>();
+		private final FeatureWeights	weights;
 
-		public Visitor(
-				IJointDataItemModel<LogicalExpression, LogicalExpression> model) {
-			this.model = model;
+		public Visitor(FeatureWeights weights) {
+			this.weights = weights;
 		}
 
 		@Override
@@ -129,7 +129,7 @@ public class UnaryBiasFeatures implements IFactorGraphFeatureSet {
 								toFeatureString(values[0]), 1.0);
 
 						return features;
-					} , model, FEATURE_TAG + factorNumber, node);
+					} , weights, FEATURE_TAG + factorNumber, node);
 				});
 
 			}
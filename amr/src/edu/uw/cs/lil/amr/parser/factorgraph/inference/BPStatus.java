@@ -0,0 +1,15 @@
+package edu.uw.cs.lil.amr.parser.factorgraph.inference;
+
+/**
+ * How belief propagation terminated.
+ *
+ * @author Yoav Artzi
+ */
+public enum BPStatus {
+	CONVERGED,
+	/**
+	 * Reached the maximum number of iterations without converging.
+	 */
+	MAX_ITERATIONS,
+	TIMEOUT
+}
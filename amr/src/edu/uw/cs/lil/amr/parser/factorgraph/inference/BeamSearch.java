@@ -1,7 +1,7 @@
 package edu.uw.cs.lil.amr.parser.factorgraph.inference;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -10,17 +10,13 @@ import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.Spliterator;
 import java.util.Spliterators;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import edu.cornell.cs.nlp.spf.base.hashvector.HashVectorFactory;
 import edu.cornell.cs.nlp.spf.base.hashvector.IHashVector;
 import edu.cornell.cs.nlp.spf.base.hashvector.IHashVectorImmutable;
 import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
-import edu.cornell.cs.nlp.utils.collections.queue.BoundedPriorityQueue;
 import edu.cornell.cs.nlp.utils.composites.Pair;
 import edu.cornell.cs.nlp.utils.log.ILogger;
 import edu.cornell.cs.nlp.utils.log.LoggerFactory;
@@ -28,6 +24,8 @@ import edu.uw.cs.lil.amr.parser.EvaluationResult;
 import edu.uw.cs.lil.amr.parser.factorgraph.FactorGraph;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.IFactor;
 import edu.uw.cs.lil.amr.parser.factorgraph.nodes.INode;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.CompactFeatures;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table.FactorTable;
 import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetExpression;
 import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetFactors;
 import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetVariables;
@@ -35,8 +33,14 @@ import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetVariables;
 /**
  * Inference with beam search over the space of configurations. In each step,
  * the configuration is expanded by specifying another variables and adding to
- * the score and features the factors connected to it that are now fully
- * specified.
+ * the score the factors connected to it that are now fully specified.
+ * <p>
+ * A configuration is an array of assignment indices, one for each variable (in
+ * the order they are processed). The score of each factor is read directly
+ * from the factor table using pre-computed column strides. Features are
+ * collected only for the configurations in the final beam. Each worker thread
+ * collects the expanded configurations into a local beam, and the local beams
+ * are merged.
  *
  * @author Yoav Artzi
  */
@@ -58,7 +62,7 @@ public class BeamSearch {
 		// Determine the order in which the variables are iterated. Iterate
 		// first over variables that have a single assignment. Then start with
 		// variables with low-connectivity.
-		final List<INode> variables = GetVariables.of(graph).stream()
+		final INode[] variables = GetVariables.of(graph).stream()
 				.sorted((n1, n2) -> {
 					if (n1.numAssignments() == 1 && n2.numAssignments() != 1) {
 						return -1;
@@ -69,15 +73,24 @@ public class BeamSearch {
 						return Integer.compare(n1.numEdges(), n2.numEdges());
 					}
 
-				}).collect(Collectors.toList());
+				}).toArray(INode[]::new);
+		final int numVariables = variables.length;
+		final Map<INode, Integer> positions = new HashMap<>();
+		for (int i = 0; i < numVariables; ++i) {
+			positions.put(variables[i], i);
+		}
 
-		final List<Configuration> configurations = new ArrayList<>(beamSize);
-		configurations.add(new Configuration(0.0, Collections.emptyMap(),
-				Collections.emptyMap()));
+		List<Configuration> configurations = new ArrayList<>(beamSize);
+		final int[] emptyAssignments = new int[numVariables];
+		Arrays.fill(emptyAssignments, -1);
+		configurations.add(new Configuration(0.0, emptyAssignments));
 		final Set<INode> specifiedVariables = new HashSet<>();
 		final Set<IFactor> allFactors = GetFactors.of(graph);
-		final AtomicBoolean exact = new AtomicBoolean(true);
-		for (final INode variable : variables) {
+		final List<FactorPlan> specifiedFactors = new ArrayList<>(
+				allFactors.size());
+		boolean exact = true;
+		for (int position = 0; position < numVariables; ++position) {
+			final INode variable = variables[position];
 			specifiedVariables.add(variable);
 
 			LOG.debug("Processing variable: %s", variable);
@@ -101,47 +114,44 @@ public class BeamSearch {
 				}
 			}
 
-			// Expand each existing configuration by specifying this variable
-			// and creating a new configuration with an updated score.
-			final PriorityQueue<Configuration> queue = new BoundedPriorityQueue<>(
-					beamSize,
-					(c1, c2) -> Double.compare(c1.getScore(), c2.getScore()));
+			// Compile the new factors. The iteration order of the set is
+			// preserved, so scores are aggregated in a consistent order.
+			final FactorPlan[] factorPlans = new FactorPlan[newFactors.size()];
+			int factorIndex = 0;
+			for (final IFactor factor : newFactors) {
+				factorPlans[factorIndex++] = new FactorPlan(factor, variable,
+						positions);
+			}
 
-			StreamSupport
+			// Expand each existing configuration by specifying this variable
+			// and creating a new configuration with an updated score. Each
+			// thread collects into its own local beam.
+			final int currentPosition = position;
+			final Beam beam = StreamSupport
 					.stream(Spliterators.<Configuration> spliterator(
 							configurations, Spliterator.IMMUTABLE), true)
-					.forEach(configuration -> expand(configuration, variable,
-							newFactors).forEach(c -> {
-								synchronized (queue) {
-									LOG.debug("Oferring: %s", c);
-									if (!queue.offer(c)) {
-										exact.set(false);
-										LOG.debug(() -> {
-											LOG.debug(
-													"Failed to queue: %s, peek=%s",
-													c, queue.peek());
-										});
-									}
-								}
-							}));
-
-			if (queue.isEmpty() && sloppy) {
+					.collect(() -> new Beam(beamSize),
+							(localBeam, configuration) -> expand(configuration,
+									variable, currentPosition, factorPlans,
+									localBeam),
+							Beam::merge);
+
+			if (beam.overflow) {
+				exact = false;
+			}
+
+			if (beam.isEmpty() && sloppy) {
 				// Case the queue over-flowed and we allow sloppy inference,
-				// simply assign this variable in underspecified form and don't
+				// simply keep this variable in underspecified form and don't
 				// trigger any features.
-				configurations.stream().map(c -> {
-					final Map<INode, LogicalExpression> newMapping = new HashMap<>(
-							c.getMapping());
-					newMapping.put(variable, variable.getExpression());
-					return new Configuration(c.getScore(), newMapping,
-							c.getFeatureMapping());
-				});
+				LOG.debug("Leaving variable underspecified: %s", variable);
 			} else {
-				// Replace the list of current configurations with the queue.
-				configurations.clear();
-				configurations.addAll(queue);
+				// Replace the list of current configurations with the beam.
+				configurations = beam.toList();
 			}
 
+			specifiedFactors.addAll(Arrays.asList(factorPlans));
+
 			// Track all specified factors. This is for book keeping only.
 			allFactors.removeAll(newFactors);
 		}
@@ -152,80 +162,151 @@ public class BeamSearch {
 			throw new RuntimeException();
 		}
 
-		// For each configuration create the output LF.
+		// For each configuration create the output LF and collect the
+		// features.
 		final List<EvaluationResult> results = configurations.stream()
+				.sorted((c1, c2) -> Double.compare(c2.score, c1.score))
 				.map(configuration -> {
 					final LogicalExpression specified = GetExpression.of(graph,
-							configuration.getMapping());
+							configuration.getMapping(variables));
 					final EvaluationResult evaluationResult = new EvaluationResult(
-							configuration.getScore(),
-							configuration.getFeatures(), specified);
+							configuration.score,
+							configuration.getFeatures(specifiedFactors),
+							specified);
 					LOG.debug("Creating evaluation result [hash=%d]: %s -> %s",
 							evaluationResult.hashCode(), configuration,
 							specified);
 					return evaluationResult;
 				}).collect(Collectors.toList());
 
-		return Pair.of(results, exact.get());
+		return Pair.of(results, exact);
 	}
 
-	private static Configuration expand(Configuration configuration,
-			INode variable, LogicalExpression assignment,
-			Set<IFactor> factors) {
-		LOG.debug("Expansion, in %d: %s -> %s", configuration.hashCode(),
-				assignment, variable);
+	private static void expand(Configuration configuration, INode variable,
+			int position, FactorPlan[] factorPlans, Beam beam) {
 		LOG.debug("Expanding: %s", configuration);
-		final Map<INode, LogicalExpression> newMapping = new HashMap<>(
-				configuration.getMapping());
-		newMapping.put(variable, assignment);
-		final Map<IFactor, IHashVectorImmutable> featureMapping = new HashMap<>(
-				configuration.getFeatureMapping());
-		double score = configuration.getScore();
-		for (final IFactor factor : factors) {
-			assert factor.getTable().isMappingComplete(
-					newMapping) : "The mapping must fully specify the factor at this point";
-			final double oldScore = score;
-			score += factor.getTable().get(newMapping);
-			LOG.debug("Adding factor to %d (%.4f -> %.4f): %s",
-					configuration.hashCode(), oldScore, score, factor);
-			featureMapping.put(factor,
-					factor.getTable().getFeatures(newMapping));
-		}
-		final Configuration expanded = new Configuration(score, newMapping,
-				featureMapping);
-		LOG.debug("Created configuration: %d -> %s", configuration.hashCode(),
-				expanded);
-		return expanded;
+
+		// Compute the base row of each new factor, given the assignments of
+		// all other variables.
+		final int numFactors = factorPlans.length;
+		final int[] baseRows = new int[numFactors];
+		for (int i = 0; i < numFactors; ++i) {
+			baseRows[i] = factorPlans[i].baseRow(configuration.assignments);
+		}
+
+		final int numAssignments = variable.numAssignments();
+		for (int index = 0; index < numAssignments; ++index) {
+			double score = configuration.score;
+			for (int i = 0; i < numFactors; ++i) {
+				// Skip factors with underspecified variables (only possible
+				// with sloppy inference).
+				if (baseRows[i] >= 0) {
+					score += CompiledLoopyBP.get(factorPlans[i].table,
+							baseRows[i] + index * factorPlans[i].stride);
+				}
+			}
+			beam.offer(configuration, position, index, score);
+		}
 	}
 
-	private static Stream<Configuration> expand(Configuration configuration,
-			INode variable, Set<IFactor> factors) {
-		return IntStream.range(0, variable.numAssignments())
-				.mapToObj(index -> expand(configuration, variable,
-						variable.getAssignment(index), factors));
+	/**
+	 * Bounded beam of configurations. Tracks if any configuration was dropped.
+	 * Not thread-safe: each thread expands into its own beam, and beams are
+	 * merged.
+	 */
+	private static class Beam {
+		private final int							capacity;
+		private boolean								overflow	= false;
+		private final PriorityQueue<Configuration>	queue;
+
+		public Beam(int capacity) {
+			this.capacity = capacity;
+			this.queue = new PriorityQueue<>(Math.max(capacity, 1),
+					(c1, c2) -> Double.compare(c1.score, c2.score));
+		}
+
+		public boolean isEmpty() {
+			return queue.isEmpty();
+		}
+
+		public void merge(Beam other) {
+			overflow |= other.overflow;
+			for (final Configuration configuration : other.queue) {
+				if (accept(configuration.score)) {
+					queue.add(configuration);
+				}
+			}
+		}
+
+		/**
+		 * Offer the configuration created by expanding the given configuration
+		 * with the given assignment. The new configuration is only created if
+		 * it's accepted into the beam.
+		 */
+		public void offer(Configuration configuration, int position,
+				int assignmentIndex, double score) {
+			if (accept(score)) {
+				final int[] assignments = Arrays.copyOf(
+						configuration.assignments,
+						configuration.assignments.length);
+				assignments[position] = assignmentIndex;
+				queue.add(new Configuration(score, assignments));
+			} else {
+				LOG.debug(() -> LOG.debug("Failed to queue: %.4f, peek=%s",
+						score, queue.peek()));
+			}
+		}
+
+		public List<Configuration> toList() {
+			return new ArrayList<>(queue);
+		}
+
+		/**
+		 * Make room for a configuration with the given score, if it's in the
+		 * top-k.
+		 */
+		private boolean accept(double score) {
+			if (queue.size() < capacity) {
+				return true;
+			}
+			overflow = true;
+			if (capacity > 0 && queue.peek().score < score) {
+				queue.poll();
+				return true;
+			}
+			return false;
+		}
 	}
 
 	private static class Configuration {
 
-		private final Map<IFactor, IHashVectorImmutable>	featureMapping;
-		private final Map<INode, LogicalExpression>			mapping;
-		private final double								score;
+		/**
+		 * The assignment index of each variable, according to the order
+		 * variables are processed. -1 for unspecified variables.
+		 */
+		private final int[]		assignments;
+		private final double	score;
 
-		public Configuration(double score,
-				Map<INode, LogicalExpression> mapping,
-				Map<IFactor, IHashVectorImmutable> featureMapping) {
+		public Configuration(double score, int[] assignments) {
 			this.score = score;
-			this.featureMapping = Collections.unmodifiableMap(featureMapping);
-			this.mapping = Collections.unmodifiableMap(mapping);
+			this.assignments = assignments;
 		}
 
-		public Map<IFactor, IHashVectorImmutable> getFeatureMapping() {
-			return featureMapping;
-		}
+		/**
+		 * Collect the features of all the fully specified factors.
+		 */
+		public IHashVectorImmutable getFeatures(List<FactorPlan> factors) {
+			final Map<IFactor, CompactFeatures> featureMapping = new HashMap<>();
+			for (final FactorPlan factor : factors) {
+				final int row = factor.row(assignments);
+				if (row >= 0) {
+					featureMapping.put(factor.factor,
+							factor.table.getCompactFeatures(row));
+				}
+			}
 
-		public IHashVectorImmutable getFeatures() {
 			final IHashVector features = HashVectorFactory.create();
-			for (final IHashVectorImmutable factorFeatures : featureMapping
+			for (final CompactFeatures factorFeatures : featureMapping
 					.values()) {
 				if (factorFeatures != null) {
 					factorFeatures.addTimesInto(1.0, features);
@@ -234,20 +315,100 @@ public class BeamSearch {
 			return features;
 		}
 
-		public Map<INode, LogicalExpression> getMapping() {
+		public Map<INode, LogicalExpression> getMapping(INode[] variables) {
+			final Map<INode, LogicalExpression> mapping = new HashMap<>();
+			for (int i = 0; i < assignments.length; ++i) {
+				if (assignments[i] >= 0) {
+					mapping.put(variables[i],
+							variables[i].getAssignment(assignments[i]));
+				}
+			}
 			return mapping;
 		}
 
-		public double getScore() {
-			return score;
-		}
-
 		@Override
 		public String toString() {
-			return String.format("[%.4f, %d, hash=%d] %s", score,
-					mapping.size(), hashCode(), mapping);
+			return String.format("[%.4f, hash=%d] %s", score, hashCode(),
+					Arrays.toString(assignments));
+		}
+
+	}
+
+	/**
+	 * Pre-computed indexing into a factor table: the position of the variable
+	 * of each column in the configuration assignments array and the stride of
+	 * the column.
+	 */
+	private static class FactorPlan {
+		/**
+		 * The column of the variable that completes this factor.
+		 */
+		private final int			column;
+		private final IFactor		factor;
+		private final int[]			positions;
+		/**
+		 * The stride of the column of the variable that completes this factor.
+		 */
+		private final int			stride;
+		private final int[]			strides;
+		private final FactorTable	table;
+
+		public FactorPlan(IFactor factor, INode variable,
+				Map<INode, Integer> positions) {
+			this.factor = factor;
+			this.table = factor.getTable();
+			final int numColumns = table.numColumns();
+			final int numEdges = factor.numEdges();
+			this.positions = new int[numColumns];
+			this.strides = new int[numColumns];
+			Arrays.fill(this.positions, -1);
+			for (int i = 0; i < numEdges; ++i) {
+				final INode edgeVariable = factor.getEdge(i).getVariable();
+				final int column = table.getColumn(edgeVariable);
+				this.positions[column] = positions.get(edgeVariable);
+				this.strides[column] = table.getColumnStride(column);
+			}
+			this.column = table.getColumn(variable);
+			this.stride = table.getColumnStride(column);
+			assert Arrays.stream(
+					this.positions).allMatch(p -> p >= 0) : "Factor table has a column without an edge: "
+							+ factor;
+		}
+
+		/**
+		 * The row index given all assignments, except the variable that
+		 * completes this factor. Returns -1 if any other variable is
+		 * unspecified.
+		 */
+		public int baseRow(int[] assignments) {
+			int row = 0;
+			for (int i = 0; i < positions.length; ++i) {
+				if (i != column) {
+					final int assignment = assignments[positions[i]];
+					if (assignment < 0) {
+						return -1;
+					}
+					row += assignment * strides[i];
+				}
+			}
+			return row;
 		}
 
+		/**
+		 * The row index given all assignments. Returns -1 if any variable is
+		 * unspecified.
+		 */
+		public int row(int[] assignments) {
+			int row = 0;
+			for (int i = 0; i < positions.length; ++i) {
+				final int assignment = assignments[positions[i]];
+				if (assignment < 0) {
+					return -1;
+				}
+				row += assignment * strides[i];
+			}
+			return row;
+		}
 	}
 
 }
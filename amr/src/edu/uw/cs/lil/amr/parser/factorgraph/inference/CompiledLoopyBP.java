@@ -0,0 +1,466 @@
+package edu.uw.cs.lil.amr.parser.factorgraph.inference;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import edu.cornell.cs.nlp.utils.log.ILogger;
+import edu.cornell.cs.nlp.utils.log.LoggerFactory;
+import edu.cornell.cs.nlp.utils.math.LogSumExp;
+import edu.uw.cs.lil.amr.parser.factorgraph.FactorGraph;
+import edu.uw.cs.lil.amr.parser.factorgraph.nodes.Edge;
+import edu.uw.cs.lil.amr.parser.factorgraph.nodes.IFactor;
+import edu.uw.cs.lil.amr.parser.factorgraph.nodes.INode;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table.FactorTable;
+import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetEdges;
+import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetFactors;
+import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetVariables;
+
+/**
+ * Compiled version of {@link LoopyBP}. Before message passing starts, each
+ * (edge, factor) pair is compiled into an integer plan of column strides and
+ * sizes, so messages are computed directly over the table row indices without
+ * creating value mappings. Message tables are double buffered and re-used
+ * across iterations. The order of all floating point operations is identical
+ * to {@link LoopyBP}, so the computed marginals are identical as well.
+ *
+ * @author Yoav Artzi
+ */
+public class CompiledLoopyBP {
+	public static final ILogger				LOG		= LoggerFactory
+			.create(CompiledLoopyBP.class);
+
+	/**
+	 * Per-thread scratch space for the factor product tables.
+	 */
+	private static final ThreadLocal<double[]>	SCRATCH	= ThreadLocal
+			.withInitial(() -> new double[0]);
+
+	private CompiledLoopyBP() {
+		// Use static access method.
+	}
+
+	public static BPStatus of(FactorGraph graph, double changeThreashold,
+			int maxIterations) {
+		return of(graph, changeThreashold, maxIterations, null);
+	}
+
+	public static BPStatus of(FactorGraph graph, double changeThreashold,
+			int maxIterations, Long maxTime) {
+		return of(graph, changeThreashold, maxIterations, maxTime, true);
+	}
+
+	/**
+	 * @param parallel
+	 *            Update the edges and compute the beliefs using parallel
+	 *            streams (see {@link LoopyBP}).
+	 * @return How message passing terminated.
+	 */
+	public static BPStatus of(FactorGraph graph, double changeThreashold,
+			int maxIterations, Long maxTime, boolean parallel) {
+		final long startTime = System.currentTimeMillis();
+
+		final EdgePlan[] plans = compile(graph);
+
+		// Init all messages to 1.0.
+		for (final EdgePlan plan : plans) {
+			plan.edge.getToFactorMessage().setAll(1.0);
+			plan.edge.getToVariableMessage().setAll(1.0);
+			plan.cacheToFactor();
+		}
+
+		boolean converged = false;
+		boolean timedOut = false;
+		int iteration = 0;
+		while (!converged) {
+			// Update all variable-to-factor messages.
+			int numChanged = stream(plans, parallel)
+					.collect(Collectors.summingInt((EdgePlan plan) -> plan
+							.updateToFactor(plans, changeThreashold) ? 1 : 0));
+
+			// Update all factor-to-variables messages.
+			numChanged += stream(plans, parallel)
+					.collect(Collectors.summingInt((EdgePlan plan) -> plan
+							.updateToVariable(plans, changeThreashold) ? 1
+									: 0));
+
+			if (numChanged == 0) {
+				converged = true;
+				LOG.info("LBP converged after %d iterations", iteration);
+			} else if (maxTime != null
+					&& System.currentTimeMillis() - startTime > maxTime) {
+				LOG.info("LBP timed out after %d iterations (time: %d)",
+						iteration, System.currentTimeMillis() - startTime);
+				timedOut = true;
+				break;
+			} else if (++iteration > maxIterations) {
+				LOG.info(
+						"LBP reached maximum number of iterations (%d) without convergence",
+						maxIterations);
+				break;
+			}
+		}
+
+		setBeliefs(graph, plans, parallel);
+
+		LOG.info("LBP time: %fsec (iterations=%d, %sconverged)",
+				(System.currentTimeMillis() - startTime) / 1000.0, iteration,
+				converged ? "" : "not ");
+
+		if (converged) {
+			return BPStatus.CONVERGED;
+		}
+		return timedOut ? BPStatus.TIMEOUT : BPStatus.MAX_ITERATIONS;
+	}
+
+	/**
+	 * Add the given message into all rows of the factor table values where the
+	 * column of the message variable takes the value of the message index.
+	 * Iterates the rows in blocks, so no division is required to recover the
+	 * value index of each row.
+	 */
+	private static void addMessage(double[] target, int numRows, int stride,
+			int size, double[] message) {
+		final int blockSize = stride * size;
+		for (int blockStart = 0; blockStart < numRows; blockStart += blockSize) {
+			for (int value = 0; value < size; ++value) {
+				final double messageValue = message[value];
+				final int rowStart = blockStart + value * stride;
+				final int rowEnd = rowStart + stride;
+				for (int row = rowStart; row < rowEnd; ++row) {
+					target[row] += messageValue;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compile the plans for all edges of the graph.
+	 */
+	static EdgePlan[] compile(FactorGraph graph) {
+		// Get all the edges in the graph into an array for fast access.
+		final Set<Edge> edgeSet = GetEdges.of(graph);
+		final Edge[] edges = edgeSet.toArray(new Edge[edgeSet.size()]);
+		final Map<Edge, Integer> edgeIndices = new IdentityHashMap<>();
+		for (int i = 0; i < edges.length; ++i) {
+			edgeIndices.put(edges[i], i);
+		}
+
+		final EdgePlan[] plans = new EdgePlan[edges.length];
+		for (int i = 0; i < edges.length; ++i) {
+			plans[i] = new EdgePlan(edges[i], edgeIndices);
+		}
+		return plans;
+	}
+
+	/**
+	 * Get a single value from a single-column message table. Identical to
+	 * {@link Table#get(Map)} with a fully specified mapping.
+	 */
+	static double get(Table message, int index) {
+		return message.isLogSpace()
+				? LogSumExp.of(Double.NEGATIVE_INFINITY, message.get(index))
+				: 0.0 + message.get(index);
+	}
+
+	/**
+	 * Get the per-thread scratch array of at least the given size.
+	 */
+	static double[] scratch(int size) {
+		double[] scratch = SCRATCH.get();
+		if (scratch.length < size) {
+			scratch = new double[size];
+			SCRATCH.set(scratch);
+		}
+		return scratch;
+	}
+
+	static void setBeliefs(FactorGraph graph, EdgePlan[] plans,
+			boolean parallel) {
+		final Map<Edge, EdgePlan> planMapping = new IdentityHashMap<>();
+		for (final EdgePlan plan : plans) {
+			planMapping.put(plan.edge, plan);
+		}
+
+		// Set the belief of each variable node. See LoopyBP for the details of
+		// the computation, which is replicated here.
+		LoopyBP.stream(GetVariables.of(graph), parallel)
+				.forEach((INode variable) -> {
+					final Table variableBelief = new Table(true,
+							variable.getColumnHeader());
+					// Set initial values to log(1.0).
+					variableBelief.setAll(0.0);
+					final int len = variable.numEdges();
+					final int numAssignments = variable.numAssignments();
+					for (int j = 0; j < len; ++j) {
+						final Table message = variable.getEdge(j)
+								.getToVariableMessage();
+						for (int k = 0; k < numAssignments; ++k) {
+							variableBelief.add(k, get(message, k));
+						}
+					}
+					variableBelief.normalize();
+					variable.setBelief(variableBelief);
+				});
+
+		// Set the belief of each factor node.
+		LoopyBP.stream(GetFactors.of(graph), parallel)
+				.forEach((IFactor factor) -> {
+					final FactorTable factorBelief = factor.getTable().clone();
+					final int numRows = factorBelief.size();
+					final double[] product = scratch(numRows);
+					for (int row = 0; row < numRows; ++row) {
+						product[row] = factorBelief.get(row);
+					}
+					final int len = factor.numEdges();
+					for (int j = 0; j < len; ++j) {
+						final EdgePlan plan = planMapping
+								.get(factor.getEdge(j));
+						addMessage(product, numRows, plan.stride, plan.size,
+								plan.toFactorValues);
+					}
+					for (int row = 0; row < numRows; ++row) {
+						factorBelief.set(row, product[row]);
+					}
+					factorBelief.normalize();
+					factor.setBelief(factorBelief);
+				});
+
+		graph.setHasMarginals(true);
+	}
+
+	static Stream<EdgePlan> stream(EdgePlan[] plans, boolean parallel) {
+		return StreamSupport.stream(Spliterators.<EdgePlan> spliterator(plans,
+				Spliterator.IMMUTABLE), parallel);
+	}
+
+	/**
+	 * Compiled plan for a single edge. Holds the indices of all incoming edges
+	 * for both directions and the stride and size of the edge variable column
+	 * in the factor table. Each edge is updated by a single thread at a time,
+	 * so the buffers held by the plan are not shared. Messages are first
+	 * computed into a spare buffer, and then committed.
+	 */
+	static class EdgePlan {
+		final Edge					edge;
+		final int[]					factorIncoming;
+		final int[]					variableIncoming;
+		private final int[]			counter;
+		private final int[]			otherSizes;
+		private final int[]			otherStrides;
+		private final int			size;
+		private Table				spareToFactor;
+		private Table				spareToVariable;
+		private final int			stride;
+		private final FactorTable	table;
+		private final double[]		toFactorValues;
+
+		EdgePlan(Edge edge, Map<Edge, Integer> edgeIndices) {
+			this.edge = edge;
+			final INode variable = edge.getVariable();
+			final IFactor factor = edge.getFactor();
+			this.table = factor.getTable();
+			this.size = variable.numAssignments();
+			this.toFactorValues = new double[size];
+
+			final int column = table.getColumn(variable);
+			if (column < 0) {
+				throw new IllegalStateException(
+						"Factor table is missing a column for edge: " + edge);
+			}
+			this.stride = table.getColumnStride(column);
+
+			// Columns to marginalize when computing the factor-to-variable
+			// message, in the same order Table iterates wildcards (lowest
+			// column first).
+			final int numColumns = table.numColumns();
+			this.otherStrides = new int[numColumns - 1];
+			this.otherSizes = new int[numColumns - 1];
+			for (int i = 0, j = 0; i < numColumns; ++i) {
+				if (i != column) {
+					otherStrides[j] = table.getColumnStride(i);
+					otherSizes[j++] = table.getColumnSize(i);
+				}
+			}
+			this.counter = new int[numColumns - 1];
+
+			this.variableIncoming = incoming(edge, variable.numEdges(),
+					variable::getEdge, edgeIndices);
+			this.factorIncoming = incoming(edge, factor.numEdges(),
+					factor::getEdge, edgeIndices);
+
+			this.spareToFactor = edge.getToFactorMessage().cloneEmpty();
+			this.spareToVariable = edge.getToVariableMessage().cloneEmpty();
+		}
+
+		/**
+		 * Collect the indices of all edges except the current one, in the
+		 * order they are given.
+		 */
+		private static int[] incoming(Edge current, int numEdges,
+				IntFunction<Edge> edgeGetter, Map<Edge, Integer> edgeIndices) {
+			final int[] indices = new int[numEdges - 1];
+			for (int i = 0, j = 0; i < numEdges; ++i) {
+				final Edge edge = edgeGetter.apply(i);
+				// Skip the current edge.
+				if (edge != current) {
+					indices[j++] = edgeIndices.get(edge);
+				}
+			}
+			return indices;
+		}
+
+		/**
+		 * Cache the values of the current variable-to-factor message. Called
+		 * whenever the message is replaced, so the values can be read by
+		 * other edges of the factor concurrently.
+		 */
+		void cacheToFactor() {
+			final Table toFactorMessage = edge.getToFactorMessage();
+			for (int k = 0; k < size; ++k) {
+				toFactorValues[k] = get(toFactorMessage, k);
+			}
+		}
+
+		/**
+		 * Commit the computed variable-to-factor message.
+		 *
+		 * @see #computeToFactor(EdgePlan[])
+		 */
+		void commitToFactor() {
+			final Table current = edge.getToFactorMessage();
+			edge.setToFactorMessage(spareToFactor);
+			spareToFactor = current;
+			cacheToFactor();
+		}
+
+		/**
+		 * Commit the computed factor-to-variable message.
+		 *
+		 * @see #computeToVariable(EdgePlan[])
+		 */
+		void commitToVariable() {
+			final Table current = edge.getToVariableMessage();
+			edge.setToVariableMessage(spareToVariable);
+			spareToVariable = current;
+		}
+
+		/**
+		 * Compute the variable-to-factor message into the spare buffer,
+		 * without replacing the current message.
+		 */
+		void computeToFactor(EdgePlan[] plans) {
+			final Table table = spareToFactor;
+			table.reset();
+			for (final int incomingIndex : variableIncoming) {
+				final Table incomingTable = plans[incomingIndex].edge
+						.getToVariableMessage();
+				for (int k = 0; k < size; ++k) {
+					table.add(k, get(incomingTable, k));
+				}
+			}
+			table.normalize();
+		}
+
+		/**
+		 * Compute the factor-to-variable message into the spare buffer,
+		 * without replacing the current message.
+		 */
+		void computeToVariable(EdgePlan[] plans) {
+			// Aggregate the product before marginalization (sum).
+			final int numRows = this.table.size();
+			final double[] product = scratch(numRows);
+			for (int row = 0; row < numRows; ++row) {
+				product[row] = this.table.get(row);
+			}
+			for (final int incomingIndex : factorIncoming) {
+				final EdgePlan incoming = plans[incomingIndex];
+				addMessage(product, numRows, incoming.stride, incoming.size,
+						incoming.toFactorValues);
+			}
+
+			// Marginalize all variables except the current one.
+			final Table table = spareToVariable;
+			table.reset();
+			final boolean logSpace = this.table.isLogSpace();
+			final int numOthers = otherStrides.length;
+			for (int k = 0; k < size; ++k) {
+				double sum = logSpace ? Double.NEGATIVE_INFINITY : 0.0;
+				int row = k * stride;
+				for (int i = 0; i < numOthers; ++i) {
+					counter[i] = 0;
+				}
+				while (true) {
+					if (logSpace) {
+						sum = LogSumExp.of(sum, product[row]);
+					} else {
+						sum += product[row];
+					}
+
+					// Increment the counter, lowest column first.
+					boolean incremented = false;
+					for (int i = 0; i < numOthers; ++i) {
+						if (counter[i] < otherSizes[i] - 1) {
+							++counter[i];
+							row += otherStrides[i];
+							incremented = true;
+							break;
+						} else {
+							row -= counter[i] * otherStrides[i];
+							counter[i] = 0;
+						}
+					}
+					if (!incremented) {
+						break;
+					}
+				}
+				table.set(k, sum);
+			}
+			table.normalize();
+		}
+
+		/**
+		 * The residual of the computed factor-to-variable message, relative to
+		 * the current message.
+		 *
+		 * @see Table#maxDifference(Table)
+		 */
+		double residualToVariable() {
+			return spareToVariable.maxDifference(edge.getToVariableMessage());
+		}
+
+		/**
+		 * Update the variable-to-factor message.
+		 *
+		 * @return 'true' if the message changed (up to the threshold).
+		 */
+		boolean updateToFactor(EdgePlan[] plans, double changeThreashold) {
+			computeToFactor(plans);
+			final boolean changed = !spareToFactor
+					.equals(edge.getToFactorMessage(), changeThreashold);
+			commitToFactor();
+			return changed;
+		}
+
+		/**
+		 * Update the factor-to-variable message.
+		 *
+		 * @return 'true' if the message changed (up to the threshold).
+		 */
+		boolean updateToVariable(EdgePlan[] plans, double changeThreashold) {
+			computeToVariable(plans);
+			final boolean changed = !spareToVariable
+					.equals(edge.getToVariableMessage(), changeThreashold);
+			commitToVariable();
+			return changed;
+		}
+	}
+
+}
@@ -0,0 +1,665 @@
+package edu.uw.cs.lil.amr.parser.factorgraph.inference;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import edu.cornell.cs.nlp.spf.base.hashvector.HashVectorFactory;
+import edu.cornell.cs.nlp.spf.base.hashvector.IHashVector;
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
+import edu.cornell.cs.nlp.utils.log.ILogger;
+import edu.cornell.cs.nlp.utils.log.LoggerFactory;
+import edu.uw.cs.lil.amr.parser.EvaluationResult;
+import edu.uw.cs.lil.amr.parser.factorgraph.FactorGraph;
+import edu.uw.cs.lil.amr.parser.factorgraph.nodes.IFactor;
+import edu.uw.cs.lil.amr.parser.factorgraph.nodes.INode;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.CompactFeatures;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table.FactorTable;
+import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetExpression;
+import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetFactors;
+import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetVariables;
+
+/**
+ * Exact k-best max-product (Viterbi) inference for factor graphs that are trees
+ * or close to trees. The k-best configurations of a forest are computed with
+ * dynamic programming from the leaves of each tree to its root. Graphs with
+ * cycles are handled by conditioning on a cycle cutset: a small set of
+ * variables, such that for each of their joint assignments the rest of the
+ * graph is a forest. The cutset is selected greedily. If the number of joint
+ * assignments of the cutset is over the given limit, the graph is not
+ * supported, and the caller is expected to fall back to approximate inference
+ * (e.g., {@link BeamSearch}).
+ * <p>
+ * The scores of factors are read from their tables, similar to
+ * {@link BeamSearch}, but the returned configurations are the exact k-best
+ * ones. Whether the k-best configurations are all the configurations of the
+ * graph is reported separately (see {@link Result}).
+ *
+ * @author Yoav Artzi
+ */
+public class KBestViterbi {
+
+	public static final ILogger		LOG					= LoggerFactory
+			.create(KBestViterbi.class);
+
+	/**
+	 * The conditioned assignment index of each variable, or -1 if the variable
+	 * is free.
+	 */
+	private final int[]				conditioned;
+
+	private final CompiledFactor[]	factors;
+
+	private final int				k;
+
+	/**
+	 * The indices of the factors connected to each variable.
+	 */
+	private final int[][]			variableFactors;
+
+	private final INode[]			variables;
+
+	/**
+	 * Visited flags for the current traversal of the forest.
+	 */
+	private final boolean[]			visitedFactors;
+
+	private final boolean[]			visitedVariables;
+
+	private KBestViterbi(INode[] variables, CompiledFactor[] factors,
+			int[][] variableFactors, int k) {
+		this.variables = variables;
+		this.factors = factors;
+		this.variableFactors = variableFactors;
+		this.k = k;
+		this.conditioned = new int[variables.length];
+		this.visitedFactors = new boolean[factors.length];
+		this.visitedVariables = new boolean[variables.length];
+	}
+
+	/**
+	 * @param k
+	 *            The number of configurations to return.
+	 * @param maxConditioning
+	 *            The maximum number of joint assignments of the cycle cutset.
+	 *            If 1, only forests are supported.
+	 * @return The k-best evaluation results, or null if the graph is not
+	 *         supported.
+	 */
+	public static Result of(FactorGraph graph, int k, int maxConditioning) {
+		if (k <= 0) {
+			return null;
+		}
+
+		// Index the variables and the factors.
+		final INode[] variables = GetVariables.of(graph)
+				.toArray(new INode[0]);
+		final Map<INode, Integer> variableIndices = new HashMap<>();
+		for (int i = 0; i < variables.length; ++i) {
+			if (variables[i].numAssignments() == 0) {
+				return null;
+			}
+			variableIndices.put(variables[i], i);
+		}
+		final CompiledFactor[] factors = GetFactors.of(graph).stream()
+				.map(factor -> new CompiledFactor(factor, variableIndices))
+				.toArray(CompiledFactor[]::new);
+		final List<List<Integer>> adjacency = new ArrayList<>(
+				variables.length);
+		for (int i = 0; i < variables.length; ++i) {
+			adjacency.add(new ArrayList<>());
+		}
+		for (int i = 0; i < factors.length; ++i) {
+			for (final int variable : factors[i].variables) {
+				adjacency.get(variable).add(i);
+			}
+		}
+		final int[][] variableFactors = adjacency.stream()
+				.map(list -> list.stream().mapToInt(Integer::intValue)
+						.toArray())
+				.toArray(int[][]::new);
+
+		final int[] cutset = cycleCutset(variables, factors, variableFactors,
+				maxConditioning);
+		if (cutset == null) {
+			LOG.debug("Too many cycles for exact inference: %s",
+					graph.getRoot().getExpression());
+			return null;
+		}
+
+		final KBestViterbi viterbi = new KBestViterbi(variables, factors,
+				variableFactors, k);
+
+		// Compute the k-best configurations for each joint assignment of the
+		// cutset. Configurations from different assignments are distinct.
+		final PriorityQueue<Partial> best = new PriorityQueue<>(k,
+				(p1, p2) -> Double.compare(p1.score, p2.score));
+		final int[] cutsetAssignments = new int[cutset.length];
+		while (true) {
+			offer(best, viterbi.forest(cutset, cutsetAssignments), k);
+
+			// Increment the cutset assignments.
+			int i = 0;
+			for (; i < cutset.length; ++i) {
+				if (++cutsetAssignments[i] < variables[cutset[i]]
+						.numAssignments()) {
+					break;
+				}
+				cutsetAssignments[i] = 0;
+			}
+			if (i == cutset.length) {
+				break;
+			}
+		}
+
+		// Create the evaluation results.
+		final List<EvaluationResult> results = new ArrayList<>(best.size());
+		for (final Partial partial : toList(best)) {
+			final int[] assignments = partial.getAssignments(variables.length);
+			final Map<INode, LogicalExpression> mapping = new HashMap<>();
+			for (int i = 0; i < variables.length; ++i) {
+				mapping.put(variables[i],
+						variables[i].getAssignment(assignments[i]));
+			}
+			final IHashVector features = HashVectorFactory.create();
+			for (final CompiledFactor factor : factors) {
+				final CompactFeatures factorFeatures = factor.table
+						.getCompactFeatures(factor.row(assignments));
+				if (factorFeatures != null) {
+					factorFeatures.addTimesInto(1.0, features);
+				}
+			}
+			results.add(new EvaluationResult(partial.score, features,
+					GetExpression.of(graph, mapping)));
+		}
+
+		// The enumeration is complete only if the results include all the
+		// configurations of the graph.
+		boolean complete = true;
+		long numConfigurations = 1;
+		for (final INode variable : variables) {
+			numConfigurations *= variable.numAssignments();
+			if (numConfigurations > results.size()) {
+				complete = false;
+				break;
+			}
+		}
+
+		LOG.debug(
+				"Exact k-best inference: variables=%d, factors=%d, cutset=%d, #results=%d, complete=%s",
+				variables.length, factors.length, cutset.length,
+				results.size(), complete);
+
+		return new Result(results, true, complete);
+	}
+
+	/**
+	 * Greedily select a set of variables, such that removing them leaves a
+	 * forest. Repeatedly prunes leaves, and then removes the variable with the
+	 * most remaining connections.
+	 *
+	 * @return The indices of the cutset variables, or null if the number of
+	 *         their joint assignments is over the given limit.
+	 */
+	private static int[] cycleCutset(INode[] variables,
+			CompiledFactor[] factors, int[][] variableFactors,
+			int maxConditioning) {
+		// Nodes of the bipartite graph: variables, followed by factors.
+		final int numVariables = variables.length;
+		final int numNodes = numVariables + factors.length;
+		final int[] degree = new int[numNodes];
+		final boolean[] removed = new boolean[numNodes];
+		final Deque<Integer> leaves = new ArrayDeque<>();
+		for (int i = 0; i < numVariables; ++i) {
+			degree[i] = variableFactors[i].length;
+		}
+		for (int i = 0; i < factors.length; ++i) {
+			degree[numVariables + i] = factors[i].variables.length;
+		}
+		for (int i = 0; i < numNodes; ++i) {
+			if (degree[i] <= 1) {
+				leaves.add(i);
+			}
+		}
+
+		final List<Integer> cutset = new ArrayList<>();
+		long numAssignments = 1;
+		while (true) {
+			// Prune the leaves, until only cycles and paths between them are
+			// left.
+			while (!leaves.isEmpty()) {
+				final int node = leaves.poll();
+				if (removed[node]) {
+					continue;
+				}
+				removed[node] = true;
+				final int[] neighbors = node < numVariables
+						? variableFactors[node]
+						: factors[node - numVariables].variables;
+				final int offset = node < numVariables ? numVariables : 0;
+				for (final int neighbor : neighbors) {
+					if (!removed[neighbor + offset]
+							&& --degree[neighbor + offset] <= 1) {
+						leaves.add(neighbor + offset);
+					}
+				}
+			}
+
+			// Select the remaining variable with the most connections.
+			int selected = -1;
+			for (int i = 0; i < numVariables; ++i) {
+				if (!removed[i]
+						&& (selected < 0 || degree[i] > degree[selected])) {
+					selected = i;
+				}
+			}
+			if (selected < 0) {
+				return cutset.stream().mapToInt(Integer::intValue).toArray();
+			}
+
+			numAssignments *= variables[selected].numAssignments();
+			if (numAssignments > maxConditioning) {
+				return null;
+			}
+			cutset.add(selected);
+			removed[selected] = true;
+			for (final int factor : variableFactors[selected]) {
+				if (!removed[numVariables + factor]
+						&& --degree[numVariables + factor] <= 1) {
+					leaves.add(numVariables + factor);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Add the given partial configurations to the bounded queue.
+	 *
+	 * @param partials
+	 *            Sorted by decreasing score.
+	 */
+	private static void offer(PriorityQueue<Partial> queue,
+			List<Partial> partials, int k) {
+		for (final Partial partial : partials) {
+			if (queue.size() < k) {
+				queue.add(partial);
+			} else if (queue.peek().score < partial.score) {
+				queue.poll();
+				queue.add(partial);
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * The k-best combinations of the two lists of partial configurations.
+	 * Explores the combinations in best-first order.
+	 *
+	 * @param first
+	 *            Sorted by decreasing score.
+	 * @param second
+	 *            Sorted by decreasing score.
+	 * @return Sorted by decreasing score.
+	 */
+	private static List<Partial> product(List<Partial> first,
+			List<Partial> second, int k) {
+		if (first.isEmpty() || second.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		// Common case: no need to search.
+		if (first.size() == 1 || second.size() == 1) {
+			final Partial single = first.size() == 1 ? first.get(0)
+					: second.get(0);
+			final List<Partial> other = first.size() == 1 ? second : first;
+			final List<Partial> combined = new ArrayList<>(other.size());
+			for (final Partial partial : other) {
+				combined.add(new Partial(single, partial));
+			}
+			return combined;
+		}
+
+		final int secondSize = second.size();
+		final boolean[] queued = new boolean[first.size() * secondSize];
+		final PriorityQueue<int[]> frontier = new PriorityQueue<>(
+				(i1, i2) -> Double.compare(
+						first.get(i2[0]).score + second.get(i2[1]).score,
+						first.get(i1[0]).score + second.get(i1[1]).score));
+		frontier.add(new int[] { 0, 0 });
+		queued[0] = true;
+		final List<Partial> combined = new ArrayList<>(k);
+		while (!frontier.isEmpty() && combined.size() < k) {
+			final int[] indices = frontier.poll();
+			combined.add(
+					new Partial(first.get(indices[0]), second.get(indices[1])));
+			if (indices[0] + 1 < first.size()
+					&& !queued[(indices[0] + 1) * secondSize + indices[1]]) {
+				queued[(indices[0] + 1) * secondSize + indices[1]] = true;
+				frontier.add(new int[] { indices[0] + 1, indices[1] });
+			}
+			if (indices[1] + 1 < secondSize
+					&& !queued[indices[0] * secondSize + indices[1] + 1]) {
+				queued[indices[0] * secondSize + indices[1] + 1] = true;
+				frontier.add(new int[] { indices[0], indices[1] + 1 });
+			}
+		}
+		return combined;
+	}
+
+	/**
+	 * @return The content of the queue, sorted by decreasing score.
+	 */
+	private static List<Partial> toList(PriorityQueue<Partial> queue) {
+		final List<Partial> list = new ArrayList<>(queue);
+		list.sort((p1, p2) -> Double.compare(p2.score, p1.score));
+		return list;
+	}
+
+	/**
+	 * For each assignment of the parent variable, the k-best configurations of
+	 * the sub-tree of the factor.
+	 */
+	private List<Partial>[] factorLists(int factorIndex, int parent) {
+		visitedFactors[factorIndex] = true;
+		final CompiledFactor factor = factors[factorIndex];
+		final int numColumns = factor.variables.length;
+
+		// Collect the lists of the free children and the base row, given the
+		// conditioned variables.
+		int parentColumn = -1;
+		int baseRow = 0;
+		final List<Integer> childColumns = new ArrayList<>(numColumns);
+		final List<List<Partial>[]> childLists = new ArrayList<>(numColumns);
+		for (int i = 0; i < numColumns; ++i) {
+			final int variable = factor.variables[i];
+			if (variable == parent) {
+				parentColumn = i;
+			} else if (conditioned[variable] >= 0) {
+				baseRow += conditioned[variable] * factor.strides[i];
+			} else {
+				childColumns.add(i);
+				childLists.add(variableLists(variable, factorIndex));
+			}
+		}
+
+		final int numParentAssignments = variables[parent].numAssignments();
+		@SuppressWarnings("unchecked")
+		final PriorityQueue<Partial>[] queues = new PriorityQueue[numParentAssignments];
+		for (int i = 0; i < numParentAssignments; ++i) {
+			queues[i] = new PriorityQueue<>(k,
+					(p1, p2) -> Double.compare(p1.score, p2.score));
+		}
+
+		// Iterate over the assignments of the children.
+		final int numChildren = childColumns.size();
+		final int[] childAssignments = new int[numChildren];
+		while (true) {
+			int childRow = baseRow;
+			for (int i = 0; i < numChildren; ++i) {
+				childRow += childAssignments[i]
+						* factor.strides[childColumns.get(i)];
+			}
+			for (int assignment = 0; assignment < numParentAssignments; ++assignment) {
+				final int row = childRow
+						+ assignment * factor.strides[parentColumn];
+				List<Partial> partials = Collections.singletonList(new Partial(
+						CompiledLoopyBP.get(factor.table, row)));
+				for (int i = 0; i < numChildren && !partials.isEmpty(); ++i) {
+					partials = product(partials,
+							childLists.get(i)[childAssignments[i]], k);
+				}
+				offer(queues[assignment], partials, k);
+			}
+
+			// Increment the child assignments.
+			int i = 0;
+			for (; i < numChildren; ++i) {
+				if (++childAssignments[i] < variables[factor.variables[childColumns
+						.get(i)]].numAssignments()) {
+					break;
+				}
+				childAssignments[i] = 0;
+			}
+			if (i == numChildren) {
+				break;
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		final List<Partial>[] lists = new List[numParentAssignments];
+		for (int i = 0; i < numParentAssignments; ++i) {
+			lists[i] = toList(queues[i]);
+		}
+		return lists;
+	}
+
+	/**
+	 * The k-best configurations of the graph given the assignments of the
+	 * cutset. The graph without the cutset variables must be a forest.
+	 */
+	private List<Partial> forest(int[] cutset, int[] cutsetAssignments) {
+		Arrays.fill(conditioned, -1);
+		Arrays.fill(visitedFactors, false);
+		Arrays.fill(visitedVariables, false);
+		Partial assignments = new Partial(0.0);
+		for (int i = 0; i < cutset.length; ++i) {
+			conditioned[cutset[i]] = cutsetAssignments[i];
+			visitedVariables[cutset[i]] = true;
+			assignments = new Partial(assignments,
+					new Partial(cutset[i], cutsetAssignments[i]));
+		}
+
+		// Factors connected only to conditioned variables have a constant
+		// score.
+		for (int i = 0; i < factors.length; ++i) {
+			final CompiledFactor factor = factors[i];
+			if (Arrays.stream(factor.variables)
+					.allMatch(variable -> conditioned[variable] >= 0)) {
+				visitedFactors[i] = true;
+				assignments = new Partial(assignments, new Partial(
+						CompiledLoopyBP.get(factor.table,
+								factor.row(conditioned))));
+			}
+		}
+
+		// Combine the k-best configurations of the trees.
+		List<Partial> partials = Collections.singletonList(assignments);
+		for (int i = 0; i < variables.length && !partials.isEmpty(); ++i) {
+			if (!visitedVariables[i]) {
+				final PriorityQueue<Partial> queue = new PriorityQueue<>(k,
+						(p1, p2) -> Double.compare(p1.score, p2.score));
+				for (final List<Partial> list : variableLists(i, -1)) {
+					offer(queue, list, k);
+				}
+				partials = product(partials, toList(queue), k);
+			}
+		}
+		return partials;
+	}
+
+	/**
+	 * For each assignment of the variable, the k-best configurations of the
+	 * sub-tree of the variable.
+	 *
+	 * @param parentFactor
+	 *            The factor connecting the variable to its parent, or -1 if
+	 *            the variable is a root.
+	 */
+	private List<Partial>[] variableLists(int variable, int parentFactor) {
+		if (visitedVariables[variable]) {
+			throw new IllegalStateException(
+					"Factor graph is not a forest: " + variables[variable]);
+		}
+		visitedVariables[variable] = true;
+
+		final int numAssignments = variables[variable].numAssignments();
+		@SuppressWarnings("unchecked")
+		final List<Partial>[] lists = new List[numAssignments];
+		for (int i = 0; i < numAssignments; ++i) {
+			lists[i] = Collections.singletonList(new Partial(variable, i));
+		}
+		for (final int factor : variableFactors[variable]) {
+			if (factor != parentFactor && !visitedFactors[factor]) {
+				final List<Partial>[] factorLists = factorLists(factor,
+						variable);
+				for (int i = 0; i < numAssignments; ++i) {
+					lists[i] = product(lists[i], factorLists[i], k);
+				}
+			}
+		}
+		return lists;
+	}
+
+	/**
+	 * Pre-computed indexing into a factor table: the index of the variable of
+	 * each column and the stride of the column.
+	 */
+	private static class CompiledFactor {
+		private final int[]			strides;
+		private final FactorTable	table;
+		private final int[]			variables;
+
+		public CompiledFactor(IFactor factor,
+				Map<INode, Integer> variableIndices) {
+			this.table = factor.getTable();
+			final int numColumns = table.numColumns();
+			this.variables = new int[numColumns];
+			this.strides = new int[numColumns];
+			for (int i = 0; i < numColumns; ++i) {
+				variables[i] = variableIndices
+						.get(table.getColumnHeader(i).getNode());
+				strides[i] = table.getColumnStride(i);
+			}
+		}
+
+		/**
+		 * The row index given the assignments of all variables.
+		 */
+		public int row(int[] assignments) {
+			int row = 0;
+			for (int i = 0; i < variables.length; ++i) {
+				row += assignments[variables[i]] * strides[i];
+			}
+			return row;
+		}
+	}
+
+	/**
+	 * A scored partial configuration. Stored as a tree of assignments, so
+	 * configurations share their common parts.
+	 */
+	private static class Partial {
+		private final int		assignment;
+		private final Partial	left;
+		private final Partial	right;
+		private final double	score;
+		private final int		variable;
+
+		/**
+		 * A variable assignment, with no score.
+		 */
+		public Partial(int variable, int assignment) {
+			this.variable = variable;
+			this.assignment = assignment;
+			this.score = 0.0;
+			this.left = null;
+			this.right = null;
+		}
+
+		/**
+		 * Score only.
+		 */
+		public Partial(double score) {
+			this.variable = -1;
+			this.assignment = -1;
+			this.score = score;
+			this.left = null;
+			this.right = null;
+		}
+
+		/**
+		 * The combination of two partial configurations.
+		 */
+		public Partial(Partial left, Partial right) {
+			this.variable = -1;
+			this.assignment = -1;
+			this.score = left.score + right.score;
+			this.left = left;
+			this.right = right;
+		}
+
+		public int[] getAssignments(int numVariables) {
+			final int[] assignments = new int[numVariables];
+			final Deque<Partial> stack = new ArrayDeque<>();
+			stack.push(this);
+			while (!stack.isEmpty()) {
+				final Partial partial = stack.pop();
+				if (partial.variable >= 0) {
+					assignments[partial.variable] = partial.assignment;
+				}
+				if (partial.left != null) {
+					stack.push(partial.left);
+					stack.push(partial.right);
+				}
+			}
+			return assignments;
+		}
+	}
+
+	/**
+	 * The k-best configurations of a graph.
+	 *
+	 * @author Yoav Artzi
+	 */
+	public static class Result {
+		/**
+		 * All the configurations of the graph are included in the results.
+		 */
+		private final boolean					complete;
+		private final List<EvaluationResult>	results;
+
+		/**
+		 * The results are the exact k-best configurations of the graph, even if
+		 * other configurations were pruned.
+		 */
+		private final boolean					topKExact;
+
+		private Result(List<EvaluationResult> results, boolean topKExact,
+				boolean complete) {
+			this.results = results;
+			this.topKExact = topKExact;
+			this.complete = complete;
+		}
+
+		/**
+		 * @return The k-best evaluation results, sorted by score.
+		 */
+		public List<EvaluationResult> getResults() {
+			return results;
+		}
+
+		/**
+		 * @return 'true' iff the results include all the configurations of the
+		 *         graph, so no configuration was pruned. This is the meaning
+		 *         {@link BeamSearch} gives its exactness flag.
+		 */
+		public boolean isComplete() {
+			return complete;
+		}
+
+		/**
+		 * @return 'true' iff the results are the exact k-best configurations.
+		 */
+		public boolean isTopKExact() {
+			return topKExact;
+		}
+	}
+
+}
@@ -1,11 +1,13 @@
 package edu.uw.cs.lil.amr.parser.factorgraph.inference;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.Spliterator;
 import java.util.Spliterators;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
@@ -24,13 +26,25 @@ import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetVariables;
 public class LoopyBP {
 	public static final ILogger	LOG	= LoggerFactory.create(LoopyBP.class);
 
-	public static void of(FactorGraph graph, double changeThreashold,
+	public static BPStatus of(FactorGraph graph, double changeThreashold,
 			int maxIterations) {
-		of(graph, changeThreashold, maxIterations, null);
+		return of(graph, changeThreashold, maxIterations, null);
 	}
 
-	public static void of(FactorGraph graph, double changeThreashold,
+	public static BPStatus of(FactorGraph graph, double changeThreashold,
 			int maxIterations, Long maxTime) {
+		return of(graph, changeThreashold, maxIterations, maxTime, true);
+	}
+
+	/**
+	 * @param parallel
+	 *            Distribute the computation of messages and beliefs using
+	 *            parallel streams. The streams use the fork-join pool of the
+	 *            calling thread, if it is running in one.
+	 * @return How message passing terminated.
+	 */
+	public static BPStatus of(FactorGraph graph, double changeThreashold,
+			int maxIterations, Long maxTime, boolean parallel) {
 		final long startTime = System.currentTimeMillis();
 
 		// Get all the edges in the graph into an array for fast access.
@@ -40,18 +54,19 @@ public class LoopyBP {
 		// Init all messages to 1.0.
 		StreamSupport.stream(
 				Spliterators.<Edge> spliterator(edges, Spliterator.IMMUTABLE),
-				true).forEach(edge -> {
+				parallel).forEach(edge -> {
 			edge.getToFactorMessage().setAll(1.0);
 			edge.getToVariableMessage().setAll(1.0);
 		});
 
 		boolean converged = false;
+		boolean timedOut = false;
 		int iteration = 0;
 		while (!converged) {
 			// Update all variable-to-factor messages.
 			Integer numChanged = StreamSupport
 					.stream(Spliterators.<Edge> spliterator(edges,
-							Spliterator.IMMUTABLE), true)
+							Spliterator.IMMUTABLE), parallel)
 					.map((Edge edge) -> {
 						final Table table = edge.getToFactorMessage()
 								.cloneEmpty();
@@ -108,7 +123,7 @@ public class LoopyBP {
 			// Update all factor-to-variables messages.
 			numChanged += StreamSupport
 					.stream(Spliterators.<Edge> spliterator(edges,
-							Spliterator.IMMUTABLE), true)
+							Spliterator.IMMUTABLE), parallel)
 					.map((Edge edge) -> {
 
 						final INode variable = edge.getVariable();
@@ -183,6 +198,7 @@ public class LoopyBP {
 					&& System.currentTimeMillis() - startTime > maxTime) {
 				LOG.info("LBP timed out after %d iterations (time: %d)",
 						iteration, System.currentTimeMillis() - startTime);
+				timedOut = true;
 				break;
 			} else if (++iteration > maxIterations) {
 				LOG.info(
@@ -194,9 +210,7 @@ public class LoopyBP {
 		}
 
 		// Set the belief of each variable node.
-		GetVariables
-				.of(graph)
-				.parallelStream()
+		stream(GetVariables.of(graph), parallel)
 				.forEach((INode variable) -> {
 					// The final belief is going to be a normalized
 					// distribution, so not
@@ -234,9 +248,7 @@ public class LoopyBP {
 					});
 
 		// Set the belief of each factor node.
-		GetFactors
-				.of(graph)
-				.parallelStream()
+		stream(GetFactors.of(graph), parallel)
 				.forEach(
 						(factor) -> {
 							final FactorTable factorBelief = factor.getTable()
@@ -273,6 +285,15 @@ public class LoopyBP {
 		LOG.info("LBP time: %fsec (iterations=%d, %sconverged)",
 				(System.currentTimeMillis() - startTime) / 1000.0, iteration,
 				converged ? "" : "not ");
+
+		if (converged) {
+			return BPStatus.CONVERGED;
+		}
+		return timedOut ? BPStatus.TIMEOUT : BPStatus.MAX_ITERATIONS;
+	}
+
+	static <T> Stream<T> stream(Collection<T> collection, boolean parallel) {
+		return parallel ? collection.parallelStream() : collection.stream();
 	}
 
 }
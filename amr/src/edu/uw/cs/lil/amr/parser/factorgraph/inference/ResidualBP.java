@@ -0,0 +1,173 @@
+package edu.uw.cs.lil.amr.parser.factorgraph.inference;
+
+import java.util.PriorityQueue;
+
+import edu.cornell.cs.nlp.utils.log.ILogger;
+import edu.cornell.cs.nlp.utils.log.LoggerFactory;
+import edu.uw.cs.lil.amr.parser.factorgraph.FactorGraph;
+import edu.uw.cs.lil.amr.parser.factorgraph.inference.CompiledLoopyBP.EdgePlan;
+
+/**
+ * Residual belief propagation (Elidan et al. 2006). Instead of flooding
+ * updates, factor-to-variable messages are committed one at a time, in the
+ * order of their residual (the maximum change they will introduce). Committing
+ * a message only triggers re-computation of the messages downstream of it, so
+ * edges that already converged are not re-computed. Inference stops when the
+ * largest residual is not above the convergence threshold. Uses the compiled
+ * edge plans of {@link CompiledLoopyBP}.
+ * <p>
+ * For the iteration limit, an iteration is equivalent to committing as many
+ * messages as there are edges in the graph (the number of factor-to-variable
+ * messages committed in a single {@link LoopyBP} iteration). The time limit
+ * is checked every {@link #TIME_CHECK_INTERVAL} commits, independently of the
+ * size of the graph.
+ *
+ * @author Yoav Artzi
+ */
+public class ResidualBP {
+	public static final ILogger	LOG					= LoggerFactory
+			.create(ResidualBP.class);
+
+	/**
+	 * Number of committed messages between checks of the time limit.
+	 */
+	public static final int		TIME_CHECK_INTERVAL	= 64;
+
+	private ResidualBP() {
+		// Use static access method.
+	}
+
+	public static BPStatus of(FactorGraph graph, double changeThreashold,
+			int maxIterations) {
+		return of(graph, changeThreashold, maxIterations, null);
+	}
+
+	public static BPStatus of(FactorGraph graph, double changeThreashold,
+			int maxIterations, Long maxTime) {
+		return of(graph, changeThreashold, maxIterations, maxTime, true);
+	}
+
+	/**
+	 * @param parallel
+	 *            Compute the final beliefs using parallel streams. Message
+	 *            updates are always sequential.
+	 * @return How message passing terminated.
+	 */
+	public static BPStatus of(FactorGraph graph, double changeThreashold,
+			int maxIterations, Long maxTime, boolean parallel) {
+		final long startTime = System.currentTimeMillis();
+
+		final EdgePlan[] plans = CompiledLoopyBP.compile(graph);
+		final int numEdges = plans.length;
+
+		// Init all messages to 1.0, similar to LoopyBP.
+		for (final EdgePlan plan : plans) {
+			plan.edge.getToFactorMessage().setAll(1.0);
+			plan.edge.getToVariableMessage().setAll(1.0);
+			plan.cacheToFactor();
+		}
+
+		// Compute the initial variable-to-factor messages.
+		for (final EdgePlan plan : plans) {
+			plan.computeToFactor(plans);
+		}
+		for (final EdgePlan plan : plans) {
+			plan.commitToFactor();
+		}
+
+		// Compute all factor-to-variable messages and queue them according to
+		// their residual. The queue is updated lazily: each edge has a version
+		// counter, and stale entries are skipped when polled.
+		final int[] versions = new int[numEdges];
+		final PriorityQueue<QueueEntry> queue = new PriorityQueue<>(numEdges,
+				(e1, e2) -> Double.compare(e2.residual, e1.residual));
+		for (int i = 0; i < numEdges; ++i) {
+			plans[i].computeToVariable(plans);
+			queue.add(new QueueEntry(i, plans[i].residualToVariable(), 0));
+		}
+
+		boolean converged = false;
+		boolean timedOut = false;
+		int iteration = 0;
+		long numUpdates = 0;
+		long numComputed = numEdges;
+		while (true) {
+			final QueueEntry entry = queue.poll();
+			if (entry == null || entry.residual <= changeThreashold) {
+				converged = true;
+				LOG.info("Residual BP converged after %d iterations",
+						iteration);
+				break;
+			}
+			if (entry.version != versions[entry.edge]) {
+				// Stale entry.
+				continue;
+			}
+
+			// Commit the message with the largest residual.
+			final EdgePlan plan = plans[entry.edge];
+			plan.commitToVariable();
+			++versions[entry.edge];
+			++numUpdates;
+
+			// Update the variable-to-factor messages from the variable of the
+			// committed message to all its other factors, and re-compute the
+			// factor-to-variable messages that depend on them.
+			for (final int toFactorIndex : plan.variableIncoming) {
+				final EdgePlan toFactorPlan = plans[toFactorIndex];
+				toFactorPlan.computeToFactor(plans);
+				toFactorPlan.commitToFactor();
+				for (final int toVariableIndex : toFactorPlan.factorIncoming) {
+					final EdgePlan toVariablePlan = plans[toVariableIndex];
+					toVariablePlan.computeToVariable(plans);
+					++numComputed;
+					queue.add(new QueueEntry(toVariableIndex,
+							toVariablePlan.residualToVariable(),
+							++versions[toVariableIndex]));
+				}
+			}
+
+			if (maxTime != null && numUpdates % TIME_CHECK_INTERVAL == 0
+					&& System.currentTimeMillis() - startTime > maxTime) {
+				LOG.info("Residual BP timed out after %d iterations (time: %d)",
+						iteration, System.currentTimeMillis() - startTime);
+				timedOut = true;
+				break;
+			}
+
+			if (numUpdates % numEdges == 0 && ++iteration > maxIterations) {
+				LOG.info(
+						"Residual BP reached maximum number of iterations (%d) without convergence",
+						maxIterations);
+				break;
+			}
+		}
+
+		// The variable-to-factor messages are kept up to date with every
+		// commit, so the beliefs can be computed directly.
+		CompiledLoopyBP.setBeliefs(graph, plans, parallel);
+
+		LOG.info(
+				"Residual BP time: %fsec (iterations=%d, updates=%d, computed=%d, edges=%d, %sconverged)",
+				(System.currentTimeMillis() - startTime) / 1000.0, iteration,
+				numUpdates, numComputed, numEdges, converged ? "" : "not ");
+
+		if (converged) {
+			return BPStatus.CONVERGED;
+		}
+		return timedOut ? BPStatus.TIMEOUT : BPStatus.MAX_ITERATIONS;
+	}
+
+	private static class QueueEntry {
+		private final int		edge;
+		private final double	residual;
+		private final int		version;
+
+		public QueueEntry(int edge, double residual, int version) {
+			this.edge = edge;
+			this.residual = residual;
+			this.version = version;
+		}
+	}
+
+}
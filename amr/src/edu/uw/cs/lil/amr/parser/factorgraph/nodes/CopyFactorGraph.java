@@ -0,0 +1,167 @@
+package edu.uw.cs.lil.amr.parser.factorgraph.nodes;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
+import edu.uw.cs.lil.amr.parser.factorgraph.FactorGraph;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.ColumnHeader;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.FeatureWeights;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table.FactorTable;
+import edu.uw.cs.lil.amr.parser.factorgraph.table.Table.LazyFactorTable;
+import edu.uw.cs.lil.amr.parser.factorgraph.visitor.GetFactors;
+import edu.uw.cs.lil.amr.parser.factorgraph.visitor.IFactorGraphVisitor;
+
+/**
+ * Copy a {@link FactorGraph}, including all its factors and their feature
+ * vectors. Messages and beliefs are not copied. Logical expressions and
+ * feature vectors are shared between the original graph and the copy. Lazy
+ * factor tables (see {@link LazyFactorTable}) are copied lazily, so rows that
+ * were not computed in the original graph are not computed by the copy.
+ * Optionally, the factor tables are re-scored with new weights. Re-scored
+ * tables are lazy, so each row is scored only when it's accessed.
+ *
+ * @author Yoav Artzi
+ */
+public class CopyFactorGraph implements IFactorGraphVisitor {
+
+	private AbstractDummyNode										currentRoot	= null;
+
+	/**
+	 * Mapping of variable nodes in the original graph to their copies.
+	 */
+	private final Map<AbstractVariableNode, AbstractVariableNode>	variables	= new IdentityHashMap<>();
+
+	private CopyFactorGraph() {
+		// Use static access method.
+	}
+
+	/**
+	 * Copy the graph, including the values of the factor tables.
+	 */
+	public static FactorGraph of(FactorGraph graph) {
+		return of(graph, null);
+	}
+
+	/**
+	 * Copy the graph and score the rows of the factor tables using the given
+	 * weights when they are accessed.
+	 *
+	 * @param weights
+	 *            Weights to score the features of factor table rows. If null,
+	 *            the values of the original tables are copied.
+	 */
+	public static FactorGraph of(FactorGraph graph, FeatureWeights weights) {
+		final CopyFactorGraph visitor = new CopyFactorGraph();
+		visitor.visit(graph.getRoot());
+
+		// Copy the factors and their edges. Edges are added to each factor in
+		// the order of the original factor.
+		final Map<Edge, Edge> edges = new IdentityHashMap<>();
+		for (final IFactor factor : GetFactors.of(graph)) {
+			final FactorTable table = factor.getTable();
+			final int numColumns = table.numColumns();
+			final ColumnHeader[] headers = new ColumnHeader[numColumns];
+			for (int i = 0; i < numColumns; ++i) {
+				headers[i] = visitor.variables
+						.get(table.getColumnHeader(i).getNode())
+						.getColumnHeader();
+			}
+			final FactorTable tableCopy;
+			if (weights != null) {
+				tableCopy = LazyFactorTable.copyOf(table, weights, headers);
+			} else if (table instanceof LazyFactorTable) {
+				tableCopy = ((LazyFactorTable) table).copy(headers);
+			} else {
+				tableCopy = new FactorTable(table.isLogSpace(), headers);
+				final int numRows = table.size();
+				for (int row = 0; row < numRows; ++row) {
+					tableCopy.set(row, table.get(row),
+							table.getCompactFeatures(row));
+				}
+			}
+
+			final Factor factorCopy = new Factor(tableCopy, factor.getId());
+			final int numEdges = factor.numEdges();
+			for (int i = 0; i < numEdges; ++i) {
+				final Edge edge = factor.getEdge(i);
+				final Edge edgeCopy = new Edge(
+						visitor.variables.get(edge.getVariable()), factorCopy,
+						edge.getToVariableMessage().isLogSpace());
+				factorCopy.addEdge(edgeCopy);
+				edges.put(edge, edgeCopy);
+			}
+		}
+
+		// Connect the edges to the variables, keeping the order of the
+		// original variables.
+		for (final Entry<AbstractVariableNode, AbstractVariableNode> entry : visitor.variables
+				.entrySet()) {
+			final AbstractVariableNode variable = entry.getKey();
+			final int numEdges = variable.numEdges();
+			for (int i = 0; i < numEdges; ++i) {
+				entry.getValue().addEdge(edges.get(variable.getEdge(i)));
+			}
+		}
+
+		return new FactorGraph(visitor.currentRoot, graph.isClosure());
+	}
+
+	private static LogicalExpression[] getAssignments(INode node) {
+		final int numAssignments = node.numAssignments();
+		final LogicalExpression[] assignments = new LogicalExpression[numAssignments];
+		for (int i = 0; i < numAssignments; ++i) {
+			assignments[i] = node.getAssignment(i);
+		}
+		return assignments;
+	}
+
+	@Override
+	public void visit(LambdaNode node) {
+		node.getArgument().accept(this);
+		final AbstractDummyNode argumentNode = currentRoot;
+		node.getBody().accept(this);
+		final AbstractDummyNode bodyNode = currentRoot;
+		currentRoot = new LambdaNode(node.getLambda(), argumentNode, bodyNode,
+				node.getId());
+	}
+
+	@Override
+	public void visit(LiteralNode node) {
+		node.getPredicate().accept(this);
+		final AbstractDummyNode predicateNode = currentRoot;
+		final List<IBaseNode> args = node.getArgs();
+		final List<AbstractDummyNode> argNodes = new ArrayList<>(args.size());
+		for (final IBaseNode arg : args) {
+			arg.accept(this);
+			argNodes.add(currentRoot);
+		}
+		currentRoot = new LiteralNode(node.getLiteral(), predicateNode,
+				argNodes, node.getId());
+	}
+
+	@Override
+	public void visit(LogicalConstantNode node) {
+		final LogicalConstantNode copy = new LogicalConstantNode(
+				node.getConstant(), getAssignments(node), node.getId());
+		variables.put(node, copy);
+		currentRoot = copy;
+	}
+
+	@Override
+	public void visit(SkolemIdNode node) {
+		final SkolemIdNode copy = new SkolemIdNode(node.getSkolemId(),
+				node.getId(), getAssignments(node));
+		variables.put(node, copy);
+		currentRoot = copy;
+	}
+
+	@Override
+	public void visit(VariableNode node) {
+		currentRoot = new VariableNode(node.getVariable(), node.getId());
+	}
+
+}
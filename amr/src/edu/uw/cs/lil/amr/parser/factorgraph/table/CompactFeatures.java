@@ -0,0 +1,154 @@
+package edu.uw.cs.lil.amr.parser.factorgraph.table;
+
+import java.util.Arrays;
+
+import edu.cornell.cs.nlp.spf.base.hashvector.HashVectorFactory;
+import edu.cornell.cs.nlp.spf.base.hashvector.IHashVector;
+import edu.cornell.cs.nlp.spf.base.hashvector.IHashVectorImmutable;
+import edu.cornell.cs.nlp.spf.base.hashvector.KeyArgs;
+import edu.cornell.cs.nlp.utils.composites.Pair;
+
+/**
+ * Immutable sparse feature vector with integer feature IDs (see
+ * {@link FeatureDictionary}) and double values. Used to store the features of
+ * factor table rows compactly and to score them without hashing the feature
+ * keys. Only features of the model parameters have IDs. Other features (i.e.,
+ * features with zero weight when the vector is created) are kept with their
+ * keys, and are scored by looking them up, since the parameters may include
+ * them later. String-keyed vectors are only re-created when required for
+ * logging or to update the model parameters. Scoring with the weights of a
+ * different model (e.g., a cached factor graph after the model was replaced)
+ * maps the IDs through the feature keys.
+ *
+ * @author Yoav Artzi
+ */
+public class CompactFeatures {
+
+	public static final CompactFeatures	EMPTY	= new CompactFeatures(null,
+			new int[0], new double[0], new KeyArgs[0], new double[0]);
+
+	/**
+	 * The dictionary of the feature IDs.
+	 */
+	private final FeatureDictionary		dictionary;
+
+	/**
+	 * Sorted feature IDs.
+	 */
+	private final int[]					ids;
+
+	/**
+	 * Keys of features without IDs.
+	 */
+	private final KeyArgs[]				otherKeys;
+
+	private final double[]				otherValues;
+
+	private final double[]				values;
+
+	private CompactFeatures(FeatureDictionary dictionary, int[] ids,
+			double[] values, KeyArgs[] otherKeys, double[] otherValues) {
+		this.dictionary = dictionary;
+		this.ids = ids;
+		this.values = values;
+		this.otherKeys = otherKeys;
+		this.otherValues = otherValues;
+	}
+
+	public static CompactFeatures of(IHashVectorImmutable features,
+			FeatureWeights weights) {
+		final int size = features.size();
+		if (size == 0) {
+			return EMPTY;
+		}
+
+		// Get the IDs and sort them together with the values. Collect the
+		// features without IDs separately.
+		final long[] entries = new long[size];
+		final double[] unsortedValues = new double[size];
+		final KeyArgs[] otherKeys = new KeyArgs[size];
+		final double[] otherValues = new double[size];
+		int i = 0;
+		int numOther = 0;
+		for (final Pair<KeyArgs, Double> keyValue : features) {
+			final int id = weights.getId(keyValue.first());
+			if (id < 0) {
+				otherKeys[numOther] = keyValue.first();
+				otherValues[numOther++] = keyValue.second();
+			} else {
+				entries[i] = (long) id << 32 | i;
+				unsortedValues[i] = keyValue.second();
+				++i;
+			}
+		}
+		Arrays.sort(entries, 0, i);
+
+		final int[] ids = new int[i];
+		final double[] values = new double[i];
+		for (int j = 0; j < i; ++j) {
+			ids[j] = (int) (entries[j] >>> 32);
+			values[j] = unsortedValues[(int) entries[j]];
+		}
+		return new CompactFeatures(weights.getDictionary(), ids, values,
+				Arrays.copyOf(otherKeys, numOther),
+				Arrays.copyOf(otherValues, numOther));
+	}
+
+	/**
+	 * Add this vector times the given scalar into the given vector.
+	 */
+	public void addTimesInto(double times, IHashVector vector) {
+		for (int i = 0; i < ids.length; ++i) {
+			final KeyArgs key = dictionary.getKey(ids[i]);
+			vector.set(key, vector.get(key) + times * values[i]);
+		}
+		for (int i = 0; i < otherKeys.length; ++i) {
+			vector.set(otherKeys[i],
+					vector.get(otherKeys[i]) + times * otherValues[i]);
+		}
+	}
+
+	/**
+	 * Dot product with the given weights.
+	 */
+	public double score(FeatureWeights weights) {
+		double score = 0.0;
+		if (weights.getDictionary() == dictionary) {
+			for (int i = 0; i < ids.length; ++i) {
+				score += weights.get(ids[i]) * values[i];
+			}
+		} else {
+			for (int i = 0; i < ids.length; ++i) {
+				score += weights.get(dictionary.getKey(ids[i])) * values[i];
+			}
+		}
+		for (int i = 0; i < otherKeys.length; ++i) {
+			score += weights.get(otherKeys[i]) * otherValues[i];
+		}
+		return score;
+	}
+
+	public int size() {
+		return ids.length + otherKeys.length;
+	}
+
+	/**
+	 * Create a string-keyed vector with the same features.
+	 */
+	public IHashVector toHashVector() {
+		final IHashVector vector = HashVectorFactory.create();
+		for (int i = 0; i < ids.length; ++i) {
+			vector.set(dictionary.getKey(ids[i]), values[i]);
+		}
+		for (int i = 0; i < otherKeys.length; ++i) {
+			vector.set(otherKeys[i], otherValues[i]);
+		}
+		return vector;
+	}
+
+	@Override
+	public String toString() {
+		return toHashVector().toString();
+	}
+
+}
@@ -0,0 +1,124 @@
+package edu.uw.cs.lil.amr.parser.factorgraph.table;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.CacheBuilder;
+
+import edu.cornell.cs.nlp.spf.base.hashvector.IHashVectorImmutable;
+import edu.cornell.cs.nlp.spf.base.hashvector.KeyArgs;
+
+/**
+ * Concurrent dictionary that maps feature keys to dense integer IDs. IDs are
+ * assigned when added and never change, so they can be used to index
+ * primitive arrays (see {@link FeatureWeights}). Each model has its own
+ * dictionary (see {@link #of(IHashVectorImmutable)}), which is released
+ * together with the model parameters and the features that use it. Only
+ * features of the model parameters are added, so the dictionary doesn't
+ * grow beyond the keys the parameters ever included.
+ * <p>
+ * The dictionary also tracks the version of the model parameters, so views of
+ * the weights can detect updates (see {@link #invalidate()}).
+ *
+ * @author Yoav Artzi
+ */
+public class FeatureDictionary {
+
+	/**
+	 * Dictionaries of model parameter vectors. Vectors are compared by
+	 * identity and weakly referenced.
+	 */
+	private static final ConcurrentMap<IHashVectorImmutable, FeatureDictionary>	DICTIONARIES	= CacheBuilder
+			.newBuilder().weakKeys()
+			.<IHashVectorImmutable, FeatureDictionary> build().asMap();
+
+	private final ConcurrentHashMap<KeyArgs, Integer>							ids				= new ConcurrentHashMap<>();
+
+	/**
+	 * Reverse mapping, from IDs to keys. Grows as needed. Only modified when
+	 * holding the lock on {@link #ids}.
+	 */
+	private volatile KeyArgs[]													keys			= new KeyArgs[1024];
+
+	private int																	size			= 0;
+
+	/**
+	 * Incremented when the model parameters are updated.
+	 */
+	private final AtomicLong													version			= new AtomicLong();
+
+	FeatureDictionary() {
+		// Use the static access method, unless testing.
+	}
+
+	/**
+	 * The dictionary of the model with the given parameters.
+	 */
+	public static FeatureDictionary of(IHashVectorImmutable theta) {
+		return DICTIONARIES.computeIfAbsent(theta,
+				key -> new FeatureDictionary());
+	}
+
+	/**
+	 * Add the given key, if it's not in the dictionary.
+	 *
+	 * @return The ID of the key.
+	 */
+	public int add(KeyArgs key) {
+		final Integer id = ids.get(key);
+		if (id != null) {
+			return id;
+		}
+		return ids.computeIfAbsent(key, this::assignId);
+	}
+
+	/**
+	 * The ID of the given key, or -1 if the key is not in the dictionary.
+	 */
+	public int getId(KeyArgs key) {
+		final Integer id = ids.get(key);
+		return id == null ? -1 : id;
+	}
+
+	public KeyArgs getKey(int id) {
+		return keys[id];
+	}
+
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * Mark the model parameters as updated. Views of the weights re-read them
+	 * on next access (see {@link FeatureWeights}).
+	 */
+	public void invalidate() {
+		version.incrementAndGet();
+	}
+
+	/**
+	 * The number of assigned IDs. All IDs are smaller than this number.
+	 */
+	public int size() {
+		synchronized (ids) {
+			return size;
+		}
+	}
+
+	private Integer assignId(KeyArgs key) {
+		synchronized (ids) {
+			KeyArgs[] current = keys;
+			if (size == current.length) {
+				current = Arrays.copyOf(current, current.length * 2);
+			}
+			// Set the key before publishing the array reference and the ID,
+			// so readers never see a missing key.
+			current[size] = key;
+			keys = current;
+			return size++;
+		}
+	}
+
+}
@@ -0,0 +1,158 @@
+package edu.uw.cs.lil.amr.parser.factorgraph.table;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import edu.cornell.cs.nlp.spf.base.hashvector.IHashVectorImmutable;
+import edu.cornell.cs.nlp.spf.base.hashvector.KeyArgs;
+
+/**
+ * Dense view of the model parameters, indexed by the IDs of the model's
+ * {@link FeatureDictionary}. Weights are copied from the parameters vector the
+ * first time they are accessed, so scoring a feature that was already seen is
+ * a primitive array lookup. The array is allocated in pages as features are
+ * accessed, so creating a view is cheap. Features of the parameters get IDs
+ * when first looked up through the view. Thread safe.
+ * <p>
+ * Code that updates the parameters must call
+ * {@link #invalidate(IHashVectorImmutable)} after the update. Views check the
+ * version of the parameters on every access, and drop the copied weights when
+ * it changes, so views may be used while the parameters are updated (e.g., by
+ * asynchronous learning).
+ * <p>
+ * The weights also indicate if the factor tables they score are computed on
+ * demand (see {@link Table.LazyFactorTable}), in which case the view is used
+ * until inference over the graph is completed.
+ *
+ * @author Yoav Artzi
+ */
+public class FeatureWeights {
+
+	/**
+	 * Weights are stored XORed with this mask, so the zero initial value marks
+	 * a weight that was not copied yet. The mask is a NaN with a payload that
+	 * is never produced by arithmetic operations.
+	 */
+	private static final long			MASK		= 0x7ff0dead0000beefL;
+
+	private static final int			PAGE_BITS	= 12;
+
+	private static final int			PAGE_SIZE	= 1 << PAGE_BITS;
+
+	private final FeatureDictionary		dictionary;
+
+	private final boolean				lazyTables;
+
+	/**
+	 * The weights copied since the last update of the parameters.
+	 */
+	private volatile Pages				pages;
+
+	private final IHashVectorImmutable	theta;
+
+	public FeatureWeights(IHashVectorImmutable theta) {
+		this(theta, false);
+	}
+
+	public FeatureWeights(IHashVectorImmutable theta, boolean lazyTables) {
+		this.theta = theta;
+		this.lazyTables = lazyTables;
+		this.dictionary = FeatureDictionary.of(theta);
+		this.pages = new Pages(dictionary.getVersion(), dictionary.size());
+	}
+
+	/**
+	 * Mark the given parameters as updated, so all views of their weights
+	 * re-read them.
+	 */
+	public static void invalidate(IHashVectorImmutable theta) {
+		FeatureDictionary.of(theta).invalidate();
+	}
+
+	public double get(int id) {
+		final Pages current = getPages();
+		if (id >= current.size) {
+			return theta.get(dictionary.getKey(id));
+		}
+
+		final int pageIndex = id >>> PAGE_BITS;
+		AtomicLongArray page = current.pages.get(pageIndex);
+		if (page == null) {
+			current.pages.compareAndSet(pageIndex, null,
+					new AtomicLongArray(PAGE_SIZE));
+			page = current.pages.get(pageIndex);
+		}
+
+		final int offset = id & PAGE_SIZE - 1;
+		final long bits = page.get(offset);
+		if (bits == 0) {
+			final double weight = theta.get(dictionary.getKey(id));
+			page.set(offset, Double.doubleToRawLongBits(weight) ^ MASK);
+			return weight;
+		}
+		return Double.longBitsToDouble(bits ^ MASK);
+	}
+
+	/**
+	 * The weight of a feature given by its key.
+	 */
+	public double get(KeyArgs key) {
+		final int id = getId(key);
+		return id < 0 ? 0.0 : get(id);
+	}
+
+	public FeatureDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * The ID of the given feature, or -1 if it's not in the model parameters.
+	 * Adds the feature to the dictionary, if required.
+	 */
+	public int getId(KeyArgs key) {
+		final int id = dictionary.getId(key);
+		if (id >= 0 || !theta.contains(key)) {
+			return id;
+		}
+		return dictionary.add(key);
+	}
+
+	public boolean isLazyTables() {
+		return lazyTables;
+	}
+
+	/**
+	 * The pages of the current version of the parameters.
+	 */
+	private Pages getPages() {
+		final Pages current = pages;
+		final long version = dictionary.getVersion();
+		if (current.version == version) {
+			return current;
+		}
+		// Concurrent readers may replace the pages concurrently, each with
+		// new pages of the same version. Either is correct.
+		final Pages updated = new Pages(version, dictionary.size());
+		pages = updated;
+		return updated;
+	}
+
+	/**
+	 * Pages of raw weight bits (XORed with {@link #MASK}) of all IDs that
+	 * existed when the pages were created. Weights of later IDs are not
+	 * cached.
+	 */
+	private static class Pages {
+		private final AtomicReferenceArray<AtomicLongArray>	pages;
+		private final int									size;
+		private final long									version;
+
+		public Pages(long version, int size) {
+			this.version = version;
+			this.size = size;
+			this.pages = new AtomicReferenceArray<>(
+					(size + PAGE_SIZE - 1) >>> PAGE_BITS);
+		}
+	}
+
+}
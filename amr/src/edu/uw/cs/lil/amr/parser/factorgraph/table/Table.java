@@ -5,10 +5,13 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 
-import edu.cornell.cs.nlp.spf.base.hashvector.IHashVector;
 import edu.cornell.cs.nlp.spf.base.hashvector.IHashVectorImmutable;
 import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
 import edu.cornell.cs.nlp.utils.collections.CollectionUtils;
@@ -92,6 +95,15 @@ public class Table implements ITableImmutable, Cloneable {
 		return mapping;
 	}
 
+	/**
+	 * Index-based addition to a single row value.
+	 *
+	 * @see #get(int)
+	 */
+	public void add(int index, double value) {
+		values[index] += value;
+	}
+
 	/**
 	 * @see #add(Map, double)
 	 */
@@ -131,8 +143,7 @@ public class Table implements ITableImmutable, Cloneable {
 
 	public Table cloneEmpty() {
 		final Table table = new Table(this);
-		// Init the array.
-		Arrays.setAll(table.values, (i) -> table.logSpace ? 0.0 : 1.0);
+		table.reset();
 		return table;
 	}
 
@@ -161,6 +172,14 @@ public class Table implements ITableImmutable, Cloneable {
 		return true;
 	}
 
+	/**
+	 * Index-based access to a single row value (no marginalization). Row
+	 * indices are computed using {@link #getColumnStride(int)}.
+	 */
+	public double get(int index) {
+		return values[index];
+	}
+
 	/**
 	 * Gets the requested value from the table, marginalizes (sums) over all
 	 * un-specified keys.
@@ -192,6 +211,43 @@ public class Table implements ITableImmutable, Cloneable {
 		return get(pairsToMap(mappingPairs));
 	}
 
+	/**
+	 * The index of the column of the given node, or -1 if the node has no
+	 * column in this table.
+	 */
+	public int getColumn(INode node) {
+		for (int i = 0; i < numKeys; ++i) {
+			if (headers[i].getNode() == node) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public ColumnHeader getColumnHeader(int column) {
+		return headers[column];
+	}
+
+	/**
+	 * The number of values in the given column.
+	 */
+	public int getColumnSize(int column) {
+		return headers[column].numValues();
+	}
+
+	/**
+	 * The offset between two consecutive values of the given column in the
+	 * row index. The row index of a fully specified key is the sum of the
+	 * value indices times their column strides.
+	 */
+	public int getColumnStride(int column) {
+		return indexMultiplier[column];
+	}
+
+	public boolean isLogSpace() {
+		return logSpace;
+	}
+
 	public boolean isMappingComplete(Map<INode, LogicalExpression> mapping) {
 		for (final ColumnHeader header : headers) {
 			if (!mapping.containsKey(header.getNode())) {
@@ -201,6 +257,30 @@ public class Table implements ITableImmutable, Cloneable {
 		return true;
 	}
 
+	/**
+	 * The maximum difference between two corresponding values in the tables.
+	 * Similar to {@link #equals(Table, double)}, the difference is computed
+	 * between the exponentiated values for log-space tables.
+	 */
+	public double maxDifference(Table other) {
+		if (!headers.equals(other.headers)) {
+			throw new IllegalArgumentException(
+					"Tables have different headers");
+		}
+
+		double max = 0.0;
+		final int length = values.length;
+		for (int i = 0; i < length; ++i) {
+			final double difference = logSpace
+					? Math.abs(Math.exp(values[i]) - Math.exp(other.values[i]))
+					: Math.abs(values[i] - other.values[i]);
+			if (difference > max) {
+				max = difference;
+			}
+		}
+		return max;
+	}
+
 	/**
 	 * @see #multiply(Map, double)
 	 */
@@ -237,6 +317,18 @@ public class Table implements ITableImmutable, Cloneable {
 		}
 	}
 
+	public int numColumns() {
+		return numKeys;
+	}
+
+	/**
+	 * Reset all values to the identity value (0.0 in log-space, 1.0
+	 * otherwise).
+	 */
+	public void reset() {
+		setAll(logSpace ? 0.0 : 1.0);
+	}
+
 	/**
 	 * @see #set(Map, double)
 	 */
@@ -251,6 +343,15 @@ public class Table implements ITableImmutable, Cloneable {
 		apply(computeIndexedKey(valueMapping), (double d) -> value);
 	}
 
+	/**
+	 * Index-based update of a single row value.
+	 *
+	 * @see #get(int)
+	 */
+	public void set(int index, double value) {
+		values[index] = value;
+	}
+
 	/**
 	 * Set all values in the table to a value.
 	 */
@@ -371,7 +472,7 @@ public class Table implements ITableImmutable, Cloneable {
 		return index;
 	}
 
-	private int computeIndex(Map<INode, LogicalExpression> valueMapping) {
+	protected int computeIndex(Map<INode, LogicalExpression> valueMapping) {
 		return computeIndex(computeIndexedKey(valueMapping));
 	}
 
@@ -389,24 +490,28 @@ public class Table implements ITableImmutable, Cloneable {
 		return indexedKey;
 	}
 
+	/**
+	 * Table of factor values. Each row also stores its features, in a compact
+	 * form (see {@link CompactFeatures}).
+	 */
 	public static class FactorTable extends Table
 			implements Iterable<Pair<Double, IHashVectorImmutable>> {
 
-		private final IHashVectorImmutable[] featureVectors;
+		private final CompactFeatures[] featureVectors;
 
 		public FactorTable(boolean logSpace, ColumnHeader... headers) {
 			super(logSpace, headers);
-			this.featureVectors = new IHashVector[super.values.length];
+			this.featureVectors = new CompactFeatures[super.values.length];
 		}
 
 		public FactorTable(FactorTable other) {
 			super(other);
-			this.featureVectors = new IHashVectorImmutable[super.values.length];
+			this.featureVectors = new CompactFeatures[super.values.length];
 		}
 
 		public FactorTable(FactorTable other, boolean logSpace) {
 			super(other, logSpace);
-			this.featureVectors = new IHashVectorImmutable[super.values.length];
+			this.featureVectors = new CompactFeatures[super.values.length];
 			System.arraycopy(other.featureVectors, 0, featureVectors, 0,
 					featureVectors.length);
 		}
@@ -424,16 +529,45 @@ public class Table implements ITableImmutable, Cloneable {
 		@Override
 		public FactorTable cloneEmpty() {
 			final FactorTable table = new FactorTable(this);
-			// Init the array.
-			Arrays.setAll(table.values, (i) -> table.logSpace ? 0.0 : 1.0);
+			table.reset();
 			return table;
 		}
 
-		public IHashVectorImmutable getFeatures(
+		/**
+		 * Index-based access to the features of a single row.
+		 *
+		 * @see Table#get(int)
+		 */
+		public CompactFeatures getCompactFeatures(int index) {
+			return featureVectors[index];
+		}
+
+		public CompactFeatures getCompactFeatures(
 				Map<INode, LogicalExpression> valueMapping) {
 			return featureVectors[super.computeIndex(valueMapping)];
 		}
 
+		/**
+		 * Index-based access to the features of a single row. Creates a new
+		 * string-keyed vector, use {@link #getCompactFeatures(int)} when
+		 * possible.
+		 *
+		 * @see Table#get(int)
+		 */
+		public IHashVectorImmutable getFeatures(int index) {
+			return featureVectors[index] == null ? null
+					: featureVectors[index].toHashVector();
+		}
+
+		/**
+		 * Creates a new string-keyed vector, use
+		 * {@link #getCompactFeatures(Map)} when possible.
+		 */
+		public IHashVectorImmutable getFeatures(
+				Map<INode, LogicalExpression> valueMapping) {
+			return getFeatures(super.computeIndex(valueMapping));
+		}
+
 		@Override
 		public Iterator<Pair<Double, IHashVectorImmutable>> iterator() {
 			return new Iterator<Pair<Double, IHashVectorImmutable>>() {
@@ -448,13 +582,23 @@ public class Table implements ITableImmutable, Cloneable {
 				@Override
 				public Pair<Double, IHashVectorImmutable> next() {
 					final Pair<Double, IHashVectorImmutable> next = Pair
-							.of(values[i], featureVectors[i]);
+							.of(values[i], getFeatures(i));
 					++i;
 					return next;
 				}
 			};
 		}
 
+		/**
+		 * Index-based setting of a single row value and its features.
+		 *
+		 * @see Table#get(int)
+		 */
+		public void set(int index, double value, CompactFeatures features) {
+			super.set(index, value);
+			featureVectors[index] = features;
+		}
+
 		@Override
 		public void set(Map<INode, LogicalExpression> valueMapping,
 				double value) {
@@ -462,7 +606,7 @@ public class Table implements ITableImmutable, Cloneable {
 		}
 
 		public void set(Map<INode, LogicalExpression> valueMapping,
-				double value, IHashVectorImmutable features) {
+				double value, CompactFeatures features) {
 			super.set(valueMapping, value);
 			featureVectors[super.computeIndex(valueMapping)] = features;
 		}
@@ -508,6 +652,333 @@ public class Table implements ITableImmutable, Cloneable {
 
 	}
 
+	/**
+	 * Factor table that computes the features and value of each row only when
+	 * the row is first accessed with a complete mapping (or by index). Each
+	 * row is computed at most once, and concurrent reads are safe. Access that
+	 * requires all rows, such as marginalizing over a partial mapping,
+	 * iterating or cloning, materializes the complete table. Clones are
+	 * regular {@link FactorTable}s. The table can't be modified.
+	 * <p>
+	 * Copies created with {@link #copyOf(FactorTable, FeatureWeights, ColumnHeader...)}
+	 * share the row features with their source table, so the features of each
+	 * row are computed at most once for the table and all its copies, while
+	 * each copy scores the rows with its own weights.
+	 * <p>
+	 * Rows are scored with the {@link FeatureWeights} given when the table is
+	 * created. The view re-reads the weights after the model parameters are
+	 * updated, so a row is scored with the parameters at the time it's first
+	 * accessed. Rows are scored once, so if the parameters are updated while
+	 * the table is used (e.g., by asynchronous learning), rows computed before
+	 * and after the update use different weights.
+	 */
+	public static class LazyFactorTable extends FactorTable {
+
+		private boolean							complete		= false;
+
+		/**
+		 * Features of the rows, shared with the source table and all copies.
+		 */
+		private final RowFeatures				features;
+
+		private final AtomicInteger				numMaterialized	= new AtomicInteger();
+
+		private final AtomicReferenceArray<Row>	rows;
+
+		private final FeatureWeights			weights;
+
+		/**
+		 * @param featureFunction
+		 *            Computes the features of a row given the values of the
+		 *            columns, in the order of the headers.
+		 */
+		public LazyFactorTable(
+				Function<LogicalExpression[], CompactFeatures> featureFunction,
+				FeatureWeights weights, ColumnHeader... headers) {
+			super(true, headers);
+			this.weights = weights;
+			this.rows = new AtomicReferenceArray<>(super.values.length);
+			this.features = new RowFeatures(
+					index -> featureFunction.apply(getColumnValues(index)),
+					super.values.length);
+		}
+
+		private LazyFactorTable(RowFeatures features, FeatureWeights weights,
+				ColumnHeader... headers) {
+			super(true, headers);
+			this.weights = weights;
+			this.rows = new AtomicReferenceArray<>(super.values.length);
+			this.features = features;
+		}
+
+		/**
+		 * Create a lazy copy of a factor table that scores each row with the
+		 * given weights when it's first accessed. If the table is lazy, the
+		 * copy shares its row features, including rows that are not computed
+		 * yet. Otherwise, the copy reads the features of the table. The table
+		 * must not be modified after the copy is created.
+		 *
+		 * @param headers
+		 *            Headers for the copy. Must have the same sizes and
+		 *            assignments as the headers of the table.
+		 */
+		public static LazyFactorTable copyOf(FactorTable table,
+				FeatureWeights weights, ColumnHeader... headers) {
+			assert table.numColumns() == headers.length;
+			return new LazyFactorTable(table instanceof LazyFactorTable
+					? ((LazyFactorTable) table).features
+					: new RowFeatures(table::getCompactFeatures, 0), weights,
+					headers);
+		}
+
+		@Override
+		public void add(int index, double value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void add(Map<INode, LogicalExpression> valueMapping,
+				double value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void apply(Map<INode, LogicalExpression> valueMapping,
+				DoubleUnaryOperator operator) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public FactorTable clone() {
+			materializeAll();
+			return super.clone();
+		}
+
+		/**
+		 * Create a lazy copy of this table that uses the same weights (see
+		 * {@link #copyOf(FactorTable, FeatureWeights, ColumnHeader...)}).
+		 * Rows that were already computed are not re-scored.
+		 */
+		public LazyFactorTable copy(ColumnHeader... headers) {
+			final LazyFactorTable copy = copyOf(this, weights, headers);
+			final int length = super.values.length;
+			for (int i = 0; i < length; ++i) {
+				final Row row = rows.get(i);
+				if (row != null) {
+					copy.rows.set(i, row);
+					copy.numMaterialized.incrementAndGet();
+				}
+			}
+			return copy;
+		}
+
+		@Override
+		public boolean equals(Table other, double delta) {
+			materializeAll();
+			return super.equals(other, delta);
+		}
+
+		@Override
+		public double get(int index) {
+			return row(index).score;
+		}
+
+		@Override
+		public double get(Map<INode, LogicalExpression> valueMapping) {
+			if (isMappingComplete(valueMapping)) {
+				return row(computeIndex(valueMapping)).score;
+			}
+			materializeAll();
+			return super.get(valueMapping);
+		}
+
+		@Override
+		public CompactFeatures getCompactFeatures(int index) {
+			return row(index).features;
+		}
+
+		@Override
+		public CompactFeatures getCompactFeatures(
+				Map<INode, LogicalExpression> valueMapping) {
+			return row(computeIndex(valueMapping)).features;
+		}
+
+		@Override
+		public IHashVectorImmutable getFeatures(int index) {
+			return row(index).features.toHashVector();
+		}
+
+		/**
+		 * Checks if any row has features. Computes the features of rows (but
+		 * doesn't score them) until the first row with features is found, so
+		 * all rows are computed only if none has features.
+		 */
+		public boolean hasFeatures() {
+			final int length = super.values.length;
+			for (int i = 0; i < length; ++i) {
+				final Row row = rows.get(i);
+				if ((row == null ? features.get(i) : row.features)
+						.size() != 0) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public Iterator<Pair<Double, IHashVectorImmutable>> iterator() {
+			materializeAll();
+			return super.iterator();
+		}
+
+		@Override
+		public double maxDifference(Table other) {
+			materializeAll();
+			return super.maxDifference(other);
+		}
+
+		@Override
+		public void multiply(Map<INode, LogicalExpression> valueMapping,
+				double value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void normalize() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * The number of rows computed so far.
+		 */
+		public int numMaterialized() {
+			return numMaterialized.get();
+		}
+
+		@Override
+		public void set(double value, MappingPair... mappingPairs) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void set(int index, double value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void set(int index, double value, CompactFeatures features) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void set(Map<INode, LogicalExpression> valueMapping,
+				double value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void set(Map<INode, LogicalExpression> valueMapping,
+				double value, CompactFeatures features) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void setAll(double value) {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Compute all rows and store them in the underlying arrays, so the
+		 * table can be accessed as a regular {@link FactorTable}.
+		 */
+		private synchronized void materializeAll() {
+			if (complete) {
+				return;
+			}
+			final int length = super.values.length;
+			for (int i = 0; i < length; ++i) {
+				final Row row = row(i);
+				super.set(i, row.score, row.features);
+			}
+			complete = true;
+		}
+
+		/**
+		 * Decode the column values from the row index.
+		 */
+		private LogicalExpression[] getColumnValues(int index) {
+			final int numColumns = numColumns();
+			final LogicalExpression[] columnValues = new LogicalExpression[numColumns];
+			for (int i = 0; i < numColumns; ++i) {
+				columnValues[i] = getColumnHeader(i).getNode().getAssignment(
+						index / getColumnStride(i) % getColumnSize(i));
+			}
+			return columnValues;
+		}
+
+		private Row row(int index) {
+			final Row row = rows.get(index);
+			if (row != null) {
+				return row;
+			}
+
+			final CompactFeatures rowFeatures = features.get(index);
+			final Row computed = new Row(rowFeatures.score(weights),
+					rowFeatures);
+			if (rows.compareAndSet(index, null, computed)) {
+				numMaterialized.incrementAndGet();
+				return computed;
+			} else {
+				// Computed concurrently by another thread.
+				return rows.get(index);
+			}
+		}
+
+		private static class Row {
+			private final CompactFeatures	features;
+			private final double			score;
+
+			public Row(double score, CompactFeatures features) {
+				this.score = score;
+				this.features = features;
+			}
+		}
+
+		/**
+		 * Features of the rows of a lazy table, computed on demand. If
+		 * features are stored, each row is computed at most once.
+		 */
+		private static class RowFeatures {
+			private final AtomicReferenceArray<CompactFeatures>	computed;
+			private final IntFunction<CompactFeatures>			function;
+
+			/**
+			 * @param size
+			 *            Number of rows to store, or 0 to call the function on
+			 *            every access (e.g., when it reads stored features).
+			 */
+			public RowFeatures(IntFunction<CompactFeatures> function,
+					int size) {
+				this.function = function;
+				this.computed = size == 0 ? null
+						: new AtomicReferenceArray<>(size);
+			}
+
+			public CompactFeatures get(int index) {
+				if (computed == null) {
+					return function.apply(index);
+				}
+				final CompactFeatures features = computed.get(index);
+				if (features != null) {
+					return features;
+				}
+				computed.compareAndSet(index, null, function.apply(index));
+				return computed.get(index);
+			}
+		}
+
+	}
+
 	private class DoubleValue {
 		double value = 0;
 	}
@@ -111,7 +111,7 @@ public class GetMaxEvaluations implements IFactorGraphVisitor {
 							}
 						}
 
-						factor.getTable().getFeatures(mapping)
+						factor.getTable().getCompactFeatures(mapping)
 								.addTimesInto(1.0, features);
 					}
 					return new ProbEvaluationResult(model.score(features),
@@ -0,0 +1,168 @@
+package edu.uw.cs.lil.amr.parser.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of non-negative values (e.g., latencies in
+ * milliseconds). Small values are counted exactly, larger values are counted
+ * in logarithmic buckets, each split into {@link #SUB_BUCKETS} linear
+ * sub-buckets, so quantiles are estimated with a relative error of at most
+ * 1/{@link #SUB_BUCKETS}. Recording is lock-free.
+ *
+ * @author Yoav Artzi
+ */
+public class Histogram {
+
+	/**
+	 * Values smaller than this are counted exactly.
+	 */
+	private static final int		EXACT_LIMIT		= 32;
+
+	private static final int		EXACT_BITS		= Integer
+			.numberOfTrailingZeros(EXACT_LIMIT);
+
+	private static final int		SUB_BUCKET_BITS	= 4;
+
+	private static final int		SUB_BUCKETS		= 1 << SUB_BUCKET_BITS;
+
+	private static final int		NUM_BUCKETS		= EXACT_LIMIT
+			+ (Long.SIZE - 1 - EXACT_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray	buckets			= new AtomicLongArray(
+			NUM_BUCKETS);
+
+	private final AtomicLong		count			= new AtomicLong();
+
+	private final AtomicLong		max				= new AtomicLong();
+
+	private final AtomicLong		sum				= new AtomicLong();
+
+	private static int bucket(long value) {
+		if (value < EXACT_LIMIT) {
+			return (int) value;
+		}
+		final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+		final int subBucket = (int) (value >>> exponent - SUB_BUCKET_BITS)
+				& SUB_BUCKETS - 1;
+		return EXACT_LIMIT + (exponent - EXACT_BITS) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * The largest value counted in the given bucket.
+	 */
+	private static long upperBound(int bucket) {
+		if (bucket < EXACT_LIMIT) {
+			return bucket;
+		}
+		final int exponent = (bucket - EXACT_LIMIT) / SUB_BUCKETS + EXACT_BITS;
+		final long subBucket = (bucket - EXACT_LIMIT) % SUB_BUCKETS;
+		return (SUB_BUCKETS + subBucket + 1 << exponent - SUB_BUCKET_BITS) - 1;
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		final long n = count.get();
+		return n == 0 ? 0.0 : (double) sum.get() / n;
+	}
+
+	public long getSum() {
+		return sum.get();
+	}
+
+	/**
+	 * Estimate the given quantile.
+	 *
+	 * @param quantile
+	 *            Quantile in [0,1], e.g., 0.99 for p99.
+	 * @return Upper bound of the bucket that contains the quantile, never
+	 *         larger than the maximum recorded value. 0 if the histogram is
+	 *         empty.
+	 */
+	public long quantile(double quantile) {
+		final long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(quantile * n));
+		long seen = 0;
+		for (int i = 0; i < NUM_BUCKETS; ++i) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	public void record(long value) {
+		if (value < 0) {
+			throw new IllegalArgumentException(
+					"Negative histogram value: " + value);
+		}
+		buckets.incrementAndGet(bucket(value));
+		sum.addAndGet(value);
+		max.accumulateAndGet(value, Math::max);
+		count.incrementAndGet();
+	}
+
+	/**
+	 * The values recorded in this histogram since the given snapshot was
+	 * taken from it (see {@link #snapshot()}). The maximum of the difference
+	 * is estimated by the upper bound of its highest bucket, and is never
+	 * larger than the maximum of this histogram.
+	 */
+	public Histogram since(Histogram snapshot) {
+		final Histogram diff = snapshot();
+		diff.add(snapshot, -1);
+		for (int i = NUM_BUCKETS - 1; i >= 0; --i) {
+			if (diff.buckets.get(i) > 0) {
+				diff.max.set(Math.min(upperBound(i), max.get()));
+				return diff;
+			}
+		}
+		diff.max.set(0);
+		return diff;
+	}
+
+	/**
+	 * A copy of the current values of the histogram. Values recorded while
+	 * the copy is created may be partially included.
+	 */
+	public Histogram snapshot() {
+		final Histogram copy = new Histogram();
+		copy.add(this, 1);
+		copy.max.set(max.get());
+		return copy;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("[n=%d, mean=%.1f, p50=%d, p99=%d, max=%d]",
+				getCount(), getMean(), quantile(0.5), quantile(0.99),
+				getMax());
+	}
+
+	/**
+	 * Add (or subtract) the buckets and sum of the given histogram. The count
+	 * is the sum of the buckets, so it's consistent with them.
+	 */
+	private void add(Histogram other, int sign) {
+		long n = 0;
+		for (int i = 0; i < NUM_BUCKETS; ++i) {
+			final long bucketCount = other.buckets.get(i);
+			buckets.addAndGet(i, sign * bucketCount);
+			n += bucketCount;
+		}
+		count.addAndGet(sign * n);
+		sum.addAndGet(sign * other.sum.get());
+	}
+
+}
@@ -0,0 +1,255 @@
+package edu.uw.cs.lil.amr.parser.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe registry of named latency histograms and event counters.
+ * Histograms and counters are created on first use. Latencies of sentence
+ * level stages are also recorded per sentence length bucket (see
+ * {@link #record(String, int, long)}), so percentiles can be compared across
+ * sentence lengths. The registry can be queried programmatically, and dumped
+ * as JSON or CSV. To measure a part of a run without resetting a shared
+ * registry, take a {@link #snapshot()} before it and use
+ * {@link #since(MetricsRegistry)} after it.
+ *
+ * @author Yoav Artzi
+ */
+public class MetricsRegistry {
+
+	/**
+	 * Width of sentence length buckets.
+	 */
+	public static final int					LENGTH_BUCKET_WIDTH	= 10;
+
+	/**
+	 * Sentences longer than this share the last length bucket.
+	 */
+	public static final int					MAX_LENGTH_BUCKET	= 50;
+
+	private static final double[]			QUANTILES			= {
+			0.5, 0.9, 0.99 };
+
+	private final Map<String, LongAdder>	counters			= new ConcurrentHashMap<>();
+
+	private final Map<String, Histogram>	histograms			= new ConcurrentHashMap<>();
+
+	/**
+	 * The name of the histogram of the given stage for sentences of the given
+	 * length, e.g., "cky[len=11-20]".
+	 */
+	public static String lengthBucketName(String stage, int length) {
+		if (length > MAX_LENGTH_BUCKET) {
+			return String.format("%s[len=%d+]", stage, MAX_LENGTH_BUCKET + 1);
+		}
+		final int start = Math.max(0, length - 1) / LENGTH_BUCKET_WIDTH
+				* LENGTH_BUCKET_WIDTH + 1;
+		return String.format("%s[len=%d-%d]", stage, start,
+				start + LENGTH_BUCKET_WIDTH - 1);
+	}
+
+	/**
+	 * Quote a CSV field, doubling any quotes it contains.
+	 */
+	private static String escapeCsv(String string) {
+		return "\"" + string.replace("\"", "\"\"") + "\"";
+	}
+
+	private static String escapeJson(String string) {
+		return string.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	/**
+	 * Round to three decimal points. Avoids locale-specific formatting.
+	 */
+	private static double round(double value) {
+		return Math.round(value * 1000.0) / 1000.0;
+	}
+
+	public void add(String counter, long delta) {
+		counters.computeIfAbsent(counter, k -> new LongAdder()).add(delta);
+	}
+
+	/**
+	 * @return The value of the given counter, 0 if it was never incremented.
+	 */
+	public long getCount(String counter) {
+		final LongAdder adder = counters.get(counter);
+		return adder == null ? 0 : adder.sum();
+	}
+
+	/**
+	 * Snapshot of all counters, sorted by name.
+	 */
+	public SortedMap<String, Long> getCounters() {
+		final SortedMap<String, Long> snapshot = new TreeMap<>();
+		for (final Entry<String, LongAdder> entry : counters.entrySet()) {
+			snapshot.put(entry.getKey(), entry.getValue().sum());
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @return The given histogram, or null if nothing was recorded with it.
+	 */
+	public Histogram getHistogram(String name) {
+		return histograms.get(name);
+	}
+
+	/**
+	 * All histograms, sorted by name.
+	 */
+	public SortedMap<String, Histogram> getHistograms() {
+		return new TreeMap<>(histograms);
+	}
+
+	public void increment(String counter) {
+		add(counter, 1);
+	}
+
+	public void record(String name, long value) {
+		histograms.computeIfAbsent(name, k -> new Histogram()).record(value);
+	}
+
+	/**
+	 * Record the latency of a sentence-level stage, both in the stage
+	 * histogram and in the histogram of the sentence length bucket.
+	 */
+	public void record(String stage, int sentenceLength, long value) {
+		record(stage, value);
+		record(lengthBucketName(stage, sentenceLength), value);
+	}
+
+	/**
+	 * Remove all histograms and counters.
+	 */
+	public void reset() {
+		histograms.clear();
+		counters.clear();
+	}
+
+	/**
+	 * The metrics recorded in this registry since the given snapshot was taken
+	 * from it (see {@link #snapshot()}). Counters and histograms that didn't
+	 * change are omitted.
+	 */
+	public MetricsRegistry since(MetricsRegistry snapshot) {
+		final MetricsRegistry diff = new MetricsRegistry();
+		for (final Entry<String, Long> entry : getCounters().entrySet()) {
+			final long delta = entry.getValue()
+					- snapshot.getCount(entry.getKey());
+			if (delta != 0) {
+				diff.add(entry.getKey(), delta);
+			}
+		}
+		for (final Entry<String, Histogram> entry : histograms.entrySet()) {
+			final Histogram before = snapshot.getHistogram(entry.getKey());
+			final Histogram histogram = before == null
+					? entry.getValue().snapshot()
+					: entry.getValue().since(before);
+			if (histogram.getCount() != 0) {
+				diff.histograms.put(entry.getKey(), histogram);
+			}
+		}
+		return diff;
+	}
+
+	/**
+	 * A copy of the current metrics. Metrics recorded while the copy is
+	 * created may be partially included.
+	 */
+	public MetricsRegistry snapshot() {
+		final MetricsRegistry copy = new MetricsRegistry();
+		for (final Entry<String, Long> entry : getCounters().entrySet()) {
+			copy.add(entry.getKey(), entry.getValue());
+		}
+		for (final Entry<String, Histogram> entry : histograms.entrySet()) {
+			copy.histograms.put(entry.getKey(), entry.getValue().snapshot());
+		}
+		return copy;
+	}
+
+	/**
+	 * CSV with a header line and a line for each counter and histogram.
+	 * Counters only have a count.
+	 */
+	public String toCsv() {
+		final StringBuilder sb = new StringBuilder("type,name,count,mean");
+		for (final double quantile : QUANTILES) {
+			sb.append(",p").append(Math.round(quantile * 100));
+		}
+		sb.append(",max\n");
+		for (final Entry<String, Long> entry : getCounters().entrySet()) {
+			sb.append("counter,").append(escapeCsv(entry.getKey()))
+					.append(",").append(entry.getValue()).append(",");
+			for (int i = 0; i < QUANTILES.length; ++i) {
+				sb.append(",");
+			}
+			sb.append(",\n");
+		}
+		for (final Entry<String, Histogram> entry : getHistograms()
+				.entrySet()) {
+			final Histogram histogram = entry.getValue();
+			sb.append("histogram,").append(escapeCsv(entry.getKey()))
+					.append(",").append(histogram.getCount()).append(",")
+					.append(round(histogram.getMean()));
+			for (final double quantile : QUANTILES) {
+				sb.append(",").append(histogram.quantile(quantile));
+			}
+			sb.append(",").append(histogram.getMax()).append("\n");
+		}
+		return sb.toString();
+	}
+
+	public String toJson() {
+		final StringBuilder sb = new StringBuilder("{\"counters\":{");
+		String sep = "";
+		for (final Entry<String, Long> entry : getCounters().entrySet()) {
+			sb.append(sep).append("\"").append(escapeJson(entry.getKey()))
+					.append("\":").append(entry.getValue());
+			sep = ",";
+		}
+		sb.append("},\"histograms\":{");
+		sep = "";
+		for (final Entry<String, Histogram> entry : getHistograms()
+				.entrySet()) {
+			final Histogram histogram = entry.getValue();
+			sb.append(sep).append("\"").append(escapeJson(entry.getKey()))
+					.append("\":{\"count\":").append(histogram.getCount())
+					.append(",\"mean\":")
+					.append(round(histogram.getMean()));
+			for (final double quantile : QUANTILES) {
+				sb.append(",\"p").append(Math.round(quantile * 100))
+						.append("\":").append(histogram.quantile(quantile));
+			}
+			sb.append(",\"max\":").append(histogram.getMax()).append("}");
+			sep = ",";
+		}
+		sb.append("}}");
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("counters=%s, histograms=%s", getCounters(),
+				getHistograms());
+	}
+
+	/**
+	 * Write the metrics to the given file, as CSV if the file name ends with
+	 * ".csv", otherwise as JSON.
+	 */
+	public void write(File file) throws IOException {
+		try (PrintStream out = new PrintStream(file, "UTF-8")) {
+			out.print(file.getName().endsWith(".csv") ? toCsv() : toJson());
+		}
+	}
+
+}
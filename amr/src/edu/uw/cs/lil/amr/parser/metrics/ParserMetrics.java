@@ -0,0 +1,93 @@
+package edu.uw.cs.lil.amr.parser.metrics;
+
+/**
+ * Names of the metrics recorded by the AMR parser. Latencies are in
+ * milliseconds. Sentence-level stages are recorded for every parsed sentence,
+ * also per sentence length bucket (see
+ * {@link MetricsRegistry#record(String, int, long)}). Graph-level stages are
+ * recorded for every factor graph.
+ *
+ * @author Yoav Artzi
+ */
+public class ParserMetrics {
+
+	/**
+	 * Counter: second stage inference over a factor graph that dropped
+	 * configurations from the beam.
+	 */
+	public static final String	BEAM_OVERFLOWS			= "beamOverflows";
+
+	/**
+	 * Sentence-level: CKY parsing.
+	 */
+	public static final String	CKY						= "cky";
+
+	/**
+	 * Counter: sentences that were degraded to stay within the time budget,
+	 * also per degradation level as "degradations[LEVEL]".
+	 */
+	public static final String	DEGRADATIONS			= "degradations";
+
+	/**
+	 * Sentence-level: aggregating the inference results into derivations.
+	 */
+	public static final String	DERIVATION_AGGREGATION	= "derivationAggregation";
+
+	/**
+	 * Counter: factor graphs rejected for having too many factors.
+	 */
+	public static final String	FACTOR_LIMIT_REJECTIONS	= "factorLimitRejections";
+
+	/**
+	 * Graph-level: creating the factor graph structure from the logical form.
+	 */
+	public static final String	GRAPH_BUILD				= "graphBuild";
+
+	/**
+	 * Graph-level: running the feature jobs that create the factors.
+	 */
+	public static final String	GRAPH_FEATURES			= "graphFeatures";
+
+	/**
+	 * Sentence-level: second stage inference over all factor graphs.
+	 */
+	public static final String	INFERENCE				= "inference";
+
+	/**
+	 * Counter: LBP runs that stopped at the maximum number of iterations
+	 * without converging.
+	 */
+	public static final String	LBP_NOT_CONVERGED		= "lbpNotConverged";
+
+	/**
+	 * Counter: LBP runs that timed out.
+	 */
+	public static final String	LBP_TIMEOUTS			= "lbpTimeouts";
+
+	/**
+	 * Sentence-level: processing the base derivations and creating their
+	 * factor graphs (includes {@link #GRAPH_BUILD} and
+	 * {@link #GRAPH_FEATURES}).
+	 */
+	public static final String	PROCESS_DERIVATIONS		= "processDerivations";
+
+	/**
+	 * Counter: base derivations pruned before creating a factor graph.
+	 */
+	public static final String	PRUNED_INTERMEDIATES	= "prunedIntermediates";
+
+	/**
+	 * Counter: parsed sentences.
+	 */
+	public static final String	SENTENCES				= "sentences";
+
+	/**
+	 * Sentence-level: complete parsing time.
+	 */
+	public static final String	TOTAL					= "total";
+
+	private ParserMetrics() {
+		// Use static access method.
+	}
+
+}
@@ -0,0 +1,463 @@
+package edu.uw.cs.lil.amr.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * SMATCH scorer (Cai and Knight 2013). A port of the bundled SMATCH script
+ * (utils/smatch/smatch.py). Finds the variable mapping between two AMRs that
+ * maximizes the number of matching triples using hill-climbing with move and
+ * swap operations. The first round is initialized by matching variables with
+ * identical concepts, and each of the following rounds is a random restart.
+ * The random number generator is seeded, so scores are reproducible.
+ *
+ * @author Yoav Artzi
+ */
+public class Smatch {
+
+	private final boolean[]	candidates;
+	/**
+	 * Sorted candidate target variables for each source variable.
+	 */
+	private final int[][]	candidateLists;
+	private final int		numSource;
+	private final int		numTarget;
+	/**
+	 * For each mapping of a source variable to a target variable, the other
+	 * mappings that together with it match relation triples, and the number
+	 * of triples matched.
+	 */
+	private final int[][]	pairMappings;
+	private final int[][]	pairWeights;
+	private final Random	random;
+	/**
+	 * For each mapping of a source variable to a target variable, the number
+	 * of triples that match given only this mapping.
+	 */
+	private final int[]		selfWeights;
+	private final String[]	sourceConcepts;
+	private final String[]	targetConcepts;
+
+	private Smatch(SmatchTriples source, SmatchTriples target, Random random) {
+		this.random = random;
+		this.numSource = source.numVariables();
+		this.numTarget = target.numVariables();
+		this.sourceConcepts = source.concepts;
+		this.targetConcepts = target.concepts;
+		this.candidates = new boolean[numSource * numTarget];
+		this.selfWeights = new int[numSource * numTarget];
+
+		// Compute the candidate mappings and their weights (see
+		// compute_pool()).
+		for (int i = 0; i < numSource; ++i) {
+			for (int j = 0; j < numTarget; ++j) {
+				if (source.concepts[i].equalsIgnoreCase(target.concepts[j])) {
+					final int mapping = i * numTarget + j;
+					candidates[mapping] = true;
+					++selfWeights[mapping];
+				}
+			}
+		}
+		for (int i = 0; i < source.attributeNames.length; ++i) {
+			for (int j = 0; j < target.attributeNames.length; ++j) {
+				if (source.attributeNames[i]
+						.equalsIgnoreCase(target.attributeNames[j])
+						&& source.attributeValues[i].equalsIgnoreCase(
+								target.attributeValues[j])) {
+					final int mapping = source.attributeVariables[i]
+							* numTarget + target.attributeVariables[j];
+					candidates[mapping] = true;
+					++selfWeights[mapping];
+				}
+			}
+		}
+		final Map<Integer, Map<Integer, Integer>> pairs = new HashMap<>();
+		for (int i = 0; i < source.relationNames.length; ++i) {
+			for (int j = 0; j < target.relationNames.length; ++j) {
+				if (source.relationNames[i]
+						.equalsIgnoreCase(target.relationNames[j])) {
+					final int mapping1 = source.relationSources[i] * numTarget
+							+ target.relationSources[j];
+					final int mapping2 = source.relationTargets[i] * numTarget
+							+ target.relationTargets[j];
+					candidates[mapping1] = true;
+					candidates[mapping2] = true;
+					if (mapping1 != mapping2) {
+						pairs.computeIfAbsent(mapping1, k -> new HashMap<>())
+								.merge(mapping2, 1, Integer::sum);
+						pairs.computeIfAbsent(mapping2, k -> new HashMap<>())
+								.merge(mapping1, 1, Integer::sum);
+					} else {
+						++selfWeights[mapping1];
+					}
+				}
+			}
+		}
+		this.pairMappings = new int[numSource * numTarget][];
+		this.pairWeights = new int[numSource * numTarget][];
+		for (final Entry<Integer, Map<Integer, Integer>> entry : pairs
+				.entrySet()) {
+			final int size = entry.getValue().size();
+			final int[] mappings = new int[size];
+			final int[] weights = new int[size];
+			int index = 0;
+			for (final Entry<Integer, Integer> pair : entry.getValue()
+					.entrySet()) {
+				mappings[index] = pair.getKey();
+				weights[index++] = pair.getValue();
+			}
+			pairMappings[entry.getKey()] = mappings;
+			pairWeights[entry.getKey()] = weights;
+		}
+
+		this.candidateLists = new int[numSource][];
+		for (int i = 0; i < numSource; ++i) {
+			final List<Integer> list = new ArrayList<>();
+			for (int j = 0; j < numTarget; ++j) {
+				if (candidates[i * numTarget + j]) {
+					list.add(j);
+				}
+			}
+			candidateLists[i] = list.stream().mapToInt(Integer::intValue)
+					.toArray();
+		}
+	}
+
+	/**
+	 * Score a pair of AMR strings.
+	 *
+	 * @param rounds
+	 *            Number of random restarts (in addition to the initial
+	 *            round).
+	 * @return Match counts, or null if one of the AMRs is malformed.
+	 */
+	public static Counts of(String gold, String candidate, int rounds,
+			long seed) {
+		final SmatchTriples goldTriples = SmatchTriples.of(gold);
+		final SmatchTriples candidateTriples = SmatchTriples.of(candidate);
+		if (goldTriples == null || candidateTriples == null) {
+			return null;
+		}
+		return of(goldTriples, candidateTriples, rounds, seed);
+	}
+
+	public static Counts of(SmatchTriples gold, SmatchTriples candidate,
+			int rounds, long seed) {
+		// Map the variables of the smaller AMR to the larger one.
+		final Random random = new Random(seed);
+		final Smatch smatch = candidate.numVariables() < gold.numVariables()
+				? new Smatch(candidate, gold, random)
+				: new Smatch(gold, candidate, random);
+		return new Counts(smatch.bestMatch(rounds), candidate.size(),
+				gold.size());
+	}
+
+	private int bestMatch(int rounds) {
+		int bestMatchNum = 0;
+		for (int round = 0; round <= rounds; ++round) {
+			int[] match = round == 0 ? initMatch() : randomMatch();
+			int matchNum = computeMatch(match);
+			// Hill-climbing until no operation improves the match.
+			while (true) {
+				final int[] next = bestGain(match, matchNum);
+				if (next == null) {
+					break;
+				}
+				match = next;
+				matchNum = computeMatch(match);
+			}
+			if (matchNum > bestMatchNum) {
+				bestMatchNum = matchNum;
+			}
+		}
+		return bestMatchNum;
+	}
+
+	/**
+	 * Find the move or swap with the largest positive gain (see
+	 * get_best_gain()).
+	 *
+	 * @return The new match, or null if no operation has a positive gain.
+	 */
+	private int[] bestGain(int[] match, int matchNum) {
+		int largestGain = 0;
+		boolean swap = true;
+		int change1 = -1;
+		int change2 = -1;
+
+		// Move operations, re-map a source variable to an unmatched target
+		// variable.
+		final boolean[] matched = new boolean[numTarget];
+		for (final int m : match) {
+			if (m >= 0) {
+				matched[m] = true;
+			}
+		}
+		for (int nm = 0; nm < numTarget; ++nm) {
+			if (matched[nm]) {
+				continue;
+			}
+			for (int i = 0; i < numSource; ++i) {
+				if (!candidates[i * numTarget + nm]) {
+					continue;
+				}
+				final int m = match[i];
+				final int oldContribution = contribution(match, i, m, -1);
+				match[i] = nm;
+				final int gain = contribution(match, i, nm, -1)
+						- oldContribution;
+				match[i] = m;
+				if (gain > largestGain) {
+					largestGain = gain;
+					change1 = i;
+					change2 = nm;
+					swap = false;
+				}
+			}
+		}
+
+		// Swap operations, swap the targets of two source variables.
+		for (int i = 0; i < numSource; ++i) {
+			for (int j = 0; j < numSource; ++j) {
+				if (i == j) {
+					continue;
+				}
+				final int m = match[i];
+				final int m2 = match[j];
+				final int oldContribution = contribution(match, i, m, j)
+						+ contribution(match, j, m2, i)
+						+ pairWeight(i, m, j, m2);
+				match[i] = m2;
+				match[j] = m;
+				final int gain = contribution(match, i, m2, j)
+						+ contribution(match, j, m, i) + pairWeight(i, m2, j, m)
+						- oldContribution;
+				match[i] = m;
+				match[j] = m2;
+				if (gain > largestGain) {
+					largestGain = gain;
+					change1 = i;
+					change2 = j;
+					swap = true;
+				}
+			}
+		}
+
+		if (change1 < 0) {
+			return null;
+		}
+
+		final int[] newMatch = Arrays.copyOf(match, match.length);
+		if (swap) {
+			newMatch[change1] = match[change2];
+			newMatch[change2] = match[change1];
+		} else {
+			newMatch[change1] = change2;
+		}
+		assert computeMatch(newMatch) == matchNum
+				+ largestGain : "Inconsistent gain computation";
+		return newMatch;
+	}
+
+	/**
+	 * The number of matching triples in the given match (see compute_match()).
+	 */
+	private int computeMatch(int[] match) {
+		int matchNum = 0;
+		for (int i = 0; i < numSource; ++i) {
+			final int m = match[i];
+			if (m < 0) {
+				continue;
+			}
+			final int mapping = i * numTarget + m;
+			matchNum += selfWeights[mapping];
+			final int[] mappings = pairMappings[mapping];
+			if (mappings != null) {
+				for (int k = 0; k < mappings.length; ++k) {
+					final int other = mappings[k] / numTarget;
+					if (other > i
+							&& match[other] == mappings[k] % numTarget) {
+						matchNum += pairWeights[mapping][k];
+					}
+				}
+			}
+		}
+		return matchNum;
+	}
+
+	/**
+	 * The number of triples matched by mapping source variable i to target
+	 * variable m, given the rest of the match. Ignores relation triples with
+	 * the excluded source variable.
+	 */
+	private int contribution(int[] match, int i, int m, int exclude) {
+		if (m < 0) {
+			return 0;
+		}
+		final int mapping = i * numTarget + m;
+		int contribution = selfWeights[mapping];
+		final int[] mappings = pairMappings[mapping];
+		if (mappings != null) {
+			for (int k = 0; k < mappings.length; ++k) {
+				final int other = mappings[k] / numTarget;
+				if (other != exclude
+						&& match[other] == mappings[k] % numTarget) {
+					contribution += pairWeights[mapping][k];
+				}
+			}
+		}
+		return contribution;
+	}
+
+	/**
+	 * Initial match, map variables with identical concepts, and randomly map
+	 * the rest to their candidates (see init_match()).
+	 */
+	private int[] initMatch() {
+		final int[] match = new int[numSource];
+		final Set<Integer> matched = new HashSet<>();
+		final List<Integer> noWordMatch = new ArrayList<>();
+		for (int i = 0; i < numSource; ++i) {
+			match[i] = -1;
+			if (candidateLists[i].length == 0) {
+				continue;
+			}
+			for (final int m : candidateLists[i]) {
+				if (sourceConcepts[i].equals(targetConcepts[m])
+						&& !matched.contains(m)) {
+					match[i] = m;
+					matched.add(m);
+					break;
+				}
+			}
+			if (match[i] < 0) {
+				noWordMatch.add(i);
+			}
+		}
+		for (final int i : noWordMatch) {
+			match[i] = randomCandidate(i, matched);
+		}
+		return match;
+	}
+
+	private int pairWeight(int i, int m, int j, int m2) {
+		if (m < 0 || m2 < 0) {
+			return 0;
+		}
+		final int mapping = i * numTarget + m;
+		final int other = j * numTarget + m2;
+		final int[] mappings = pairMappings[mapping];
+		if (mappings != null) {
+			for (int k = 0; k < mappings.length; ++k) {
+				if (mappings[k] == other) {
+					return pairWeights[mapping][k];
+				}
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Pick a random unmatched candidate for the given source variable (see
+	 * get_random_sol()).
+	 *
+	 * @return The target variable, or -1 if all candidates are matched.
+	 */
+	private int randomCandidate(int i, Set<Integer> matched) {
+		final List<Integer> candidateList = new ArrayList<>();
+		for (final int m : candidateLists[i]) {
+			candidateList.add(m);
+		}
+		while (candidateList.size() > 1) {
+			final int index = random.nextInt(candidateList.size());
+			final int m = candidateList.get(index);
+			if (matched.contains(m)) {
+				candidateList.remove(index);
+			} else {
+				matched.add(m);
+				return m;
+			}
+		}
+		if (candidateList.size() == 1
+				&& !matched.contains(candidateList.get(0))) {
+			matched.add(candidateList.get(0));
+			return candidateList.get(0);
+		}
+		return -1;
+	}
+
+	private int[] randomMatch() {
+		final int[] match = new int[numSource];
+		final Set<Integer> matched = new HashSet<>();
+		for (int i = 0; i < numSource; ++i) {
+			match[i] = randomCandidate(i, matched);
+		}
+		return match;
+	}
+
+	/**
+	 * SMATCH match counts: the number of matching triples, the number of
+	 * triples in the candidate AMR and the number of triples in the gold AMR.
+	 * Counts of multiple AMR pairs are summed to compute a corpus-level score.
+	 */
+	public static class Counts {
+		public static final Counts	EMPTY	= new Counts(0, 0, 0);
+
+		private final long			candidate;
+		private final long			gold;
+		private final long			match;
+
+		public Counts(long match, long candidate, long gold) {
+			this.match = match;
+			this.candidate = candidate;
+			this.gold = gold;
+		}
+
+		public Counts add(Counts other) {
+			return new Counts(match + other.match, candidate + other.candidate,
+					gold + other.gold);
+		}
+
+		public double f1() {
+			final double precision = precision();
+			final double recall = recall();
+			return precision + recall == 0.0 ? 0.0
+					: 2 * precision * recall / (precision + recall);
+		}
+
+		public long getCandidate() {
+			return candidate;
+		}
+
+		public long getGold() {
+			return gold;
+		}
+
+		public long getMatch() {
+			return match;
+		}
+
+		public double precision() {
+			return candidate == 0 || gold == 0 ? 0.0
+					: match / (double) candidate;
+		}
+
+		public double recall() {
+			return candidate == 0 || gold == 0 ? 0.0 : match / (double) gold;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("p=%.4f, r=%.4f, f1=%.4f (%d/%d/%d)",
+					precision(), recall(), f1(), match, candidate, gold);
+		}
+	}
+
+}
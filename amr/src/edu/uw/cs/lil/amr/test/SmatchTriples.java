@@ -0,0 +1,293 @@
+package edu.uw.cs.lil.amr.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import edu.cornell.cs.nlp.utils.log.ILogger;
+import edu.cornell.cs.nlp.utils.log.LoggerFactory;
+
+/**
+ * The triples of an AMR graph, as used by SMATCH. Parsing replicates the
+ * bundled SMATCH script (utils/smatch/amr.py), including its handling of
+ * re-entrancies, inverse relations, quotes and duplicate relations, so the
+ * triples are identical to the ones the script scores. Variables are indexed
+ * in order of appearance. There are three types of triples: instance triples
+ * (one per variable), attribute triples (a variable and a constant, including
+ * the TOP attribute of the root), and relation triples (two variables).
+ *
+ * @author Yoav Artzi
+ */
+public class SmatchTriples {
+	public static final ILogger	LOG	= LoggerFactory.create(SmatchTriples.class);
+
+	final String[]				attributeNames;
+	final String[]				attributeValues;
+	final int[]					attributeVariables;
+	final String[]				concepts;
+	final String[]				relationNames;
+	final int[]					relationSources;
+	final int[]					relationTargets;
+
+	private SmatchTriples(String[] concepts, List<String[]> attributes,
+			List<String[]> relations, Map<String, Integer> variableIndices) {
+		this.concepts = concepts;
+		final int numAttributes = attributes.size();
+		this.attributeNames = new String[numAttributes];
+		this.attributeVariables = new int[numAttributes];
+		this.attributeValues = new String[numAttributes];
+		for (int i = 0; i < numAttributes; ++i) {
+			final String[] attribute = attributes.get(i);
+			attributeNames[i] = attribute[0];
+			attributeVariables[i] = variableIndices.get(attribute[1]);
+			attributeValues[i] = attribute[2];
+		}
+		final int numRelations = relations.size();
+		this.relationNames = new String[numRelations];
+		this.relationSources = new int[numRelations];
+		this.relationTargets = new int[numRelations];
+		for (int i = 0; i < numRelations; ++i) {
+			final String[] relation = relations.get(i);
+			relationNames[i] = relation[0];
+			relationSources[i] = variableIndices.get(relation[1]);
+			relationTargets[i] = variableIndices.get(relation[2]);
+		}
+	}
+
+	/**
+	 * Parse an AMR string. Comment lines are ignored and the remaining lines
+	 * are joined (see get_amr_line() in the SMATCH script).
+	 *
+	 * @return The AMR triples, or null if the AMR is malformed.
+	 */
+	public static SmatchTriples of(String amr) {
+		final StringBuilder joined = new StringBuilder();
+		for (final String line : amr.split("\n")) {
+			final String stripped = line.trim();
+			if (!stripped.startsWith("#")) {
+				joined.append(stripped);
+			}
+		}
+		final String line = joined.toString().trim();
+
+		// The significant symbol just encountered: 1 for '(', 2 for ':', 3 for
+		// '/' and 4 for ')'.
+		int state = -1;
+		final List<String> stack = new ArrayList<>();
+		final StringBuilder charSeq = new StringBuilder();
+		final Map<String, String> variableValues = new HashMap<>();
+		final List<String> variables = new ArrayList<>();
+		// Variable -> list of (relation, other variable).
+		final Map<String, List<String[]>> variableRelations = new HashMap<>();
+		// Variable -> list of (attribute, value), the value may later resolve
+		// to a variable.
+		final Map<String, List<String[]>> variableAttributes = new HashMap<>();
+		String attributeName = "";
+		String variableName = null;
+		boolean inQuote = false;
+		final int len = line.length();
+		for (int i = 0; i < len; ++i) {
+			final char c = line.charAt(i);
+			if (c == ' ') {
+				if (state == 2) {
+					charSeq.append(c);
+				}
+				continue;
+			}
+			if (c == '"') {
+				inQuote = !inQuote;
+			}
+			if (c == '(') {
+				if (inQuote) {
+					continue;
+				}
+				if (state == 2) {
+					if (!attributeName.isEmpty()) {
+						return error(line, i);
+					}
+					attributeName = charSeq.toString().trim();
+					charSeq.setLength(0);
+				}
+				state = 1;
+			} else if (c == ':') {
+				if (inQuote) {
+					continue;
+				}
+				if (state == 3) {
+					variableValues.put(stack.get(stack.size() - 1),
+							charSeq.toString());
+					charSeq.setLength(0);
+				} else if (state == 2) {
+					final String[] parts = charSeq.toString().trim()
+							.split("\\s+");
+					charSeq.setLength(0);
+					if (parts.length < 2 || stack.isEmpty()) {
+						return error(line, i);
+					}
+					add(variableValues.containsKey(parts[1])
+							? variableRelations : variableAttributes,
+							stack.get(stack.size() - 1), parts[0], parts[1]);
+				}
+				state = 2;
+			} else if (c == '/') {
+				if (inQuote) {
+					continue;
+				}
+				if (state != 1) {
+					return error(line, i);
+				}
+				variableName = charSeq.toString();
+				charSeq.setLength(0);
+				if (variableValues.containsKey(variableName)) {
+					LOG.error("Duplicate variable %s in parsing AMR: %s",
+							variableName, line);
+					return null;
+				}
+				stack.add(variableName);
+				variables.add(variableName);
+				if (!attributeName.isEmpty()) {
+					if (stack.size() < 2) {
+						return error(line, i);
+					}
+					final String parent = stack.get(stack.size() - 2);
+					if (attributeName.endsWith("-of")) {
+						add(variableRelations, variableName,
+								attributeName.substring(0,
+										attributeName.length() - 3),
+								parent);
+					} else {
+						add(variableRelations, parent, attributeName,
+								variableName);
+					}
+					attributeName = "";
+				}
+				state = 3;
+			} else if (c == ')') {
+				if (inQuote) {
+					continue;
+				}
+				if (stack.isEmpty()) {
+					return error(line, i);
+				}
+				if (state == 2) {
+					final String[] parts = charSeq.toString().trim()
+							.split("\\s+");
+					charSeq.setLength(0);
+					if (parts.length < 2) {
+						return error(line, i);
+					}
+					if (attributeName.endsWith("-of")) {
+						if (stack.size() < 2) {
+							return error(line, i);
+						}
+						add(variableRelations, variableName,
+								attributeName.substring(0,
+										attributeName.length() - 3),
+								stack.get(stack.size() - 2));
+					} else {
+						add(variableValues.containsKey(parts[1])
+								? variableRelations : variableAttributes,
+								stack.get(stack.size() - 1), parts[0],
+								parts[1]);
+					}
+				} else if (state == 3) {
+					variableValues.put(stack.get(stack.size() - 1),
+							charSeq.toString());
+					charSeq.setLength(0);
+				}
+				stack.remove(stack.size() - 1);
+				attributeName = "";
+				state = 4;
+			} else {
+				charSeq.append(c);
+			}
+		}
+
+		if (variables.isEmpty()) {
+			LOG.error("No variables in AMR: %s", line);
+			return null;
+		}
+
+		// Create the triples. Relations are keyed by their target variable and
+		// attributes by their name, so duplicates are dropped, similar to the
+		// script.
+		final int numVariables = variables.size();
+		final String[] concepts = new String[numVariables];
+		final Map<String, Integer> variableIndices = new HashMap<>();
+		final List<String[]> attributes = new ArrayList<>();
+		final List<String[]> relations = new ArrayList<>();
+		for (int i = 0; i < numVariables; ++i) {
+			final String variable = variables.get(i);
+			if (!variableValues.containsKey(variable)) {
+				LOG.error("Variable value not found: %s (%s)", variable, line);
+				return null;
+			}
+			concepts[i] = variableValues.get(variable);
+			variableIndices.put(variable, i);
+
+			final Map<String, String> links = new LinkedHashMap<>();
+			final Map<String, String> constants = new LinkedHashMap<>();
+			if (variableRelations.containsKey(variable)) {
+				for (final String[] relation : variableRelations
+						.get(variable)) {
+					links.put(relation[1], relation[0]);
+				}
+			}
+			if (variableAttributes.containsKey(variable)) {
+				for (final String[] attribute : variableAttributes
+						.get(variable)) {
+					final String value = attribute[1];
+					if (value.startsWith("\"") && value.endsWith("\"")) {
+						constants.put(attribute[0], value.length() < 2 ? ""
+								: value.substring(1, value.length() - 1));
+					} else if (variableValues.containsKey(value)) {
+						links.put(value, attribute[0]);
+					} else {
+						constants.put(attribute[0], value);
+					}
+				}
+			}
+			if (i == 0) {
+				constants.put("TOP", concepts[0]);
+			}
+
+			for (final Entry<String, String> entry : links.entrySet()) {
+				relations.add(new String[] { entry.getValue(), variable,
+						entry.getKey() });
+			}
+			for (final Entry<String, String> entry : constants.entrySet()) {
+				attributes.add(new String[] { entry.getKey(), variable,
+						entry.getValue() });
+			}
+		}
+
+		return new SmatchTriples(concepts, attributes, relations,
+				variableIndices);
+	}
+
+	private static void add(Map<String, List<String[]>> map, String variable,
+			String name, String value) {
+		map.computeIfAbsent(variable, k -> new ArrayList<>())
+				.add(new String[] { name, value });
+	}
+
+	private static SmatchTriples error(String line, int position) {
+		LOG.error("Error in parsing AMR at position %d: %s", position, line);
+		return null;
+	}
+
+	public int numVariables() {
+		return concepts.length;
+	}
+
+	/**
+	 * The total number of triples.
+	 */
+	public int size() {
+		return concepts.length + attributeNames.length + relationNames.length;
+	}
+
+}
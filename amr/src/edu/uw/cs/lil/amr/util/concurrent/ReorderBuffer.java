@@ -0,0 +1,111 @@
+package edu.uw.cs.lil.amr.util.concurrent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import edu.cornell.cs.nlp.utils.log.ILogger;
+import edu.cornell.cs.nlp.utils.log.LoggerFactory;
+
+/**
+ * Collects the results of concurrent tasks and writes them in the order of
+ * their item numbers (starting at 1). The number of items in flight is
+ * bounded: a permit is acquired before an item is submitted (see
+ * {@link #acquire()}), and released when the item is written. Every acquired
+ * item must be added exactly once, or the writing of all later items is
+ * blocked.
+ * <p>
+ * The first failure (of a task or of the writer) is recorded. Once failed,
+ * items are no longer written, but their permits are still released, so the
+ * producer is never blocked.
+ *
+ * @author Yoav Artzi
+ */
+public class ReorderBuffer<T> {
+	public static final ILogger			LOG			= LoggerFactory
+			.create(ReorderBuffer.class);
+
+	private final Map<Integer, T>		buffer		= new HashMap<>();
+	private volatile Throwable			failure		= null;
+	private final Semaphore				inFlight;
+	private int							nextItem	= 1;
+	private final int					permits;
+	private final IItemWriter<T>		writer;
+
+	public ReorderBuffer(int permits, IItemWriter<T> writer) {
+		this.permits = permits;
+		this.writer = writer;
+		this.inFlight = new Semaphore(permits);
+	}
+
+	/**
+	 * Acquire a permit for the next item. Blocks while the maximum number of
+	 * items is in flight.
+	 */
+	public void acquire() throws InterruptedException {
+		inFlight.acquire();
+	}
+
+	/**
+	 * Add the result of an item, and write all the items that are now in
+	 * order.
+	 */
+	public synchronized void add(int itemNumber, T item) {
+		buffer.put(itemNumber, item);
+		while (buffer.containsKey(nextItem)) {
+			final T next = buffer.remove(nextItem);
+			try {
+				if (failure == null) {
+					writer.write(nextItem, next);
+				}
+			} catch (final Throwable t) {
+				fail(nextItem, t);
+			} finally {
+				++nextItem;
+				inFlight.release();
+			}
+		}
+	}
+
+	/**
+	 * Wait until all acquired items are written (or skipped after a failure).
+	 */
+	public void awaitAll() throws InterruptedException {
+		inFlight.acquire(permits);
+		inFlight.release(permits);
+	}
+
+	/**
+	 * Record a failure. Only the first failure is kept.
+	 */
+	public synchronized void fail(int itemNumber, Throwable t) {
+		LOG.error("%d : Failed: %s", itemNumber, t);
+		if (failure == null) {
+			failure = t;
+		}
+	}
+
+	/**
+	 * The first failure, or null.
+	 */
+	public Throwable getFailure() {
+		return failure;
+	}
+
+	/**
+	 * The number of items that left the buffer (written, or skipped after a
+	 * failure).
+	 */
+	public synchronized int numDone() {
+		return nextItem - 1;
+	}
+
+	/**
+	 * Writes the items in order. Only called by a single thread at a time.
+	 */
+	@FunctionalInterface
+	public interface IItemWriter<T> {
+		void write(int itemNumber, T item) throws Exception;
+	}
+
+}
@@ -1,10 +1,7 @@
 package edu.uw.cs.lil.amr.util.convert;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -39,7 +36,11 @@ import edu.uw.cs.lil.amr.lambda.convert.AmrToLogicalExpressionConverter;
  * Utility to convert sentences paired with AMRs to
  * {@link SingleSentenceCollection} and write to a file. The input AMR file must be
  * simplified where each AMR is on a single line (and not indented on multiple
- * lines). See the script txt2amr.py to simplify AMR files.
+ * lines). See the script txt2amr.py to simplify AMR files. Records are
+ * converted concurrently with {@link ParallelConverter}, and records that
+ * didn't change since the previous conversion of the same output file are
+ * not converted again. Optional arguments after the output file:
+ * "threads=N" and "queue=N".
  *
  * @author Yoav Artzi
  */
@@ -86,97 +87,15 @@ public class AMRToLambda {
 		// //////////////////////////////////////////
 
 		final ITokenizer tokenizer = new Tokenizer();
-		int lineNumber = -1;
-		try (BufferedReader reader = new BufferedReader(new FileReader(args[1]));
-				PrintStream out = new PrintStream(new File(args[2]));) {
-			String line;
-			int counter = 0;
-			while ((line = reader.readLine()) != null) {
-				++lineNumber;
-				if (line.trim().isEmpty()) {
-					continue;
-				}
-				++counter;
-				final String sentence = line;
-				LOG.info("Processing: %s", sentence);
-				final Map<String, String> properties = Properties
-						.readProperties(reader.readLine());
-				++lineNumber;
-				// Read the AMR, potentially multiple lines. Read until an empty
-				// line.
-				final StringBuilder amr = new StringBuilder();
-				while ((line = reader.readLine()) != null
-						&& line.trim().length() > 0) {
-					amr.append(WHITE_SPACE_REPLACER.replace(line));
-					++lineNumber;
-				}
-
-				final String amrString = amr.toString();
-				final LogicalExpression exp = converter.read(amrString);
-
-				final TokenSeq tokenized = tokenizer.tokenize(sentence);
-				if (properties.containsKey("alignments")) {
-					if (properties.containsKey("tok")) {
-						properties.put(
-								"alignments",
-								adjustAlignments(tokenized, TokenSeq
-										.of(properties.get("tok").split(" ")),
-										properties.get("alignments").trim(),
-										tokenizer));
-
-						final Map<Pair<Integer, Integer>, Set<LogicalExpression>> alignmentMap = new HashMap<>();
-						for (final String alignmentString : properties.get(
-								"alignments").split(" +")) {
-							if (alignmentString.length() > 0) {
-								final Pair<Pair<Integer, Integer>, String> alignmentPair = AlignmentServices
-										.readAlignment(alignmentString);
-								final LogicalExpression subExp = GetAlignedSubExp
-										.of(exp, alignmentPair.second());
-								if (subExp == null) {
-									LOG.info(
-											"Failed to recover sub-expression for alignment: %s",
-											alignmentString);
-								} else {
-									LOG.debug("Alignment: %s -> %s", tokenized
-											.sub(alignmentPair.first().first(),
-													alignmentPair.first()
-															.second()), subExp);
-									if (!alignmentMap.containsKey(alignmentPair
-											.first())) {
-										alignmentMap.put(alignmentPair.first(),
-												new HashSet<>());
-									}
-									alignmentMap.get(alignmentPair.first())
-											.add(subExp);
-								}
-							}
-						}
-
-						// Create the string representation and store in the
-						// properties.
-						if (!alignmentMap.isEmpty()) {
-							properties
-									.put(AlignmentServices.STORED_ALIGNMENTS_PROPERTY,
-											AlignmentServices
-													.alignmentsToString(alignmentMap));
-						}
-					} else {
-						LOG.error("Alignments present, but tokenized sentence not -- can't adjust alignments");
-					}
-				}
-
-				properties.put("amr", amrString);
-				properties.put("ptbtok", tokenized.toString());
-
-				out.println(sentence.trim().isEmpty() ? "EMPTY_SENTENCE"
-						: sentence);
-				out.println(Properties.toString(properties));
-				out.println(LogicalExpressionToIndentedString.of(exp));
-				out.println();
-				if (counter % 100 == 0) {
-					LOG.info("Processed %d ...", counter);
-				}
-			}
+		final int numThreads = ParallelConverter.option(args, 3, "threads",
+				Runtime.getRuntime().availableProcessors());
+		final int queueSize = ParallelConverter.option(args, 3, "queue",
+				4 * numThreads);
+		try {
+			new ParallelConverter(
+					record -> convert(record, converter, tokenizer),
+					AMRToLambda.class.getName(), numThreads, queueSize)
+					.convert(new File(args[1]), new File(args[2]));
 
 			// Read the file for verification.
 			LOG.info("Reading output file for testing...");
@@ -186,8 +105,6 @@ public class AMRToLambda {
 			LOG.info("Done (#sample=%d)", testRead.size());
 		} catch (final IOException e) {
 			throw new IllegalStateException(e);
-		} catch (final Exception e) {
-			throw new RuntimeException("Exception in line: " + lineNumber, e);
 		}
 
 	}
@@ -243,4 +160,86 @@ public class AMRToLambda {
 		}
 		return newAlignmentStrings.stream().collect(Collectors.joining(" "));
 	}
+
+	/**
+	 * Convert a single record: the sentence line, the properties line and the
+	 * AMR, potentially on multiple lines.
+	 *
+	 * @return The sentence, its properties and the logical form, or null if
+	 *         the AMR can't be converted.
+	 */
+	private static String convert(String record,
+			AmrToLogicalExpressionConverter converter, ITokenizer tokenizer) {
+		final String[] lines = record.split("\n");
+		final String sentence = lines[0];
+		LOG.info("Processing: %s", sentence);
+		final Map<String, String> properties = Properties
+				.readProperties(lines.length > 1 ? lines[1] : "");
+		final StringBuilder amr = new StringBuilder();
+		for (int i = 2; i < lines.length; ++i) {
+			amr.append(WHITE_SPACE_REPLACER.replace(lines[i]));
+		}
+
+		final String amrString = amr.toString();
+		final LogicalExpression exp;
+		try {
+			exp = converter.read(amrString);
+		} catch (final IOException e) {
+			LOG.error("Failed to read AMR: %s", e);
+			return null;
+		}
+
+		final TokenSeq tokenized = tokenizer.tokenize(sentence);
+		if (properties.containsKey("alignments")) {
+			if (properties.containsKey("tok")) {
+				properties.put("alignments", adjustAlignments(tokenized,
+						TokenSeq.of(properties.get("tok").split(" ")),
+						properties.get("alignments").trim(), tokenizer));
+
+				final Map<Pair<Integer, Integer>, Set<LogicalExpression>> alignmentMap = new HashMap<>();
+				for (final String alignmentString : properties
+						.get("alignments").split(" +")) {
+					if (alignmentString.length() > 0) {
+						final Pair<Pair<Integer, Integer>, String> alignmentPair = AlignmentServices
+								.readAlignment(alignmentString);
+						final LogicalExpression subExp = GetAlignedSubExp
+								.of(exp, alignmentPair.second());
+						if (subExp == null) {
+							LOG.info(
+									"Failed to recover sub-expression for alignment: %s",
+									alignmentString);
+						} else {
+							LOG.debug("Alignment: %s -> %s",
+									tokenized.sub(alignmentPair.first().first(),
+											alignmentPair.first().second()),
+									subExp);
+							if (!alignmentMap
+									.containsKey(alignmentPair.first())) {
+								alignmentMap.put(alignmentPair.first(),
+										new HashSet<>());
+							}
+							alignmentMap.get(alignmentPair.first()).add(subExp);
+						}
+					}
+				}
+
+				// Create the string representation and store in the
+				// properties.
+				if (!alignmentMap.isEmpty()) {
+					properties.put(AlignmentServices.STORED_ALIGNMENTS_PROPERTY,
+							AlignmentServices.alignmentsToString(alignmentMap));
+				}
+			} else {
+				LOG.error(
+						"Alignments present, but tokenized sentence not -- can't adjust alignments");
+			}
+		}
+
+		properties.put("amr", amrString);
+		properties.put("ptbtok", tokenized.toString());
+
+		return (sentence.trim().isEmpty() ? "EMPTY_SENTENCE" : sentence) + "\n"
+				+ Properties.toString(properties) + "\n"
+				+ LogicalExpressionToIndentedString.of(exp);
+	}
 }
@@ -0,0 +1,110 @@
+package edu.uw.cs.lil.amr.util.convert;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Manifest of a converted corpus file. Maps the content hash of each converted
+ * input record to the byte offset and length of its conversion in the output
+ * file. The manifest also records the length of the output file, so a manifest
+ * that doesn't match its output file is ignored.
+ *
+ * @author Yoav Artzi
+ */
+public class ConversionManifest {
+
+	private static final String		HEADER_PREFIX	= "# output-length\t";
+
+	/**
+	 * Maps record hashes to {offset, length} pairs.
+	 */
+	private final Map<String, long[]>	entries			= new HashMap<>();
+
+	/**
+	 * Content hash of a record, given the signature of the conversion (e.g.,
+	 * the conversion options), so a change in the options invalidates previous
+	 * conversions.
+	 */
+	public static String hash(String signature, String record) {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		digest.update(signature.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		final byte[] bytes = digest
+				.digest(record.getBytes(StandardCharsets.UTF_8));
+		final StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (final byte b : bytes) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return The manifest, or null if the manifest file doesn't exist or
+	 *         doesn't match the given output file length.
+	 */
+	public static ConversionManifest read(File file, long outputLength)
+			throws IOException {
+		if (!file.exists()) {
+			return null;
+		}
+		final ConversionManifest manifest = new ConversionManifest();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), StandardCharsets.UTF_8))) {
+			final String header = reader.readLine();
+			if (header == null || !header.startsWith(HEADER_PREFIX)
+					|| Long.parseLong(header.substring(HEADER_PREFIX
+							.length())) != outputLength) {
+				return null;
+			}
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final String[] split = line.split("\t");
+				manifest.put(split[0], Long.parseLong(split[1]),
+						Long.parseLong(split[2]));
+			}
+		}
+		return manifest;
+	}
+
+	/**
+	 * @return {offset, length} of the conversion of the record with the given
+	 *         hash, or null if it's not in the manifest.
+	 */
+	public long[] get(String hash) {
+		return entries.get(hash);
+	}
+
+	public void put(String hash, long offset, long length) {
+		entries.put(hash, new long[] { offset, length });
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public void write(File file, long outputLength) throws IOException {
+		try (PrintStream out = new PrintStream(file, "UTF-8")) {
+			out.println(HEADER_PREFIX + outputLength);
+			for (final Entry<String, long[]> entry : entries.entrySet()) {
+				out.println(entry.getKey() + "\t" + entry.getValue()[0] + "\t"
+						+ entry.getValue()[1]);
+			}
+		}
+	}
+
+}
@@ -2,25 +2,30 @@ package edu.uw.cs.lil.amr.util.convert;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import edu.cornell.cs.nlp.spf.base.properties.Properties;
-import edu.cornell.cs.nlp.spf.data.singlesentence.SingleSentence;
 import edu.cornell.cs.nlp.spf.data.singlesentence.SingleSentenceCollection;
+import edu.cornell.cs.nlp.spf.mr.lambda.LogicalExpression;
+import edu.cornell.cs.nlp.spf.mr.lambda.ccg.LogicalExpressionCategoryServices;
 import edu.cornell.cs.nlp.utils.log.ILogger;
 import edu.cornell.cs.nlp.utils.log.Log;
 import edu.cornell.cs.nlp.utils.log.LogLevel;
 import edu.cornell.cs.nlp.utils.log.Logger;
 import edu.cornell.cs.nlp.utils.log.LoggerFactory;
 import edu.uw.cs.lil.amr.Init;
-import edu.uw.cs.lil.amr.data.Tokenizer;
 import edu.uw.cs.lil.amr.lambda.convert.LogicalExpressionToAmr;
 
 /**
- * Utility to convert sentences paired with AMRs to
- * {@link SingleSentenceCollection} and write to a file. The input AMR file must be
- * simplified where each AMR is on a single line (and not indented on multiple
- * lines). See the script txt2amr.py to simplify AMR files.
+ * Utility to convert a {@link SingleSentenceCollection} file to sentences
+ * paired with AMRs and write to a file. Each record in the input file is
+ * expected to include a sentence, its properties and a logical form,
+ * potentially on multiple lines. Records are converted concurrently with
+ * {@link ParallelConverter}, and records that didn't change since the
+ * previous conversion of the same output file are not converted again.
+ * Optional arguments after the output file: "indent", "threads=N" and
+ * "queue=N".
  *
  * @author Yoav Artzi
  */
@@ -42,31 +47,68 @@ public class LambdaToAMR {
 
 		Init.init(/* "../resources/amr.types" */new File(args[0]), true);
 
+		// //////////////////////////////////////////////////
+		// Category services for logical expressions.
+		// //////////////////////////////////////////////////
+
+		final LogicalExpressionCategoryServices categoryServices = new LogicalExpressionCategoryServices(
+				true);
+
 		// //////////////////////////////////////////
 		// Read the input file, convert each sample and write to output.
 		// //////////////////////////////////////////
 
-		final int lineNumber = -1;
-		final boolean doIndent = args.length > 3 && args[3].equals("indent");
-		try (PrintStream out = new PrintStream(new File(args[2]));) {
-			for (final SingleSentence dataItem : SingleSentenceCollection.read(
-					new File(args[1]), new Tokenizer())) {
-				final String amr = LogicalExpressionToAmr.of(
-						dataItem.getLabel(), doIndent);
-				if (amr == null) {
-					LOG.error("Conversion failed");
-				} else {
-					out.println(dataItem.getSample());
-					out.println(Properties.toString(dataItem.getProperties()));
-					out.println(amr);
-					out.println();
-				}
-			}
+		boolean indent = false;
+		for (int i = 3; i < args.length; ++i) {
+			indent |= args[i].equals("indent");
+		}
+		final boolean doIndent = indent;
+		final int numThreads = ParallelConverter.option(args, 3, "threads",
+				Runtime.getRuntime().availableProcessors());
+		final int queueSize = ParallelConverter.option(args, 3, "queue",
+				4 * numThreads);
+		try {
+			new ParallelConverter(
+					record -> convert(record, categoryServices, doIndent),
+					LambdaToAMR.class.getName() + (doIndent ? ":indent" : ""),
+					numThreads, queueSize)
+					.convert(new File(args[1]), new File(args[2]));
 		} catch (final IOException e) {
 			throw new IllegalStateException(e);
-		} catch (final Exception e) {
-			throw new RuntimeException("Exception in line: " + lineNumber, e);
 		}
 
 	}
+
+	/**
+	 * Convert a single record. Comment lines are ignored. The first line is
+	 * the sentence, the second is the properties and the rest is the logical
+	 * form.
+	 *
+	 * @return The sentence, its properties and the AMR, or null if the
+	 *         conversion fails.
+	 */
+	private static String convert(String record,
+			LogicalExpressionCategoryServices categoryServices,
+			boolean doIndent) {
+		final List<String> lines = new ArrayList<>();
+		for (final String line : record.split("\n")) {
+			if (!line.startsWith("//")) {
+				lines.add(line);
+			}
+		}
+		if (lines.size() < 3) {
+			LOG.error("Incomplete record: %s", record);
+			return null;
+		}
+
+		final LogicalExpression label = categoryServices.readSemantics(String
+				.join("\n", lines.subList(2, lines.size())));
+		final String amr = LogicalExpressionToAmr.of(label, doIndent);
+		if (amr == null) {
+			return null;
+		}
+		return lines.get(0) + "\n"
+				+ Properties.toString(Properties.readProperties(lines.get(1)))
+				+ "\n" + amr;
+	}
 }
@@ -0,0 +1,279 @@
+package edu.uw.cs.lil.amr.util.convert;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import edu.cornell.cs.nlp.utils.log.ILogger;
+import edu.cornell.cs.nlp.utils.log.LoggerFactory;
+import edu.cornell.cs.nlp.utils.log.thread.LoggingThreadFactory;
+import edu.uw.cs.lil.amr.util.concurrent.ReorderBuffer;
+
+/**
+ * Streaming converter of corpus files, where records are separated by empty
+ * lines. A bounded number of records is read ahead and converted concurrently,
+ * and the conversions are written in input order, each followed by an empty
+ * line. Records that fail to convert are logged and skipped. A
+ * {@link ConversionManifest} is written next to the output file. If the
+ * manifest of a previous run matches the existing output file, records with
+ * the same content hash are copied from the previous output instead of being
+ * converted again. The output and the manifest replace the previous ones only
+ * when the conversion completes.
+ *
+ * @author Yoav Artzi
+ */
+public class ParallelConverter {
+	public static final ILogger				LOG				= LoggerFactory
+			.create(ParallelConverter.class);
+
+	/**
+	 * Number of written records between progress reports.
+	 */
+	private static final int				REPORT_INTERVAL	= 100;
+
+	/**
+	 * Converts a record to its output, or returns null if the conversion
+	 * fails. Called concurrently.
+	 */
+	private final Function<String, String>	converter;
+
+	private final int						numThreads;
+
+	/**
+	 * Maximum number of records waiting for a conversion thread.
+	 */
+	private final int						queueSize;
+
+	/**
+	 * Identifies the conversion and its options. Part of the content hash of
+	 * each record.
+	 */
+	private final String					signature;
+
+	public ParallelConverter(Function<String, String> converter,
+			String signature, int numThreads, int queueSize) {
+		this.converter = converter;
+		this.signature = signature;
+		this.numThreads = numThreads;
+		this.queueSize = queueSize;
+	}
+
+	public static File manifestFile(File output) {
+		return new File(output.getPath() + ".manifest");
+	}
+
+	/**
+	 * Read an optional integer command line argument of the form
+	 * "name=value".
+	 *
+	 * @param start
+	 *            Index of the first optional argument.
+	 */
+	public static int option(String[] args, int start, String name,
+			int defaultValue) {
+		for (int i = start; i < args.length; ++i) {
+			if (args[i].startsWith(name + "=")) {
+				return Integer.parseInt(args[i].substring(name.length() + 1));
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Read the next record: all lines until an empty line, skipping leading
+	 * empty lines.
+	 *
+	 * @return The record lines separated by '\n', or null at the end of the
+	 *         input.
+	 */
+	static String readRecord(BufferedReader reader) throws IOException {
+		String line;
+		while ((line = reader.readLine()) != null && line.trim().isEmpty()) {
+			// Skip empty lines.
+		}
+		if (line == null) {
+			return null;
+		}
+		final StringBuilder record = new StringBuilder(line);
+		while ((line = reader.readLine()) != null && !line.trim().isEmpty()) {
+			record.append('\n').append(line);
+		}
+		return record.toString();
+	}
+
+	private static String readPrevious(RandomAccessFile previousOutput,
+			long[] entry) throws IOException {
+		final byte[] bytes = new byte[(int) entry[1]];
+		synchronized (previousOutput) {
+			previousOutput.seek(entry[0]);
+			previousOutput.readFully(bytes);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public void convert(File input, File output) throws IOException {
+		final long startTime = System.currentTimeMillis();
+		final File manifestFile = manifestFile(output);
+		final ConversionManifest previous = output.exists() ? ConversionManifest
+				.read(manifestFile, output.length()) : null;
+		if (previous != null) {
+			LOG.info("Read manifest of previous conversion: %d records",
+					previous.size());
+		}
+
+		final File tmpOutput = new File(output.getPath() + ".tmp");
+		final File tmpManifest = new File(manifestFile.getPath() + ".tmp");
+		final ConversionManifest manifest = new ConversionManifest();
+		final AtomicInteger converted = new AtomicInteger();
+		final AtomicInteger reused = new AtomicInteger();
+		final AtomicInteger failed = new AtomicInteger();
+
+		final ExecutorService executor = Executors.newFixedThreadPool(
+				numThreads, new LoggingThreadFactory("convert"));
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(input), StandardCharsets.UTF_8));
+				RandomAccessFile previousOutput = previous == null ? null
+						: new RandomAccessFile(output, "r");
+				OutputStream out = new BufferedOutputStream(
+						new FileOutputStream(tmpOutput))) {
+			// Each permit is a record that is queued, converted or waiting to
+			// be written. Permits are released when a record is written.
+			final ReorderBuffer<Result> buffer = new ReorderBuffer<>(
+					numThreads + queueSize,
+					new ManifestWriter(out, manifest));
+			String record;
+			int recordCounter = 0;
+			while ((record = readRecord(reader)) != null) {
+				final int recordNumber = ++recordCounter;
+				final String hash = ConversionManifest.hash(signature, record);
+				final long[] entry = previous == null ? null
+						: previous.get(hash);
+				final String recordString = record;
+				buffer.acquire();
+				executor.execute(() -> {
+					String result = null;
+					try {
+						if (entry != null) {
+							try {
+								result = readPrevious(previousOutput, entry);
+								reused.incrementAndGet();
+							} catch (final IOException e) {
+								LOG.error(
+										"%d : Failed to read previous conversion: %s",
+										recordNumber, e);
+							}
+						}
+						if (result == null) {
+							try {
+								result = converter.apply(recordString);
+							} catch (final RuntimeException e) {
+								LOG.error("%d : Conversion failed: %s",
+										recordNumber, e);
+							}
+							if (result == null) {
+								LOG.error(
+										"%d : Conversion failed for record:\n%s",
+										recordNumber, recordString);
+								failed.incrementAndGet();
+							} else {
+								converted.incrementAndGet();
+							}
+						}
+					} catch (final Throwable t) {
+						// Errors fail the conversion.
+						buffer.fail(recordNumber, t);
+						result = null;
+					} finally {
+						// Every record must reach the buffer, or the writing
+						// (and the release of its permit) is blocked.
+						buffer.add(recordNumber, new Result(hash, result));
+					}
+				});
+				if (buffer.getFailure() != null) {
+					// Stop reading records, the conversion failed.
+					break;
+				}
+			}
+			// Wait for all records to be written.
+			buffer.awaitAll();
+			final Throwable failure = buffer.getFailure();
+			if (failure instanceof IOException) {
+				throw (IOException) failure;
+			} else if (failure != null) {
+				throw new RuntimeException("Conversion failed", failure);
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		manifest.write(tmpManifest, tmpOutput.length());
+		Files.move(tmpOutput.toPath(), output.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		Files.move(tmpManifest.toPath(), manifestFile.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+
+		LOG.info(
+				"Conversion completed: %.2fsec (converted=%d, reused=%d, failed=%d)",
+				(System.currentTimeMillis() - startTime) / 1000.0,
+				converted.get(), reused.get(), failed.get());
+	}
+
+	/**
+	 * Writes conversions in input order, recording their position in the
+	 * output in the manifest. Failed conversions are skipped.
+	 */
+	private static class ManifestWriter
+			implements ReorderBuffer.IItemWriter<Result> {
+		private final ConversionManifest	manifest;
+		private long						offset	= 0;
+		private final OutputStream			out;
+
+		public ManifestWriter(OutputStream out, ConversionManifest manifest) {
+			this.out = out;
+			this.manifest = manifest;
+		}
+
+		@Override
+		public void write(int recordNumber, Result result) throws IOException {
+			if (result.output != null) {
+				final byte[] bytes = result.output
+						.getBytes(StandardCharsets.UTF_8);
+				out.write(bytes);
+				out.write('\n');
+				out.write('\n');
+				manifest.put(result.hash, offset, bytes.length);
+				offset += bytes.length + 2;
+			}
+			if (recordNumber % REPORT_INTERVAL == 0) {
+				LOG.info("Processed %d ...", recordNumber);
+			}
+		}
+	}
+
+	private static class Result {
+		private final String	hash;
+		private final String	output;
+
+		public Result(String hash, String output) {
+			this.hash = hash;
+			this.output = output;
+		}
+	}
+
+}
@@ -105,7 +105,8 @@ public class AMRTestParseUtil extends DistributedExperiment {
 							? globalParams.getAsFile("nerTranslation") : null,
 					globalParams.contains("propBank")
 							? globalParams.getAsFile("propBank") : null,
-					globalParams.getAsBoolean("underspecifyPropBank", false));
+					globalParams.getAsBoolean("underspecifyPropBank", false),
+					globalParams.getAsBoolean("internLogicalForms", false));
 
 			// //////////////////////////////////////////////////
 			// Category services for logical expressions.